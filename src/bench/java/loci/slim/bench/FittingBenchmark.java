@@ -0,0 +1,265 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import loci.curvefitter.CurveFitData;
+import loci.curvefitter.ICurveFitData;
+import loci.curvefitter.ICurveFitter;
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.curvefitter.SLIMCurveFitter;
+import loci.slim.fitting.LMACurveFitter;
+import loci.slim.fitting.LifetimeLookupTable;
+import loci.slim.fitting.RapidLifetimeDetermination;
+import loci.slim.fitting.callable.FittingEngineCallable;
+import loci.slim.fitting.engine.ThreadedFittingEngine;
+import loci.slim.fitting.params.GlobalFitParams;
+import loci.slim.fitting.params.IFitResults;
+import loci.slim.fitting.params.IGlobalFitParams;
+import loci.slim.fitting.params.ILocalFitParams;
+import loci.slim.fitting.params.LocalFitParams;
+import loci.slim.heuristics.FitterEstimator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks fitting single pixels, natively and in pure Java, fitting batches
+ * of pixels over threads and the rapid lifetime determination.  Scores are
+ * pixels per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FittingBenchmark {
+
+	/** Pixels fitted per batch, as SLIMProcessor fits them. */
+	static final int PIXELS = 1024;
+
+	/**
+	 * Fits one pixel, as each worker thread does.
+	 *
+	 */
+	@Benchmark
+	public IFitResults callable(final Decays decays) {
+		final FittingEngineCallable callable = new FittingEngineCallable();
+		callable.setup(decays.curveFitter, decays.globalParams, decays.next());
+		return callable.call();
+	}
+
+	/**
+	 * Fits one pixel with the pure Java fitter, for comparison with the native
+	 * library.
+	 *
+	 */
+	@Benchmark
+	public IFitResults javaCallable(final Decays decays) {
+		final FittingEngineCallable callable = new FittingEngineCallable();
+		callable.setup(decays.javaCurveFitter, decays.globalParams, decays.next());
+		return callable.call();
+	}
+
+	/**
+	 * Fits one pixel with the pure Java fitter using variable projection.
+	 *
+	 */
+	@Benchmark
+	public IFitResults varproCallable(final Decays decays) {
+		final FittingEngineCallable callable = new FittingEngineCallable();
+		callable.setup(decays.varproCurveFitter, decays.globalParams, decays
+			.next());
+		return callable.call();
+	}
+
+	/**
+	 * Fits a batch of pixels over a thread pool.
+	 *
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PIXELS)
+	public List<IFitResults> engine(final Decays decays, final Engine engine) {
+		return engine.engine.fit(decays.globalParams, decays.localParams);
+	}
+
+	/**
+	 * Fits one pixel with rapid lifetime determination.
+	 *
+	 */
+	@Benchmark
+	public int rld(final Decays decays) {
+		final ICurveFitData data = decays.nextCurveFitData();
+		return decays.rld.rldFit(decays.curveFitter, data);
+	}
+
+	/**
+	 * Gets one pixel's lifetime from the lookup table.
+	 *
+	 */
+	@Benchmark
+	public double lookupTable(final Decays decays) {
+		return decays.lookupTable.getLifetime(decays.next().getY());
+	}
+
+	/**
+	 * A fixed set of noisy decays with lifetimes spread over a range.
+	 */
+	@State(Scope.Benchmark)
+	public static class Decays {
+
+		@Param({ "64", "256" })
+		public int bins;
+
+		@Param({ "1", "2" })
+		public int components;
+
+		ICurveFitter curveFitter;
+		ICurveFitter javaCurveFitter;
+		ICurveFitter varproCurveFitter;
+		IGlobalFitParams globalParams;
+		List<ILocalFitParams> localParams;
+		ICurveFitData[] curveFitData;
+		double[] initialParams;
+		RapidLifetimeDetermination rld;
+		LifetimeLookupTable lookupTable;
+		private int index;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			final FitFunction[] functions =
+				{ FitFunction.SINGLE_EXPONENTIAL, FitFunction.DOUBLE_EXPONENTIAL,
+					FitFunction.TRIPLE_EXPONENTIAL };
+			final SyntheticData data = new SyntheticData(SyntheticData.SEED);
+			final double xInc = SyntheticData.getXInc(bins);
+			initialParams = SyntheticData.getInitialParams(components);
+
+			curveFitter = new SLIMCurveFitter();
+			curveFitter.setEstimator(new FitterEstimator());
+			curveFitter.setXInc(xInc);
+			javaCurveFitter = new LMACurveFitter();
+			javaCurveFitter.setEstimator(new FitterEstimator());
+			javaCurveFitter.setXInc(xInc);
+			varproCurveFitter = new LMACurveFitter(true);
+			varproCurveFitter.setEstimator(new FitterEstimator());
+			varproCurveFitter.setXInc(xInc);
+
+			globalParams = new GlobalFitParams();
+			globalParams.setEstimator(new FitterEstimator());
+			globalParams.setFitAlgorithm(FitAlgorithm.SLIMCURVE_LMA);
+			globalParams.setFitFunction(functions[components - 1]);
+			globalParams.setNoiseModel(NoiseModel.POISSON_FIT);
+			globalParams.setTransientStart(0);
+			globalParams.setDataStart(1);
+			globalParams.setTransientStop(bins - 1);
+			globalParams.setXInc(xInc);
+			globalParams.setPrompt(null);
+			globalParams.setChiSquareTarget(1.5);
+			globalParams.setFree(SyntheticData.getFree(components));
+
+			localParams = new ArrayList<ILocalFitParams>();
+			curveFitData = new ICurveFitData[PIXELS];
+			for (int i = 0; i < PIXELS; ++i) {
+				final double scale = 0.5 + (double) i / PIXELS;
+				final double[] decay =
+					data.poissonDecay(bins, xInc, SyntheticData.getAmplitudes(
+						components, 1000.0), SyntheticData.getLifetimes(components,
+						scale));
+
+				final ILocalFitParams local = new LocalFitParams();
+				local.setY(decay);
+				local.setSig(null);
+				local.setParams(initialParams);
+				local.setYFitted(new double[bins]);
+				localParams.add(local);
+
+				final ICurveFitData fitData = new CurveFitData();
+				fitData.setYCount(decay);
+				fitData.setTransStartIndex(0);
+				fitData.setDataStartIndex(1);
+				fitData.setTransEndIndex(bins - 1);
+				fitData.setChiSquareTarget(1.5);
+				fitData.setSig(null);
+				fitData.setParams(initialParams.clone());
+				fitData.setYFitted(new double[bins]);
+				curveFitData[i] = fitData;
+			}
+			rld = new RapidLifetimeDetermination();
+			lookupTable = new LifetimeLookupTable(xInc, 1, bins - 1, null);
+		}
+
+		ILocalFitParams next() {
+			index = (index + 1) % PIXELS;
+			return localParams.get(index);
+		}
+
+		ICurveFitData nextCurveFitData() {
+			index = (index + 1) % PIXELS;
+			final ICurveFitData data = curveFitData[index];
+			data.setParams(initialParams.clone());
+			return data;
+		}
+	}
+
+	/**
+	 * A fitting engine with a given number of threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class Engine {
+
+		@Param({ "1", "2", "4", "8" })
+		public int threads;
+
+		ThreadedFittingEngine engine;
+
+		@Setup(Level.Trial)
+		public void setup(final Decays decays) {
+			engine = new ThreadedFittingEngine();
+			engine.setThreads(threads);
+			engine.setCurveFitter(decays.curveFitter);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			engine.shutdown();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import loci.slim.DecayImageWrapper;
+import loci.slim.preprocess.SquareBinner;
+import loci.slim2.decay.LifetimeDatasetWrapper;
+import loci.slim2.decay.NoLifetimeAxisFoundException;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+/**
+ * Benchmarks reading and binning decays from the synthetic SDT-like image.
+ * Scores are pixels per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessBenchmark {
+
+	static final int WIDTH = 128;
+	static final int HEIGHT = 128;
+	static final int BINS = 256;
+
+	/**
+	 * Reads one decay.
+	 *
+	 */
+	@Benchmark
+	public double[] decayImage(final Image image) {
+		return image.decayImage.getPixel(image.next());
+	}
+
+	/**
+	 * Reads one decay binned with its neighbors.
+	 *
+	 */
+	@Benchmark
+	public double[] squareBinner(final Image image, final Binner binner) {
+		return binner.binner.getPixel(image.next());
+	}
+
+	/**
+	 * Reads one decay binned with its neighbors from a Dataset.
+	 *
+	 */
+	@Benchmark
+	public double[] binnedDecay(final Image image, final Binner binner) {
+		final int[] location = image.next();
+		return image.wrapper.getBinnedDecay(binner.binSize, new long[] {
+			location[0], location[1] });
+	}
+
+	/**
+	 * The seeded synthetic image, visited pixel by pixel.
+	 */
+	@State(Scope.Benchmark)
+	public static class Image {
+
+		ImgPlus<UnsignedShortType> image;
+		DecayImageWrapper<UnsignedShortType> decayImage;
+		LifetimeDatasetWrapper wrapper;
+		private Context context;
+		private final int[] location = new int[3];
+		private int index;
+
+		@Setup(Level.Trial)
+		public void setup() throws NoLifetimeAxisFoundException {
+			final SyntheticData data = new SyntheticData(SyntheticData.SEED);
+			image = data.createImage(WIDTH, HEIGHT, BINS, 0, 1, 200.0);
+			decayImage =
+				new DecayImageWrapper<UnsignedShortType>(image, WIDTH, HEIGHT, 1,
+					BINS, 2, 1);
+
+			context = new Context(DatasetService.class);
+			final DatasetService datasetService =
+				context.getService(DatasetService.class);
+			final Dataset dataset = datasetService.create(image);
+			wrapper = new LifetimeDatasetWrapper(dataset);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			context.dispose();
+		}
+
+		int[] next() {
+			index = (index + 1) % (WIDTH * HEIGHT);
+			location[0] = index % WIDTH;
+			location[1] = index / WIDTH;
+			location[2] = 0;
+			return location;
+		}
+	}
+
+	/**
+	 * A square binner over the synthetic image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Binner {
+
+		/** 1=3x3, 2=5x5, ... 5=11x11 */
+		@Param({ "1", "2", "3", "4", "5" })
+		public int binSize;
+
+		SquareBinner binner;
+
+		@Setup(Level.Trial)
+		public void setup(final Image image) {
+			binner = new SquareBinner();
+			binner.init(binSize, WIDTH, HEIGHT);
+			binner.chain(image.decayImage);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.bench;
+
+import io.scif.img.axes.SCIFIOAxes;
+
+import java.util.Random;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Generates seeded, reproducible synthetic lifetime data for benchmarks.
+ * <p>
+ * Decays are sums of exponentials on a constant background, sampled with
+ * Poisson noise.  Images are laid out like an SDT file, as x, y, lifetime bins
+ * and optionally channels, with the lifetime varying across the image and the
+ * intensity peaking in the middle.
+ */
+public class SyntheticData {
+
+	/** Seed of the standard benchmark data. */
+	public static final long SEED = 0x534c494dL; // "SLIM"
+	/** Time base of the decay histogram, in nanoseconds. */
+	public static final double TIME_BASE = 10.0;
+	/** Background counts per bin. */
+	public static final double BACKGROUND = 2.0;
+	private static final double[] LIFETIMES = { 2.5, 0.5, 6.0 };
+	private static final double[] FRACTIONS = { 1.0, 0.5, 0.25 };
+	private static final double NORMAL_MEAN = 30.0;
+	private static final int MAX_COUNT = 65535;
+	private final Random random;
+
+	/**
+	 * Creates a generator.
+	 *
+	 */
+	public SyntheticData(final long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Gets time increment per bin.
+	 *
+	 */
+	public static double getXInc(final int bins) {
+		return TIME_BASE / bins;
+	}
+
+	/**
+	 * Gets lifetimes of the components, scaled.
+	 *
+	 * @param components 1 to 3
+	 * @param scale 1.0 for the nominal lifetimes
+	 */
+	public static double[] getLifetimes(final int components,
+		final double scale)
+	{
+		final double[] lifetimes = new double[components];
+		for (int i = 0; i < components; ++i) {
+			lifetimes[i] = scale * LIFETIMES[i];
+		}
+		return lifetimes;
+	}
+
+	/**
+	 * Gets amplitudes of the components, for a given total peak.
+	 *
+	 * @param components 1 to 3
+	 */
+	public static double[] getAmplitudes(final int components,
+		final double peak)
+	{
+		double total = 0.0;
+		for (int i = 0; i < components; ++i) {
+			total += FRACTIONS[i];
+		}
+		final double[] amplitudes = new double[components];
+		for (int i = 0; i < components; ++i) {
+			amplitudes[i] = peak * FRACTIONS[i] / total;
+		}
+		return amplitudes;
+	}
+
+	/**
+	 * Gets initial fit parameters, in SLIMCurve order: chi square, Z, then A and
+	 * T for each component.
+	 *
+	 */
+	public static double[] getInitialParams(final int components) {
+		final double[] params = new double[2 + 2 * components];
+		params[1] = BACKGROUND;
+		for (int i = 0; i < components; ++i) {
+			params[2 + 2 * i] = 1000.0;
+			params[3 + 2 * i] = LIFETIMES[i];
+		}
+		return params;
+	}
+
+	/**
+	 * Gets free flags with all parameters free, in SLIMCurve order.
+	 *
+	 */
+	public static boolean[] getFree(final int components) {
+		final boolean[] free = new boolean[1 + 2 * components];
+		for (int i = 0; i < free.length; ++i) {
+			free[i] = true;
+		}
+		return free;
+	}
+
+	/**
+	 * Gets the noise-free decay.
+	 *
+	 * @param bins number of time bins
+	 * @param xInc time increment per bin
+	 * @param background constant counts per bin
+	 * @param amplitudes per component
+	 * @param lifetimes per component
+	 * @return expected counts per bin
+	 */
+	public static double[] expectedDecay(final int bins, final double xInc,
+		final double background, final double[] amplitudes,
+		final double[] lifetimes)
+	{
+		final double[] decay = new double[bins];
+		for (int i = 0; i < bins; ++i) {
+			final double t = i * xInc;
+			double value = background;
+			for (int j = 0; j < amplitudes.length; ++j) {
+				value += amplitudes[j] * Math.exp(-t / lifetimes[j]);
+			}
+			decay[i] = value;
+		}
+		return decay;
+	}
+
+	/**
+	 * Gets a decay with Poisson noise.
+	 *
+	 * @param expected noise-free counts per bin
+	 * @return sampled counts per bin
+	 */
+	public double[] poissonDecay(final double[] expected) {
+		final double[] decay = new double[expected.length];
+		for (int i = 0; i < expected.length; ++i) {
+			decay[i] = poisson(expected[i]);
+		}
+		return decay;
+	}
+
+	/**
+	 * Gets a decay with Poisson noise.
+	 *
+	 */
+	public double[] poissonDecay(final int bins, final double xInc,
+		final double[] amplitudes, final double[] lifetimes)
+	{
+		return poissonDecay(expectedDecay(bins, xInc, BACKGROUND, amplitudes,
+			lifetimes));
+	}
+
+	/**
+	 * Samples a Poisson distribution.  Large means use the normal
+	 * approximation.
+	 *
+	 */
+	public int poisson(final double mean) {
+		if (mean <= 0.0) {
+			return 0;
+		}
+		if (mean >= NORMAL_MEAN) {
+			final long count =
+				Math.round(mean + Math.sqrt(mean) * random.nextGaussian());
+			return (int) Math.max(0, Math.min(MAX_COUNT, count));
+		}
+		// Knuth
+		final double limit = Math.exp(-mean);
+		int count = 0;
+		double product = random.nextDouble();
+		while (product > limit) {
+			++count;
+			product *= random.nextDouble();
+		}
+		return count;
+	}
+
+	/**
+	 * Creates an SDT-like image.  Lifetimes scale from 0.5 to 1.5 times nominal
+	 * across x and the peak falls off as a Gaussian from the center; each
+	 * channel is a little dimmer than the one before.
+	 *
+	 * @param width in pixels
+	 * @param height in pixels
+	 * @param bins number of time bins
+	 * @param channels number of channels, 0 for no channel axis
+	 * @param components number of exponential components, 1 to 3
+	 * @param peak peak counts at the center
+	 */
+	public ImgPlus<UnsignedShortType> createImage(final int width,
+		final int height, final int bins, final int channels,
+		final int components, final double peak)
+	{
+		final boolean hasChannels = channels > 0;
+		final long[] dims =
+			hasChannels ? new long[] { width, height, bins, channels } : new long[] {
+				width, height, bins };
+		final Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(dims);
+		final RandomAccess<UnsignedShortType> access = img.randomAccess();
+
+		final double xInc = getXInc(bins);
+		final double sigma = Math.max(width, height) / 4.0;
+		for (int c = 0; c < Math.max(1, channels); ++c) {
+			if (hasChannels) {
+				access.setPosition(c, 3);
+			}
+			final double channelPeak = peak / (1.0 + 0.25 * c);
+			for (int y = 0; y < height; ++y) {
+				access.setPosition(y, 1);
+				final double dy = y - height / 2.0;
+				for (int x = 0; x < width; ++x) {
+					access.setPosition(x, 0);
+					final double dx = x - width / 2.0;
+					final double falloff =
+						Math.exp(-(dx * dx + dy * dy) / (2.0 * sigma * sigma));
+					final double scale = 0.5 + (double) x / width;
+					final double[] decay =
+						poissonDecay(bins, xInc, getAmplitudes(components, channelPeak *
+							falloff), getLifetimes(components, scale));
+					for (int i = 0; i < bins; ++i) {
+						access.setPosition(i, 2);
+						access.get().set((int) Math.min(MAX_COUNT, decay[i]));
+					}
+				}
+			}
+		}
+		return new ImgPlus<UnsignedShortType>(img, "synthetic",
+			getAxes(hasChannels));
+	}
+
+	/**
+	 * Gets the axes of an SDT-like image.
+	 *
+	 */
+	public static AxisType[] getAxes(final boolean hasChannels) {
+		return hasChannels ? new AxisType[] { Axes.X, Axes.Y,
+			SCIFIOAxes.LIFETIME, Axes.CHANNEL } : new AxisType[] { Axes.X, Axes.Y,
+			SCIFIOAxes.LIFETIME };
+	}
+}
@@ -0,0 +1,575 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.bench;
+
+import io.scif.img.SCIFIOImgPlus;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import loci.curvefitter.ICurveFitter;
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.curvefitter.SLIMCurveFitter;
+import loci.slim.SLIMProcessor;
+import loci.slim.fitting.FitInfo;
+import loci.slim.heuristics.FitterEstimator;
+import loci.slim.preprocess.Bin11x11;
+import loci.slim.preprocess.Bin3x3;
+import loci.slim.preprocess.Bin5x5;
+import loci.slim.preprocess.Bin7x7;
+import loci.slim.preprocess.Bin9x9;
+import loci.slim.preprocess.SLIMBinner;
+import loci.slim2.decay.LifetimeDatasetWrapper;
+import loci.slim2.decay.NoLifetimeAxisFoundException;
+import loci.slim2.fitting.DefaultGlobalFitParams;
+import loci.slim2.fitting.GlobalFitParams;
+import loci.slim2.heuristics.DefaultFitterEstimator;
+import loci.slim2.process.FittedImageSink;
+import loci.slim2.process.FittedPixelSink;
+import loci.slim2.process.ImageFitter;
+import loci.slim2.process.interactive.DefaultFitSettings;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
+import net.imagej.ImgPlus;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+import org.scijava.Context;
+
+/**
+ * Runs whole-image fits headlessly on seeded synthetic data and reports
+ * throughput and memory behavior as JSON, so results can be compared across
+ * commits.
+ * <p>
+ * Usage: <code>ThroughputBenchmark [key=value]...</code>, with keys
+ *
+ * <pre>
+ * sizes=256,512,1024              # image width and height
+ * components=1,2,3                # exponential components
+ * bins=64,256,1024
+ * binning=0,1,2                   # 0=none, 1=3x3, 2=5x5, etc.
+ * pipelines=ImageFitter,SLIMProcessor
+ * warmups=1                       # unmeasured runs per configuration
+ * repeats=3                       # measured runs per configuration
+ * output=target/throughput.json
+ * commit=                         # recorded as is, e.g. git rev-parse HEAD
+ * </pre>
+ *
+ * Each run reports pixels per second, peak heap, bytes allocated and the
+ * allocation rate, and GC count and time. Peak heap is the sum of the heap
+ * pool peaks; allocation is summed over the threads alive at the end of the
+ * fit, so threads that end during the fit are not counted.
+ */
+public class ThroughputBenchmark {
+
+	private static final String IMAGE_FITTER = "ImageFitter";
+	private static final String SLIM_PROCESSOR = "SLIMProcessor";
+	private static final double PEAK = 500.0;
+	private static final double CHI_SQUARE_TARGET = 1.5;
+	private static final FitAlgorithm ALGORITHM = FitAlgorithm.SLIMCURVE_RLD_LMA;
+	private static final NoiseModel NOISE_MODEL = NoiseModel.MAXIMUM_LIKELIHOOD;
+	private static final FitFunction[] FUNCTIONS = {
+		FitFunction.SINGLE_EXPONENTIAL, FitFunction.DOUBLE_EXPONENTIAL,
+		FitFunction.TRIPLE_EXPONENTIAL };
+
+	private int[] sizes = { 256, 512, 1024 };
+	private int[] components = { 1, 2, 3 };
+	private int[] bins = { 64, 256, 1024 };
+	private int[] binning = { 0, 1, 2 };
+	private String[] pipelines = { IMAGE_FITTER, SLIM_PROCESSOR };
+	private int warmups = 1;
+	private int repeats = 3;
+	private String output = "target/throughput.json";
+	private String commit = "";
+	private final ImageFitter imageFitter = new ImageFitter();
+	private SLIMProcessor<UnsignedShortType> processor;
+
+	public static void main(final String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		final ThroughputBenchmark benchmark = new ThroughputBenchmark();
+		Context context = null;
+		try {
+			benchmark.parse(args);
+			context = new Context(DatasetService.class);
+			benchmark.run(context);
+		}
+		catch (final Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		finally {
+			if (null != context) {
+				context.dispose();
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Parses key=value arguments.
+	 *
+	 */
+	public void parse(final String[] args) {
+		for (final String arg : args) {
+			final int index = arg.indexOf('=');
+			if (index < 0) {
+				throw new IllegalArgumentException("Expected key=value: " + arg);
+			}
+			final String key = arg.substring(0, index).trim();
+			final String value = arg.substring(index + 1).trim();
+			if ("sizes".equals(key)) {
+				sizes = getInts(value);
+			}
+			else if ("components".equals(key)) {
+				components = getInts(value);
+			}
+			else if ("bins".equals(key)) {
+				bins = getInts(value);
+			}
+			else if ("binning".equals(key)) {
+				binning = getInts(value);
+			}
+			else if ("pipelines".equals(key)) {
+				pipelines = value.split(",");
+			}
+			else if ("warmups".equals(key)) {
+				warmups = Integer.parseInt(value);
+			}
+			else if ("repeats".equals(key)) {
+				repeats = Integer.parseInt(value);
+			}
+			else if ("output".equals(key)) {
+				output = value;
+			}
+			else if ("commit".equals(key)) {
+				commit = value;
+			}
+			else {
+				throw new IllegalArgumentException("Unknown key " + key);
+			}
+		}
+	}
+
+	/**
+	 * Runs all configurations and writes the results.
+	 *
+	 */
+	public void run(final Context context) throws IOException,
+		NoLifetimeAxisFoundException
+	{
+		final DatasetService datasetService =
+			context.getService(DatasetService.class);
+		// looks up its binner and analysis plugins once, outside the fits
+		processor = new SLIMProcessor<UnsignedShortType>();
+		final List<Run> runs = new ArrayList<Run>();
+		for (final int size : sizes) {
+			for (final int bin : bins) {
+				for (final int component : components) {
+					// same seed for every image, so each is reproducible on its own
+					final SyntheticData data = new SyntheticData(SyntheticData.SEED);
+					final ImgPlus<UnsignedShortType> image =
+						data.createImage(size, size, bin, 1, component, PEAK);
+					final Dataset dataset = datasetService.create(image);
+					for (final int binSize : binning) {
+						for (final String pipeline : pipelines) {
+							final Run run = new Run(pipeline, size, bin, component, binSize);
+							for (int i = 0; i < warmups + repeats; ++i) {
+								final Sample sample = new Sample();
+								sample.begin();
+								final long pixels =
+									fit(pipeline, image, dataset, bin, component, binSize);
+								sample.end(pixels);
+								if (i >= warmups) {
+									run.samples.add(sample);
+								}
+							}
+							System.out.println(run);
+							runs.add(run);
+						}
+					}
+				}
+			}
+		}
+		write(runs);
+	}
+
+	/**
+	 * Fits the image once.
+	 *
+	 * @return number of pixels fitted
+	 */
+	private long fit(final String pipeline,
+		final ImgPlus<UnsignedShortType> image, final Dataset dataset,
+		final int bins, final int components, final int binSize)
+		throws IOException, NoLifetimeAxisFoundException
+	{
+		final long pixels = image.dimension(0) * image.dimension(1);
+		final FitFunction function = FUNCTIONS[components - 1];
+		final double xInc = SyntheticData.getXInc(bins);
+		if (IMAGE_FITTER.equals(pipeline)) {
+			final GlobalFitParams params = new DefaultGlobalFitParams();
+			params.setEstimator(new DefaultFitterEstimator());
+			params.setFitAlgorithm(ALGORITHM);
+			params.setFitFunction(function);
+			params.setNoiseModel(NOISE_MODEL);
+			params.setXInc(xInc);
+			params.setPrompt(null);
+			params.setChiSquareTarget(CHI_SQUARE_TARGET);
+			params.setFree(SyntheticData.getFree(components));
+			params.setTransientStart(0);
+			params.setDataStart(0);
+			params.setTransientStop(bins - 1);
+
+			final DefaultFitSettings fitSettings = new DefaultFitSettings();
+			fitSettings.setGlobalFitParams(params);
+			fitSettings.setBins(bins);
+			fitSettings.setTimeInc(xInc);
+			fitSettings.setBinningFactor(binSize);
+			fitSettings.setThresholdMinimum(0);
+			fitSettings.setThresholdMaximum(Integer.MAX_VALUE);
+
+			final LifetimeDatasetWrapper lifetime =
+				new LifetimeDatasetWrapper(dataset);
+			final List<FittedPixelSink> sinks =
+				Collections.<FittedPixelSink> singletonList(new FittedImageSink());
+			if (!imageFitter.fit(fitSettings, lifetime, bins, sinks)) {
+				throw new IllegalStateException("Fit failed " +
+					imageFitter.getErrorCode());
+			}
+		}
+		else if (SLIM_PROCESSOR.equals(pipeline)) {
+			final FitInfo fitInfo = new FitInfo();
+			fitInfo.setChannel(0);
+			fitInfo.setFitAllChannels(false);
+			fitInfo.setAlgorithm(ALGORITHM);
+			fitInfo.setFunction(function);
+			fitInfo.setNoiseModel(NOISE_MODEL);
+			fitInfo.setTransientStart(0);
+			fitInfo.setDataStart(0);
+			fitInfo.setTransientStop(bins - 1);
+			fitInfo.setXInc(xInc);
+			fitInfo.setThreshold(0);
+			fitInfo.setChiSquareTarget(CHI_SQUARE_TARGET);
+			fitInfo.setParameterCount(imageFitter.getParameterCount(function));
+			fitInfo.setParameters(SyntheticData.getInitialParams(components));
+			fitInfo.setFree(SyntheticData.getFree(components));
+
+			final ICurveFitter curveFitter = new SLIMCurveFitter();
+			curveFitter.setFitAlgorithm(ALGORITHM);
+			curveFitter.setEstimator(new FitterEstimator());
+			curveFitter.setFitFunction(function);
+			curveFitter.setNoiseModel(NOISE_MODEL);
+			curveFitter.setXInc(xInc);
+			curveFitter.setFree(SyntheticData.getFree(components));
+
+			// a new wrapper, so the intensity index is rebuilt as for a new file
+			final SCIFIOImgPlus<UnsignedShortType> scifioImage =
+				new SCIFIOImgPlus<UnsignedShortType>(image.getImg(), image.getName(),
+					SyntheticData.getAxes(true));
+			if (null == processor.fitImage(scifioImage, fitInfo,
+				createBinner(binSize), curveFitter))
+			{
+				throw new IllegalStateException("Fit failed");
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unknown pipeline " + pipeline);
+		}
+		return pixels;
+	}
+
+	private static SLIMBinner createBinner(final int binSize) {
+		switch (binSize) {
+			case 0:
+				return null;
+			case 1:
+				return new Bin3x3();
+			case 2:
+				return new Bin5x5();
+			case 3:
+				return new Bin7x7();
+			case 4:
+				return new Bin9x9();
+			case 5:
+				return new Bin11x11();
+		}
+		throw new IllegalArgumentException("No binner for " + binSize);
+	}
+
+	/**
+	 * Writes runs and environment as JSON.
+	 *
+	 */
+	private void write(final List<Run> runs) throws IOException {
+		final File file = new File(output);
+		if (null != file.getParentFile()) {
+			file.getParentFile().mkdirs();
+		}
+		final Writer writer = new FileWriter(file);
+		try {
+			final Runtime runtime = Runtime.getRuntime();
+			writer.write("{\n");
+			writer.write("  \"commit\": " + quote(commit) + ",\n");
+			writer.write("  \"seed\": " + SyntheticData.SEED + ",\n");
+			writer.write("  \"java\": " + quote(System.getProperty("java.version")) +
+				",\n");
+			writer.write("  \"vm\": " + quote(System.getProperty("java.vm.name")) +
+				",\n");
+			writer.write("  \"os\": " + quote(System.getProperty("os.name") + " " +
+				System.getProperty("os.arch")) + ",\n");
+			writer.write("  \"processors\": " + runtime.availableProcessors() +
+				",\n");
+			writer.write("  \"maxHeapBytes\": " + runtime.maxMemory() + ",\n");
+			writer.write("  \"runs\": [");
+			for (int i = 0; i < runs.size(); ++i) {
+				writer.write(0 == i ? "\n" : ",\n");
+				runs.get(i).write(writer);
+			}
+			writer.write("\n  ]\n}\n");
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static String quote(final String value) {
+		final StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); ++i) {
+			final char c = value.charAt(i);
+			if ('"' == c || '\\' == c) {
+				builder.append('\\');
+			}
+			if (c < ' ') {
+				builder.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				builder.append(c);
+			}
+		}
+		return builder.append('"').toString();
+	}
+
+	private static int[] getInts(final String value) {
+		final String[] values = value.split(",");
+		final int[] ints = new int[values.length];
+		for (int i = 0; i < values.length; ++i) {
+			ints[i] = Integer.parseInt(values[i].trim());
+		}
+		return ints;
+	}
+
+	/**
+	 * One configuration and its measured samples.
+	 */
+	private static class Run {
+
+		final String pipeline;
+		final int size;
+		final int bins;
+		final int components;
+		final int binning;
+		final List<Sample> samples = new ArrayList<Sample>();
+
+		Run(final String pipeline, final int size, final int bins,
+			final int components, final int binning)
+		{
+			this.pipeline = pipeline;
+			this.size = size;
+			this.bins = bins;
+			this.components = components;
+			this.binning = binning;
+		}
+
+		/**
+		 * Gets median pixels per second of the samples.
+		 *
+		 */
+		double getMedianPixelsPerSecond() {
+			final double[] rates = new double[samples.size()];
+			for (int i = 0; i < rates.length; ++i) {
+				rates[i] = samples.get(i).getPixelsPerSecond();
+			}
+			Arrays.sort(rates);
+			if (0 == rates.length) {
+				return 0.0;
+			}
+			final int middle = rates.length / 2;
+			return 0 == rates.length % 2 ? (rates[middle - 1] + rates[middle]) / 2.0
+				: rates[middle];
+		}
+
+		void write(final Writer writer) throws IOException {
+			writer.write("    {\"pipeline\": " + quote(pipeline) + ", \"size\": " +
+				size + ", \"bins\": " + bins + ", \"components\": " + components +
+				", \"binning\": " + binning + ",\n");
+			writer.write("     \"medianPixelsPerSecond\": " +
+				getMedianPixelsPerSecond() + ",\n");
+			writer.write("     \"samples\": [");
+			for (int i = 0; i < samples.size(); ++i) {
+				writer.write(0 == i ? "\n" : ",\n");
+				writer.write("       ");
+				samples.get(i).write(writer);
+			}
+			writer.write("\n     ]}");
+		}
+
+		@Override
+		public String toString() {
+			return pipeline + " " + size + "x" + size + " bins " + bins +
+				" components " + components + " binning " + binning + ": " +
+				Math.round(getMedianPixelsPerSecond()) + " pixels/s";
+		}
+	}
+
+	/**
+	 * Measurements of one fit.
+	 */
+	private static class Sample {
+
+		private long pixels;
+		private long startNanos;
+		private long nanos;
+		private Map<Long, Long> startAllocated;
+		private long allocatedBytes = -1;
+		private long startGcCount;
+		private long gcCount;
+		private long startGcMillis;
+		private long gcMillis;
+		private long peakHeapBytes;
+
+		void begin() {
+			System.gc();
+			for (final MemoryPoolMXBean pool : ManagementFactory
+				.getMemoryPoolMXBeans())
+			{
+				if (MemoryType.HEAP == pool.getType()) {
+					pool.resetPeakUsage();
+				}
+			}
+			startGcCount = getGcCount();
+			startGcMillis = getGcMillis();
+			startAllocated = getAllocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		void end(final long pixels) {
+			nanos = System.nanoTime() - startNanos;
+			this.pixels = pixels;
+			final Map<Long, Long> allocated = getAllocatedBytes();
+			if (null != allocated && null != startAllocated) {
+				// threads that ended during the fit are not counted
+				allocatedBytes = 0;
+				for (final Map.Entry<Long, Long> entry : allocated.entrySet()) {
+					final Long start = startAllocated.get(entry.getKey());
+					allocatedBytes += entry.getValue() - (null == start ? 0 : start);
+				}
+			}
+			gcCount = getGcCount() - startGcCount;
+			gcMillis = getGcMillis() - startGcMillis;
+			for (final MemoryPoolMXBean pool : ManagementFactory
+				.getMemoryPoolMXBeans())
+			{
+				if (MemoryType.HEAP == pool.getType()) {
+					peakHeapBytes += pool.getPeakUsage().getUsed();
+				}
+			}
+		}
+
+		double getPixelsPerSecond() {
+			return 0 == nanos ? 0.0 : pixels * 1.0e9 / nanos;
+		}
+
+		void write(final Writer writer) throws IOException {
+			final double seconds = nanos / 1.0e9;
+			final double allocationRate =
+				allocatedBytes < 0 || 0 == nanos ? -1.0 : allocatedBytes / seconds;
+			writer.write("{\"pixels\": " + pixels + ", \"seconds\": " + seconds +
+				", \"pixelsPerSecond\": " + getPixelsPerSecond() +
+				", \"peakHeapBytes\": " + peakHeapBytes + ", \"allocatedBytes\": " +
+				allocatedBytes + ", \"allocationBytesPerSecond\": " +
+				allocationRate + ", \"gcCount\": " + gcCount + ", \"gcMillis\": " +
+				gcMillis + "}");
+		}
+
+		private static long getGcCount() {
+			long count = 0;
+			for (final GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans())
+			{
+				count += Math.max(0, gc.getCollectionCount());
+			}
+			return count;
+		}
+
+		private static long getGcMillis() {
+			long millis = 0;
+			for (final GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans())
+			{
+				millis += Math.max(0, gc.getCollectionTime());
+			}
+			return millis;
+		}
+
+		/**
+		 * Gets bytes allocated so far by each live thread, null if not supported
+		 * by this VM.
+		 *
+		 */
+		private static Map<Long, Long> getAllocatedBytes() {
+			final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+				return null;
+			}
+			final com.sun.management.ThreadMXBean sunThreads =
+				(com.sun.management.ThreadMXBean) threads;
+			if (!sunThreads.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			final long[] ids = threads.getAllThreadIds();
+			final long[] bytes = sunThreads.getThreadAllocatedBytes(ids);
+			final Map<Long, Long> allocated = new HashMap<Long, Long>();
+			for (int i = 0; i < ids.length; ++i) {
+				if (bytes[i] >= 0) {
+					allocated.put(ids[i], bytes[i]);
+				}
+			}
+			return allocated;
+		}
+	}
+}
@@ -33,6 +33,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manages a FixedThreadPool to parallelize Callable tasks. The type parameter T
@@ -50,6 +51,7 @@ public class ThreadPool<T> {
 		new ThreadPoolThreadFactory();
 	private final int _threadPoolNumber;
 	private int _threadNumber;
+	private ThreadPoolMetrics _metrics;
 
 	public ThreadPool() {
 		_threadPoolNumber = _threadPoolCounter++;
@@ -74,6 +76,15 @@ public class ThreadPool<T> {
 		}
 	}
 
+	/**
+	 * Sets where to report queue depth and task times.
+	 *
+	 * @param metrics or null for none
+	 */
+	public synchronized void setMetrics(final ThreadPoolMetrics metrics) {
+		_metrics = metrics;
+	}
+
 	/**
 	 * Given a List of Callables defining tasks, execute them in parallel chunks
 	 * using the thread pool.
@@ -82,8 +93,12 @@ public class ThreadPool<T> {
 	 * @return array of results
 	 */
 	public synchronized List<T> process(
-		final List<? extends Callable<T>> callableList)
+		List<? extends Callable<T>> callableList)
 	{
+		if (null != _metrics) {
+			callableList = measure(callableList);
+		}
+
 		// use to build return value array
 		final List<T> returnList = new ArrayList<T>();
 
@@ -140,6 +155,22 @@ public class ThreadPool<T> {
 		return returnList;
 	}
 
+	/**
+	 * Wraps tasks to report their times and the number still pending.
+	 */
+	private List<Callable<T>> measure(
+		final List<? extends Callable<T>> callableList)
+	{
+		final ThreadPoolMetrics metrics = _metrics;
+		final AtomicInteger pending = new AtomicInteger(callableList.size());
+		metrics.queueDepth(callableList.size());
+		final List<Callable<T>> measuredList = new ArrayList<Callable<T>>();
+		for (final Callable<T> callable : callableList) {
+			measuredList.add(new MeasuredCallable<T>(callable, metrics, pending));
+		}
+		return measuredList;
+	}
+
 	/**
 	 * Shuts down an existing ExecutorService.
 	 */
@@ -163,4 +194,35 @@ public class ThreadPool<T> {
 			return new Thread(r, threadName);
 		}
 	}
+
+	/**
+	 * Callable inner class that reports the time of the task it wraps.
+	 */
+	private static class MeasuredCallable<T> implements Callable<T> {
+
+		private final Callable<T> _callable;
+		private final ThreadPoolMetrics _metrics;
+		private final AtomicInteger _pending;
+
+		public MeasuredCallable(final Callable<T> callable,
+			final ThreadPoolMetrics metrics, final AtomicInteger pending)
+		{
+			_callable = callable;
+			_metrics = metrics;
+			_pending = pending;
+		}
+
+		@Override
+		public T call() throws Exception {
+			final long start = System.nanoTime();
+			try {
+				return _callable.call();
+			}
+			finally {
+				final long nanos = System.nanoTime() - start;
+				_metrics.taskCompleted(Thread.currentThread().getName(), nanos);
+				_metrics.queueDepth(_pending.decrementAndGet());
+			}
+		}
+	}
 }
@@ -0,0 +1,45 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package imagej.thread;
+
+/**
+ * Receives measurements from a {@link ThreadPool}. Called from the worker
+ * threads, so implementations must be thread-safe.
+ */
+public interface ThreadPoolMetrics {
+
+	/**
+	 * Notes the number of tasks submitted but not yet finished.
+	 *
+	 */
+	public void queueDepth(int depth);
+
+	/**
+	 * Notes a finished task.
+	 *
+	 * @param worker name of the thread that ran it
+	 * @param nanos time spent running it
+	 */
+	public void taskCompleted(String worker, long nanos);
+}
@@ -25,6 +25,8 @@ package loci.slim;
 
 import java.util.Iterator;
 
+import loci.slim.mask.Mask;
+
 /**
  * Iterator that supplies a series of chunky pixels.
  *
@@ -38,6 +40,7 @@ public class ChunkyPixelEffectIterator implements Iterator {
 	int _index;
 	int _x;
 	int _y;
+	Mask _eligible;
 	ChunkyPixel _chunkyPixel;
 
 	/**
@@ -47,10 +50,23 @@ public class ChunkyPixelEffectIterator implements Iterator {
 	 */
 	public ChunkyPixelEffectIterator(final IChunkyPixelTable table,
 		final int width, final int height)
+	{
+		this(table, width, height, null);
+	}
+
+	/**
+	 * Constructor, sets up the chunky pixel iterator to only supply pixels that
+	 * are set in a mask.
+	 *
+	 * @param eligible pixels to supply, null for all
+	 */
+	public ChunkyPixelEffectIterator(final IChunkyPixelTable table,
+		final int width, final int height, final Mask eligible)
 	{
 		_table = table;
 		_width = width;
 		_height = height;
+		_eligible = eligible;
 
 		// initialize
 		_index = 0;
@@ -79,10 +95,26 @@ public class ChunkyPixelEffectIterator implements Iterator {
 	}
 
 	/*
-	 * Gets the next chunky pixel from the table.
+	 * Gets the next eligible chunky pixel.
 	 *
 	 */
 	ChunkyPixel getNextChunkyPixel() {
+		ChunkyPixel chunkyPixel = getNextTableChunkyPixel();
+		if (null != _eligible) {
+			while (null != chunkyPixel &&
+				!_eligible.test(chunkyPixel.getX(), chunkyPixel.getY()))
+			{
+				chunkyPixel = getNextTableChunkyPixel();
+			}
+		}
+		return chunkyPixel;
+	}
+
+	/*
+	 * Gets the next chunky pixel from the table.
+	 *
+	 */
+	ChunkyPixel getNextTableChunkyPixel() {
 		// get the relative chunky pixel from the table
 		ChunkyPixel relChunkyPixel = _table.getChunkyPixel(_index);
 
@@ -47,8 +47,6 @@ import loci.slim.mask.IMaskNodeListener;
 import loci.slim.mask.Mask;
 import loci.slim.mask.MaskNode;
 import net.imagej.ImgPlus;
-import net.imglib2.RandomAccess;
-import net.imglib2.type.numeric.ComplexType;
 import net.imglib2.type.numeric.RealType;
 
 /**
@@ -61,6 +59,7 @@ import net.imglib2.type.numeric.RealType;
 public class GrayScaleImage<T extends RealType<T>> implements IGrayScaleImage {
 
 	private static final String ZOOM_KEY = "zoom";
+	private static final int LIFETIME_INDEX = 2;
 	private static final int CURSOR_WIDTH = 11;
 	private static final int CURSOR_HEIGHT = 11;
 	private static final Color CURSOR_COLOR = Color.WHITE;
@@ -93,6 +92,17 @@ public class GrayScaleImage<T extends RealType<T>> implements IGrayScaleImage {
 	private final Set<IMaskGroup> _maskGroupSet;
 
 	public GrayScaleImage(final ImgPlus<T> image) {
+		this(image, new IntensityProjection(image, LIFETIME_INDEX));
+	}
+
+	/**
+	 * Creates the grayscale image from an existing photon count index.
+	 *
+	 * @param projection photon sums of image, with channels as planes
+	 */
+	public GrayScaleImage(final ImgPlus<T> image,
+		final IntensityProjection projection)
+	{
 		String title = image.getName();
 		final int spaceIndex = title.indexOf(" ");
 		if (0 < spaceIndex) {
@@ -104,7 +114,6 @@ public class GrayScaleImage<T extends RealType<T>> implements IGrayScaleImage {
 		image.dimensions(dimensions);
 		_width = (int) dimensions[0];
 		_height = (int) dimensions[1];
-		final int bins = (int) dimensions[2];
 		int channels = 1;
 		if (numDimensions > 3) {
 			channels = (int) dimensions[3];
@@ -114,58 +123,28 @@ public class GrayScaleImage<T extends RealType<T>> implements IGrayScaleImage {
 		_imageStack = new ImageStack(_width, _height);
 		_saveOutPixels = new short[channels][];
 
-		final RandomAccess cursor = image.randomAccess();
-		final double[][] pixels = new double[_width][_height];
-		final int[] position = new int[numDimensions];
-
 		// keep track of minimum count; usually 1.0 but can be 10.0, etc.
-		_minNonZeroPhotonCount = Double.MAX_VALUE;
+		_minNonZeroPhotonCount = projection.getMinNonZeroCount();
 		for (int c = 0; c < channels; ++c) {
-			if (numDimensions > 3) {
-				position[3] = c;
-			}
+			final double[] pixels = projection.getSums(c);
 			final short[] outPixels = new short[_width * _height];
 
-			// sum photon counts
-			double maxPixel = 0.0;
-			for (int x = 0; x < _width; ++x) {
-				position[0] = x;
-				for (int y = 0; y < _height; ++y) {
-					position[1] = y;
-					pixels[x][y] = 0.0;
-					for (int b = 0; b < bins; ++b) {
-						position[2] = b;
-
-						cursor.setPosition(position);
-						final double photonCount =
-							((ComplexType) cursor.get()).getRealDouble();
-						pixels[x][y] += photonCount;
-
-						// keep track of minimum
-						if (0.0 < photonCount && photonCount < _minNonZeroPhotonCount) {
-							_minNonZeroPhotonCount = photonCount;
-						}
-					}
-					// keep track of maximum value and its coordinates
-					if (pixels[x][y] > maxPixel) {
-						maxPixel = pixels[x][y];
-						if (maxPixel > _maxTotalPhotons) {
-							_maxTotalPhotons = maxPixel;
-						}
-						_brightestPoint = new int[] { x, y };
-					}
-				}
+			// keep track of maximum value and its coordinates
+			final double maxPixel = projection.getMaxSum(c);
+			if (maxPixel > _maxTotalPhotons) {
+				_maxTotalPhotons = maxPixel;
+			}
+			if (null != projection.getBrightestPoint(c)) {
+				_brightestPoint = projection.getBrightestPoint(c);
 			}
 
 			// convert to short
-			for (int x = 0; x < _width; ++x) {
-				for (int y = 0; y < _height; ++y) {
-					int value = (int) (pixels[x][y] / _minNonZeroPhotonCount);
-					if (value > Short.MAX_VALUE) {
-						value = Short.MAX_VALUE;
-					}
-					outPixels[y * _width + x] = (short) value;
+			for (int i = 0; i < pixels.length; ++i) {
+				int value = (int) (pixels[i] / _minNonZeroPhotonCount);
+				if (value > Short.MAX_VALUE) {
+					value = Short.MAX_VALUE;
 				}
+				outPixels[i] = (short) value;
 			}
 			// add a slice
 			_imageStack.addSlice("" + c, outPixels);
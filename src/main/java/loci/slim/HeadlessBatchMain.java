@@ -0,0 +1,329 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.slim.fitting.config.Configuration;
+import loci.slim2.analysis.batch.ExportPixelsToBinary;
+import loci.slim2.decay.LifetimeDatasetWrapper;
+import loci.slim2.decay.NoLifetimeAxisFoundException;
+import loci.slim2.fitting.DefaultGlobalFitParams;
+import loci.slim2.fitting.GlobalFitParams;
+import loci.slim2.heuristics.DefaultEstimator;
+import loci.slim2.heuristics.DefaultFitterEstimator;
+import loci.slim2.process.ImageFitter;
+import loci.slim2.process.batch.DefaultBatchProcessor;
+import loci.slim2.process.interactive.DefaultFitSettings;
+
+import org.scijava.Context;
+
+/**
+ * Runs a batch fit without any user interface, e.g. on a compute cluster.
+ * <p>
+ * Usage: <code>HeadlessBatchMain settings.properties input...</code> where each
+ * input is a lifetime file, a directory of lifetime files, or
+ * <code>@list.txt</code>, a text file listing one lifetime file per line.
+ * <p>
+ * The settings file is a Java properties file:
+ *
+ * <pre>
+ * # or DOUBLE_, TRIPLE_, STRETCHED_EXPONENTIAL
+ * function=SINGLE_EXPONENTIAL
+ * # or SLIMCURVE_RLD, SLIMCURVE_LMA, JAOLHO
+ * algorithm=SLIMCURVE_RLD_LMA
+ * noiseModel=MAXIMUM_LIKELIHOOD
+ * fittedImages=A T Z X2
+ * chiSquareTarget=1.5
+ * # cursors, as bin indices; transientStop defaults to number of bins
+ * transientStart=0
+ * dataStart=0
+ * transientStop=
+ * # 0=none, 1=3x3, 2=5x5, etc.
+ * binning=0
+ * # photon counts
+ * thresholdMinimum=0
+ * thresholdMaximum=
+ * # default to those of first file
+ * bins=
+ * timeInc=
+ * # omit any export file to skip it
+ * pixelsFile=pixels.tsv
+ * # or binary, see ExportPixelsToBinary
+ * pixelsFormat=text
+ * # deflate binary pixels
+ * compress=false
+ * histogramsFile=histograms.tsv
+ * summaryFile=summary.tsv
+ * csv=false
+ * parallelFiles=1
+ * # omit to always start over
+ * journalFile=batch.journal
+ * </pre>
+ *
+ * Exits with status 1 if any file could not be processed. Run with
+ * <code>-Dloci.slim.metrics=true</code> to print fitting metrics at the end.
+ * Run with <code>-Dloci.slim.trace=trace.json</code> to write a timeline of
+ * the fit, for chrome://tracing or Perfetto. Run with
+ * <code>-Dloci.slim.javaFitter=true</code> to fit without the native library,
+ * or with <code>-Dloci.slim.varpro=true</code> to also solve the amplitudes
+ * exactly at each step.
+ */
+public class HeadlessBatchMain {
+
+	private static final String USAGE =
+		"Usage: HeadlessBatchMain settings.properties input...\n" +
+			"  input is a lifetime file, a directory or @list.txt";
+
+	public static void main(final String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length < 2) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		boolean success = false;
+		Context context = null;
+		try {
+			final Properties settings = loadSettings(new File(args[0]));
+			final File[] files =
+				getFiles(Arrays.copyOfRange(args, 1, args.length));
+			if (0 == files.length) {
+				System.err.println("No input files");
+				System.exit(2);
+			}
+
+			context = new Context();
+			success = run(context, settings, files);
+
+			// run with -Dloci.slim.metrics=true to see where the time went
+			final String report = Configuration.getInstance().getMetrics().getReport();
+			if (null != report) {
+				System.out.print(report);
+			}
+		}
+		catch (final Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (null != context) {
+				context.dispose();
+			}
+		}
+		System.exit(success ? 0 : 1);
+	}
+
+	/**
+	 * Runs the batch with given settings.
+	 *
+	 * @return whether all files were fitted and exported
+	 */
+	public static boolean run(final Context context, final Properties settings,
+		final File[] files) throws IOException, NoLifetimeAxisFoundException
+	{
+		// bins and time increment come from first file, unless given
+		int bins = getInt(settings, "bins", 0);
+		double timeInc = getDouble(settings, "timeInc", 0.0);
+		if (0 == bins || 0.0 == timeInc) {
+			final LifetimeDatasetWrapper lifetime =
+				new LifetimeDatasetWrapper(context, files[0]);
+			if (0 == bins) {
+				bins = lifetime.getBins();
+			}
+			if (0.0 == timeInc) {
+				timeInc = lifetime.getTimeIncrement();
+			}
+		}
+
+		final FitFunction function =
+			FitFunction.valueOf(getString(settings, "function",
+				FitFunction.SINGLE_EXPONENTIAL.name()));
+		final GlobalFitParams params = new DefaultGlobalFitParams();
+		params.setEstimator(new DefaultFitterEstimator());
+		params.setFitAlgorithm(FitAlgorithm.valueOf(getString(settings,
+			"algorithm", FitAlgorithm.SLIMCURVE_RLD_LMA.name())));
+		params.setFitFunction(function);
+		params.setNoiseModel(NoiseModel.valueOf(getString(settings,
+			"noiseModel", NoiseModel.MAXIMUM_LIKELIHOOD.name())));
+		params.setXInc(timeInc);
+		params.setPrompt(null);
+		params.setChiSquareTarget(getDouble(settings, "chiSquareTarget",
+			new DefaultEstimator().getChiSquareTarget()));
+		final boolean[] free =
+			new boolean[new ImageFitter().getParameterCount(function)];
+		Arrays.fill(free, true);
+		params.setFree(free);
+		params.setTransientStart(getInt(settings, "transientStart", 0));
+		params.setDataStart(getInt(settings, "dataStart", 0));
+		params.setTransientStop(getInt(settings, "transientStop", bins));
+
+		final DefaultFitSettings fitSettings = new DefaultFitSettings();
+		fitSettings.setGlobalFitParams(params);
+		fitSettings.setFittedImages(getString(settings, "fittedImages",
+			"A T Z X2"));
+		fitSettings.setBins(bins);
+		fitSettings.setTimeInc(timeInc);
+		fitSettings.setBinningFactor(getInt(settings, "binning", 0));
+		fitSettings.setThresholdMinimum(getInt(settings, "thresholdMinimum", 0));
+		fitSettings.setThresholdMaximum(getInt(settings, "thresholdMaximum",
+			Integer.MAX_VALUE));
+
+		final boolean csv =
+			Boolean.parseBoolean(getString(settings, "csv", "false"));
+		final boolean binaryPixels =
+			"binary".equalsIgnoreCase(getString(settings, "pixelsFormat", "text"));
+		final String pixelsFile =
+			binaryPixels ? getBinaryExportFile(settings, "pixelsFile")
+				: getExportFile(settings, "pixelsFile", csv);
+		final String histogramsFile =
+			getExportFile(settings, "histogramsFile", csv);
+		final String summaryFile = getExportFile(settings, "summaryFile", csv);
+		final int parallelFiles =
+			Math.max(1, getInt(settings, "parallelFiles", 1));
+
+		final DefaultBatchProcessor batchProcessor = new DefaultBatchProcessor(true);
+		batchProcessor.setBinaryPixels(binaryPixels, Boolean
+			.parseBoolean(getString(settings, "compress", "false")));
+		final String journalFile = getString(settings, "journalFile", "");
+		if (!journalFile.isEmpty()) {
+			// rerun with the same journal to resume an interrupted batch
+			batchProcessor.setJournalFile(new File(journalFile));
+		}
+		return batchProcessor.batchProcessing(context, bins, null != pixelsFile,
+			pixelsFile, null != histogramsFile, histogramsFile, null != summaryFile,
+			summaryFile, fitSettings, files, csv, parallelFiles);
+	}
+
+	/**
+	 * Expands the command line inputs into a list of files.
+	 *
+	 */
+	public static File[] getFiles(final String[] inputs) throws IOException {
+		final List<File> files = new ArrayList<File>();
+		for (final String input : inputs) {
+			if (input.startsWith("@")) {
+				// list file, one lifetime file per line
+				final BufferedReader reader =
+					new BufferedReader(new FileReader(input.substring(1)));
+				try {
+					String line;
+					while (null != (line = reader.readLine())) {
+						line = line.trim();
+						if (!line.isEmpty() && !line.startsWith("#")) {
+							files.add(new File(line));
+						}
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+			else {
+				final File file = new File(input);
+				if (file.isDirectory()) {
+					// all files in directory, in name order
+					final File[] dirFiles = file.listFiles();
+					Arrays.sort(dirFiles);
+					for (final File dirFile : dirFiles) {
+						if (dirFile.isFile()) {
+							files.add(dirFile);
+						}
+					}
+				}
+				else {
+					files.add(file);
+				}
+			}
+		}
+		return files.toArray(new File[files.size()]);
+	}
+
+	private static Properties loadSettings(final File file) throws IOException {
+		final Properties settings = new Properties();
+		final InputStream in = new FileInputStream(file);
+		try {
+			settings.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return settings;
+	}
+
+	private static String getExportFile(final Properties settings,
+		final String key, final boolean csv)
+	{
+		final String value = settings.getProperty(key, "").trim();
+		if (value.isEmpty()) {
+			return null;
+		}
+		return DefaultBatchProcessor.checkSuffix(value, csv);
+	}
+
+	private static String getBinaryExportFile(final Properties settings,
+		final String key)
+	{
+		String value = settings.getProperty(key, "").trim();
+		if (value.isEmpty()) {
+			return null;
+		}
+		if (!value.endsWith(ExportPixelsToBinary.SUFFIX)) {
+			value += ExportPixelsToBinary.SUFFIX;
+		}
+		return value;
+	}
+
+	private static String getString(final Properties settings,
+		final String key, final String defaultValue)
+	{
+		final String value = settings.getProperty(key, "").trim();
+		return value.isEmpty() ? defaultValue : value;
+	}
+
+	private static int getInt(final Properties settings, final String key,
+		final int defaultValue)
+	{
+		final String value = settings.getProperty(key, "").trim();
+		return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+	}
+
+	private static double getDouble(final Properties settings,
+		final String key, final double defaultValue)
+	{
+		final String value = settings.getProperty(key, "").trim();
+		return value.isEmpty() ? defaultValue : Double.parseDouble(value);
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Sums the photon counts of every pixel of a lifetime image, in parallel
+ * tiles of rows.
+ * <p>
+ * The lifetime image has X and Y as the first two dimensions. Each XY plane
+ * of the remaining dimensions, other than lifetime, gets its own array of
+ * sums. Along the way the minimum non-zero photon count and the brightest
+ * pixel of each plane are noted.
+ * <p>
+ * Built once per image, it serves as a photon count index: thresholds and
+ * binned sums are looked up rather than summed from the decays.
+ */
+public class IntensityProjection {
+
+	private static final int TILE_PIXELS = 16384;
+	private final int _width;
+	private final int _height;
+	private final int _lifetimeDimension;
+	private final long[] _planeDimensions;
+	private final double[][] _sums;
+	private final double[] _maxSums;
+	private final int[][] _brightestPoints;
+	private final double[][] _integrals;
+	private double _minNonZeroCount = Double.MAX_VALUE;
+
+	/**
+	 * Projects a lifetime image.
+	 *
+	 * @param image lifetime image, X and Y first
+	 * @param lifetimeDimension index of lifetime dimension, at least 2
+	 */
+	public IntensityProjection(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final int lifetimeDimension)
+	{
+		_width = (int) image.dimension(0);
+		_height = (int) image.dimension(1);
+		_lifetimeDimension = lifetimeDimension;
+
+		final List<Integer> planeDimensions = new ArrayList<Integer>();
+		int planes = 1;
+		for (int d = 2; d < image.numDimensions(); ++d) {
+			if (d != lifetimeDimension) {
+				planeDimensions.add(d);
+				planes *= (int) image.dimension(d);
+			}
+		}
+		_planeDimensions = new long[planeDimensions.size()];
+		for (int i = 0; i < _planeDimensions.length; ++i) {
+			_planeDimensions[i] = image.dimension(planeDimensions.get(i));
+		}
+		_sums = new double[planes][_width * _height];
+		_maxSums = new double[planes];
+		_brightestPoints = new int[planes][];
+		_integrals = new double[planes][];
+
+		// one task per band of rows
+		final int rows = Math.max(1, TILE_PIXELS / Math.max(1, _width));
+		final List<ProjectTile> tiles = new ArrayList<ProjectTile>();
+		for (int plane = 0; plane < planes; ++plane) {
+			for (int y = 0; y < _height; y += rows) {
+				tiles.add(new ProjectTile(image, planeDimensions, plane, y, Math
+					.min(_height, y + rows)));
+			}
+		}
+		final List<Tile> results = Tiles.process(tiles);
+
+		// combine tiles in order, so the first brightest pixel wins
+		for (final Tile tile : results) {
+			if (tile.minNonZeroCount < _minNonZeroCount) {
+				_minNonZeroCount = tile.minNonZeroCount;
+			}
+			if (tile.maxSum > _maxSums[tile.plane]) {
+				_maxSums[tile.plane] = tile.maxSum;
+				_brightestPoints[tile.plane] = tile.brightestPoint;
+			}
+		}
+	}
+
+	/**
+	 * Gets width of image.
+	 *
+	 */
+	public int getWidth() {
+		return _width;
+	}
+
+	/**
+	 * Gets height of image.
+	 *
+	 */
+	public int getHeight() {
+		return _height;
+	}
+
+	/**
+	 * Gets number of XY planes.
+	 *
+	 */
+	public int getPlanes() {
+		return _sums.length;
+	}
+
+	/**
+	 * Gets the plane index of a position without the lifetime dimension.
+	 *
+	 */
+	public int getPlane(final long[] position) {
+		int plane = 0;
+		for (int i = _planeDimensions.length - 1; i >= 0; --i) {
+			plane = plane * (int) _planeDimensions[i] + (int) position[i + 2];
+		}
+		return plane;
+	}
+
+	/**
+	 * Gets photon sums of a plane, indexed by y * width + x.  Do not modify.
+	 *
+	 */
+	public double[] getSums(final int plane) {
+		return _sums[plane];
+	}
+
+	/**
+	 * Gets photon sum of a pixel.
+	 *
+	 */
+	public double getSum(final int plane, final int x, final int y) {
+		return _sums[plane][y * _width + x];
+	}
+
+	/**
+	 * Gets photon sum of a rectangle of pixels, clipped to the image.
+	 *
+	 * @param x0 first column
+	 * @param y0 first row
+	 * @param x1 column after last
+	 * @param y1 row after last
+	 */
+	public double getSum(final int plane, int x0, int y0, int x1, int y1) {
+		x0 = Math.max(0, x0);
+		y0 = Math.max(0, y0);
+		x1 = Math.min(_width, x1);
+		y1 = Math.min(_height, y1);
+		if (x0 >= x1 || y0 >= y1) {
+			return 0.0;
+		}
+		final double[] integral = getIntegral(plane);
+		final int stride = _width + 1;
+		return integral[y1 * stride + x1] - integral[y0 * stride + x1] -
+			integral[y1 * stride + x0] + integral[y0 * stride + x0];
+	}
+
+	/**
+	 * Gets the smallest non-zero photon count in any bin, usually 1.0.
+	 * Double.MAX_VALUE if there are no photons.
+	 *
+	 */
+	public double getMinNonZeroCount() {
+		return _minNonZeroCount;
+	}
+
+	/**
+	 * Gets the largest photon sum in a plane.
+	 *
+	 */
+	public double getMaxSum(final int plane) {
+		return _maxSums[plane];
+	}
+
+	/**
+	 * Gets { x, y } of the first brightest pixel in a plane, null if the plane
+	 * has no photons.
+	 *
+	 */
+	public int[] getBrightestPoint(final int plane) {
+		return _brightestPoints[plane];
+	}
+
+	/**
+	 * Gets summed-area table of a plane, built on first use.
+	 *
+	 */
+	private synchronized double[] getIntegral(final int plane) {
+		if (null == _integrals[plane]) {
+			final int stride = _width + 1;
+			final double[] integral = new double[stride * (_height + 1)];
+			final double[] sums = _sums[plane];
+			for (int y = 0; y < _height; ++y) {
+				double rowSum = 0.0;
+				for (int x = 0; x < _width; ++x) {
+					rowSum += sums[y * _width + x];
+					integral[(y + 1) * stride + x + 1] =
+						integral[y * stride + x + 1] + rowSum;
+				}
+			}
+			_integrals[plane] = integral;
+		}
+		return _integrals[plane];
+	}
+
+	/**
+	 * Results for a band of rows.
+	 */
+	private static class Tile {
+
+		int plane;
+		double minNonZeroCount = Double.MAX_VALUE;
+		double maxSum;
+		int[] brightestPoint;
+	}
+
+	/**
+	 * Sums a band of rows of one plane, a bin at a time so each row is read
+	 * along X.
+	 */
+	private class ProjectTile implements Callable<Tile> {
+
+		private final RandomAccessibleInterval<? extends RealType<?>> image;
+		private final List<Integer> planeDimensions;
+		private final int plane;
+		private final int y0;
+		private final int y1;
+
+		ProjectTile(final RandomAccessibleInterval<? extends RealType<?>> image,
+			final List<Integer> planeDimensions, final int plane, final int y0,
+			final int y1)
+		{
+			this.image = image;
+			this.planeDimensions = planeDimensions;
+			this.plane = plane;
+			this.y0 = y0;
+			this.y1 = y1;
+		}
+
+		@Override
+		public Tile call() {
+			final Tile tile = new Tile();
+			tile.plane = plane;
+			final double[] sums = _sums[plane];
+			final RandomAccess<? extends RealType<?>> randomAccess =
+				image.randomAccess();
+
+			// position within the remaining dimensions
+			int rest = plane;
+			for (int i = 0; i < planeDimensions.size(); ++i) {
+				final int size = (int) _planeDimensions[i];
+				randomAccess.setPosition(rest % size, planeDimensions.get(i));
+				rest /= size;
+			}
+
+			final long bins = image.dimension(_lifetimeDimension);
+			for (long bin = 0; bin < bins; ++bin) {
+				randomAccess.setPosition(bin, _lifetimeDimension);
+				for (int y = y0; y < y1; ++y) {
+					randomAccess.setPosition(0, 0);
+					randomAccess.setPosition(y, 1);
+					int index = y * _width;
+					for (int x = 0; x < _width; ++x) {
+						final double count = randomAccess.get().getRealDouble();
+						sums[index++] += count;
+						if (0.0 < count && count < tile.minNonZeroCount) {
+							tile.minNonZeroCount = count;
+						}
+						randomAccess.fwd(0);
+					}
+				}
+			}
+
+			for (int y = y0; y < y1; ++y) {
+				int index = y * _width;
+				for (int x = 0; x < _width; ++x) {
+					if (sums[index] > tile.maxSum) {
+						tile.maxSum = sums[index];
+						tile.brightestPoint = new int[] { x, y };
+					}
+					++index;
+				}
+			}
+			return tile;
+		}
+	}
+}
@@ -24,10 +24,8 @@
 package loci.slim;
 
 import loci.slim.fitting.IFittedImage;
+import loci.slim.fitting.ParameterPlanes;
 import net.imagej.ImgPlus;
-import net.imglib2.Cursor;
-import net.imglib2.RandomAccess;
-import net.imglib2.img.planar.PlanarImgs;
 import net.imglib2.type.numeric.real.DoubleType;
 
 /**
@@ -37,14 +35,13 @@ import net.imglib2.type.numeric.real.DoubleType;
  */
 public class OutputImageWrapper implements IFittedImage {
 
-	private final ImgPlus<DoubleType> _image;
+	private final String _name;
+	private final ParameterPlanes _planes;
 	private final int _width;
 	private final int _height;
 	private final int _channels;
 	private final int _parameters;
-	private final int _parameterIndex;
-	private final RandomAccess<DoubleType> _cursor;
-	private final int[] _location;
+	private int[] _indices;
 
 	/**
 	 * Creates a wrapper for an output image and initial image.
@@ -52,28 +49,27 @@ public class OutputImageWrapper implements IFittedImage {
 	 */
 	public OutputImageWrapper(final String title, final String fitTitle,
 		final int width, final int height, final int channels, final int parameters)
+	{
+		this(title, fitTitle, width, height, channels, parameters, false);
+	}
+
+	/**
+	 * Creates a wrapper for an output image, optionally stored as float.
+	 *
+	 */
+	public OutputImageWrapper(final String title, final String fitTitle,
+		final int width, final int height, final int channels,
+		final int parameters, final boolean singlePrecision)
 	{
 		_width = width;
 		_height = height;
 		_channels = channels;
 		_parameters = parameters;
+		_name = title + " Fitted " + fitTitle;
 
 		final long[] dimensions =
 			new long[] { width, height, channels, parameters };
-		_parameterIndex = 3;
-		_location = new int[dimensions.length];
-
-		_image = new ImgPlus<DoubleType>(PlanarImgs.doubles(dimensions));
-		_image.setName(title + " Fitted " + fitTitle);
-
-		// fill image with NaNs
-		final Cursor<DoubleType> cursor = _image.cursor();
-		while (cursor.hasNext()) {
-			cursor.fwd();
-			cursor.get().set(Double.NaN);
-		}
-
-		_cursor = _image.randomAccess();
+		_planes = new ParameterPlanes(dimensions, singlePrecision);
 	}
 
 	/**
@@ -121,37 +117,42 @@ public class OutputImageWrapper implements IFittedImage {
 
 	@Override
 	public double[] getPixel(final int[] location) {
-		for (int i = 0; i < location.length; ++i) {
-			_location[i] = location[i];
-		}
-		final double[] parameters = new double[_parameters];
-		for (int i = 0; i < _parameters; ++i) {
-			_location[_parameterIndex] = i;
-			_cursor.setPosition(_location);
-			parameters[i] = _cursor.get().getRealFloat();
-		}
-		return parameters;
+		return _planes.getPixel(getIndex(location));
 	}
 
 	@Override
 	public void setPixel(final int[] location, final double[] value) {
-		for (int i = 0; i < location.length; ++i) {
-			_location[i] = location[i];
+		// a pixel with an error fitting will have null value
+		_planes.setPixel(getIndex(location), value);
+	}
+
+	@Override
+	public void setPixels(final int[][] locations, final double[][] values,
+		final int count)
+	{
+		if (null == _indices || _indices.length < count) {
+			_indices = new int[count];
 		}
-		for (int i = 0; i < _parameters; ++i) {
-			_location[_parameterIndex] = i;
-			_cursor.setPosition(_location);
-			// a pixel with an error fitting will have null value
-			_cursor.get().set(null == value ? Double.NaN : value[i]);
+		for (int i = 0; i < count; ++i) {
+			_indices[i] = getIndex(locations[i]);
 		}
+		_planes.setPixels(_indices, values, count);
 	}
 
 	/**
-	 * Gets associated image.
+	 * Gets associated image, backed by the fitted parameters.
 	 *
 	 */
 	@Override
 	public ImgPlus<DoubleType> getImage() {
-		return _image;
+		final ImgPlus<DoubleType> image =
+			new ImgPlus<DoubleType>(_planes.getImage());
+		image.setName(_name);
+		return image;
+	}
+
+	private int getIndex(final int[] location) {
+		final int channel = location.length > 2 ? location[2] : 0;
+		return _planes.getIndex(location[0], location[1], channel);
 	}
 }
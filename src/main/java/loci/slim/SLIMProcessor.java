@@ -58,7 +58,6 @@ import loci.curvefitter.ICurveFitter.FitFunction;
 import loci.curvefitter.ICurveFitter.FitRegion;
 import loci.curvefitter.IFitterEstimator;
 import loci.curvefitter.JaolhoCurveFitter;
-import loci.curvefitter.SLIMCurveFitter;
 import loci.slim.analysis.SLIMAnalysis;
 import loci.slim.analysis.batch.ExportBatchHistogram;
 import loci.slim.analysis.batch.ExportSummaryToText;
@@ -80,6 +79,9 @@ import loci.slim.fitting.engine.IFittingEngine;
 import loci.slim.fitting.images.FittedImageFitter;
 import loci.slim.fitting.images.FittedImageFitter.FittedImageType;
 import loci.slim.fitting.images.FittedImageParser;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.IFittingMetrics.Stage;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim.fitting.params.GlobalFitParams;
 import loci.slim.fitting.params.IFitResults;
 import loci.slim.fitting.params.IGlobalFitParams;
@@ -90,11 +92,12 @@ import loci.slim.heuristics.Estimator;
 import loci.slim.heuristics.FitterEstimator;
 import loci.slim.heuristics.IEstimator;
 import loci.slim.histogram.HistogramTool;
+import loci.slim.mask.Mask;
+import loci.slim.preprocess.EligiblePixels;
 import loci.slim.preprocess.IProcessor;
-import loci.slim.preprocess.RoiProcessor;
 import loci.slim.preprocess.SLIMBinner;
 import loci.slim.preprocess.SLIMBinning;
-import loci.slim.preprocess.Threshold;
+import loci.slim.preprocess.SquareBinner;
 import loci.slim.ui.DecayGraph;
 import loci.slim.ui.ExcitationPanel;
 import loci.slim.ui.IDecayGraph;
@@ -143,6 +146,9 @@ public class SLIMProcessor<T extends RealType<T>> {
 	// this affects how many pixels we process at once
 	private static final int PIXEL_COUNT = 4096;
 
+	// most pixels sampled to fit lifetimes shared by all pixels
+	private static final int GLOBAL_PIXEL_COUNT = 16384;
+
 	// Unicode special characters
 	private static final Character CHI = '\u03c7';
 	private static final Character SQUARE = '\u00b2';
@@ -302,6 +308,9 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 	private ExcitationPanel _excitationPanel = null;
 	private IGrayScaleImage _grayScaleImage;
+	// photon count index of _image, built once per image
+	private IntensityProjection _intensity;
+	private ImgPlus<T> _intensityImage;
 	// user sets this from the grayScalePanel control
 	private int _channel;
 	private boolean _fitAllChannels;
@@ -1045,7 +1054,13 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 	private void showGrayScaleAndFit(final IUserInterfacePanel uiPanel) {
 		// create a grayscale image from the data
-		_grayScaleImage = new GrayScaleImage(_image);
+		final long span = Tracer.begin();
+		try {
+			_grayScaleImage = new GrayScaleImage(_image, getIntensity());
+		}
+		finally {
+			Tracer.end("grayScaleImage", span);
+		}
 		_grayScaleImage.setListener(new ISelectListener() {
 
 			@Override
@@ -1582,6 +1597,7 @@ public class SLIMProcessor<T extends RealType<T>> {
 	@SuppressWarnings("rawtypes")
 	private SCIFIOImgPlus loadImage(final String filePath) {
 		SCIFIOImgPlus<?> image = null;
+		final long span = Tracer.begin();
 		try {
 			// open the image
 			final Context context = (Context) IJ.runPlugIn("org.scijava.Context", "");
@@ -1594,6 +1610,9 @@ public class SLIMProcessor<T extends RealType<T>> {
 			IJ.handleException(e);
 			return null;
 		}
+		finally {
+			Tracer.end("loadImage", span);
+		}
 
 		return image;
 	}
@@ -1649,8 +1668,10 @@ public class SLIMProcessor<T extends RealType<T>> {
 		_increment = 1;
 
 		// extract time range from lifetime dimension metadata
+		// images not read by SCIFIO have no metadata
 		final CalibratedAxis lifetime =
-			image.getMetadata().get(0).getAxis(SCIFIOAxes.LIFETIME);
+			null == image.getMetadata() ? null : image.getMetadata().get(0)
+				.getAxis(SCIFIOAxes.LIFETIME);
 		if (lifetime != null) {
 			final String unit = lifetime.unit();
 			// TODO: Always use the UnitService to convert to ns.
@@ -1790,6 +1811,7 @@ public class SLIMProcessor<T extends RealType<T>> {
 		fitInfo.setFree(translateFree(uiPanel.getFunction(), uiPanel.getFree()));
 //		fitInfo.setFree(translateFree(SLIMProcessor.macroParams.getFunction(), uiPanel.getFree()));
 		fitInfo.setRefineFit(uiPanel.getRefineFit());
+		fitInfo.setGlobalLifetimes(uiPanel.getGlobalLifetimes());
 		return fitInfo;
 	}
 
@@ -1819,6 +1841,41 @@ public class SLIMProcessor<T extends RealType<T>> {
 		fitInfo.setIndexColorModel(indexColorModel);
 		_fitInfo = fitInfo;
 
+		return fitImage(fitInfo, getRois(), _binning.createBinner(uiPanel
+			.getBinning()), getCurveFitter(uiPanel), batch);
+	}
+
+	/**
+	 * Fits all the pixels of an image without the user interface, as batch
+	 * processing does. There are no Rois.
+	 *
+	 * @param image lifetime image, with x, y, lifetime and optional channel axes
+	 * @param fitInfo fit settings
+	 * @param binner binner to use, null for none
+	 * @param curveFitter curve fitter to use, set up for the fit
+	 * @return fitted image or null if image is unusable
+	 */
+	public ImgPlus<DoubleType> fitImage(final SCIFIOImgPlus<T> image,
+		final FitInfo fitInfo, final SLIMBinner binner,
+		final ICurveFitter curveFitter)
+	{
+		_image = image;
+		if (!getImageInfo(image)) {
+			return null;
+		}
+		_fitInfo = fitInfo;
+		return fitImage(fitInfo, new Roi[0], binner, curveFitter, true);
+	}
+
+	/**
+	 * Sets up the images and preprocessor chain and fits all the pixels in the
+	 * current image.
+	 *
+	 */
+	private ImgPlus<DoubleType> fitImage(final FitInfo fitInfo,
+		final Roi[] rois, final SLIMBinner binner, final ICurveFitter curveFitter,
+		final boolean batch)
+	{
 		// set up images
 		final IDecayImage decayImage =
 			new DecayImageWrapper(_image, _width, _height, _channels, _bins,
@@ -1840,26 +1897,23 @@ public class SLIMProcessor<T extends RealType<T>> {
 		final String fitTitle = fitInfo.getFitTitle();
 		final IFittedImage newImage =
 			new OutputImageWrapper(title, fitTitle, width, height, channels,
-				parameters);
+				parameters, Configuration.getInstance().getSinglePrecision());
 
 		// set up preprocessor chain
 		IProcessor processor = decayImage;
-		if (null != getRois() && getRois().length > 0) {
-			// skip pixels out of Rois
-			final IProcessor roiProcessor = new RoiProcessor(getRois());
-			roiProcessor.chain(processor);
-			processor = roiProcessor;
-		}
-		if (fitInfo.getThreshold() > 0) {
-			// skip pixels below threshold
-			final IProcessor threshold = new Threshold(fitInfo.getThreshold());
-			threshold.chain(processor);
-			processor = threshold;
-		}
-		final SLIMBinner binner = _binning.createBinner(uiPanel.getBinning());
+
+		// skip pixels out of Rois or below threshold without reading them
+		final EligiblePixels eligible =
+			new EligiblePixels(width, height, decayImage.getChannels(), rois,
+				fitInfo.getThreshold(), getIntensity(), _increment, null);
+		eligible.chain(processor);
+		processor = eligible;
 		if (null != binner) {
 			// do binning
 			binner.init(_width, _height);
+			if (binner instanceof SquareBinner) {
+				((SquareBinner) binner).setIntensity(getIntensity());
+			}
 			binner.chain(processor);
 			processor = binner;
 		}
@@ -1868,12 +1922,16 @@ public class SLIMProcessor<T extends RealType<T>> {
 		final IFittingEngine fittingEngine =
 			Configuration.getInstance().getFittingEngine();
 		// TODO ARG shouldn't all UI panel info go into FitInfo???
-		final ICurveFitter curveFitter = getCurveFitter(uiPanel);
 		fittingEngine.setCurveFitter(curveFitter);
 
-		return fitImage(fittingEngine, fitInfo, decayImage, processor,
-			previousImage, newImage, batch);
-
+		final long span = Tracer.begin();
+		try {
+			return fitImage(fittingEngine, fitInfo, decayImage, processor,
+				eligible, previousImage, newImage, batch);
+		}
+		finally {
+			Tracer.end("fitImage", span);
+		}
 	}
 
 	/**
@@ -1882,6 +1940,7 @@ public class SLIMProcessor<T extends RealType<T>> {
 	 * @param fittingEngine fitting code to use
 	 * @param fitInfo fit settings
 	 * @param decayImage contains the decay data
+	 * @param eligible pixels to fit
 	 * @param previousImage previous fit results, may be null
 	 * @param newImage results of this fit
 	 * @param batch whether or not batch processing is in effect
@@ -1890,8 +1949,9 @@ public class SLIMProcessor<T extends RealType<T>> {
 		final FitInfo fitInfo, final IDecayImage decayImage,
 		// TODO ARG really need both decayImage & processor? Processor is a poor
 		// name
-		final IProcessor processor, final IFittedImage previousImage,
-		final IFittedImage newImage, final boolean batch)
+		final IProcessor processor, final EligiblePixels eligible,
+		final IFittedImage previousImage, final IFittedImage newImage,
+		final boolean batch)
 	{
 
 		// get commonly-used items in local variables
@@ -1904,8 +1964,10 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 		// needed to display progress bar
 		int pixelCount = 0;
-		final int totalPixelCount =
-			totalPixelCount(width, height, channels, fitAllChannels);
+		int totalPixelCount = 0;
+		for (final int c : getChannelIndices(fitAllChannels, channel, channels)) {
+			totalPixelCount += eligible.getMask(c).getCount();
+		}
 		int pixelsToProcessCount = 0;
 
 		// show errors on grayscale
@@ -1963,29 +2025,73 @@ public class SLIMProcessor<T extends RealType<T>> {
 		// initialize class used for 'chunky pixel' effect
 		final IChunkyPixelTable chunkyPixelTable = new ChunkyPixelTableImpl();
 
-		final List<ChunkyPixel> pixelList = new ArrayList<ChunkyPixel>();
-		final List<ILocalFitParams> localFitParamsList =
-			new ArrayList<ILocalFitParams>();
-
-		// loop over all channels or just the current one
-		for (final int c : getChannelIndices(fitAllChannels, channel, channels)) {
-			// 'chunky pixel' effect: draw staggered pixels, not sequential
-			final ChunkyPixelEffectIterator pixelIterator =
-				new ChunkyPixelEffectIterator(chunkyPixelTable, width, height);
-
-			while (!fitInfo.getCancel() && pixelIterator.hasNext()) {
+		// all channels or just the current one, fitted in one pass over the pixels
+		final int[] channelIndices =
+			getChannelIndices(fitAllChannels, channel, channels);
+
+		// each batch is grouped by channel, so fitted images switch channel once
+		// per batch rather than once per pixel
+		final List<List<ChunkyPixel>> pixelLists =
+			new ArrayList<List<ChunkyPixel>>();
+		final List<List<ILocalFitParams>> localFitParamsLists =
+			new ArrayList<List<ILocalFitParams>>();
+		for (int i = 0; i < channelIndices.length; ++i) {
+			pixelLists.add(new ArrayList<ChunkyPixel>());
+			localFitParamsLists.add(new ArrayList<ILocalFitParams>());
+		}
+		Mask anyEligible = null;
+		for (final int c : channelIndices) {
+			final Mask mask = eligible.getMask(c);
+			anyEligible = null == anyEligible ? mask : anyEligible.union(mask);
+		}
+
+		// global fit: lifetimes shared by all pixels, amplitudes per pixel
+		if (fitInfo.getGlobalLifetimes()) {
+			globalFitParams.setLifetimes(fitLifetimes(fittingEngine,
+				globalFitParams, processor, eligible, channelIndices, width, height,
+				totalPixelCount, fitInfo.getParameters()));
+		}
+
+		// measure this fit only; time spent reading decays, binned or not
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		metrics.reset();
+		final Stage readStage =
+			processor instanceof SLIMBinner ? Stage.BIN : Stage.READ;
+		final String readSpanName =
+			Stage.BIN == readStage ? "binPixels" : "readPixels";
+		long readSpan = Tracer.begin();
+
+		// 'chunky pixel' effect: draw staggered pixels, not sequential
+		// only eligible pixels are read and fitted
+		final ChunkyPixelEffectIterator pixelIterator =
+			new ChunkyPixelEffectIterator(chunkyPixelTable, width, height,
+				anyEligible);
+
+		while (!fitInfo.getCancel() && pixelIterator.hasNext()) {
+			final ChunkyPixel chunkyPixel = pixelIterator.next();
+			final int x = chunkyPixel.getX();
+			final int y = chunkyPixel.getY();
+
+			// read the channels of this pixel together, into the same batch
+			for (int i = 0; i < channelIndices.length; ++i) {
+				final int c = channelIndices[i];
+				if (!eligible.isEligible(x, y, c)) {
+					continue;
+				}
 				if (!batch) {
 					IJ.showProgress(++pixelCount, totalPixelCount);
 				}
-				final ChunkyPixel pixel = pixelIterator.next();
+				final ChunkyPixel pixel =
+					1 == channelIndices.length ? chunkyPixel : new ChunkyPixel(x, y,
+						chunkyPixel.getWidth(), chunkyPixel.getHeight());
 
 				// compute full location information
-				final int x = pixel.getX();
-				final int y = pixel.getY();
 				final int[] inputLocation = new int[] { x, y, c };
 				final int[] outputLocation = new int[] { x, y, fitAllChannels ? c : 0 };
 
+				final long readStart = System.nanoTime();
 				final double[] decay = processor.getPixel(inputLocation);
+				metrics.stageTime(readStage, System.nanoTime() - readStart);
 
 				// fit this pixel?
 				if (null != decay) {
@@ -1999,26 +2105,28 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 					pixel.setInputLocation(inputLocation);
 					pixel.setOutputLocation(outputLocation);
-					pixelList.add(pixel);
-					localFitParamsList.add(localFitParams);
+					pixelLists.get(i).add(pixel);
+					localFitParamsLists.get(i).add(localFitParams);
 
 					if (++pixelsToProcessCount >= PIXEL_COUNT) {
-						pixelsToProcessCount = 0;
-
 						final ChunkyPixel[] pixelArray =
-							pixelList.toArray(new ChunkyPixel[0]);
-						pixelList.clear();
+							drain(pixelLists, new ChunkyPixel[pixelsToProcessCount]);
 						final ILocalFitParams[] localFitParamsArray =
-							localFitParamsList.toArray(new ILocalFitParams[0]);
-						localFitParamsList.clear();
+							drain(localFitParamsLists,
+								new ILocalFitParams[pixelsToProcessCount]);
+						pixelsToProcessCount = 0;
+						Tracer.end(readSpanName, readSpan);
 
 						processPixels(fittingEngine, pixelArray, globalFitParams,
 							localFitParamsArray, errorManager, fitter, newImage, batch);
+						readSpan = Tracer.begin();
 					}
 				}
 			}
 		}
 
+		Tracer.end(readSpanName, readSpan);
+
 		if (fitInfo.getCancel()) {
 			IJ.showProgress(0, 0);
 			cancelImageFit();
@@ -2030,20 +2138,80 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 		// IJ.log("fitImage pixelsToProcessCount leftover " + pixelsToProcessCount);
 		if (pixelsToProcessCount > 0) {
-			final ChunkyPixel[] pixelArray = pixelList.toArray(new ChunkyPixel[0]);
+			final ChunkyPixel[] pixelArray =
+				drain(pixelLists, new ChunkyPixel[pixelsToProcessCount]);
 			// IJ.log("process remainder " + pixelArray.length);
 			final ILocalFitParams[] localFitParamsArray =
-				localFitParamsList.toArray(new ILocalFitParams[0]);
+				drain(localFitParamsLists, new ILocalFitParams[pixelsToProcessCount]);
 			processPixels(fittingEngine, pixelArray, globalFitParams,
 				localFitParamsArray, errorManager, fitter, newImage, batch);
 		}
 		if (null != fitter) {
+			final long span = Tracer.begin();
 			fitter.endFit();
+			Tracer.end("endFit", span);
+		}
+		final String report = metrics.getReport();
+		if (null != report) {
+			IJ.log(report);
 		}
 
 		return newImage.getImage();
 	}
 
+	/**
+	 * Empties per-channel lists into an array, channel by channel.
+	 *
+	 * @return array
+	 */
+	private static <T> T[] drain(final List<List<T>> lists, final T[] array) {
+		int index = 0;
+		for (final List<T> list : lists) {
+			for (final T element : list) {
+				array[index++] = element;
+			}
+			list.clear();
+		}
+		return array;
+	}
+
+	/**
+	 * Fits lifetimes shared by all eligible pixels, sampled evenly if there are
+	 * many.
+	 *
+	 * @return lifetimes or null if none to share
+	 */
+	private double[] fitLifetimes(final IFittingEngine fittingEngine,
+		final IGlobalFitParams globalFitParams, final IProcessor processor,
+		final EligiblePixels eligible, final int[] channelIndices,
+		final int width, final int height, final int totalPixelCount,
+		final double[] parameters)
+	{
+		final int stride =
+			Math.max(1, (totalPixelCount + GLOBAL_PIXEL_COUNT - 1) /
+				GLOBAL_PIXEL_COUNT);
+		final List<ILocalFitParams> sample = new ArrayList<ILocalFitParams>();
+		int index = 0;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				for (final int c : channelIndices) {
+					if (!eligible.isEligible(x, y, c) || 0 != index++ % stride) {
+						continue;
+					}
+					final double[] decay = processor.getPixel(new int[] { x, y, c });
+					if (null != decay) {
+						final ILocalFitParams localFitParams = new LocalFitParams();
+						localFitParams.setY(decay);
+						localFitParams.setSig(null);
+						localFitParams.setParams(parameters);
+						sample.add(localFitParams);
+					}
+				}
+			}
+		}
+		return fittingEngine.fitLifetimes(globalFitParams, sample);
+	}
+
 	/**
 	 * Helper function that processes an array of pixels. When creating colorized
 	 * images from fit parameters, the histogram and images are updated at the end
@@ -2058,53 +2226,68 @@ public class SLIMProcessor<T extends RealType<T>> {
 		final boolean batch)
 	{
 
-		// TODO use Lists or just arrays? This just converts from array to List.
-		final List<ILocalFitParams> localFitParamsList =
-			new ArrayList<ILocalFitParams>();
-		for (final ILocalFitParams lFP : localFitParams) {
-			localFitParamsList.add(lFP);
-		}
-
-		List<IFitResults> resultsList = new ArrayList<IFitResults>();
+		final long span = Tracer.begin();
 		try {
-			resultsList = fittingEngine.fit(globalFitParams, localFitParamsList);
-		}
-		catch (final Exception e) {
-			IJ.log("Exception " + e.getMessage());
-		}
-
-		for (int i = 0; i < resultsList.size(); ++i) {
-			final IFitResults result = resultsList.get(i);
-			final double[] params = result.getParams();
-			final ChunkyPixel p = pixels[i];
-			final int[] location = p.getOutputLocation();
-
-			// check for errors
-			if (Double.isNaN(params[0])) {
-				if (!batch && null != errorManager) {
-					final int x = location[0];
-					final int y = location[1];
-					int channel = 0;
-					if (location.length > 2) {
-						channel = location[2];
+			// TODO use Lists or just arrays? This just converts from array to List.
+			final List<ILocalFitParams> localFitParamsList =
+				new ArrayList<ILocalFitParams>();
+			for (final ILocalFitParams lFP : localFitParams) {
+				localFitParamsList.add(lFP);
+			}
+
+			List<IFitResults> resultsList = new ArrayList<IFitResults>();
+			try {
+				resultsList = fittingEngine.fit(globalFitParams, localFitParamsList);
+			}
+			catch (final Exception e) {
+				IJ.log("Exception " + e.getMessage());
+			}
+
+			final long writeStart = System.nanoTime();
+			final int[][] locations = new int[resultsList.size()][];
+			final double[][] fittedParams = new double[resultsList.size()][];
+			int fittedCount = 0;
+			for (int i = 0; i < resultsList.size(); ++i) {
+				final IFitResults result = resultsList.get(i);
+				final double[] params = result.getParams();
+				final ChunkyPixel p = pixels[i];
+				final int[] location = p.getOutputLocation();
+
+				// check for errors
+				if (Double.isNaN(params[0])) {
+					if (!batch && null != errorManager) {
+						final int x = location[0];
+						final int y = location[1];
+						int channel = 0;
+						if (location.length > 2) {
+							channel = location[2];
+						}
+						errorManager.noteError(x, y, channel);
 					}
-					errorManager.noteError(x, y, channel);
+					// TODO ARG need to draw a NaN here over any prior chunky pixels (when
+					// chunky pixels are working right)
 				}
-				// TODO ARG need to draw a NaN here over any prior chunky pixels (when
-				// chunky pixels are working right)
-			}
-			else {
-				// if producing colorized images, feed this pixel to colorizer
-				if (null != imageColorizer) {
-					imageColorizer.updatePixel(location, params);
+				else {
+					// if producing colorized images, feed this pixel to colorizer
+					if (null != imageColorizer) {
+						imageColorizer.updatePixel(location, params);
+					}
+					locations[fittedCount] = location;
+					fittedParams[fittedCount] = params;
+					++fittedCount;
 				}
-				fittedImage.setPixel(location, params);
 			}
-		}
+			fittedImage.setPixels(locations, fittedParams, fittedCount);
 
-		if (null != imageColorizer) {
-			// update any fitted images
-			imageColorizer.updateLUTRange();
+			if (null != imageColorizer) {
+				// update any fitted images
+				imageColorizer.updateLUTRange();
+			}
+			Configuration.getInstance().getMetrics().stageTime(Stage.WRITE,
+				System.nanoTime() - writeStart);
+		}
+		finally {
+			Tracer.end("processPixels", span);
 		}
 	}
 
@@ -2137,23 +2320,10 @@ public class SLIMProcessor<T extends RealType<T>> {
 
 		// IJ.log("FIT SUMMED startBin " + _startBin + " stopBin " + _stopBin);
 
-		// set up the source
-		final IDecayImage decayImage =
-			new DecayImageWrapper(_image, _width, _height, _channels, _bins,
-				_binIndex, _increment);
-		IProcessor processor = decayImage;
-		if (null != getRois() && getRois().length > 0) {
-			// add input processor to skip pixels out of Rois
-			final IProcessor roiProcessor = new RoiProcessor(getRois());
-			roiProcessor.chain(processor);
-			processor = roiProcessor;
-		}
-		if (uiPanel.getThreshold() > 0) {
-			// add input processor to skip pixels below threshold
-			final IProcessor threshold = new Threshold(uiPanel.getThreshold());
-			threshold.chain(processor);
-			processor = threshold;
-		}
+		// skip pixels out of Rois or below threshold
+		final EligiblePixels eligible =
+			new EligiblePixels(_width, _height, _channels, getRois(), uiPanel
+				.getThreshold(), getIntensity(), _increment, null);
 
 		// build the data
 		final ArrayList<ICurveFitData> curveFitDataList =
@@ -2163,38 +2333,28 @@ public class SLIMProcessor<T extends RealType<T>> {
 		double yFitted[];
 		int photons = 0;
 
+		// sum all eligible pixels of the channels in one parallel pass
+		final int[] channelIndices =
+			getChannelIndices(_fitAllChannels, _channel, _channels);
+		final Mask[][] masks = new Mask[channelIndices.length][];
+		for (int i = 0; i < channelIndices.length; ++i) {
+			masks[i] = new Mask[] { eligible.getMask(channelIndices[i]) };
+		}
+		final SummedDecays summedDecays =
+			new SummedDecays(_image, _binIndex, channelIndices, masks, _increment);
+
 		// loop over all channels or just the current one
-		final int[] inputLocation = new int[] { 0, 0, 0 };
-		for (final int channel : getChannelIndices(_fitAllChannels, _channel,
-			_channels))
-		{
-			inputLocation[2] = channel;
+		for (int i = 0; i < channelIndices.length; ++i) {
+			final int channel = channelIndices[i];
 			curveFitData = new CurveFitData();
 			// TODO NO NO NO s/b either from UI or fitted point or fitted whole image
 			curveFitData.setParams(params.clone());
-			yCount = new double[_bins];
-			for (int b = 0; b < _bins; ++b) {
-				yCount[b] = 0.0;
-			}
+			yCount = summedDecays.getDecay(i, 0);
 
 			// count photons and pixels
-			int pixels = 0;
-
-			// sum this channel
-			for (int y = 0; y < _height; ++y) {
-				for (int x = 0; x < _width; ++x) {
-					inputLocation[0] = x;
-					inputLocation[1] = y;
-					final double[] decay = processor.getPixel(inputLocation);
-					if (null != decay) {
-						for (int b = 0; b < _bins; ++b) {
-							yCount[b] += decay[b];
-							photons += (int) decay[b];
-						}
-						++pixels;
-					}
-				}
-			}
+			final int pixels = masks[i][0].getCount();
+			photons += (int) sum(yCount);
+
 			curveFitData.setYCount(yCount);
 			curveFitData.setTransStartIndex(0);
 			curveFitData.setDataStartIndex(_startBin);
@@ -2259,32 +2419,33 @@ public class SLIMProcessor<T extends RealType<T>> {
 			photons[i] = 0;
 		}
 
+		// sum every ROI of the channels in one parallel pass
+		final int[] channelIndices =
+			getChannelIndices(_fitAllChannels, _channel, _channels);
+		final Mask[] roiMasks = new Mask[getRois().length];
+		for (int r = 0; r < roiMasks.length; ++r) {
+			roiMasks[r] =
+				new EligiblePixels(_width, _height, 1, new Roi[] { getRois()[r] }, 0,
+					null, 1, null).getMask(0);
+		}
+		final Mask[][] masks = new Mask[channelIndices.length][];
+		for (int i = 0; i < channelIndices.length; ++i) {
+			masks[i] = roiMasks;
+		}
+		final SummedDecays summedDecays =
+			new SummedDecays(_image, _binIndex, channelIndices, masks,
+				_minNonZeroPhotonCount);
+
 		// loop over all channels or just the current one
-		for (final int channel : getChannelIndices(_fitAllChannels, _channel,
-			_channels))
-		{
+		for (int i = 0; i < channelIndices.length; ++i) {
+			final int channel = channelIndices[i];
 			int roiNumber = 1;
 			for (final Roi roi : getRois()) {
 				curveFitData = new CurveFitData();
 				curveFitData.setParams(params.clone());
-				yCount = new double[_bins];
-				for (int b = 0; b < _bins; ++b) {
-					yCount[b] = 0.0;
-				}
-				final Rectangle bounds = roi.getBounds();
-				int pixels = 0;
-				for (int x = 0; x < bounds.width; ++x) {
-					for (int y = 0; y < bounds.height; ++y) {
-						if (roi.contains(bounds.x + x, bounds.y + y)) {
-							++pixels;
-							for (int b = 0; b < _bins; ++b) {
-								final double count = getData(_cursor, channel, x, y, b);
-								yCount[b] += count;
-								photons[roiNumber - 1] += count;
-							}
-						}
-					}
-				}
+				yCount = summedDecays.getDecay(i, roiNumber - 1);
+				final int pixels = roiMasks[roiNumber - 1].getCount();
+				photons[roiNumber - 1] += sum(yCount);
 				curveFitData.setYCount(yCount);
 				curveFitData.setTransStartIndex(0);
 				curveFitData.setDataStartIndex(_startBin);
@@ -2408,6 +2569,9 @@ public class SLIMProcessor<T extends RealType<T>> {
 		final SLIMBinner binner = _binning.createBinner(uiPanel.getBinning());
 		if (null != binner) {
 			binner.init(_width, _height);
+			if (binner instanceof SquareBinner) {
+				((SquareBinner) binner).setIntensity(getIntensity());
+			}
 			binner.chain(processor);
 			processor = binner;
 		}
@@ -2607,20 +2771,6 @@ public class SLIMProcessor<T extends RealType<T>> {
 		return new int[] { channel };
 	}
 
-	/**
-	 * Calculates the total number of pixels to fit. Used for progress bar.
-	 *
-	 */
-	private int totalPixelCount(final int x, final int y, final int channels,
-		final boolean fitAll)
-	{
-		int count = x * y;
-		if (fitAll) {
-			count *= channels;
-		}
-		return count;
-	}
-
 	/**
 	 * Calculates an array of channel indices to iterate over.
 	 *
@@ -2647,6 +2797,18 @@ public class SLIMProcessor<T extends RealType<T>> {
 		return returnValue;
 	}
 
+	/**
+	 * Sums the bins of a decay.
+	 *
+	 */
+	private double sum(final double[] decay) {
+		double sum = 0.0;
+		for (final double count : decay) {
+			sum += count;
+		}
+		return sum;
+	}
+
 	private double getData(final RandomAccess<T> cursor, final int channel,
 		final int x, final int y, final int bin)
 	{
@@ -2753,6 +2915,19 @@ public class SLIMProcessor<T extends RealType<T>> {
 		return true;
 	}
 
+	/**
+	 * Gets the photon count index of the current image, building it on first
+	 * use.
+	 *
+	 */
+	private IntensityProjection getIntensity() {
+		if (null == _intensity || _intensityImage != _image) {
+			_intensity = new IntensityProjection(_image, _binIndex);
+			_intensityImage = _image;
+		}
+		return _intensity;
+	}
+
 	/**
 	 * Gets a list of ROIs (may be empty).
 	 *
@@ -2847,15 +3022,15 @@ public class SLIMProcessor<T extends RealType<T>> {
 				curveFitter = new JaolhoCurveFitter();
 				break;
 			case SLIMCURVE_RLD:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(FitAlgorithm.SLIMCURVE_RLD);
 				break;
 			case SLIMCURVE_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(FitAlgorithm.SLIMCURVE_LMA);
 				break;
 			case SLIMCURVE_RLD_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(FitAlgorithm.SLIMCURVE_RLD_LMA);
 				break;
 		}
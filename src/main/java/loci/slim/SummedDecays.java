@@ -0,0 +1,222 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import loci.slim.mask.Mask;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Sums the decays of groups of pixels, such as ROIs, for several planes of a
+ * lifetime image in one parallel pass.
+ * <p>
+ * Each band of rows is summed into its own accumulators, which are merged in
+ * order at the end. Planes are numbered as in {@link IntensityProjection}.
+ */
+public class SummedDecays {
+
+	private static final int TILE_PIXELS = 16384;
+	private final int _width;
+	private final int _height;
+	private final int _bins;
+	private final int _lifetimeDimension;
+	private final int[] _planeDimensions;
+	private final long[] _planeSizes;
+	private final double[][][] _decays;
+
+	/**
+	 * Sums the decays.
+	 *
+	 * @param image lifetime image, X and Y first
+	 * @param lifetimeDimension index of lifetime dimension, at least 2
+	 * @param planes plane indices to sum
+	 * @param masks pixels of each group, indexed [plane index][group]
+	 * @param divisor photon counts are divided by this
+	 */
+	public SummedDecays(
+		final RandomAccessibleInterval<? extends RealType<?>> image,
+		final int lifetimeDimension, final int[] planes, final Mask[][] masks,
+		final double divisor)
+	{
+		_width = (int) image.dimension(0);
+		_height = (int) image.dimension(1);
+		_bins = (int) image.dimension(lifetimeDimension);
+		_lifetimeDimension = lifetimeDimension;
+		final List<Integer> planeDimensions = new ArrayList<Integer>();
+		for (int d = 2; d < image.numDimensions(); ++d) {
+			if (d != lifetimeDimension) {
+				planeDimensions.add(d);
+			}
+		}
+		_planeDimensions = new int[planeDimensions.size()];
+		_planeSizes = new long[planeDimensions.size()];
+		for (int i = 0; i < _planeDimensions.length; ++i) {
+			_planeDimensions[i] = planeDimensions.get(i);
+			_planeSizes[i] = image.dimension(_planeDimensions[i]);
+		}
+
+		// one task per band of rows
+		final int rows = Math.max(1, TILE_PIXELS / Math.max(1, _width));
+		final List<SumTile> tiles = new ArrayList<SumTile>();
+		for (int y = 0; y < _height; y += rows) {
+			tiles.add(new SumTile(image, planes, masks, y, Math.min(_height, y +
+				rows)));
+		}
+		final List<double[][][]> results = Tiles.process(tiles);
+
+		// merge the accumulators
+		_decays = newAccumulators(masks);
+		for (final double[][][] result : results) {
+			for (int p = 0; p < _decays.length; ++p) {
+				for (int g = 0; g < _decays[p].length; ++g) {
+					for (int b = 0; b < _bins; ++b) {
+						_decays[p][g][b] += result[p][g][b];
+					}
+				}
+			}
+		}
+		for (final double[][] groups : _decays) {
+			for (final double[] decay : groups) {
+				for (int b = 0; b < _bins; ++b) {
+					decay[b] /= divisor;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets summed decay of a group.
+	 *
+	 * @param planeIndex index into the planes given
+	 */
+	public double[] getDecay(final int planeIndex, final int group) {
+		return _decays[planeIndex][group];
+	}
+
+	private double[][][] newAccumulators(final Mask[][] masks) {
+		final double[][][] decays = new double[masks.length][][];
+		for (int p = 0; p < masks.length; ++p) {
+			decays[p] = new double[masks[p].length][_bins];
+		}
+		return decays;
+	}
+
+	/**
+	 * Sums a band of rows of all planes, a bin at a time so each row is read
+	 * along X.
+	 */
+	private class SumTile implements Callable<double[][][]> {
+
+		private final RandomAccessibleInterval<? extends RealType<?>> image;
+		private final int[] planes;
+		private final Mask[][] masks;
+		private final int y0;
+		private final int y1;
+
+		SumTile(final RandomAccessibleInterval<? extends RealType<?>> image,
+			final int[] planes, final Mask[][] masks, final int y0, final int y1)
+		{
+			this.image = image;
+			this.planes = planes;
+			this.masks = masks;
+			this.y0 = y0;
+			this.y1 = y1;
+		}
+
+		@Override
+		public double[][][] call() {
+			final double[][][] decays = newAccumulators(masks);
+			final RandomAccess<? extends RealType<?>> randomAccess =
+				image.randomAccess();
+			final int bandSize = (y1 - y0) * _width;
+
+			for (int p = 0; p < planes.length; ++p) {
+				// position within the remaining dimensions
+				int rest = planes[p];
+				for (int i = 0; i < _planeDimensions.length; ++i) {
+					final int size = (int) _planeSizes[i];
+					randomAccess.setPosition(rest % size, _planeDimensions[i]);
+					rest /= size;
+				}
+
+				// note which groups each pixel of the band belongs to
+				final Mask[] groupMasks = masks[p];
+				final boolean[][] members = new boolean[groupMasks.length][];
+				for (int g = 0; g < groupMasks.length; ++g) {
+					final boolean[] member = new boolean[bandSize];
+					boolean any = false;
+					for (int y = y0; y < y1; ++y) {
+						for (int x = 0; x < _width; ++x) {
+							if (groupMasks[g].test(x, y)) {
+								member[(y - y0) * _width + x] = true;
+								any = true;
+							}
+						}
+					}
+					members[g] = any ? member : null;
+				}
+				final boolean[] wanted = new boolean[bandSize];
+				boolean any = false;
+				for (final boolean[] member : members) {
+					if (null != member) {
+						for (int i = 0; i < bandSize; ++i) {
+							wanted[i] |= member[i];
+						}
+						any = true;
+					}
+				}
+				if (!any) {
+					continue;
+				}
+
+				for (int bin = 0; bin < _bins; ++bin) {
+					randomAccess.setPosition(bin, _lifetimeDimension);
+					for (int y = y0; y < y1; ++y) {
+						randomAccess.setPosition(0, 0);
+						randomAccess.setPosition(y, 1);
+						int index = (y - y0) * _width;
+						for (int x = 0; x < _width; ++x) {
+							if (wanted[index]) {
+								final double count = randomAccess.get().getRealDouble();
+								for (int g = 0; g < members.length; ++g) {
+									if (null != members[g] && members[g][index]) {
+										decays[p][g][bin] += count;
+									}
+								}
+							}
+							++index;
+							randomAccess.fwd(0);
+						}
+					}
+				}
+			}
+			return decays;
+		}
+	}
+}
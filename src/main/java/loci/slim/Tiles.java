@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the tiles of a parallel pass over an image. Unlike ThreadPool, which
+ * logs and drops failed tasks, a failed tile fails the whole pass.
+ */
+final class Tiles {
+
+	private Tiles() {}
+
+	/**
+	 * Runs tiles in parallel.
+	 *
+	 * @return results in tile order
+	 * @throws RuntimeException the failure of the first failed tile, in order
+	 */
+	static <T> List<T> process(final List<? extends Callable<T>> tiles) {
+		final ExecutorService executorService =
+			Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			final List<T> results = new ArrayList<T>();
+			for (final Future<T> future : executorService.invokeAll(tiles)) {
+				results.add(future.get());
+			}
+			return results;
+		}
+		catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		}
+		finally {
+			executorService.shutdownNow();
+		}
+	}
+}
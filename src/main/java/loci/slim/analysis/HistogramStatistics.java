@@ -27,9 +27,6 @@ import ij.IJ;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 
 import loci.slim.SLIMProcessor;
 
@@ -43,9 +40,7 @@ import loci.slim.SLIMProcessor;
 public class HistogramStatistics {
 
 	private static final int MIN_COUNT = 3;
-	private static final String NAN = "NaN";
-	private static final MathContext context = new MathContext(4,
-		RoundingMode.FLOOR);
+	private static final int DIGITS = 4;
 	String title;
 	private long count;
 	private double min;
@@ -303,8 +298,11 @@ public class HistogramStatistics {
 
 			final double[] values =
 					Binning.centerValuesPerBin(histo.length, getMinRange(), getMaxRange());
+			final NumberFormatter formatter = new NumberFormatter();
 			for (int j = 0; j < histo.length; ++j) {
-				writer.write(showParameter(values[j]) + separator + histo[j]);
+				formatter.writeRounded(writer, values[j], DIGITS);
+				writer.write(separator);
+				formatter.writeLong(writer, histo[j]);
 				writer.newLine();
 			}
 			writer.newLine();
@@ -487,6 +485,7 @@ public class HistogramStatistics {
 			}
 			writer.newLine();
 
+			final NumberFormatter formatter = new NumberFormatter();
 			for (int bin = 0; bin < maxHistosLength; ++bin) {
 				firstTime = true;
 				for (int i = 0; i < histos.length; ++i) {
@@ -495,8 +494,9 @@ public class HistogramStatistics {
 					}
 					firstTime = false;
 					if (bin < histos[i].length) {
-						writer.write("" + showParameter(centers[i][bin]) + separator +
-								histos[i][bin]);
+						formatter.writeRounded(writer, centers[i][bin], DIGITS);
+						writer.write(separator);
+						formatter.writeLong(writer, histos[i][bin]);
 					}
 					else {
 						writer.write(separator);
@@ -576,11 +576,6 @@ public class HistogramStatistics {
 	}
 
 	private static String showParameter(final double parameter) {
-		String returnValue = NAN;
-		if (!Double.isNaN(parameter)) {
-			returnValue =
-				BigDecimal.valueOf(parameter).round(context).toEngineeringString();
-		}
-		return returnValue;
+		return new NumberFormatter().toRoundedString(parameter, DIGITS);
 	}
 }
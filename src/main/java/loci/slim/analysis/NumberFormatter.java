@@ -0,0 +1,364 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats numbers for text export into a reusable buffer, without creating a
+ * String per value.
+ * <p>
+ * Exact values are written as <code>Double.toString</code> would, and so
+ * parse back to the same double.  Rounded values match
+ * <code>BigDecimal.valueOf(value).round(new MathContext(digits,
+ * RoundingMode.FLOOR)).toEngineeringString()</code>.
+ * <p>
+ * Not thread-safe; use one per export.
+ */
+public class NumberFormatter {
+
+	private static final String NAN = "NaN";
+	private static final String INFINITY = "Infinity";
+	private static final int FAST_DIGITS = 6;
+	private static final double FAST_MARGIN = 1.0e-6;
+	private static final long[] POWERS_OF_TEN = new long[19];
+	private static final double[] DOUBLE_POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+			POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+		}
+		// exact as doubles up to 1e22
+		DOUBLE_POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; ++i) {
+			DOUBLE_POWERS_OF_TEN[i] = 10.0 * DOUBLE_POWERS_OF_TEN[i - 1];
+		}
+	}
+	private final StringBuilder builder = new StringBuilder(32);
+	private final char[] chars = new char[48];
+	private final char[] coefficient = new char[20];
+	private long unscaled;
+	private int scale;
+
+	/**
+	 * Writes value exactly.
+	 *
+	 */
+	public void writeExact(final Writer writer, final double value)
+		throws IOException
+	{
+		writer.write(chars, 0, formatExact(value));
+	}
+
+	/**
+	 * Writes value rounded down to given significant digits.
+	 *
+	 */
+	public void writeRounded(final Writer writer, final double value,
+		final int digits) throws IOException
+	{
+		writer.write(chars, 0, formatRounded(value, digits));
+	}
+
+	/**
+	 * Writes an integer value.
+	 *
+	 */
+	public void writeLong(final Writer writer, final long value)
+		throws IOException
+	{
+		builder.setLength(0);
+		builder.append(value);
+		final int length = builder.length();
+		builder.getChars(0, length, chars, 0);
+		writer.write(chars, 0, length);
+	}
+
+	/**
+	 * Gets value rounded down to given significant digits as a String.
+	 *
+	 */
+	public String toRoundedString(final double value, final int digits) {
+		return new String(chars, 0, formatRounded(value, digits));
+	}
+
+	/**
+	 * Formats value exactly into the buffer.
+	 *
+	 * @return length of text
+	 */
+	int formatExact(final double value) {
+		// appending a double to a StringBuilder creates no garbage
+		builder.setLength(0);
+		builder.append(value);
+		final int length = builder.length();
+		builder.getChars(0, length, chars, 0);
+		return length;
+	}
+
+	/**
+	 * Formats value rounded down to given significant digits into the buffer.
+	 *
+	 * @param digits from 1 to 17
+	 * @return length of text
+	 */
+	int formatRounded(final double value, final int digits) {
+		if (Double.isNaN(value)) {
+			return copy(NAN, 0);
+		}
+		if (Double.isInfinite(value)) {
+			int length = 0;
+			if (value < 0.0) {
+				chars[length++] = '-';
+			}
+			return copy(INFINITY, length);
+		}
+
+		final boolean negative = value < 0.0;
+		if (!roundFast(value, digits)) {
+			roundShortest(value, digits);
+		}
+
+		// lay out like BigDecimal.toEngineeringString
+		int coefficientLength = 0;
+		long rest = unscaled;
+		do {
+			coefficient[coefficientLength++] = (char) ('0' + rest % 10);
+			rest /= 10;
+		}
+		while (0 != rest);
+		reverse(coefficient, coefficientLength);
+
+		int length = 0;
+		if (negative) {
+			chars[length++] = '-';
+		}
+		int adjusted = -scale + (coefficientLength - 1);
+		if (0 == scale) {
+			length = copy(coefficient, 0, coefficientLength, length);
+		}
+		else if (scale > 0 && adjusted >= -6) {
+			// plain notation
+			final int pad = scale - coefficientLength;
+			if (pad >= 0) {
+				chars[length++] = '0';
+				chars[length++] = '.';
+				for (int j = 0; j < pad; ++j) {
+					chars[length++] = '0';
+				}
+				length = copy(coefficient, 0, coefficientLength, length);
+			}
+			else {
+				length = copy(coefficient, 0, -pad, length);
+				chars[length++] = '.';
+				length = copy(coefficient, -pad, coefficientLength + pad, length);
+			}
+		}
+		else {
+			// exponent is a multiple of three
+			int significant = adjusted % 3;
+			if (significant < 0) {
+				significant += 3;
+			}
+			adjusted -= significant;
+			++significant;
+			if (0 == unscaled) {
+				switch (significant) {
+					case 1:
+						chars[length++] = '0';
+						break;
+					case 2:
+						length = copy("0.00", length);
+						adjusted += 3;
+						break;
+					case 3:
+						length = copy("0.0", length);
+						adjusted += 3;
+						break;
+				}
+			}
+			else if (significant >= coefficientLength) {
+				length = copy(coefficient, 0, coefficientLength, length);
+				for (int j = significant - coefficientLength; j > 0; --j) {
+					chars[length++] = '0';
+				}
+			}
+			else {
+				length = copy(coefficient, 0, significant, length);
+				chars[length++] = '.';
+				length =
+					copy(coefficient, significant, coefficientLength - significant,
+						length);
+			}
+			if (0 != adjusted) {
+				chars[length++] = 'E';
+				if (adjusted > 0) {
+					chars[length++] = '+';
+				}
+				builder.setLength(0);
+				builder.append(adjusted);
+				builder.getChars(0, builder.length(), chars, length);
+				length += builder.length();
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Rounds directly from the binary value.  Gives up near a rounding boundary,
+	 * where the shortest decimal representation decides.
+	 *
+	 * @return whether rounded
+	 */
+	private boolean roundFast(final double value, final int digits) {
+		final double magnitude = Math.abs(value);
+		if (digits > FAST_DIGITS || !(magnitude > 1.0e-15 && magnitude < 1.0e15))
+		{
+			return false;
+		}
+		int exponent = (int) Math.floor(Math.log10(magnitude));
+		double scaled = scale(magnitude, digits - 1 - exponent);
+		// log10 may be off by one
+		if (scaled < DOUBLE_POWERS_OF_TEN[digits - 1]) {
+			scaled = scale(magnitude, digits - exponent--);
+		}
+		else if (scaled >= DOUBLE_POWERS_OF_TEN[digits]) {
+			scaled = scale(magnitude, digits - 2 - exponent++);
+		}
+		final long truncated = (long) scaled;
+		final double fraction = scaled - truncated;
+		if (fraction < FAST_MARGIN || fraction > 1.0 - FAST_MARGIN) {
+			return false;
+		}
+		unscaled = truncated;
+		scale = digits - 1 - exponent;
+		if (value < 0.0) {
+			// round toward negative infinity
+			++unscaled;
+			if (unscaled == POWERS_OF_TEN[digits]) {
+				unscaled /= 10;
+				--scale;
+			}
+		}
+		return true;
+	}
+
+	private static double scale(final double magnitude, final int power) {
+		return power >= 0 ? magnitude * DOUBLE_POWERS_OF_TEN[power] : magnitude /
+			DOUBLE_POWERS_OF_TEN[-power];
+	}
+
+	/**
+	 * Rounds the shortest decimal representation, as BigDecimal.valueOf gives.
+	 *
+	 */
+	private void roundShortest(final double value, final int digits) {
+		builder.setLength(0);
+		builder.append(value);
+		final int textLength = builder.length();
+		boolean negative = false;
+		unscaled = 0;
+		int fractionDigits = 0;
+		boolean point = false;
+		int exponent = 0;
+		int i = 0;
+		if ('-' == builder.charAt(i)) {
+			negative = true;
+			++i;
+		}
+		for (; i < textLength; ++i) {
+			final char c = builder.charAt(i);
+			if ('.' == c) {
+				point = true;
+			}
+			else if ('E' == c) {
+				boolean negativeExponent = false;
+				if ('-' == builder.charAt(++i)) {
+					negativeExponent = true;
+					++i;
+				}
+				for (; i < textLength; ++i) {
+					exponent = 10 * exponent + builder.charAt(i) - '0';
+				}
+				if (negativeExponent) {
+					exponent = -exponent;
+				}
+			}
+			else {
+				unscaled = 10 * unscaled + c - '0';
+				if (point) {
+					++fractionDigits;
+				}
+			}
+		}
+		scale = fractionDigits - exponent;
+
+		// round toward negative infinity
+		final int precision = precision(unscaled);
+		if (precision > digits) {
+			final int drop = precision - digits;
+			final long remainder = unscaled % POWERS_OF_TEN[drop];
+			unscaled /= POWERS_OF_TEN[drop];
+			if (negative && 0 != remainder) {
+				++unscaled;
+			}
+			scale -= drop;
+			if (unscaled == POWERS_OF_TEN[digits]) {
+				unscaled /= 10;
+				--scale;
+			}
+		}
+	}
+
+	private int copy(final String text, final int offset) {
+		text.getChars(0, text.length(), chars, offset);
+		return offset + text.length();
+	}
+
+	private int copy(final char[] source, final int start, final int count,
+		final int offset)
+	{
+		System.arraycopy(source, start, chars, offset, count);
+		return offset + count;
+	}
+
+	private static int precision(final long value) {
+		int precision = 1;
+		while (precision < POWERS_OF_TEN.length &&
+			value >= POWERS_OF_TEN[precision])
+		{
+			++precision;
+		}
+		return precision;
+	}
+
+	private static void reverse(final char[] array, final int length) {
+		for (int i = 0, j = length - 1; i < j; ++i, --j) {
+			final char tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+}
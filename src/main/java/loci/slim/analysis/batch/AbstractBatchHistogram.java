@@ -24,6 +24,11 @@
 package loci.slim.analysis.batch;
 
 import ij.IJ;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import loci.slim.analysis.Binning;
 import loci.slim.analysis.HistogramStatistics;
 import loci.slim.fitted.FittedValue;
@@ -151,6 +156,78 @@ public abstract class AbstractBatchHistogram implements BatchHistogram {
 			statistics.getMaxRange());
 	}
 
+	/**
+	 * Saves accumulated values. Only bins with counts are written.
+	 *
+	 */
+	@Override
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeInt(totalBins);
+		out.writeLong(count);
+		out.writeDouble(sum);
+		out.writeDouble(minValue);
+		out.writeDouble(maxValue);
+		out.writeLong(underMinCount);
+		out.writeDouble(underMinSum);
+		out.writeDouble(underMinVarianceSum);
+		out.writeLong(overMaxCount);
+		out.writeDouble(overMaxSum);
+		out.writeDouble(overMaxVarianceSum);
+		int usedBins = 0;
+		for (final HistogramBin histogramBin : bins) {
+			if (0 != histogramBin.count) {
+				++usedBins;
+			}
+		}
+		out.writeInt(usedBins);
+		for (int bin = 0; bin < totalBins; ++bin) {
+			final HistogramBin histogramBin = bins[bin];
+			if (0 != histogramBin.count) {
+				out.writeInt(bin);
+				out.writeLong(histogramBin.count);
+				out.writeDouble(histogramBin.meanSum);
+				out.writeDouble(histogramBin.varianceSum);
+			}
+		}
+	}
+
+	/**
+	 * Restores accumulated values. Must already be initialized with the same
+	 * fitted value.
+	 *
+	 */
+	@Override
+	public void readState(final DataInput in) throws IOException {
+		if (in.readInt() != totalBins) {
+			throw new IOException("BatchHistogram state mismatch " + getTitle());
+		}
+		count = in.readLong();
+		sum = in.readDouble();
+		minValue = in.readDouble();
+		maxValue = in.readDouble();
+		underMinCount = in.readLong();
+		underMinSum = in.readDouble();
+		underMinVarianceSum = in.readDouble();
+		overMaxCount = in.readLong();
+		overMaxSum = in.readDouble();
+		overMaxVarianceSum = in.readDouble();
+		for (int bin = 0; bin < totalBins; ++bin) {
+			bins[bin] = new HistogramBin();
+		}
+		final int usedBins = in.readInt();
+		for (int i = 0; i < usedBins; ++i) {
+			final int bin = in.readInt();
+			if (bin < 0 || bin >= totalBins) {
+				throw new IOException("BatchHistogram state corrupt " + getTitle());
+			}
+			final HistogramBin histogramBin = bins[bin];
+			histogramBin.count = in.readLong();
+			histogramBin.meanSum = in.readDouble();
+			histogramBin.varianceSum = in.readDouble();
+		}
+		statistics = null;
+	}
+
 	void setFittedValue(final FittedValue fittedValue) {
 		this.fittedValue = fittedValue;
 		this.title = fittedValue.getTitle();
@@ -23,6 +23,10 @@
 
 package loci.slim.analysis.batch;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import loci.slim.analysis.HistogramStatistics;
 import loci.slim.fitted.FittedValue;
 
@@ -78,4 +82,16 @@ public interface BatchHistogram {
 	 *
 	 */
 	public double[] getScaledCenterValues(int binCount);
+
+	/**
+	 * Saves accumulated values, e.g. to resume an interrupted batch.
+	 *
+	 */
+	public void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Restores accumulated values saved by {@link #writeState}.
+	 *
+	 */
+	public void readState(DataInput in) throws IOException;
 }
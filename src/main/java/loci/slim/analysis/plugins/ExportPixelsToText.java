@@ -31,14 +31,12 @@ import ij.plugin.frame.RoiManager;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 import java.util.prefs.Preferences;
 
 import loci.curvefitter.ICurveFitter.FitFunction;
 import loci.curvefitter.ICurveFitter.FitRegion;
 import loci.slim.SLIMProcessor;
+import loci.slim.analysis.NumberFormatter;
 import loci.slim.analysis.SLIMAnalyzer;
 import loci.slim.fitted.FittedValue;
 import loci.slim.fitted.FittedValueFactory;
@@ -72,7 +70,7 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private boolean append;
 	private boolean csv;
 	private BufferedWriter bufferedWriter;
-	private final MathContext context = new MathContext(4, RoundingMode.FLOOR);
+	private final NumberFormatter formatter = new NumberFormatter();
 
 	@Override
 	public void analyze(final ImgPlus<DoubleType> image, final FitRegion region,
@@ -270,7 +268,8 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private void writeChannel(final int channel, final char separator)
 		throws IOException
 	{
-		bufferedWriter.write("" + channel + separator);
+		formatter.writeLong(bufferedWriter, channel);
+		bufferedWriter.write(separator);
 	}
 
 	private void writeHeader(final FittedValue[] fittedValues,
@@ -300,7 +299,7 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 			else {
 				bufferedWriter.write(separator);
 			}
-			bufferedWriter.write("" + fittedValue.getValue(paramArray));
+			formatter.writeExact(bufferedWriter, fittedValue.getValue(paramArray));
 		}
 		bufferedWriter.newLine();
 	}
@@ -315,7 +314,8 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 
 	private void writeROI(final int roi, final char separator) throws IOException
 	{
-		bufferedWriter.write("" + roi + separator);
+		formatter.writeLong(bufferedWriter, roi);
+		bufferedWriter.write(separator);
 	}
 
 	private void writeXYHeader(final char separator) throws IOException {
@@ -325,7 +325,10 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private void writeXY(final int x, final int y, final char separator)
 		throws IOException
 	{
-		bufferedWriter.write("" + x + separator + y + separator);
+		formatter.writeLong(bufferedWriter, x);
+		bufferedWriter.write(separator);
+		formatter.writeLong(bufferedWriter, y);
+		bufferedWriter.write(separator);
 	}
 
 	private String getFileFromPreferences() {
@@ -378,8 +381,4 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 		}
 		return true;
 	}
-
-	private String showParameter(final double parameter) {
-		return BigDecimal.valueOf(parameter).round(context).toEngineeringString();
-	}
 }
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+/**
+ * Solves the small symmetric positive definite systems of the fitters by
+ * Cholesky decomposition. Matrices are row major, n by n from an offset.
+ */
+final class Cholesky {
+
+	private Cholesky() {}
+
+	/**
+	 * Decomposes in place; the lower triangle receives the factor.
+	 *
+	 * @return whether positive definite
+	 */
+	static boolean decompose(final double[] matrix, final int offset,
+		final int n)
+	{
+		for (int a = 0; a < n; ++a) {
+			for (int b = 0; b <= a; ++b) {
+				double sum = matrix[offset + a * n + b];
+				for (int l = 0; l < b; ++l) {
+					sum -= matrix[offset + a * n + l] * matrix[offset + b * n + l];
+				}
+				if (a == b) {
+					if (!(sum > 0.0)) {
+						return false;
+					}
+					matrix[offset + a * n + a] = Math.sqrt(sum);
+				}
+				else {
+					matrix[offset + a * n + b] = sum / matrix[offset + b * n + b];
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves in place with a factor from {@link #decompose}.
+	 *
+	 */
+	static void substitute(final double[] factor, final int offset,
+		final int n, final double[] x)
+	{
+		for (int a = 0; a < n; ++a) {
+			double sum = x[a];
+			for (int l = 0; l < a; ++l) {
+				sum -= factor[offset + a * n + l] * x[l];
+			}
+			x[a] = sum / factor[offset + a * n + a];
+		}
+		for (int a = n - 1; a >= 0; --a) {
+			double sum = x[a];
+			for (int l = a + 1; l < n; ++l) {
+				sum -= factor[offset + l * n + a] * x[l];
+			}
+			x[a] = sum / factor[offset + a * n + a];
+		}
+	}
+}
@@ -59,6 +59,7 @@ public class FitInfo {
 	private double[] _parameters;
 	private boolean[] _free;
 	private boolean _refineFit;
+	private boolean _globalLifetimes;
 
 	private double[] _prompt;
 	private int _startPrompt;
@@ -523,6 +524,22 @@ public class FitInfo {
 		_refineFit = refineFit;
 	}
 
+	/**
+	 * Gets whether lifetimes are shared by all pixels, a global fit.
+	 *
+	 */
+	public boolean getGlobalLifetimes() {
+		return _globalLifetimes;
+	}
+
+	/**
+	 * Sets whether lifetimes are shared by all pixels, a global fit.
+	 *
+	 */
+	public void setGlobalLifetimes(final boolean globalLifetimes) {
+		_globalLifetimes = globalLifetimes;
+	}
+
 	/**
 	 * Gets number of exponential components.
 	 *
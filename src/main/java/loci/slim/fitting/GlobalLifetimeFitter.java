@@ -0,0 +1,758 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import java.util.List;
+
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.slim.fitting.params.FitResults;
+import loci.slim.fitting.params.IFitResults;
+import loci.slim.fitting.params.IGlobalFitParams;
+import loci.slim.fitting.params.ILocalFitParams;
+
+/**
+ * Global analysis of multi-exponential decays: lifetimes are shared by all
+ * pixels and only the amplitudes and background vary from pixel to pixel.
+ * <p>
+ * Each pixel's residuals depend only on its own amplitudes and the shared
+ * lifetimes, so the normal equations are block diagonal in the amplitudes,
+ * bordered by the lifetimes. Each Levenberg-Marquardt step eliminates the
+ * pixel blocks, solves the small system left in the lifetimes and back
+ * substitutes for the amplitudes. Once the lifetimes are known each pixel is
+ * a linear least squares fit, which is thread-safe.
+ * <p>
+ * Time zero is the transient start. A prompt is normalized to unit sum.
+ */
+public class GlobalLifetimeFitter {
+
+	private static final int MAX_ITERATIONS = 100;
+	private static final double INITIAL_LAMBDA = 0.001;
+	private static final double MAX_LAMBDA = 1.0e10;
+	private static final double CONVERGED = 1.0e-6;
+	private static final int WEIGHT_PASSES = 3;
+	// lifetimes of components relative to the single lifetime estimate
+	private static final double[][] SPREAD = { { 1.0 }, { 1.5, 0.4 },
+		{ 2.0, 0.8, 0.25 } };
+	private final int _transientStart;
+	private final int _start;
+	private final int _end;
+	private final double _xInc;
+	private final NoiseModel _noiseModel;
+	private final FitAlgorithm _fitAlgorithm;
+	private final int _components;
+	// free background and amplitudes, as 0 for Z and j for Aj
+	private final int[] _linear;
+	// free lifetimes, as component indices
+	private final int[] _nonlinear;
+	private final InstrumentResponse _response;
+	private double[] _lifetimes;
+	private double[][] _basis;
+
+	/**
+	 * Creates a global fitter for the exponential fit functions.
+	 *
+	 * @param params fit window, noise model and free parameters
+	 */
+	public GlobalLifetimeFitter(final IGlobalFitParams params) {
+		_components = getComponents(params.getFitFunction());
+		if (0 == _components) {
+			throw new IllegalArgumentException("No lifetimes to share for " +
+				params.getFitFunction());
+		}
+		_transientStart = params.getTransientStart();
+		_start = params.getDataStart() - _transientStart;
+		_end = params.getTransientStop() - _transientStart;
+		_xInc = params.getXInc();
+		_noiseModel = params.getNoiseModel();
+		_fitAlgorithm = params.getFitAlgorithm();
+
+		// free array is Z A1 T1 A2 T2 ...
+		final boolean[] free = params.getFree();
+		int linearCount = 0;
+		int nonlinearCount = 0;
+		final int[] linear = new int[_components + 1];
+		final int[] nonlinear = new int[_components];
+		if (isFree(free, 0)) {
+			linear[linearCount++] = 0;
+		}
+		for (int j = 0; j < _components; ++j) {
+			if (isFree(free, 1 + 2 * j)) {
+				linear[linearCount++] = j + 1;
+			}
+			if (isFree(free, 2 + 2 * j)) {
+				nonlinear[nonlinearCount++] = j;
+			}
+		}
+		_linear = new int[linearCount];
+		System.arraycopy(linear, 0, _linear, 0, linearCount);
+		_nonlinear = new int[nonlinearCount];
+		System.arraycopy(nonlinear, 0, _nonlinear, 0, nonlinearCount);
+
+		final double[] prompt = params.getPrompt();
+		InstrumentResponse response = null;
+		if (null != prompt) {
+			double sum = 0.0;
+			for (final double value : prompt) {
+				sum += value;
+			}
+			if (sum > 0.0) {
+				final double[] normalized = new double[prompt.length];
+				for (int i = 0; i < prompt.length; ++i) {
+					normalized[i] = prompt[i] / sum;
+				}
+				response = new InstrumentResponse(normalized, _end);
+			}
+		}
+		_response = response;
+	}
+
+	/**
+	 * Whether the fit function has lifetimes to share.
+	 *
+	 */
+	public static boolean isSupported(final FitFunction fitFunction) {
+		return 0 != getComponents(fitFunction);
+	}
+
+	/**
+	 * Fits the lifetimes shared by all given pixels and uses them for
+	 * subsequent amplitude fits.
+	 *
+	 * @param pixels decays with initial parameters
+	 * @return lifetimes, from the first component
+	 */
+	public double[] fitLifetimes(final List<ILocalFitParams> pixels) {
+		final double[] tau = initialLifetimes(pixels);
+		final int count = pixels.size();
+		final int k = _linear.length;
+		final int m = _nonlinear.length;
+		if (0 == m || 0 == count) {
+			setLifetimes(tau);
+			return tau.clone();
+		}
+
+		// starting amplitudes, excluding pixels with no linear fit
+		final double[][] basis = new double[_components][_end];
+		final double[][] derivatives = new double[_components][_end];
+		computeBasis(tau, basis, derivatives);
+		final double[][] values = new double[count][];
+		final boolean[] included = new boolean[count];
+		for (int p = 0; p < count; ++p) {
+			final ILocalFitParams pixel = pixels.get(p);
+			values[p] = getGivenValues(pixel.getParams());
+			included[p] =
+				linearFit(pixel.getY(), pixel.getSig(), basis, values[p]) &&
+					!Double.isInfinite(objective(pixel.getY(), pixel.getSig(),
+						values[p], basis));
+		}
+
+		// per pixel blocks of the normal equations, and the shared block
+		final double[] u = new double[count * k * k];
+		final double[] v = new double[count * k * m];
+		final double[] ga = new double[count * k];
+		final double[] factors = new double[count * k * k];
+		final boolean[] solved = new boolean[count];
+		final double[] c = new double[m * m];
+		final double[] gt = new double[m];
+		final double[] s = new double[m * m];
+		final double[] h = new double[m];
+		final double[] delta = new double[m];
+		final double[] rhs = new double[k];
+
+		final double[] trialTau = new double[_components];
+		final double[][] trialBasis = new double[_components][_end];
+		final double[][] trialValues = new double[count][_components + 1];
+
+		double lambda = INITIAL_LAMBDA;
+		double chiSquare =
+			accumulate(pixels, included, values, basis, derivatives, u, v, ga, c, gt);
+		int iterations = 0;
+		while (iterations < MAX_ITERATIONS && !Double.isNaN(chiSquare) &&
+			!Double.isInfinite(chiSquare))
+		{
+			++iterations;
+			boolean improved = false;
+			double trialChiSquare = chiSquare;
+			while (!improved && lambda < MAX_LAMBDA) {
+				// Schur complement of the damped pixel blocks
+				System.arraycopy(c, 0, s, 0, m * m);
+				System.arraycopy(gt, 0, h, 0, m);
+				damp(s, 0, m, lambda);
+				for (int p = 0; p < count; ++p) {
+					solved[p] = false;
+					if (!included[p]) {
+						continue;
+					}
+					final int uOffset = p * k * k;
+					System.arraycopy(u, uOffset, factors, uOffset, k * k);
+					damp(factors, uOffset, k, lambda);
+					if (!Cholesky.decompose(factors, uOffset, k)) {
+						// leave this pixel's amplitudes unchanged
+						continue;
+					}
+					solved[p] = true;
+					final int vOffset = p * k * m;
+					// h -= V' U^-1 ga, s -= V' U^-1 V
+					System.arraycopy(ga, p * k, rhs, 0, k);
+					Cholesky.substitute(factors, uOffset, k, rhs);
+					for (int b = 0; b < m; ++b) {
+						for (int a = 0; a < k; ++a) {
+							h[b] -= v[vOffset + a * m + b] * rhs[a];
+						}
+					}
+					for (int b = 0; b < m; ++b) {
+						for (int a = 0; a < k; ++a) {
+							rhs[a] = v[vOffset + a * m + b];
+						}
+						Cholesky.substitute(factors, uOffset, k, rhs);
+						for (int d = 0; d <= b; ++d) {
+							double sum = 0.0;
+							for (int a = 0; a < k; ++a) {
+								sum += v[vOffset + a * m + d] * rhs[a];
+							}
+							s[b * m + d] -= sum;
+							if (d != b) {
+								s[d * m + b] -= sum;
+							}
+						}
+					}
+				}
+				System.arraycopy(h, 0, delta, 0, m);
+				if (Cholesky.decompose(s, 0, m)) {
+					Cholesky.substitute(s, 0, m, delta);
+					if (step(tau, delta, trialTau)) {
+						// back substitute for the amplitudes
+						for (int p = 0; p < count; ++p) {
+							System.arraycopy(values[p], 0, trialValues[p], 0,
+								_components + 1);
+							if (!solved[p]) {
+								continue;
+							}
+							final int vOffset = p * k * m;
+							for (int a = 0; a < k; ++a) {
+								double sum = ga[p * k + a];
+								for (int b = 0; b < m; ++b) {
+									sum -= v[vOffset + a * m + b] * delta[b];
+								}
+								rhs[a] = sum;
+							}
+							Cholesky.substitute(factors, p * k * k, k, rhs);
+							for (int a = 0; a < k; ++a) {
+								trialValues[p][_linear[a]] += rhs[a];
+							}
+						}
+						computeBasis(trialTau, trialBasis, null);
+						trialChiSquare = 0.0;
+						for (int p = 0; p < count; ++p) {
+							if (included[p]) {
+								final ILocalFitParams pixel = pixels.get(p);
+								trialChiSquare +=
+									objective(pixel.getY(), pixel.getSig(), trialValues[p],
+										trialBasis);
+							}
+						}
+						improved = trialChiSquare < chiSquare;
+					}
+				}
+				lambda = improved ? lambda / 10.0 : lambda * 10.0;
+			}
+			if (!improved) {
+				// no step reduces chi-square: at the minimum
+				break;
+			}
+			System.arraycopy(trialTau, 0, tau, 0, _components);
+			for (int p = 0; p < count; ++p) {
+				System.arraycopy(trialValues[p], 0, values[p], 0, _components + 1);
+			}
+			final double change = chiSquare - trialChiSquare;
+			computeBasis(tau, basis, derivatives);
+			chiSquare =
+				accumulate(pixels, included, values, basis, derivatives, u, v, ga, c,
+					gt);
+			if (change <= CONVERGED * chiSquare) {
+				break;
+			}
+		}
+		setLifetimes(tau);
+		return tau.clone();
+	}
+
+	/**
+	 * Sets the shared lifetimes for subsequent amplitude fits.
+	 *
+	 */
+	public void setLifetimes(final double[] lifetimes) {
+		final double[][] basis = new double[_components][_end];
+		computeBasis(lifetimes, basis, null);
+		_lifetimes = lifetimes.clone();
+		_basis = basis;
+	}
+
+	/**
+	 * Gets the shared lifetimes.
+	 *
+	 */
+	public double[] getLifetimes() {
+		return null == _lifetimes ? null : _lifetimes.clone();
+	}
+
+	/**
+	 * Fits the background and amplitudes of one pixel, given the shared
+	 * lifetimes. Thread-safe.
+	 *
+	 * @return results with chi-square NaN if singular
+	 */
+	public IFitResults fitAmplitudes(final ILocalFitParams pixel) {
+		final double[] given = pixel.getParams();
+		final double[] values = getGivenValues(given);
+		final double[] y = pixel.getY();
+		final double[] sig = pixel.getSig();
+		final double[] params = new double[given.length];
+		final IFitResults result = new FitResults();
+		result.setParams(params);
+		if (!linearFit(y, sig, _basis, values)) {
+			params[0] = Double.NaN;
+			result.setChiSquare(0.0);
+			result.setYFitted(new double[] {});
+			return result;
+		}
+
+		final double chiSquare =
+			objective(y, sig, values, _basis) / (_end - _start - _linear.length);
+		params[0] = chiSquare;
+		params[1] = values[0];
+		for (int j = 0; j < _components; ++j) {
+			params[2 + 2 * j] = values[j + 1];
+			params[3 + 2 * j] = _lifetimes[j];
+		}
+		result.setChiSquare(chiSquare);
+
+		// fitted curve from time zero
+		double[] yFitted = pixel.getYFitted();
+		if (null == yFitted || yFitted.length < _end) {
+			yFitted = new double[_end];
+		}
+		for (int i = 0; i < _end; ++i) {
+			yFitted[i] = model(values, _basis, i);
+		}
+		result.setYFitted(yFitted);
+		return result;
+	}
+
+	/**
+	 * Estimates lifetimes from the triple integral of the summed decays, unless
+	 * fitting starts from the given lifetimes.
+	 *
+	 */
+	private double[] initialLifetimes(final List<ILocalFitParams> pixels) {
+		final double[] given =
+			pixels.isEmpty() ? null : pixels.get(0).getParams();
+		final double[] tau = new double[_components];
+		boolean useGiven = null != given;
+		for (int j = 0; useGiven && j < _components; ++j) {
+			useGiven = given[3 + 2 * j] > 0.0;
+		}
+		if (useGiven && FitAlgorithm.SLIMCURVE_LMA == _fitAlgorithm) {
+			for (int j = 0; j < _components; ++j) {
+				tau[j] = given[3 + 2 * j];
+			}
+			return tau;
+		}
+
+		final int width = (_end - _start) / 3;
+		double d1 = 0.0, d2 = 0.0, d3 = 0.0;
+		for (final ILocalFitParams pixel : pixels) {
+			final double[] y = pixel.getY();
+			for (int i = _transientStart + _start; i < _transientStart + _start +
+				width; ++i)
+			{
+				d1 += y[i];
+				d2 += y[i + width];
+				d3 += y[i + 2 * width];
+			}
+		}
+		final double d12 = d1 - d2;
+		final double d23 = d2 - d3;
+		double single = (_end - _start) * _xInc / 4;
+		if (d12 > d23 && d23 > 0.0) {
+			single = -width * _xInc / Math.log(d23 / d12);
+		}
+
+		// free lifetimes spread around the estimate
+		final double[] spread = SPREAD[_components - 1];
+		for (int j = 0; j < _components; ++j) {
+			tau[j] = single * spread[j];
+		}
+		for (int j = 0; useGiven && j < _components; ++j) {
+			if (!contains(_nonlinear, j)) {
+				tau[j] = given[3 + 2 * j];
+			}
+		}
+		return tau;
+	}
+
+	/**
+	 * Builds the pixel blocks and shared block of the normal equations.
+	 *
+	 * @return chi-square over all included pixels
+	 */
+	private double accumulate(final List<ILocalFitParams> pixels,
+		final boolean[] included, final double[][] values, final double[][] basis,
+		final double[][] derivatives, final double[] u, final double[] v,
+		final double[] ga, final double[] c, final double[] gt)
+	{
+		final int k = _linear.length;
+		final int m = _nonlinear.length;
+		final int n = k + m;
+		final double[] columns = new double[n];
+		final double[] block = new double[n * n];
+		final double[] gradient = new double[n];
+		for (int i = 0; i < m * m; ++i) {
+			c[i] = 0.0;
+		}
+		for (int b = 0; b < m; ++b) {
+			gt[b] = 0.0;
+		}
+		double chiSquare = 0.0;
+		for (int p = 0; p < pixels.size(); ++p) {
+			if (!included[p]) {
+				continue;
+			}
+			final ILocalFitParams pixel = pixels.get(p);
+			final double[] y = pixel.getY();
+			final double[] sig = pixel.getSig();
+			final double[] value = values[p];
+			for (int i = 0; i < n * n; ++i) {
+				block[i] = 0.0;
+			}
+			for (int a = 0; a < n; ++a) {
+				gradient[a] = 0.0;
+			}
+			for (int i = _start; i < _end; ++i) {
+				final double data = y[_transientStart + i];
+				final double f = model(value, basis, i);
+				double weight;
+				double residual;
+				if (NoiseModel.MAXIMUM_LIKELIHOOD == _noiseModel) {
+					if (!(f > 0.0)) {
+						return Double.POSITIVE_INFINITY;
+					}
+					weight = data / (f * f);
+					residual = data / f - 1.0;
+					chiSquare += deviance(data, f);
+				}
+				else {
+					weight = weight(data, f, sig, i);
+					residual = weight * (data - f);
+					chiSquare += weight * (data - f) * (data - f);
+				}
+				for (int a = 0; a < k; ++a) {
+					columns[a] = column(_linear[a], basis, i);
+				}
+				for (int b = 0; b < m; ++b) {
+					final int j = _nonlinear[b];
+					columns[k + b] = value[j + 1] * derivatives[j][i];
+				}
+				for (int a = 0; a < n; ++a) {
+					final double weighted = weight * columns[a];
+					for (int b = 0; b <= a; ++b) {
+						block[a * n + b] += weighted * columns[b];
+					}
+					gradient[a] += residual * columns[a];
+				}
+			}
+			// split into U, V and the shared block
+			for (int a = 0; a < n; ++a) {
+				for (int b = 0; b < a; ++b) {
+					block[b * n + a] = block[a * n + b];
+				}
+			}
+			for (int a = 0; a < k; ++a) {
+				for (int b = 0; b < k; ++b) {
+					u[p * k * k + a * k + b] = block[a * n + b];
+				}
+				for (int b = 0; b < m; ++b) {
+					v[p * k * m + a * m + b] = block[a * n + k + b];
+				}
+				ga[p * k + a] = gradient[a];
+			}
+			for (int a = 0; a < m; ++a) {
+				for (int b = 0; b < m; ++b) {
+					c[a * m + b] += block[(k + a) * n + k + b];
+				}
+				gt[a] += gradient[k + a];
+			}
+		}
+		return chiSquare;
+	}
+
+	/**
+	 * Takes a step in the free lifetimes.
+	 *
+	 * @return whether all lifetimes stay positive
+	 */
+	private boolean step(final double[] tau, final double[] delta,
+		final double[] trialTau)
+	{
+		System.arraycopy(tau, 0, trialTau, 0, _components);
+		for (int b = 0; b < _nonlinear.length; ++b) {
+			trialTau[_nonlinear[b]] += delta[b];
+		}
+		for (final double t : trialTau) {
+			if (!(t > 0.0)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fits the free background and amplitudes by weighted linear least squares.
+	 * Weights that depend on the fit are refined over a few passes, which for
+	 * Poisson noise approaches the maximum likelihood fit.
+	 *
+	 * @param values fixed values given, receives fitted values
+	 * @return whether solved
+	 */
+	private boolean linearFit(final double[] y, final double[] sig,
+		final double[][] basis, final double[] values)
+	{
+		final int k = _linear.length;
+		if (0 == k) {
+			return true;
+		}
+		final boolean fromFit =
+			NoiseModel.POISSON_FIT == _noiseModel ||
+				NoiseModel.GAUSSIAN_FIT == _noiseModel ||
+				NoiseModel.MAXIMUM_LIKELIHOOD == _noiseModel;
+		final int passes = fromFit ? WEIGHT_PASSES : 1;
+		final double[] matrix = new double[k * k];
+		final double[] rhs = new double[k];
+		final double[] columns = new double[k];
+		for (int pass = 0; pass < passes; ++pass) {
+			for (int i = 0; i < k * k; ++i) {
+				matrix[i] = 0.0;
+			}
+			for (int a = 0; a < k; ++a) {
+				rhs[a] = 0.0;
+			}
+			for (int i = _start; i < _end; ++i) {
+				final double data = y[_transientStart + i];
+				final double f = model(values, basis, i);
+				// first pass weighs by the data
+				final double weight =
+					0 == pass && fromFit ? poissonWeight(data) : weight(data, f, sig, i);
+				// target less the fixed part of the model
+				double target = data - f;
+				for (int a = 0; a < k; ++a) {
+					columns[a] = column(_linear[a], basis, i);
+					target += values[_linear[a]] * columns[a];
+				}
+				for (int a = 0; a < k; ++a) {
+					final double weighted = weight * columns[a];
+					for (int b = 0; b <= a; ++b) {
+						matrix[a * k + b] += weighted * columns[b];
+					}
+					rhs[a] += weighted * target;
+				}
+			}
+			for (int a = 0; a < k; ++a) {
+				for (int b = 0; b < a; ++b) {
+					matrix[b * k + a] = matrix[a * k + b];
+				}
+			}
+			if (!Cholesky.decompose(matrix, 0, k)) {
+				return false;
+			}
+			Cholesky.substitute(matrix, 0, k, rhs);
+			for (int a = 0; a < k; ++a) {
+				values[_linear[a]] = rhs[a];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets chi-square of one pixel, or the Poisson deviance for maximum
+	 * likelihood estimation.
+	 *
+	 */
+	private double objective(final double[] y, final double[] sig,
+		final double[] values, final double[][] basis)
+	{
+		double sum = 0.0;
+		for (int i = _start; i < _end; ++i) {
+			final double data = y[_transientStart + i];
+			final double f = model(values, basis, i);
+			if (NoiseModel.MAXIMUM_LIKELIHOOD == _noiseModel) {
+				if (!(f > 0.0)) {
+					return Double.POSITIVE_INFINITY;
+				}
+				sum += deviance(data, f);
+			}
+			else {
+				sum += weight(data, f, sig, i) * (data - f) * (data - f);
+			}
+		}
+		return sum;
+	}
+
+	private static double deviance(final double data, final double f) {
+		double deviance = 2.0 * (f - data);
+		if (data > 0.0) {
+			deviance -= 2.0 * data * Math.log(f / data);
+		}
+		return deviance;
+	}
+
+	/**
+	 * Gets the weight of a squared residual, one over the variance.
+	 *
+	 */
+	private double weight(final double data, final double f,
+		final double[] sig, final int i)
+	{
+		switch (_noiseModel) {
+			case CONST:
+				return null == sig ? 1.0 : 1.0 / (sig[0] * sig[0]);
+			case GIVEN:
+				if (null == sig) {
+					return 1.0;
+				}
+				final double s = sig[_transientStart + i];
+				return 1.0 / (s * s);
+			case POISSON_DATA:
+				return poissonWeight(data);
+			default:
+				// variance from the fit, not below one
+				return poissonWeight(f);
+		}
+	}
+
+	private static double poissonWeight(final double variance) {
+		return variance > 1.0 ? 1.0 / variance : 1.0;
+	}
+
+	private double model(final double[] values, final double[][] basis,
+		final int i)
+	{
+		double f = values[0];
+		for (int j = 0; j < _components; ++j) {
+			f += values[j + 1] * basis[j][i];
+		}
+		return f;
+	}
+
+	private static double column(final int linear, final double[][] basis,
+		final int i)
+	{
+		return 0 == linear ? 1.0 : basis[linear - 1][i];
+	}
+
+	/**
+	 * Computes exp(-t / tau), or its convolution, and optionally its derivative
+	 * with respect to tau, per component.
+	 *
+	 */
+	private void computeBasis(final double[] tau, final double[][] basis,
+		final double[][] derivatives)
+	{
+		for (int j = 0; j < _components; ++j) {
+			final double[] e = basis[j];
+			final double[] d = null == derivatives ? null : derivatives[j];
+			if (null != _response) {
+				_response.convolveExponential(_xInc, tau[j], e, d);
+				continue;
+			}
+			final double decay = Math.exp(-_xInc / tau[j]);
+			double value = 1.0;
+			for (int i = 0; i < _end; ++i) {
+				e[i] = value;
+				value *= decay;
+			}
+			if (null != d) {
+				final double scale = _xInc / (tau[j] * tau[j]);
+				for (int i = 0; i < _end; ++i) {
+					d[i] = scale * i * e[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets background and amplitudes from parameters, as Z A1 A2 ...
+	 *
+	 */
+	private double[] getGivenValues(final double[] params) {
+		final double[] values = new double[_components + 1];
+		values[0] = params[1];
+		for (int j = 0; j < _components; ++j) {
+			values[j + 1] = params[2 + 2 * j];
+		}
+		return values;
+	}
+
+	private static int getComponents(final FitFunction fitFunction) {
+		if (null == fitFunction) {
+			return 0;
+		}
+		switch (fitFunction) {
+			case SINGLE_EXPONENTIAL:
+				return 1;
+			case DOUBLE_EXPONENTIAL:
+				return 2;
+			case TRIPLE_EXPONENTIAL:
+				return 3;
+			default:
+				return 0;
+		}
+	}
+
+	private static boolean isFree(final boolean[] free, final int index) {
+		return null == free || index >= free.length || free[index];
+	}
+
+	private static boolean contains(final int[] array, final int value) {
+		for (final int element : array) {
+			if (element == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Multiplies the diagonal of a symmetric matrix by one plus lambda.
+	 *
+	 */
+	private static void damp(final double[] matrix, final int offset,
+		final int n, final double lambda)
+	{
+		for (int a = 0; a < n; ++a) {
+			matrix[offset + a * n + a] *= 1.0 + lambda;
+		}
+	}
+}
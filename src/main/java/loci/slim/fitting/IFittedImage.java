@@ -73,6 +73,12 @@ public interface IFittedImage {
 	 */
 	public void setPixel(int[] location, double[] value);
 
+	/**
+	 * Sets pixel values for a chunk of locations.
+	 *
+	 */
+	public void setPixels(int[][] locations, double[][] values, int count);
+
 	/**
 	 * Gets associated image.
 	 *
@@ -0,0 +1,249 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import loci.slim.Excitation;
+import loci.slim.heuristics.ExcitationScaler;
+
+/**
+ * Convolves decay models with an instrument response.
+ * <p>
+ * Exponential models are convolved recursively, in time proportional to the
+ * number of bins. Other models are convolved directly or, when the instrument
+ * response is long, by FFT with the response spectrum computed once here.
+ * <p>
+ * Convolution gives <code>result[i] = sum model[i - j] * values[j]</code>, for
+ * j from zero to the lesser of i and the last instrument response value.
+ * <p>
+ * Immutable; may be shared by threads, created once per fit.
+ */
+public class InstrumentResponse {
+
+	// estimated cost of a complex FFT multiply-add relative to a direct one
+	private static final int FFT_COST = 6;
+	private final double[] _values;
+	private final int _length;
+	private final double _sum;
+	private final int _fftSize;
+	private final int[] _reversed;
+	private final double[] _cos;
+	private final double[] _sin;
+	private final double[] _spectrumReal;
+	private final double[] _spectrumImag;
+
+	/**
+	 * Creates an instrument response for convolving models.
+	 *
+	 * @param values instrument response, from time zero
+	 * @param length number of bins convolved
+	 */
+	public InstrumentResponse(final double[] values, final int length) {
+		_values = values;
+		_length = length;
+		double sum = 0.0;
+		for (final double value : values) {
+			sum += value;
+		}
+		_sum = sum;
+
+		// FFT size avoids wrapping around into the convolved bins
+		int size = 1;
+		int log2 = 0;
+		while (size < length + values.length - 1) {
+			size <<= 1;
+			++log2;
+		}
+		if ((long) length * values.length <= (long) FFT_COST * size * log2) {
+			// direct convolution is cheaper
+			_fftSize = 0;
+			_reversed = null;
+			_cos = _sin = _spectrumReal = _spectrumImag = null;
+		}
+		else {
+			_fftSize = size;
+			_reversed = new int[size];
+			for (int i = 0; i < size; ++i) {
+				_reversed[i] = Integer.reverse(i) >>> (Integer.SIZE - log2);
+			}
+			_cos = new double[size / 2];
+			_sin = new double[size / 2];
+			for (int i = 0; i < size / 2; ++i) {
+				final double angle = -2.0 * Math.PI * i / size;
+				_cos[i] = Math.cos(angle);
+				_sin[i] = Math.sin(angle);
+			}
+			_spectrumReal = new double[size];
+			_spectrumImag = new double[size];
+			System.arraycopy(values, 0, _spectrumReal, 0, values.length);
+			fft(_spectrumReal, _spectrumImag, false);
+		}
+	}
+
+	/**
+	 * Creates an instrument response from an excitation, cut by its start and
+	 * stop cursors, less its base and normalized to sum to one.
+	 *
+	 * @param length number of bins convolved
+	 * @return instrument response or null if none
+	 */
+	public static InstrumentResponse fromExcitation(final Excitation excitation,
+		final int length)
+	{
+		final double[] values =
+			ExcitationScaler.scale(excitation.getValues(), excitation.getStart(),
+				excitation.getStop(), excitation.getBase(), excitation.getTimeInc(),
+				length);
+		return null == values ? null : new InstrumentResponse(values, length);
+	}
+
+	/**
+	 * Gets the instrument response values.
+	 *
+	 */
+	public double[] getValues() {
+		return _values;
+	}
+
+	/**
+	 * Gets the number of bins convolved.
+	 *
+	 */
+	public int getLength() {
+		return _length;
+	}
+
+	/**
+	 * Gets the sum of the instrument response values.
+	 *
+	 */
+	public double getSum() {
+		return _sum;
+	}
+
+	/**
+	 * Convolves exp(-t / tau), sampled at multiples of xInc, with the
+	 * instrument response.
+	 *
+	 * @param value receives the convolved model
+	 * @param derivative receives the derivative with respect to tau, or null
+	 */
+	public void convolveExponential(final double xInc, final double tau,
+		final double[] value, final double[] derivative)
+	{
+		final double decay = Math.exp(-xInc / tau);
+		final int count = Math.min(_values.length, _length);
+		// value[i] = sum of values[j] * decay^(i - j)
+		// moment[i] = sum of values[j] * (i - j) * decay^(i - j)
+		double previous = 0.0;
+		double moment = 0.0;
+		final double scale = xInc / (tau * tau);
+		for (int i = 0; i < _length; ++i) {
+			moment = decay * (moment + previous);
+			previous = decay * previous;
+			if (i < count) {
+				previous += _values[i];
+			}
+			value[i] = previous;
+			if (null != derivative) {
+				derivative[i] = scale * moment;
+			}
+		}
+	}
+
+	/**
+	 * Convolves a model with the instrument response.
+	 *
+	 * @param model at least as long as the number of bins convolved
+	 * @param result receives the convolved model
+	 */
+	public void convolve(final double[] model, final double[] result) {
+		if (0 == _fftSize) {
+			final int count = _values.length;
+			for (int i = 0; i < _length; ++i) {
+				final int last = Math.min(count - 1, i);
+				double sum = 0.0;
+				for (int j = 0; j <= last; ++j) {
+					sum += model[i - j] * _values[j];
+				}
+				result[i] = sum;
+			}
+			return;
+		}
+
+		final double[] real = new double[_fftSize];
+		final double[] imag = new double[_fftSize];
+		System.arraycopy(model, 0, real, 0, _length);
+		fft(real, imag, false);
+		for (int i = 0; i < _fftSize; ++i) {
+			final double re = real[i] * _spectrumReal[i] - imag[i] * _spectrumImag[i];
+			final double im = real[i] * _spectrumImag[i] + imag[i] * _spectrumReal[i];
+			real[i] = re;
+			imag[i] = im;
+		}
+		fft(real, imag, true);
+		final double scale = 1.0 / _fftSize;
+		for (int i = 0; i < _length; ++i) {
+			result[i] = real[i] * scale;
+		}
+	}
+
+	/**
+	 * In-place radix-2 FFT; the inverse is not scaled.
+	 *
+	 */
+	private void fft(final double[] real, final double[] imag,
+		final boolean inverse)
+	{
+		final int size = _fftSize;
+		for (int i = 0; i < size; ++i) {
+			final int j = _reversed[i];
+			if (j > i) {
+				double tmp = real[i];
+				real[i] = real[j];
+				real[j] = tmp;
+				tmp = imag[i];
+				imag[i] = imag[j];
+				imag[j] = tmp;
+			}
+		}
+		final double sign = inverse ? -1.0 : 1.0;
+		for (int half = 1; half < size; half <<= 1) {
+			final int step = size / (2 * half);
+			for (int start = 0; start < size; start += 2 * half) {
+				for (int k = 0; k < half; ++k) {
+					final double wr = _cos[k * step];
+					final double wi = sign * _sin[k * step];
+					final int even = start + k;
+					final int odd = even + half;
+					final double tr = real[odd] * wr - imag[odd] * wi;
+					final double ti = real[odd] * wi + imag[odd] * wr;
+					real[odd] = real[even] - tr;
+					imag[odd] = imag[even] - ti;
+					real[even] += tr;
+					imag[even] += ti;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,868 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import loci.curvefitter.AbstractCurveFitter;
+import loci.curvefitter.ICurveFitData;
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.curvefitter.IFitterEstimator;
+
+/**
+ * Pure Java Levenberg-Marquardt curve fitter, for use where the native SLIM
+ * Curve library is unavailable or JNI overhead matters.
+ * <p>
+ * Fits single, double and triple exponentials and stretched exponentials with
+ * analytic derivatives, optionally convolved with the instrument response.
+ * Honours the free parameters and the noise models; maximum likelihood
+ * estimation minimizes the Poisson deviance. The RLD algorithm gives the
+ * triple integral estimate that otherwise starts the fit, with the lifetime
+ * looked up in a table that allows for the instrument response, and the LMA
+ * algorithm starts from the given parameters when they hold lifetimes.
+ * <p>
+ * With variable projection only the lifetimes, and the stretched exponential's
+ * heterogeneity, are iterated. The background and amplitudes depend linearly
+ * on them and are solved by weighted least squares at each step, and the
+ * derivatives are projected off the span of the linear terms (Kaufman's
+ * approximation). With fewer nonlinear parameters multi-exponential fits
+ * converge faster and more reliably. Maximum likelihood estimation then
+ * uses weights from the fit.
+ * <p>
+ * Thread-safe. Each thread reuses its own workspace, and the model,
+ * derivatives and sums are computed in simple loops over arrays of bins.
+ * Time zero is the transient start.
+ */
+public class LMACurveFitter extends AbstractCurveFitter {
+
+	/** Returned when the fit window is too small. */
+	public static final int BAD_WINDOW = -1;
+	/** Returned when the fit diverged. */
+	public static final int DIVERGED = -2;
+	public static final int MAX_ITERATIONS = 100;
+	private static final double INITIAL_LAMBDA = 0.001;
+	private static final double MAX_LAMBDA = 1.0e10;
+	private static final double CONVERGED = 1.0e-6;
+	private static final int MAX_PARAMS = 7;
+	private static final int MAX_NONLINEAR = 3;
+	// lifetimes of components relative to the single lifetime estimate
+	private static final double[][] SPREAD = { { 1.0 }, { 1.5, 0.4 },
+		{ 2.0, 0.8, 0.25 } };
+	private final boolean _variableProjection;
+	private volatile LifetimeLookupTable _lookupTable;
+	private final ThreadLocal<Workspace> _workspace =
+		new ThreadLocal<Workspace>()
+		{
+
+			@Override
+			protected Workspace initialValue() {
+				return new Workspace();
+			}
+		};
+
+	/**
+	 * Creates a fitter that iterates over all free parameters.
+	 */
+	public LMACurveFitter() {
+		this(false);
+	}
+
+	/**
+	 * Creates a fitter.
+	 *
+	 * @param variableProjection whether to iterate over the nonlinear
+	 *          parameters alone
+	 */
+	public LMACurveFitter(final boolean variableProjection) {
+		_variableProjection = variableProjection;
+	}
+
+	/**
+	 * Whether the background and amplitudes are solved linearly at each step.
+	 *
+	 */
+	public boolean getVariableProjection() {
+		return _variableProjection;
+	}
+
+	/**
+	 * Fits each data set in turn.
+	 *
+	 * @return iterations of the last fit, or a negative error code if any
+	 *         failed
+	 */
+	@Override
+	public int fitData(final ICurveFitData[] dataArray) {
+		int returnValue = 0;
+		for (final ICurveFitData data : dataArray) {
+			final int result = fit(data);
+			if (returnValue >= 0) {
+				returnValue = result;
+			}
+		}
+		return returnValue;
+	}
+
+	private int fit(final ICurveFitData data) {
+		final double[] y = data.getAdjustedTransient();
+		final int start = data.getAdjustedDataStartIndex();
+		final int end = data.getAdjustedTransEndIndex();
+		final double[] params = data.getParams();
+		final int count = params.length - 1;
+		if (end - start <= count || count > MAX_PARAMS) {
+			params[0] = Double.NaN;
+			return BAD_WINDOW;
+		}
+
+		final Workspace w = _workspace.get();
+		w.setUp(this, y, data.getSig(), start, end, count);
+
+		// fitted parameters, less chi-square
+		final double[] p = w.params;
+		System.arraycopy(params, 1, p, 0, count);
+		if (FitAlgorithm.SLIMCURVE_LMA != getFitAlgorithm() || !w.isValid(p)) {
+			estimate(w, p);
+		}
+
+		int iterations = 0;
+		if (FitAlgorithm.SLIMCURVE_RLD != getFitAlgorithm()) {
+			// projection needs both linear and nonlinear parameters free
+			iterations =
+				_variableProjection && w.linearCount > 0 && w.nonlinearCount > 0
+					? project(w) : marquardt(w);
+		}
+		if (iterations < 0) {
+			params[0] = Double.NaN;
+			return iterations;
+		}
+
+		// report reduced chi-square and the fitted curve from time zero
+		w.evaluate(p, w.model, false, 0);
+		final double chiSquare =
+			w.objective(w.model) / (end - start - w.freeCount);
+		params[0] = chiSquare;
+		System.arraycopy(p, 0, params, 1, count);
+		data.setChiSquare(chiSquare);
+		final double[] fitted = data.getYFitted();
+		if (null != fitted) {
+			System.arraycopy(w.model, 0, fitted, 0, Math.min(end, fitted.length));
+		}
+		return iterations;
+	}
+
+	/**
+	 * Estimates starting values of the free parameters: a single lifetime from
+	 * the triple integral, then background and amplitude by linear least
+	 * squares. Multiple components spread around that lifetime.
+	 */
+	private void estimate(final Workspace w, final double[] p) {
+		final int start = w.start;
+		double tau = getLookupTable(w).getLifetime(w.y);
+		if (!(tau > 0.0)) {
+			final IFitterEstimator estimator = getEstimator();
+			tau = null == estimator ? (w.end - start) * w.xInc / 4 : estimator
+				.getDefaultT();
+		}
+
+		final int components = w.stretched ? 1 : (w.paramCount - 1) / 2;
+		final double[] spread = SPREAD[components - 1];
+		for (int k = 0; k < components; ++k) {
+			final int t = 2 + 2 * k;
+			if (w.free[t]) {
+				p[t] = tau * spread[k];
+			}
+		}
+		if (w.stretched && w.free[3]) {
+			p[3] = 1.0;
+		}
+
+		// with unit amplitudes the model is the shape to scale
+		final double[] amplitudes = new double[components];
+		for (int k = 0; k < components; ++k) {
+			amplitudes[k] = p[1 + 2 * k];
+			p[1 + 2 * k] = 1.0 / components;
+		}
+		final double z = p[0];
+		p[0] = 0.0;
+		w.evaluate(p, w.model, false, start);
+		p[0] = z;
+		double sumShape = 0.0, sumShape2 = 0.0, sumY = 0.0, sumShapeY = 0.0;
+		for (int i = start; i < w.end; ++i) {
+			final double shape = w.model[i];
+			sumShape += shape;
+			sumShape2 += shape * shape;
+			sumY += w.y[i];
+			sumShapeY += shape * w.y[i];
+		}
+		final int n = w.end - start;
+		double scale;
+		final double determinant = n * sumShape2 - sumShape * sumShape;
+		if (w.free[0] && determinant > 0.0) {
+			scale = (n * sumShapeY - sumShape * sumY) / determinant;
+			p[0] = Math.max((sumY - scale * sumShape) / n, 0.0);
+		}
+		else {
+			scale = (sumShapeY - z * sumShape) / sumShape2;
+		}
+		if (!(scale > 0.0)) {
+			scale = sumY / sumShape;
+		}
+		for (int k = 0; k < components; ++k) {
+			final int a = 1 + 2 * k;
+			p[a] = w.free[a] ? scale / components : amplitudes[k];
+		}
+	}
+
+	/**
+	 * Gets the lifetime lookup table for the window and prompt, shared by all
+	 * threads and rebuilt when they change.
+	 */
+	private LifetimeLookupTable getLookupTable(final Workspace w) {
+		LifetimeLookupTable table = _lookupTable;
+		if (null == table || !table.isFor(w.xInc, w.start, w.end, w.prompt)) {
+			table = new LifetimeLookupTable(w.xInc, w.start, w.end, w.prompt);
+			_lookupTable = table;
+		}
+		return table;
+	}
+
+	/**
+	 * Levenberg-Marquardt iterations.
+	 *
+	 * @return iterations or error code
+	 */
+	private int marquardt(final Workspace w) {
+		final int n = w.freeCount;
+		if (0 == n) {
+			return 0;
+		}
+		final double[] p = w.params;
+		final double[] trial = w.trial;
+		double lambda = INITIAL_LAMBDA;
+		w.evaluate(p, w.model, true, w.start);
+		double chiSquare = w.objective(w.model);
+		if (!isFinite(chiSquare)) {
+			return DIVERGED;
+		}
+		int iterations = 0;
+		while (iterations < MAX_ITERATIONS) {
+			++iterations;
+			w.normalEquations();
+			boolean improved = false;
+			double trialChiSquare = chiSquare;
+			while (!improved && lambda < MAX_LAMBDA) {
+				if (w.solve(lambda, n)) {
+					System.arraycopy(p, 0, trial, 0, w.paramCount);
+					for (int j = 0; j < n; ++j) {
+						trial[w.freeIndex[j]] += w.delta[j];
+					}
+					if (w.isValid(trial)) {
+						w.evaluate(trial, w.trialModel, false, w.start);
+						trialChiSquare = w.objective(w.trialModel);
+						improved = trialChiSquare < chiSquare;
+					}
+				}
+				lambda = improved ? lambda / 10.0 : lambda * 10.0;
+			}
+			if (!improved) {
+				// no step reduces chi-square: at the minimum
+				break;
+			}
+			System.arraycopy(trial, 0, p, 0, w.paramCount);
+			final double change = chiSquare - trialChiSquare;
+			chiSquare = trialChiSquare;
+			if (change <= CONVERGED * chiSquare) {
+				break;
+			}
+			w.evaluate(p, w.model, true, w.start);
+		}
+		return iterations;
+	}
+
+	/**
+	 * Variable projection: Levenberg-Marquardt iterations over the nonlinear
+	 * parameters, solving for the linear ones at each step. Weights that depend
+	 * on the fit are updated once per iteration.
+	 *
+	 * @return iterations or error code
+	 */
+	private int project(final Workspace w) {
+		final int n = w.nonlinearCount;
+		final double[] p = w.params;
+		final double[] trial = w.trial;
+		double lambda = INITIAL_LAMBDA;
+		w.evaluate(p, w.model, true, w.start);
+		w.weigh(w.model);
+		if (!w.linearSolve(p, w.model)) {
+			return DIVERGED;
+		}
+		w.evaluate(p, w.model, true, w.start);
+		int iterations = 0;
+		while (iterations < MAX_ITERATIONS) {
+			++iterations;
+			w.weigh(w.model);
+			final double chiSquare = w.weightedSum(w.model);
+			// don't let a component change sign to cancel another
+			final boolean positive = w.hasPositiveAmplitudes(p);
+			if (!w.projectedEquations()) {
+				break;
+			}
+			boolean improved = false;
+			double trialChiSquare = chiSquare;
+			while (!improved && lambda < MAX_LAMBDA) {
+				if (w.solve(lambda, n)) {
+					System.arraycopy(p, 0, trial, 0, w.paramCount);
+					for (int j = 0; j < n; ++j) {
+						trial[w.nonlinearIndex[j]] += w.delta[j];
+					}
+					// columns now follow the trial; the equations are solved
+					if (w.isValid(trial)) {
+						w.evaluate(trial, w.trialModel, true, w.start);
+						if (w.linearSolve(trial, w.trialModel) &&
+							(!positive || w.hasPositiveAmplitudes(trial)))
+						{
+							trialChiSquare = w.weightedSum(w.trialModel);
+							improved = trialChiSquare < chiSquare;
+						}
+					}
+				}
+				lambda = improved ? lambda / 10.0 : lambda * 10.0;
+			}
+			if (!improved) {
+				// no step reduces chi-square: at the minimum
+				break;
+			}
+			System.arraycopy(trial, 0, p, 0, w.paramCount);
+			w.evaluate(p, w.model, true, w.start);
+			if (chiSquare - trialChiSquare <= CONVERGED * trialChiSquare) {
+				break;
+			}
+		}
+		return iterations;
+	}
+
+	private static boolean isFinite(final double value) {
+		return !Double.isNaN(value) && !Double.isInfinite(value);
+	}
+
+	/**
+	 * Per-thread arrays, reused while the number of bins is unchanged.
+	 */
+	private static class Workspace {
+
+		double[] y;
+		double[] sig;
+		int start;
+		int end;
+		double xInc;
+		NoiseModel noiseModel;
+		boolean stretched;
+		InstrumentResponse response;
+		final boolean[] free = new boolean[MAX_PARAMS];
+		final int[] freeIndex = new int[MAX_PARAMS];
+		int freeCount;
+		// free background and amplitudes, and free lifetimes and heterogeneity
+		final int[] linearIndex = new int[MAX_PARAMS];
+		int linearCount;
+		final int[] nonlinearIndex = new int[MAX_NONLINEAR];
+		int nonlinearCount;
+		int paramCount;
+		final double[] params = new double[MAX_PARAMS];
+		final double[] trial = new double[MAX_PARAMS];
+		final double[] alpha = new double[MAX_PARAMS * MAX_PARAMS];
+		final double[] factor = new double[MAX_PARAMS * MAX_PARAMS];
+		final double[] linearFactor = new double[MAX_PARAMS * MAX_PARAMS];
+		final double[] coefficients = new double[MAX_PARAMS];
+		final double[] beta = new double[MAX_PARAMS];
+		final double[] delta = new double[MAX_PARAMS];
+		double[] times = new double[0];
+		double[] model;
+		double[] trialModel;
+		double[] shape;
+		double[] shapeDerivative;
+		double[] weight;
+		double[] residual;
+		final double[][] columns = new double[MAX_PARAMS][];
+		final double[][] projected = new double[MAX_NONLINEAR][];
+		private double[] prompt;
+
+		void setUp(final LMACurveFitter fitter, final double[] y,
+			final double[] sig, final int start, final int end, final int count)
+		{
+			this.y = y;
+			this.sig = sig;
+			this.start = start;
+			this.end = end;
+			xInc = fitter.getXInc();
+			noiseModel = fitter.getNoiseModel();
+			stretched = FitFunction.STRETCHED_EXPONENTIAL == fitter.getFitFunction();
+			paramCount = count;
+			if (times.length < end || times[1] != xInc) {
+				final int length = Math.max(end, 2);
+				times = new double[length];
+				for (int i = 0; i < length; ++i) {
+					times[i] = i * xInc;
+				}
+				model = new double[length];
+				trialModel = new double[length];
+				shape = new double[length];
+				shapeDerivative = new double[length];
+				weight = new double[length];
+				residual = new double[length];
+				for (int j = 0; j < MAX_PARAMS; ++j) {
+					columns[j] = new double[length];
+				}
+				for (int j = 0; j < MAX_NONLINEAR; ++j) {
+					projected[j] = new double[length];
+				}
+			}
+
+			// reuse the instrument response while the prompt is unchanged
+			final double[] instrumentResponse = fitter.getInstrumentResponse(1);
+			if (null == instrumentResponse) {
+				response = null;
+			}
+			else if (null == response || prompt != instrumentResponse ||
+				response.getLength() != end)
+			{
+				response = new InstrumentResponse(instrumentResponse, end);
+			}
+			prompt = instrumentResponse;
+
+			final boolean[] given = fitter.getFree();
+			freeCount = 0;
+			linearCount = 0;
+			nonlinearCount = 0;
+			for (int j = 0; j < count; ++j) {
+				free[j] = null == given || j >= given.length || given[j];
+				if (free[j]) {
+					freeIndex[freeCount++] = j;
+					if (isLinear(j)) {
+						linearIndex[linearCount++] = j;
+					}
+					else {
+						nonlinearIndex[nonlinearCount++] = j;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Whether the free amplitudes are positive.
+		 *
+		 */
+		boolean hasPositiveAmplitudes(final double[] p) {
+			for (int a = 0; a < linearCount; ++a) {
+				final int index = linearIndex[a];
+				if (0 != index && !(p[index] > 0.0)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Whether the model is linear in a parameter: the background and the
+		 * amplitudes.
+		 *
+		 */
+		private boolean isLinear(final int index) {
+			return stretched ? index < 2 : 0 == index || 1 == index % 2;
+		}
+
+		/**
+		 * Whether parameters are within their domain.
+		 *
+		 */
+		boolean isValid(final double[] p) {
+			if (stretched) {
+				return p[2] > 0.0 && p[3] > 0.0;
+			}
+			for (int t = 2; t < paramCount; t += 2) {
+				if (!(p[t] > 0.0)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Computes the model and optionally its derivatives, as columns, from a
+		 * given bin to the end.
+		 *
+		 */
+		void evaluate(final double[] p, final double[] f,
+			final boolean derivatives, final int from)
+		{
+			final double z = p[0];
+			for (int i = from; i < end; ++i) {
+				f[i] = z;
+			}
+			if (derivatives && free[0]) {
+				final double[] column = columns[0];
+				for (int i = from; i < end; ++i) {
+					column[i] = 1.0;
+				}
+			}
+			if (stretched) {
+				stretchedExponential(p, f, derivatives, from);
+				return;
+			}
+			for (int a = 1; a < paramCount; a += 2) {
+				exponential(p[a], p[a + 1], a, f, derivatives, from);
+			}
+		}
+
+		/**
+		 * Adds A exp(-t / tau), or its convolution, to the model.
+		 *
+		 */
+		private void exponential(final double amplitude, final double tau,
+			final int a, final double[] f, final boolean derivatives, final int from)
+		{
+			final double[] e = shape;
+			final double[] de = shapeDerivative;
+			int first = from;
+			if (null != response) {
+				// the convolution needs the whole history
+				response.convolveExponential(xInc, tau, e, de);
+				first = 0;
+			}
+			else {
+				final double decay = Math.exp(-xInc / tau);
+				double value = Math.exp(-from * xInc / tau);
+				for (int i = from; i < end; ++i) {
+					e[i] = value;
+					value *= decay;
+				}
+				final double scale = 1.0 / (tau * tau);
+				for (int i = from; i < end; ++i) {
+					de[i] = scale * times[i] * e[i];
+				}
+			}
+			for (int i = from; i < end; ++i) {
+				f[i] += amplitude * e[i];
+			}
+			if (derivatives) {
+				if (free[a]) {
+					System.arraycopy(e, first, columns[a], first, end - first);
+				}
+				if (free[a + 1]) {
+					final double[] column = columns[a + 1];
+					for (int i = from; i < end; ++i) {
+						column[i] = amplitude * de[i];
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds A exp(-(t / tau)^(1 / h)), or its convolution, to the model.
+		 *
+		 */
+		private void stretchedExponential(final double[] p, final double[] f,
+			final boolean derivatives, final int from)
+		{
+			final double amplitude = p[1];
+			final double tau = p[2];
+			final double h = p[3];
+			final int first = null == response ? from : 0;
+			final double[] e = shape;
+			final double[] dTau = columns[2];
+			final double[] dH = columns[3];
+			for (int i = first; i < end; ++i) {
+				double value = 1.0;
+				double u = 0.0;
+				double log = 0.0;
+				if (times[i] > 0.0) {
+					log = Math.log(times[i] / tau);
+					u = Math.exp(log / h);
+					value = Math.exp(-u);
+				}
+				e[i] = value;
+				if (derivatives) {
+					dTau[i] = amplitude * value * u / (h * tau);
+					dH[i] = amplitude * value * u * log / (h * h);
+				}
+			}
+			if (null != response) {
+				convolve(e);
+				if (derivatives) {
+					convolve(dTau);
+					convolve(dH);
+				}
+			}
+			for (int i = from; i < end; ++i) {
+				f[i] += amplitude * e[i];
+			}
+			if (derivatives && free[1]) {
+				System.arraycopy(e, from, columns[1], from, end - from);
+			}
+		}
+
+		private void convolve(final double[] values) {
+			response.convolve(values, shapeDerivative);
+			System.arraycopy(shapeDerivative, 0, values, 0, end);
+		}
+
+		/**
+		 * Gets chi-square for the noise model, or the Poisson deviance for
+		 * maximum likelihood estimation.
+		 *
+		 */
+		double objective(final double[] f) {
+			double sum = 0.0;
+			switch (noiseModel) {
+				case MAXIMUM_LIKELIHOOD:
+					for (int i = start; i < end; ++i) {
+						if (!(f[i] > 0.0)) {
+							return Double.POSITIVE_INFINITY;
+						}
+						sum += f[i] - y[i];
+						if (y[i] > 0.0) {
+							sum -= y[i] * Math.log(f[i] / y[i]);
+						}
+					}
+					return 2.0 * sum;
+				default:
+					weigh(f);
+					for (int i = start; i < end; ++i) {
+						final double r = y[i] - f[i];
+						sum += weight[i] * r * r;
+					}
+					return sum;
+			}
+		}
+
+		/**
+		 * Sets weights of squared residuals, one over the variance.
+		 *
+		 */
+		void weigh(final double[] f) {
+			switch (noiseModel) {
+				case CONST:
+					final double constant = null == sig ? 1.0 : 1.0 / (sig[0] * sig[0]);
+					for (int i = start; i < end; ++i) {
+						weight[i] = constant;
+					}
+					break;
+				case GIVEN:
+					for (int i = start; i < end; ++i) {
+						weight[i] = null == sig ? 1.0 : 1.0 / (sig[i] * sig[i]);
+					}
+					break;
+				case POISSON_DATA:
+					for (int i = start; i < end; ++i) {
+						weight[i] = y[i] > 1.0 ? 1.0 / y[i] : 1.0;
+					}
+					break;
+				default:
+					// variance from the fit, not below one
+					for (int i = start; i < end; ++i) {
+						weight[i] = f[i] > 1.0 ? 1.0 / f[i] : 1.0;
+					}
+			}
+		}
+
+		/**
+		 * Builds the curvature matrix and gradient from the current model and
+		 * its derivatives.
+		 *
+		 */
+		void normalEquations() {
+			if (NoiseModel.MAXIMUM_LIKELIHOOD == noiseModel) {
+				for (int i = start; i < end; ++i) {
+					final double f = model[i];
+					weight[i] = y[i] / (f * f);
+					residual[i] = y[i] / f - 1.0;
+				}
+			}
+			else {
+				weigh(model);
+				for (int i = start; i < end; ++i) {
+					residual[i] = weight[i] * (y[i] - model[i]);
+				}
+			}
+			for (int j = 0; j < freeCount; ++j) {
+				final double[] cj = columns[freeIndex[j]];
+				for (int k = 0; k <= j; ++k) {
+					final double[] ck = columns[freeIndex[k]];
+					double sum = 0.0;
+					for (int i = start; i < end; ++i) {
+						sum += weight[i] * cj[i] * ck[i];
+					}
+					alpha[j * MAX_PARAMS + k] = sum;
+				}
+				double sum = 0.0;
+				for (int i = start; i < end; ++i) {
+					sum += residual[i] * cj[i];
+				}
+				beta[j] = sum;
+			}
+		}
+
+		/**
+		 * Gets the sum of squared residuals with the current weights.
+		 *
+		 */
+		double weightedSum(final double[] f) {
+			double sum = 0.0;
+			for (int i = start; i < end; ++i) {
+				final double r = y[i] - f[i];
+				sum += weight[i] * r * r;
+			}
+			return sum;
+		}
+
+		/**
+		 * Factors the normal equations of the free linear parameters, with the
+		 * current columns and weights.
+		 *
+		 * @return whether positive definite
+		 */
+		private boolean factorLinear() {
+			final int k = linearCount;
+			for (int a = 0; a < k; ++a) {
+				final double[] ca = columns[linearIndex[a]];
+				for (int b = 0; b <= a; ++b) {
+					final double[] cb = columns[linearIndex[b]];
+					double sum = 0.0;
+					for (int i = start; i < end; ++i) {
+						sum += weight[i] * ca[i] * cb[i];
+					}
+					linearFactor[a * k + b] = sum;
+				}
+			}
+			return Cholesky.decompose(linearFactor, 0, k);
+		}
+
+		/**
+		 * Solves for the free linear parameters by weighted least squares, with
+		 * the columns of the current nonlinear parameters, and updates the model.
+		 *
+		 * @return whether solved
+		 */
+		boolean linearSolve(final double[] p, final double[] f) {
+			final int k = linearCount;
+			if (!factorLinear()) {
+				return false;
+			}
+			// fit what the fixed parameters leave
+			for (int a = 0; a < k; ++a) {
+				final double[] ca = columns[linearIndex[a]];
+				double sum = 0.0;
+				for (int i = start; i < end; ++i) {
+					sum += weight[i] * ca[i] * (y[i] - f[i]);
+				}
+				coefficients[a] = sum;
+			}
+			Cholesky.substitute(linearFactor, 0, k, coefficients);
+			for (int a = 0; a < k; ++a) {
+				final double change = coefficients[a];
+				if (!isFinite(change)) {
+					return false;
+				}
+				final double[] ca = columns[linearIndex[a]];
+				for (int i = start; i < end; ++i) {
+					f[i] += change * ca[i];
+				}
+				p[linearIndex[a]] += change;
+			}
+			return true;
+		}
+
+		/**
+		 * Builds the normal equations of the free nonlinear parameters, with
+		 * their derivatives projected off the span of the linear columns.
+		 *
+		 * @return whether the linear columns are independent
+		 */
+		boolean projectedEquations() {
+			final int k = linearCount;
+			final int n = nonlinearCount;
+			if (!factorLinear()) {
+				return false;
+			}
+			for (int j = 0; j < n; ++j) {
+				final double[] d = columns[nonlinearIndex[j]];
+				for (int a = 0; a < k; ++a) {
+					final double[] ca = columns[linearIndex[a]];
+					double sum = 0.0;
+					for (int i = start; i < end; ++i) {
+						sum += weight[i] * ca[i] * d[i];
+					}
+					coefficients[a] = sum;
+				}
+				Cholesky.substitute(linearFactor, 0, k, coefficients);
+				final double[] g = projected[j];
+				System.arraycopy(d, start, g, start, end - start);
+				for (int a = 0; a < k; ++a) {
+					final double[] ca = columns[linearIndex[a]];
+					final double q = coefficients[a];
+					for (int i = start; i < end; ++i) {
+						g[i] -= q * ca[i];
+					}
+				}
+			}
+			for (int j = 0; j < n; ++j) {
+				final double[] gj = projected[j];
+				for (int l = 0; l <= j; ++l) {
+					final double[] gl = projected[l];
+					double sum = 0.0;
+					for (int i = start; i < end; ++i) {
+						sum += weight[i] * gj[i] * gl[i];
+					}
+					alpha[j * MAX_PARAMS + l] = sum;
+				}
+				double sum = 0.0;
+				for (int i = start; i < end; ++i) {
+					sum += weight[i] * (y[i] - model[i]) * gj[i];
+				}
+				beta[j] = sum;
+			}
+			return true;
+		}
+
+		/**
+		 * Solves the damped normal equations by Cholesky decomposition.
+		 *
+		 * @param n number of parameters
+		 * @return whether positive definite
+		 */
+		boolean solve(final double lambda, final int n) {
+			for (int j = 0; j < n; ++j) {
+				for (int k = 0; k <= j; ++k) {
+					factor[j * n + k] = alpha[j * MAX_PARAMS + k];
+				}
+				factor[j * n + j] *= 1.0 + lambda;
+				delta[j] = beta[j];
+			}
+			if (!Cholesky.decompose(factor, 0, n)) {
+				return false;
+			}
+			Cholesky.substitute(factor, 0, n, delta);
+			return true;
+		}
+	}
+}
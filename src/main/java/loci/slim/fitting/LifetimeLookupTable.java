@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+/**
+ * Maps the ratio of decay integrals to a single lifetime, for rapid lifetime
+ * determination.
+ * <p>
+ * The fit window is split into three equal gates as by the triple integral.
+ * The ratio of the differences between successive gate sums depends only on
+ * the lifetime, not the background or amplitude. Without an instrument
+ * response the ratio is exp(-gate width / tau), which is inverted directly.
+ * With one the ratio is computed once from the convolved exponential over a
+ * sweep of lifetimes, and each lifetime is then a few sums, a search and an
+ * interpolation.
+ * <p>
+ * The sweep is indexed by log(-log(ratio)), in which log(tau) is linear
+ * without an instrument response and nearly so with one. Ratios beyond the
+ * sweep are extrapolated with that slope.
+ * <p>
+ * Immutable; may be shared by threads.
+ */
+public class LifetimeLookupTable {
+
+	// lifetimes computed, log-spaced over the range
+	private static final int SWEEP = 1024;
+	// range of lifetimes relative to the gate width
+	private static final double SPAN = 64.0;
+	private final double _xInc;
+	private final int _start;
+	private final int _end;
+	private final double[] _prompt;
+	private final int _width;
+	private final double _gate;
+	// log(-log(ratio)), decreasing, and log(tau), increasing
+	private final double[] _keys;
+	private final double[] _logLifetimes;
+
+	/**
+	 * Creates a lookup table.
+	 *
+	 * @param xInc time increment per bin
+	 * @param start first bin fitted
+	 * @param end bin after the last fitted
+	 * @param prompt instrument response from time zero, or null
+	 */
+	public LifetimeLookupTable(final double xInc, final int start,
+		final int end, final double[] prompt)
+	{
+		_xInc = xInc;
+		_start = start;
+		_end = end;
+		_prompt = prompt;
+		_width = (end - start) / 3;
+		_gate = _width * xInc;
+		final double[][] sweep =
+			null != prompt && _width > 0 && xInc > 0.0 ? sweep() : null;
+		_keys = null == sweep ? null : sweep[0];
+		_logLifetimes = null == sweep ? null : sweep[1];
+	}
+
+	/**
+	 * Whether the table applies to a window and prompt.
+	 *
+	 */
+	public boolean isFor(final double xInc, final int start, final int end,
+		final double[] prompt)
+	{
+		return _xInc == xInc && _start == start && _end == end &&
+			_prompt == prompt;
+	}
+
+	/**
+	 * Gets the lifetime of a decay.
+	 *
+	 * @param y decay, from time zero
+	 * @return lifetime, or NaN if no single exponential gives the gate sums
+	 */
+	public double getLifetime(final double[] y) {
+		if (_width <= 0) {
+			return Double.NaN;
+		}
+		double d1 = 0.0, d2 = 0.0, d3 = 0.0;
+		for (int i = _start; i < _start + _width; ++i) {
+			d1 += y[i];
+			d2 += y[i + _width];
+			d3 += y[i + 2 * _width];
+		}
+		return getLifetime(d1 - d2, d2 - d3);
+	}
+
+	/**
+	 * Gets the lifetime from differences of successive gate sums.
+	 *
+	 * @return lifetime, or NaN if no single exponential gives them
+	 */
+	public double getLifetime(final double d12, final double d23) {
+		if (!(d12 > d23 && d23 > 0.0 && _width > 0)) {
+			return Double.NaN;
+		}
+		final double logRatio = Math.log(d23 / d12);
+		if (null == _keys) {
+			// exp(-gate / tau)
+			return -_gate / logRatio;
+		}
+		final double key = Math.log(-logRatio);
+		final int last = _keys.length - 1;
+		if (key >= _keys[0]) {
+			return Math.exp(_logLifetimes[0] + _keys[0] - key);
+		}
+		if (key <= _keys[last]) {
+			return Math.exp(_logLifetimes[last] + _keys[last] - key);
+		}
+		// keys[low] > key >= keys[high]
+		int low = 0;
+		int high = last;
+		while (high - low > 1) {
+			final int middle = (low + high) >>> 1;
+			if (_keys[middle] > key) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		final double fraction = (_keys[low] - key) / (_keys[low] - _keys[high]);
+		return Math.exp(_logLifetimes[low] + fraction *
+			(_logLifetimes[high] - _logLifetimes[low]));
+	}
+
+	/**
+	 * Computes the ratio over a sweep of lifetimes, keeping the longest
+	 * lifetimes that give one lifetime per ratio.
+	 *
+	 * @return keys and log lifetimes, or null if no lifetimes are usable
+	 */
+	private double[][] sweep() {
+		final InstrumentResponse response = new InstrumentResponse(_prompt, _end);
+		final double[] model = new double[_end];
+		final double step = Math.log(SPAN * SPAN) / (SWEEP - 1);
+		final double[] keys = new double[SWEEP];
+		final double[] logLifetimes = new double[SWEEP];
+		int count = 0;
+		for (int j = 0; j < SWEEP; ++j) {
+			final double logTau = Math.log(_gate / SPAN) + j * step;
+			response.convolveExponential(_xInc, Math.exp(logTau), model, null);
+			double s1 = 0.0, s2 = 0.0, s3 = 0.0;
+			for (int i = _start; i < _start + _width; ++i) {
+				s1 += model[i];
+				s2 += model[i + _width];
+				s3 += model[i + 2 * _width];
+			}
+			final double ratio = (s2 - s3) / (s1 - s2);
+			if (!(ratio > 0.0 && ratio < 1.0)) {
+				if (count > 0) {
+					break;
+				}
+				continue;
+			}
+			final double key = Math.log(-Math.log(ratio));
+			if (count > 0 && !(key < keys[count - 1])) {
+				// one ratio gives two lifetimes; start again
+				count = 0;
+			}
+			keys[count] = key;
+			logLifetimes[count] = logTau;
+			++count;
+		}
+		if (count < 2) {
+			// fall back to ignoring the prompt
+			return null;
+		}
+		final double[][] sweep = new double[2][count];
+		System.arraycopy(keys, 0, sweep[0], 0, count);
+		System.arraycopy(logLifetimes, 0, sweep[1], 0, count);
+		return sweep;
+	}
+}
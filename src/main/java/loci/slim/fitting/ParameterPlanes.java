@@ -0,0 +1,238 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.basictypeaccess.DoubleAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.img.planar.PlanarImgs;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.util.Fraction;
+
+/**
+ * Holds fitted parameters as one contiguous primitive plane per parameter and
+ * channel, laid out as a planar image with the parameter as the last
+ * dimension.
+ * <p>
+ * In single precision the planes are float, halving memory, and the image
+ * reads them as double. Either way the image is backed directly by the
+ * planes. Pixels that are not set are NaN.
+ */
+public class ParameterPlanes {
+
+	private final int _width;
+	private final int _planeSize;
+	private final int _channels;
+	private final int _parameters;
+	private final Img<DoubleType> _image;
+	private final double[][] _doublePlanes;
+	private final float[][] _floatPlanes;
+
+	/**
+	 * Creates planes for given dimensions.
+	 *
+	 * @param dimensions width, height, optional channels, parameters
+	 * @param singlePrecision whether to store as float
+	 */
+	public ParameterPlanes(final long[] dimensions,
+		final boolean singlePrecision)
+	{
+		_width = (int) dimensions[0];
+		_planeSize = (int) (dimensions[0] * dimensions[1]);
+		int channels = 1;
+		for (int i = 2; i < dimensions.length - 1; ++i) {
+			channels *= (int) dimensions[i];
+		}
+		_channels = channels;
+		_parameters = (int) dimensions[dimensions.length - 1];
+		final int planes = _channels * _parameters;
+
+		if (singlePrecision) {
+			_doublePlanes = null;
+			_floatPlanes = new float[planes][];
+			final List<FloatPlane> floatPlanes = new ArrayList<FloatPlane>();
+			for (int i = 0; i < planes; ++i) {
+				_floatPlanes[i] = new float[_planeSize];
+				Arrays.fill(_floatPlanes[i], Float.NaN);
+				floatPlanes.add(new FloatPlane(_floatPlanes[i]));
+			}
+			final PlanarImg<DoubleType, FloatPlane> image =
+				new PlanarImg<DoubleType, FloatPlane>(floatPlanes, dimensions,
+					new Fraction());
+			image.setLinkedType(new DoubleType(image));
+			_image = image;
+		}
+		else {
+			final PlanarImg<DoubleType, DoubleArray> image =
+				PlanarImgs.doubles(dimensions);
+			_doublePlanes = new double[planes][];
+			for (int i = 0; i < planes; ++i) {
+				_doublePlanes[i] = image.getPlane(i).getCurrentStorageArray();
+				Arrays.fill(_doublePlanes[i], Double.NaN);
+			}
+			_floatPlanes = null;
+			_image = image;
+		}
+	}
+
+	/**
+	 * Whether values are stored as float.
+	 *
+	 */
+	public boolean isSinglePrecision() {
+		return null != _floatPlanes;
+	}
+
+	/**
+	 * Gets number of parameters.
+	 *
+	 */
+	public int getParameters() {
+		return _parameters;
+	}
+
+	/**
+	 * Gets pixel index of a location, used to set and get pixels.
+	 *
+	 */
+	public int getIndex(final int x, final int y, final int channel) {
+		return channel * _planeSize + y * _width + x;
+	}
+
+	/**
+	 * Sets the parameters of a pixel.
+	 *
+	 * @param params fitted parameters, null for NaN
+	 */
+	public void setPixel(final int index, final double[] params) {
+		final int channel = index / _planeSize;
+		final int offset = index - channel * _planeSize;
+		for (int p = 0; p < _parameters; ++p) {
+			final double value = null == params ? Double.NaN : params[p];
+			final int plane = channel + _channels * p;
+			if (null == _floatPlanes) {
+				_doublePlanes[plane][offset] = value;
+			}
+			else {
+				_floatPlanes[plane][offset] = (float) value;
+			}
+		}
+	}
+
+	/**
+	 * Sets the parameters of a chunk of pixels, one parameter plane at a time.
+	 *
+	 * @param indices pixel indices
+	 * @param params fitted parameters per pixel, null entries for NaN
+	 * @param count number of pixels
+	 */
+	public void setPixels(final int[] indices, final double[][] params,
+		final int count)
+	{
+		for (int p = 0; p < _parameters; ++p) {
+			for (int i = 0; i < count; ++i) {
+				final int channel = indices[i] / _planeSize;
+				final int offset = indices[i] - channel * _planeSize;
+				final int plane = channel + _channels * p;
+				final double value = null == params[i] ? Double.NaN : params[i][p];
+				if (null == _floatPlanes) {
+					_doublePlanes[plane][offset] = value;
+				}
+				else {
+					_floatPlanes[plane][offset] = (float) value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the parameters of a pixel.
+	 *
+	 */
+	public double[] getPixel(final int index) {
+		final int channel = index / _planeSize;
+		final int offset = index - channel * _planeSize;
+		final double[] params = new double[_parameters];
+		for (int p = 0; p < _parameters; ++p) {
+			final int plane = channel + _channels * p;
+			params[p] =
+				null == _floatPlanes ? _doublePlanes[plane][offset]
+					: _floatPlanes[plane][offset];
+		}
+		return params;
+	}
+
+	/**
+	 * Gets the planes as an image, without copying.  In single precision values
+	 * set through the image are rounded to float.
+	 *
+	 */
+	public Img<DoubleType> getImage() {
+		return _image;
+	}
+
+	/**
+	 * Float plane accessed as double.
+	 */
+	private static class FloatPlane implements DoubleAccess,
+		ArrayDataAccess<FloatPlane>
+	{
+
+		private final float[] data;
+
+		FloatPlane(final float[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public double getValue(final int index) {
+			return data[index];
+		}
+
+		@Override
+		public void setValue(final int index, final double value) {
+			data[index] = (float) value;
+		}
+
+		@Override
+		public FloatPlane createArray(final int numEntities) {
+			return new FloatPlane(new float[numEntities]);
+		}
+
+		@Override
+		public float[] getCurrentStorageArray() {
+			return data;
+		}
+
+		public int getArrayLength() {
+			return data.length;
+		}
+	}
+}
@@ -24,6 +24,9 @@
 package loci.slim.fitting;
 
 import ij.IJ;
+
+import java.util.Arrays;
+
 import loci.curvefitter.ICurveFitData;
 import loci.curvefitter.ICurveFitter;
 
@@ -40,6 +43,8 @@ public class RapidLifetimeDetermination {
 	public static final int NOISE_MLE = 5;
 	public static final int MAX_REFITS = 10;
 	private final Integrator integrator = new DefaultIntegrator();
+	private double[] responsePrompt;
+	private InstrumentResponse response;
 
 	// SLIMCurve (float -> double)
 	/**
@@ -161,18 +166,18 @@ public class RapidLifetimeDetermination {
 	}
 
 	int gciTripleIntegralInstr(final double xincr, final double[] y,
-		final int fit_start, final int fit_end, final double[] instr,
-		final int ninstr, final int noise, final double[] sig, final double[] z,
-		final double[] a, final double[] tau, final double[] fitted,
-		final double[] residuals, final double[] chisq, final int division)
+		final int fit_start, final int fit_end, final InstrumentResponse response,
+		final int noise, final double[] sig, final double[] z, final double[] a,
+		final double[] tau, final double[] fitted, final double[] residuals,
+		final double[] chisq, final int division)
 	{
 		double d1, d2, d3, d12, d23;
 		double t0, dt, exp_dt_tau, exp_t0_tau;
 		int width;
 		double sigma2, res, chisq_local;
-		double sum, scaling;
-		int fitted_preconv_size = 0;
-		double[] fitted_preconv;
+		double scaling;
+		final double[] instr = response.getValues();
+		final int ninstr = instr.length;
 
 		width = (fit_end - fit_start) / division;
 		if (width <= 0) {
@@ -225,37 +230,22 @@ public class RapidLifetimeDetermination {
 		// which should be only a little greater than the sum of the instrument
 		// response values
 
-		sum = scaling = 0;
+		scaling = 0;
 		for (int i = 0; i < ninstr; ++i) {
-			sum += instr[i];
 			scaling += instr[i] * Math.exp(i * xincr / tau[0]);
 		}
-		scaling /= sum; // make instrument response sum to 1.0
+		scaling /= response.getSum(); // make instrument response sum to 1.0
 		a[0] /= scaling;
 
-		fitted_preconv = new double[fit_end];
-		fitted_preconv_size = fit_end;
-
-		for (int i = 0; i < fit_end; ++i) {
-			fitted_preconv[i] = a[0] * Math.exp(-i * xincr / tau[0]);
-		}
+		// (Zero-basing everything in sight...)
+		// We wish to find fitted = a exp(-t/tau) * instr, so explicitly:
+		//
+		// fitted[i] = sum_{j=0}^{min(ninstr-1,i)} a exp(-(i-j)xincr/tau).instr[j]
+		//
+		// which the response computes recursively, in O(fit_end)
+		response.convolveExponential(xincr, tau[0], fitted, null);
 		for (int i = 0; i < fit_end; ++i) {
-			int convpts;
-			// (Zero-basing everything in sight...)
-			// We wish to find fitted = fitted_preconv * instr, so explicitly:
-			//
-			// fitted[i] = sum_{j=0}^i fitted_preconv[i-j].instr[j]
-			//
-			// But instr[k]=0 for k >= ninstr, so we only need to sum:
-			//
-			// fitted[i] = sum_{j=0}^{min(ninstr-1,i)}
-			// fitted_preconv[i-j].instr[j]
-			fitted[i] = 0;
-			convpts = (ninstr <= 1) ? ninstr - 1 : i;
-			for (int j = 0; j < convpts; ++j) {
-				fitted[i] += fitted_preconv[i - j] * instr[j];
-			}
-			fitted[i] += z[0];
+			fitted[i] = a[0] * fitted[i] + z[0];
 		}
 
 		// ok, so now fitted contains our data for the timeslice of interest.
@@ -351,9 +341,12 @@ public class RapidLifetimeDetermination {
 			}
 		}
 		else {
+			// convolve with the same instrument response for every try
+			final InstrumentResponse response =
+				getInstrumentResponse(instr, ninstr, fit_end);
 			returnCode =
-				gciTripleIntegralInstr(xincr, y, fit_start, fit_end, instr, ninstr,
-					noise, sig, z, a, tau, fitted, residuals, local_chisq, division);
+				gciTripleIntegralInstr(xincr, y, fit_start, fit_end, response, noise,
+					sig, z, a, tau, fitted, residuals, local_chisq, division);
 			IJ.log("instr tries " + tries + " a t z chisq " + a[0] + " " + tau[0] +
 				" " + z[0] + " " + local_chisq[0] + " returns " + returnCode);
 
@@ -368,7 +361,7 @@ public class RapidLifetimeDetermination {
 				division += division / 3;
 				++tries;
 				returnCode =
-					gciTripleIntegralInstr(xincr, y, fit_start, fit_end, instr, ninstr,
+					gciTripleIntegralInstr(xincr, y, fit_start, fit_end, response,
 						noise, sig, z, a, tau, fitted, residuals, local_chisq, division);
 				IJ.log("instr tries " + tries + " a t z chisq " + a[0] + " " + tau[0] +
 					" " + z[0] + " " + local_chisq[0] + " returns " + returnCode);
@@ -377,6 +370,23 @@ public class RapidLifetimeDetermination {
 		return 0;
 	}
 
+	/**
+	 * Gets the instrument response, reusing the last one while the prompt and
+	 * length are unchanged.
+	 *
+	 */
+	private InstrumentResponse getInstrumentResponse(final double[] instr,
+		final int ninstr, final int length)
+	{
+		if (null == response || responsePrompt != instr ||
+			response.getValues().length != ninstr || response.getLength() != length)
+		{
+			responsePrompt = instr;
+			response = new InstrumentResponse(Arrays.copyOf(instr, ninstr), length);
+		}
+		return response;
+	}
+
 	/**
 	 * Invokes java version of SLIMCurve C code.
 	 *
@@ -405,7 +415,6 @@ public class RapidLifetimeDetermination {
 		final double xinc = fitter.getXInc();
 		int ninstr = 0;
 		final double[] instrumentResponse = fitter.getInstrumentResponse(1);
-		final double[] instrumentResponseFloat = null;
 		if (null != instrumentResponse) {
 			ninstr = instrumentResponse.length;
 		}
@@ -416,7 +425,7 @@ public class RapidLifetimeDetermination {
 
 		final int returnValue =
 			gciTripleIntegralFittingEngine(xinc, trans, start, stop,
-				instrumentResponseFloat, ninstr, noise, null, z, a, tau, fitted,
+				instrumentResponse, ninstr, noise, null, z, a, tau, fitted,
 				residuals, chisquare, data.getChiSquareTarget() * chiSquareAdjust);
 		IJ.log("return triple integral fitting engine " + returnValue);
 		return 0;
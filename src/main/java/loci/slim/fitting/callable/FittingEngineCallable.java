@@ -26,6 +26,9 @@ package loci.slim.fitting.callable;
 import loci.curvefitter.CurveFitData;
 import loci.curvefitter.ICurveFitData;
 import loci.curvefitter.ICurveFitter;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim.fitting.params.FitResults;
 import loci.slim.fitting.params.IFitResults;
 import loci.slim.fitting.params.IGlobalFitParams;
@@ -43,6 +46,7 @@ public class FittingEngineCallable implements IFittingEngineCallable {
 	private IGlobalFitParams _globalParams;
 	private ILocalFitParams _localParams;
 	private IFitResults _result;
+	private IFittingMetrics _metrics;
 
 	@Override
 	public void setup(final ICurveFitter curveFitter,
@@ -51,6 +55,7 @@ public class FittingEngineCallable implements IFittingEngineCallable {
 		_curveFitter = curveFitter;
 		_globalParams = globalParams;
 		_localParams = localParams;
+		_metrics = Configuration.getInstance().getMetrics();
 	}
 
 	@Override
@@ -77,7 +82,10 @@ public class FittingEngineCallable implements IFittingEngineCallable {
 		final ICurveFitData[] curveFitDataArray =
 			new ICurveFitData[] { curveFitData };
 
+		final long start = System.nanoTime();
 		final int returnValue = _curveFitter.fitData(curveFitDataArray);
+		_metrics.pixelFitted(System.nanoTime() - start, returnValue);
+		Tracer.end("fitPixel", start);
 
 		_result = new FitResults();
 		_result.setParams(curveFitData.getParams());
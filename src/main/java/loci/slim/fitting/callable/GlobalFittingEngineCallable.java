@@ -0,0 +1,66 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.callable;
+
+import loci.curvefitter.ICurveFitter;
+import loci.slim.fitting.GlobalLifetimeFitter;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.Tracer;
+import loci.slim.fitting.params.IFitResults;
+import loci.slim.fitting.params.IGlobalFitParams;
+import loci.slim.fitting.params.ILocalFitParams;
+
+/**
+ * Fits the amplitudes of one pixel of a global fit, given the lifetimes shared
+ * by all pixels. The curve fitter is not used.
+ */
+public class GlobalFittingEngineCallable implements IFittingEngineCallable {
+
+	private final GlobalLifetimeFitter _fitter;
+	private ILocalFitParams _localParams;
+	private IFittingMetrics _metrics;
+
+	public GlobalFittingEngineCallable(final GlobalLifetimeFitter fitter) {
+		_fitter = fitter;
+	}
+
+	@Override
+	public void setup(final ICurveFitter curveFitter,
+		final IGlobalFitParams globalParams, final ILocalFitParams localParams)
+	{
+		_localParams = localParams;
+		_metrics = Configuration.getInstance().getMetrics();
+	}
+
+	@Override
+	public IFitResults call() {
+		final long start = System.nanoTime();
+		final IFitResults result = _fitter.fitAmplitudes(_localParams);
+		_metrics.pixelFitted(System.nanoTime() - start, Double.isNaN(result
+			.getParams()[0]) ? -1 : 0);
+		Tracer.end("fitPixel", start);
+		return result;
+	}
+}
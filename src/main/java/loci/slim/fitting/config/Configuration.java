@@ -26,10 +26,14 @@ package loci.slim.fitting.config;
 import loci.curvefitter.ICurveFitter;
 import loci.curvefitter.IFitterEstimator;
 import loci.curvefitter.SLIMCurveFitter;
+import loci.slim.fitting.LMACurveFitter;
 import loci.slim.fitting.callable.FittingEngineCallable;
 import loci.slim.fitting.callable.IFittingEngineCallable;
 import loci.slim.fitting.engine.IFittingEngine;
 import loci.slim.fitting.engine.ThreadedFittingEngine;
+import loci.slim.fitting.metrics.FittingMetrics;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.NullFittingMetrics;
 import loci.slim.heuristics.FitterEstimator;
 
 /**
@@ -45,6 +49,13 @@ public class Configuration extends ConfigurationHelper {
 	private IFittingEngine _fittingEngine;
 	private ICurveFitter _curveFitter;
 	private IFitterEstimator _cursorEstimator;
+	private boolean _singlePrecision =
+		Boolean.getBoolean("loci.slim.singlePrecision");
+	private boolean _javaFitter = Boolean.getBoolean("loci.slim.javaFitter");
+	private boolean _variableProjection = Boolean.getBoolean("loci.slim.varpro");
+	private volatile IFittingMetrics _metrics = Boolean
+		.getBoolean("loci.slim.metrics") ? new FittingMetrics()
+		: new NullFittingMetrics();
 
 	/**
 	 * Private constructor for singleton pattern.
@@ -71,11 +82,23 @@ public class Configuration extends ConfigurationHelper {
 
 	public synchronized ICurveFitter getCurveFitter() {
 		if (null == _curveFitter) {
-			_curveFitter = new SLIMCurveFitter();
+			_curveFitter = newSLIMCurveFitter();
 		}
 		return _curveFitter;
 	}
 
+	/**
+	 * Creates a curve fitter for the SLIM Curve algorithms, native unless the
+	 * pure Java fitter or variable projection is chosen.
+	 *
+	 */
+	public ICurveFitter newSLIMCurveFitter() {
+		if (getVariableProjection()) {
+			return new LMACurveFitter(true);
+		}
+		return getJavaFitter() ? new LMACurveFitter() : new SLIMCurveFitter();
+	}
+
 	public synchronized IFitterEstimator getCursorEstimator() {
 		if (null == _cursorEstimator) {
 			_cursorEstimator = new FitterEstimator();
@@ -83,6 +106,64 @@ public class Configuration extends ConfigurationHelper {
 		return _cursorEstimator;
 	}
 
+	/**
+	 * Whether fitted images are stored as float, halving their memory.
+	 *
+	 */
+	public synchronized boolean getSinglePrecision() {
+		return _singlePrecision;
+	}
+
+	public synchronized void setSinglePrecision(final boolean singlePrecision) {
+		_singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Whether fits use the pure Java fitter rather than the native SLIM Curve
+	 * library. Defaults to the loci.slim.javaFitter property.
+	 *
+	 */
+	public synchronized boolean getJavaFitter() {
+		return _javaFitter;
+	}
+
+	public synchronized void setJavaFitter(final boolean javaFitter) {
+		_javaFitter = javaFitter;
+	}
+
+	/**
+	 * Whether fits use the pure Java fitter, solving amplitudes exactly at each
+	 * step. Defaults to the loci.slim.varpro property.
+	 *
+	 */
+	public synchronized boolean getVariableProjection() {
+		return _variableProjection;
+	}
+
+	public synchronized void setVariableProjection(
+		final boolean variableProjection)
+	{
+		_variableProjection = variableProjection;
+	}
+
+	/**
+	 * Gets where fitting measurements go. Ignored unless set or the
+	 * loci.slim.metrics property is true.
+	 *
+	 */
+	public IFittingMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Sets where fitting measurements go.
+	 *
+	 * @param metrics or null to ignore measurements
+	 */
+	public void setMetrics(final IFittingMetrics metrics) {
+		_metrics = null == metrics ? new NullFittingMetrics() : metrics;
+	}
+
 	public IFittingEngineCallable newFittingEngineCallable() {
 		return new FittingEngineCallable();
 	}
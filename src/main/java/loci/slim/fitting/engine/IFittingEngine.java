@@ -67,4 +67,14 @@ public interface IFittingEngine {
 	 */
 	public List<IFitResults> fit(IGlobalFitParams params,
 		List<ILocalFitParams> dataList);
+
+	/**
+	 * Fits lifetimes shared by a list of pixels, for a global fit. Pass them
+	 * on with {@link IGlobalFitParams#setLifetimes} to fit the amplitudes of
+	 * each pixel.
+	 *
+	 * @return lifetimes or null if the fit function has none to share
+	 */
+	public double[] fitLifetimes(IGlobalFitParams params,
+		List<ILocalFitParams> dataList);
 }
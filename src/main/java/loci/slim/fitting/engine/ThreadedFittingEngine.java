@@ -29,8 +29,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 import loci.curvefitter.ICurveFitter;
+import loci.slim.fitting.GlobalLifetimeFitter;
+import loci.slim.fitting.callable.GlobalFittingEngineCallable;
 import loci.slim.fitting.callable.IFittingEngineCallable;
 import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.IFittingMetrics.Stage;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim.fitting.params.IFitResults;
 import loci.slim.fitting.params.IGlobalFitParams;
 import loci.slim.fitting.params.ILocalFitParams;
@@ -86,10 +91,14 @@ public class ThreadedFittingEngine implements IFittingEngine {
 	public synchronized IFitResults fit(final IGlobalFitParams params,
 		final ILocalFitParams data)
 	{
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		final long start = System.nanoTime();
 		final IFittingEngineCallable callable =
-			Configuration.getInstance().newFittingEngineCallable();
+			newCallable(newGlobalFitter(params));
 		callable.setup(_curveFitter, params, data);
-		return callable.call();
+		final IFitResults result = callable.call();
+		metrics.stageTime(Stage.FIT, System.nanoTime() - start);
+		return result;
 	}
 
 	/**
@@ -104,17 +113,69 @@ public class ThreadedFittingEngine implements IFittingEngine {
 		final List<ILocalFitParams> dataList)
 	{
 
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		_threadPool.setMetrics(metrics.isEnabled() ? metrics : null);
+		final long start = System.nanoTime();
+
 		final List<IFittingEngineCallable> callableList =
 			new ArrayList<IFittingEngineCallable>();
 
+		final GlobalLifetimeFitter globalFitter = newGlobalFitter(params);
 		for (final ILocalFitParams data : dataList) {
-			final IFittingEngineCallable callable =
-				Configuration.getInstance().newFittingEngineCallable();
+			final IFittingEngineCallable callable = newCallable(globalFitter);
 			callable.setup(_curveFitter, params, data);
 			callableList.add(callable);
 		}
 
+		final long span = Tracer.begin();
 		final List<IFitResults> resultList = _threadPool.process(callableList);
+		Tracer.end("fitPixels", span);
+		metrics.stageTime(Stage.FIT, System.nanoTime() - start);
 		return resultList;
 	}
+
+	/**
+	 * Fits lifetimes shared by all pixels. The blocks of the global fit are
+	 * solved on this thread; the amplitudes are fitted in parallel later.
+	 *
+	 * @return lifetimes or null if the fit function has none to share
+	 */
+	@Override
+	public synchronized double[] fitLifetimes(final IGlobalFitParams params,
+		final List<ILocalFitParams> dataList)
+	{
+		if (!GlobalLifetimeFitter.isSupported(params.getFitFunction())) {
+			return null;
+		}
+		final long span = Tracer.begin();
+		final double[] lifetimes =
+			new GlobalLifetimeFitter(params).fitLifetimes(dataList);
+		Tracer.end("fitLifetimes", span);
+		return lifetimes;
+	}
+
+	/**
+	 * Creates the fitter for the amplitudes of a global fit.
+	 *
+	 * @return null unless lifetimes are shared
+	 */
+	private GlobalLifetimeFitter newGlobalFitter(final IGlobalFitParams params) {
+		if (null == params.getLifetimes() ||
+			!GlobalLifetimeFitter.isSupported(params.getFitFunction()))
+		{
+			return null;
+		}
+		final GlobalLifetimeFitter fitter = new GlobalLifetimeFitter(params);
+		fitter.setLifetimes(params.getLifetimes());
+		return fitter;
+	}
+
+	private IFittingEngineCallable newCallable(
+		final GlobalLifetimeFitter globalFitter)
+	{
+		if (null == globalFitter) {
+			return Configuration.getInstance().newFittingEngineCallable();
+		}
+		return new GlobalFittingEngineCallable(globalFitter);
+	}
 }
@@ -23,7 +23,6 @@
 
 package loci.slim.fitting.images;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 
@@ -37,6 +36,7 @@ import java.util.List;
 
 import loci.slim.IGrayScaleImage;
 import loci.slim.MyStackWindow;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim.histogram.HistogramDataGroup;
 import loci.slim.histogram.HistogramDataNode;
 import loci.slim.histogram.HistogramTool;
@@ -69,6 +69,7 @@ abstract public class AbstractBaseFittedImage implements IFittedImage {
 	private final HistogramDataGroup _histogramData;
 	private IFittedImageSlice _fittedImage;
 	private Mask _mask;
+	private boolean _valuesChanged;
 
 	public AbstractBaseFittedImage(final String title, final int[] dimension,
 		final IndexColorModel indexColorModel, final boolean colorizeGrayScale,
@@ -234,32 +235,72 @@ abstract public class AbstractBaseFittedImage implements IFittedImage {
 	}
 
 	/**
-	 * Redraws the entire image after a masking change. Mask shows all pixels
+	 * Redraws the image after a masking change. Mask shows all pixels
 	 * masked by all nodes combined, including this node.
 	 *
 	 */
 	@Override
 	public void updateMask(final Mask mask) {
 		if (mask != _mask) {
+			final Mask oldMask = _mask;
 			_mask = mask;
 
 			// recalculate min/max data/view/LUT
+			final double[] oldMinMaxLUT = _histogramData.getMinMaxLUT();
 			updateRanges();
+			final double[] minMaxLUT = _histogramData.getMinMaxLUT();
 
-			// redraw the image using the mask
-			for (int y = 0; y < _values[0].length; ++y) {
-				for (int x = 0; x < _values.length; ++x) {
-					double value = Double.NaN;
-					if (null == mask || mask.test(x, y)) {
-						value = _values[x][y];
-					}
-					_fittedImage.draw(x, y, value);
+			if (redrawMasked(_fittedImage, _values, oldMask, mask, _valuesChanged,
+				oldMinMaxLUT, minMaxLUT))
+			{
+				// This forces redisplay:
+				_imagePlus.setProcessor(_fittedImage.getImageProcessor().duplicate());
+			}
+			_valuesChanged = false;
+		}
+	}
+
+	/**
+	 * Redraws a slice using a new mask. New values or a new LUT range have been
+	 * drawn without any mask, so then every pixel is redrawn; otherwise only the
+	 * pixels whose masking changed.
+	 *
+	 * @return whether any pixel was redrawn
+	 */
+	static boolean redrawMasked(final IFittedImageSlice fittedImage,
+		final double[][] values, final Mask oldMask, final Mask mask,
+		final boolean valuesChanged, final double[] oldMinMaxLUT,
+		final double[] minMaxLUT)
+	{
+		if (valuesChanged || oldMinMaxLUT[0] != minMaxLUT[0] ||
+			oldMinMaxLUT[1] != minMaxLUT[1])
+		{
+			for (int y = 0; y < values[0].length; ++y) {
+				for (int x = 0; x < values.length; ++x) {
+					drawMasked(fittedImage, values, x, y, mask);
 				}
 			}
+			return true;
+		}
+		final int width = values.length;
+		final int[] changes = Mask.findChanges(oldMask, mask);
+		for (final int index : changes) {
+			drawMasked(fittedImage, values, index % width, index / width, mask);
+		}
+		return 0 < changes.length;
+	}
 
-			// This forces redisplay:
-			_imagePlus.setProcessor(_fittedImage.getImageProcessor().duplicate());
+	/*
+	 * Draws a pixel, or NaN if it is masked out.
+	 */
+	private static void drawMasked(final IFittedImageSlice fittedImage,
+		final double[][] values, final int x, final int y, final Mask mask)
+	{
+		double value = Double.NaN;
+		if (null == mask || mask.test(x, y)) {
+			value = values[x][y];
 		}
+		fittedImage.draw(x, y, value);
 	}
 
 	private String debugMask(final Mask mask) {
@@ -273,25 +314,31 @@ abstract public class AbstractBaseFittedImage implements IFittedImage {
 	 * Redisplay the image with new LUT range.
 	 */
 	private void redisplay(double[] minMaxLUT) {
-		minMaxLUT = PaletteFix.adjustMinMax(minMaxLUT[0], minMaxLUT[1]);
-		if (null != _fittedImage) {
-			if (_colorizeGrayScale) {
-				// redraw all images with new LUT
-				for (final IFittedImageSlice fittedImage : _fittedImages) {
-					fittedImage.setMinAndMax(minMaxLUT[0], minMaxLUT[1]);
+		final long span = Tracer.begin();
+		try {
+			minMaxLUT = PaletteFix.adjustMinMax(minMaxLUT[0], minMaxLUT[1]);
+			if (null != _fittedImage) {
+				if (_colorizeGrayScale) {
+					// redraw all images with new LUT
+					for (final IFittedImageSlice fittedImage : _fittedImages) {
+						fittedImage.setMinAndMax(minMaxLUT[0], minMaxLUT[1]);
+					}
+				}
+				else {
+					// when using a FloatProcessor the LUT belongs to entire stack
+					_fittedImage.setMinAndMax(minMaxLUT[0], minMaxLUT[1]);
 				}
-			}
-			else {
-				// when using a FloatProcessor the LUT belongs to entire stack
-				_fittedImage.setMinAndMax(minMaxLUT[0], minMaxLUT[1]);
-			}
 
-			// TODO ARG KLUDGE
-			// This is a workaround to redisplay after the LUT range changes.
-			// Hopefully it will go away in IJ2.
-			// Maybe update(ImageProcessor ip) would work.
-			// "Updates this stack so its attributes such as min max calibration table and color model, are the same as 'ip'"
-			_imagePlus.setProcessor(_fittedImage.getImageProcessor().duplicate());
+				// TODO ARG KLUDGE
+				// This is a workaround to redisplay after the LUT range changes.
+				// Hopefully it will go away in IJ2.
+				// Maybe update(ImageProcessor ip) would work.
+				// "Updates this stack so its attributes such as min max calibration table and color model, are the same as 'ip'"
+				_imagePlus.setProcessor(_fittedImage.getImageProcessor().duplicate());
+			}
+		}
+		finally {
+			Tracer.end("redisplay", span);
 		}
 	}
 
@@ -316,20 +363,19 @@ abstract public class AbstractBaseFittedImage implements IFittedImage {
 		final int y = location[1];
 		final int channel = location[2];
 
-		// check for channel change
+		// check for channel change; fitting all channels revisits each per batch
 		if (_channel != channel) {
-
-			if (_channel > channel) {
-				IJ.log("retrograde channel " + _channel + " > " + channel);
-			}
 			_channel = channel;
 			_stackWindow.showSlice(channel + 1);
+			_valuesChanged = true;
 			_values = _dataChannels[channel].getValues();
 			_fittedImage = _fittedImages[channel];
 		}
 
 		// save our local copy
 		_values[x][y] = value;
+		_dataChannels[channel].valuesChanged();
+		_valuesChanged = true;
 
 		// draw pixel in fitted image
 		_fittedImage.draw(x, y, value);
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import loci.slim.IGrayScaleImage;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim.histogram.HistogramTool;
 import loci.slim.mask.IMaskGroup;
 import loci.slim.mask.MaskGroup;
@@ -151,9 +152,11 @@ public class FittedImageFitter {
 	 * periodically during the fit.
 	 */
 	public void updateLUTRange() {
+		final long span = Tracer.begin();
 		for (final IFittedImage fittedImage : _fittedImages) {
 			fittedImage.updateRanges();
 		}
+		Tracer.end("updateLUTRange", span);
 	}
 
 }
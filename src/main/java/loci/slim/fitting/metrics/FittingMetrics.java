@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps measurements in memory: fit latencies, error counts by curve fitter
+ * return value, busy time by worker, time by stage and queue depth.
+ */
+public class FittingMetrics implements IFittingMetrics {
+
+	private static final double NANOS_PER_SECOND = 1.0e9;
+	private static final double NANOS_PER_MICRO = 1.0e3;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final ConcurrentMap<Integer, AtomicLong> errors =
+		new ConcurrentHashMap<Integer, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> workers =
+		new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLongArray stages =
+		new AtomicLongArray(Stage.values().length);
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private volatile long startNanos = System.nanoTime();
+
+	@Override
+	public void queueDepth(final int depth) {
+		queueDepth.set(depth);
+		int current = maxQueueDepth.get();
+		while (depth > current && !maxQueueDepth.compareAndSet(current, depth)) {
+			current = maxQueueDepth.get();
+		}
+	}
+
+	@Override
+	public void taskCompleted(final String worker, final long nanos) {
+		getCounter(workers, worker).addAndGet(nanos);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void pixelFitted(final long nanos, final int returnValue) {
+		latency.record(nanos);
+		if (returnValue < 0) {
+			getCounter(errors, returnValue).incrementAndGet();
+		}
+	}
+
+	@Override
+	public void stageTime(final Stage stage, final long nanos) {
+		stages.addAndGet(stage.ordinal(), nanos);
+	}
+
+	/**
+	 * Gets fit latencies, in nanoseconds.
+	 *
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Gets number of pixels fitted.
+	 *
+	 */
+	public long getPixels() {
+		return latency.getCount();
+	}
+
+	/**
+	 * Gets pixels fitted per second since created or reset.
+	 *
+	 */
+	public double getPixelsPerSecond() {
+		final double seconds = getElapsedNanos() / NANOS_PER_SECOND;
+		return 0.0 == seconds ? 0.0 : getPixels() / seconds;
+	}
+
+	/**
+	 * Gets number of failed fits by curve fitter return value.
+	 *
+	 */
+	public Map<Integer, Long> getErrorCounts() {
+		final Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (final Map.Entry<Integer, AtomicLong> entry : errors.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets fraction of time each worker thread was busy since created or reset.
+	 *
+	 */
+	public Map<String, Double> getUtilization() {
+		final double elapsed = getElapsedNanos();
+		final Map<String, Double> utilization = new TreeMap<String, Double>();
+		for (final Map.Entry<String, AtomicLong> entry : workers.entrySet()) {
+			final double busy = entry.getValue().get();
+			utilization.put(entry.getKey(), 0.0 == elapsed ? 0.0 : busy / elapsed);
+		}
+		return utilization;
+	}
+
+	/**
+	 * Gets total time spent in a stage, in nanoseconds.
+	 *
+	 */
+	public long getStageNanos(final Stage stage) {
+		return stages.get(stage.ordinal());
+	}
+
+	/**
+	 * Gets number of tasks waiting in the thread pool.
+	 *
+	 */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Gets largest number of tasks waiting in the thread pool.
+	 *
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	@Override
+	public String getReport() {
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format("Fitting metrics over %.1f s%n",
+			getElapsedNanos() / NANOS_PER_SECOND));
+		final double fitSeconds = getStageNanos(Stage.FIT) / NANOS_PER_SECOND;
+		report.append(String.format("pixels %d, %.1f per second, %.1f per "
+			+ "second of fitting%n", getPixels(), getPixelsPerSecond(),
+			0.0 == fitSeconds ? 0.0 : getPixels() / fitSeconds));
+		report.append(String.format("fit latency us: mean %.1f, p50 %.1f, "
+			+ "p90 %.1f, p99 %.1f, max %.1f%n", latency.getMean() / NANOS_PER_MICRO,
+			micros(latency.getValueAtPercentile(50.0)), micros(latency
+				.getValueAtPercentile(90.0)), micros(latency
+				.getValueAtPercentile(99.0)), micros(latency.getMax())));
+		report.append("queue depth " + getQueueDepth() + ", max " +
+			getMaxQueueDepth() + "\n");
+		report.append("failed fits:");
+		for (final Map.Entry<Integer, Long> entry : getErrorCounts().entrySet()) {
+			report.append(" " + entry.getValue() + " returned " + entry.getKey());
+		}
+		report.append("\nstage seconds:");
+		for (final Stage stage : Stage.values()) {
+			report.append(String.format(" %s %.2f", stage.name().toLowerCase(),
+				getStageNanos(stage) / NANOS_PER_SECOND));
+		}
+		report.append("\n");
+		for (final Map.Entry<String, Double> entry : getUtilization().entrySet()) {
+			report.append(String.format("%s busy %.1f%%%n", entry.getKey(),
+				100.0 * entry.getValue()));
+		}
+		return report.toString();
+	}
+
+	@Override
+	public void reset() {
+		latency.reset();
+		errors.clear();
+		workers.clear();
+		for (int i = 0; i < stages.length(); ++i) {
+			stages.set(i, 0);
+		}
+		queueDepth.set(0);
+		maxQueueDepth.set(0);
+		startNanos = System.nanoTime();
+	}
+
+	private static double micros(final long nanos) {
+		return nanos / NANOS_PER_MICRO;
+	}
+
+	private long getElapsedNanos() {
+		return System.nanoTime() - startNanos;
+	}
+
+	private static <K> AtomicLong getCounter(
+		final ConcurrentMap<K, AtomicLong> counters, final K key)
+	{
+		AtomicLong counter = counters.get(key);
+		if (null == counter) {
+			final AtomicLong newCounter = new AtomicLong();
+			counter = counters.putIfAbsent(key, newCounter);
+			if (null == counter) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import imagej.thread.ThreadPoolMetrics;
+
+/**
+ * Receives measurements from the fitting code. Called from the worker threads,
+ * so implementations must be thread-safe.
+ */
+public interface IFittingMetrics extends ThreadPoolMetrics {
+
+	/**
+	 * Where the time of a whole-image fit goes.
+	 */
+	public enum Stage {
+		/** reading decays */
+		READ,
+		/** reading decays binned with their neighbors */
+		BIN,
+		/** fitting pixels, singly or in batches over threads */
+		FIT,
+		/** storing fitted parameters */
+		WRITE
+	}
+
+	/**
+	 * Whether measurements are used. If not, callers may skip timing.
+	 *
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * Notes one pixel fit.
+	 *
+	 * @param nanos time spent fitting
+	 * @param returnValue curve fitter return value, negative error codes
+	 */
+	public void pixelFitted(long nanos, int returnValue);
+
+	/**
+	 * Notes time spent in a stage.
+	 *
+	 */
+	public void stageTime(Stage stage, long nanos);
+
+	/**
+	 * Gets a readable summary of the measurements so far.
+	 *
+	 * @return summary or null if there are no measurements
+	 */
+	public String getReport();
+
+	/**
+	 * Clears the measurements.
+	 *
+	 */
+	public void reset();
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of latencies, in the manner of HdrHistogram.
+ * <p>
+ * Each power of two is split into 32 linear buckets, so any recorded value is
+ * known to within about 3% over the whole range of longs, in a fixed 15KB.
+ */
+public class LatencyHistogram {
+
+	private static final int PRECISION_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+	private static final int EXACT = 2 * SUB_BUCKETS;
+	private static final int BUCKETS = (62 - PRECISION_BITS) * SUB_BUCKETS +
+		EXACT;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value; negative values count as zero.
+	 *
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(getIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * Gets number of values recorded.
+	 *
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets largest value recorded, exactly.
+	 *
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets mean of values recorded, exactly.
+	 *
+	 */
+	public double getMean() {
+		final long n = count.get();
+		return 0 == n ? 0.0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Gets the value below which a given percentage of values fall.  Reports the
+	 * top of the bucket, so it is never an underestimate.
+	 *
+	 * @param percentile from 0 to 100
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		final long n = count.get();
+		if (0 == n) {
+			return 0;
+		}
+		final long rank =
+			Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(getHighestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all values.
+	 *
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Gets bucket of a value.  Small values have a bucket each; larger ones keep
+	 * their top six bits.
+	 *
+	 */
+	static int getIndex(final long value) {
+		if (value < EXACT) {
+			return (int) value;
+		}
+		final int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets lowest value in a bucket.
+	 *
+	 */
+	static long getLowestValue(final int index) {
+		if (index < EXACT) {
+			return index;
+		}
+		final int shift = index / SUB_BUCKETS - 1;
+		return (long) (index - shift * SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * Gets highest value in a bucket.
+	 *
+	 */
+	static long getHighestValue(final int index) {
+		return index + 1 < BUCKETS ? getLowestValue(index + 1) - 1
+			: Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records spans of time on a timeline and writes them in the Chrome trace
+ * event format, for chrome://tracing or Perfetto.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * final long span = Tracer.begin();
+ * try {
+ * 	...
+ * }
+ * finally {
+ * 	Tracer.end(&quot;name&quot;, span);
+ * }
+ * </pre>
+ *
+ * When not tracing, begin and end only read one volatile field. Run with
+ * <code>-Dloci.slim.trace=trace.json</code> to trace a whole run, or use
+ * {@link #start} and {@link #stop}.
+ */
+public final class Tracer {
+
+	/** Most spans kept; later ones are dropped. */
+	public static final int MAX_SPANS = 1000000;
+	private static volatile Recording recording;
+
+	static {
+		final String file = System.getProperty("loci.slim.trace");
+		if (null != file && !file.isEmpty()) {
+			start(new File(file));
+			Runtime.getRuntime().addShutdownHook(new Thread("Tracer") {
+
+				@Override
+				public void run() {
+					// not Thread.stop
+					Tracer.stop();
+				}
+			});
+		}
+	}
+
+	private Tracer() {}
+
+	/**
+	 * Starts tracing, discarding any trace in progress.
+	 *
+	 * @param file where {@link #stop} writes the trace
+	 */
+	public static synchronized void start(final File file) {
+		recording = new Recording(file);
+	}
+
+	/**
+	 * Stops tracing and writes the trace.
+	 *
+	 * @return whether written; false if not tracing or the write failed
+	 */
+	public static synchronized boolean stop() {
+		final Recording stopped = recording;
+		if (null == stopped) {
+			return false;
+		}
+		recording = null;
+		try {
+			stopped.write();
+		}
+		catch (final IOException e) {
+			System.err.println("Can't write trace " + stopped.file + " " +
+				e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Whether tracing.
+	 *
+	 */
+	public static boolean isEnabled() {
+		return null != recording;
+	}
+
+	/**
+	 * Begins a span.
+	 *
+	 * @return start of span, for {@link #end}
+	 */
+	public static long begin() {
+		return null == recording ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Ends a span, on the same thread it began.
+	 *
+	 * @param name of span
+	 * @param start from {@link #begin}, or {@link System#nanoTime}
+	 */
+	public static void end(final String name, final long start) {
+		final Recording current = recording;
+		if (null != current && 0 != start) {
+			current.add(name, start, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Spans recorded since tracing started.
+	 */
+	private static class Recording {
+
+		private final File file;
+		private final long origin = System.nanoTime();
+		private final Queue<Span> spans = new ConcurrentLinkedQueue<Span>();
+		private final AtomicInteger count = new AtomicInteger();
+		private final Map<Long, String> threads =
+			new ConcurrentHashMap<Long, String>();
+
+		Recording(final File file) {
+			this.file = file;
+		}
+
+		void add(final String name, final long start, final long stop) {
+			if (count.incrementAndGet() <= MAX_SPANS) {
+				final Thread thread = Thread.currentThread();
+				// spans begun before tracing started are clipped
+				final long clipped = Math.max(start, origin);
+				spans.add(new Span(name, thread.getId(), clipped - origin, stop -
+					clipped));
+				if (!threads.containsKey(thread.getId())) {
+					threads.put(thread.getId(), thread.getName());
+				}
+			}
+		}
+
+		void write() throws IOException {
+			final Writer writer = new BufferedWriter(new FileWriter(file));
+			try {
+				writer.write("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [\n");
+				boolean first = true;
+				for (final Map.Entry<Long, String> entry : new TreeMap<Long, String>(
+					threads).entrySet())
+				{
+					first = comma(writer, first);
+					writer.write("{\"name\": \"thread_name\", \"ph\": \"M\", " +
+						"\"pid\": 1, \"tid\": " + entry.getKey() +
+						", \"args\": {\"name\": " + quote(entry.getValue()) + "}}");
+				}
+				for (final Span span : spans) {
+					first = comma(writer, first);
+					writer.write("{\"name\": " + quote(span.name) +
+						", \"cat\": \"slim\", \"ph\": \"X\", \"pid\": 1, \"tid\": " +
+						span.thread + ", \"ts\": " + micros(span.start) + ", \"dur\": " +
+						micros(span.duration) + "}");
+				}
+				if (count.get() > MAX_SPANS) {
+					first = comma(writer, first);
+					writer.write("{\"name\": \"dropped spans\", \"ph\": \"i\", " +
+						"\"s\": \"g\", \"pid\": 1, \"tid\": 0, \"ts\": 0, " +
+						"\"args\": {\"count\": " + (count.get() - MAX_SPANS) + "}}");
+				}
+				writer.write("\n]}\n");
+			}
+			finally {
+				writer.close();
+			}
+		}
+
+		private static boolean comma(final Writer writer, final boolean first)
+			throws IOException
+		{
+			if (!first) {
+				writer.write(",\n");
+			}
+			return false;
+		}
+
+		private static String micros(final long nanos) {
+			return (nanos / 1000) + "." + String.format("%03d", nanos % 1000);
+		}
+
+		private static String quote(final String value) {
+			final StringBuilder builder = new StringBuilder("\"");
+			for (int i = 0; i < value.length(); ++i) {
+				final char c = value.charAt(i);
+				if ('"' == c || '\\' == c) {
+					builder.append('\\').append(c);
+				}
+				else if (c < ' ') {
+					builder.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					builder.append(c);
+				}
+			}
+			return builder.append('"').toString();
+		}
+	}
+
+	/**
+	 * One span of time on one thread.
+	 */
+	private static class Span {
+
+		final String name;
+		final long thread;
+		final long start;
+		final long duration;
+
+		Span(final String name, final long thread, final long start,
+			final long duration)
+		{
+			this.name = name;
+			this.thread = thread;
+			this.start = start;
+			this.duration = duration;
+		}
+	}
+}
@@ -49,6 +49,7 @@ public class GlobalFitParams implements IGlobalFitParams {
 	private int _transientStart;
 	private int _dataStart;
 	private int _transientStop;
+	private double[] _lifetimes;
 
 	@Override
 	public void setEstimator(final IFitterEstimator estimator) {
@@ -179,4 +180,14 @@ public class GlobalFitParams implements IGlobalFitParams {
 	public int getTransientStop() {
 		return _transientStop;
 	}
+
+	@Override
+	public void setLifetimes(final double[] lifetimes) {
+		_lifetimes = lifetimes;
+	}
+
+	@Override
+	public double[] getLifetimes() {
+		return _lifetimes;
+	}
 }
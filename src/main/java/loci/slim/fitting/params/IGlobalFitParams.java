@@ -87,4 +87,14 @@ public interface IGlobalFitParams {
 	public int getTransientStop();
 
 	public void setTransientStop(int transientStop);
+
+	/**
+	 * Sets lifetimes shared by all pixels, for a global fit of the amplitudes
+	 * alone.
+	 *
+	 * @param lifetimes or null to fit each pixel independently
+	 */
+	public void setLifetimes(double[] lifetimes);
+
+	public double[] getLifetimes();
 }
@@ -48,6 +48,17 @@ public class HistogramDataNode {
 	private Mask _otherMask;
 	private Mask _totalMask;
 
+	// values sorted ascending, with their pixel indices, for finding the pixels
+	// that change as the LUT range is dragged
+	private double[] _sortedValues;
+	private int[] _sortedIndices;
+	private boolean _valuesChanged;
+
+	// our current self mask and the sorted range it includes
+	private Mask _selfMask;
+	private int _selfLow;
+	private int _selfHigh;
+
 	/**
 	 * Constructor, takes the array of values. This class keeps a separate array
 	 * of values, rather than just referring to the image values, for two reasons:
@@ -63,6 +74,7 @@ public class HistogramDataNode {
 		_fittedImage = fittedImage;
 		_values = values;
 		_otherMask = _totalMask = null;
+		_valuesChanged = true;
 	}
 
 	/**
@@ -92,6 +104,14 @@ public class HistogramDataNode {
 		return _values;
 	}
 
+	/**
+	 * Notes that the values array has been changed, invalidating the sorted
+	 * index of values.
+	 */
+	public void valuesChanged() {
+		_valuesChanged = true;
+	}
+
 	/**
 	 * Finds the actual minimum and maximum values. Called initially and after
 	 * values change. This will exclude pixels masked by self or others.
@@ -296,32 +316,41 @@ public class HistogramDataNode {
 	/**
 	 * Builds a mask based on which values are within the LUT range and sends it
 	 * out to peer nodes.
+	 * <p>
+	 * While the values stay the same, only the pixels whose values lie between
+	 * the previous and current LUT bounds are changed.
 	 *
 	 */
 	public void propagateMask(final double minLUT, final double maxLUT) {
-		boolean masked = false;
-		final int width = _values.length;
-		final int height = _values[0].length;
-		final boolean[][] bits = new boolean[width][height];
-		for (int y = 0; y < height; ++y) {
-			for (int x = 0; x < width; ++x) {
-				final Double value = _values[x][y];
-				bits[x][y] = false;
-				if (!value.isNaN()) {
-					if (minLUT <= value && value <= maxLUT) {
-						// in range, include this pixel
-						bits[x][y] = true;
-					}
-					else {
-						// we did just mask out a pixel
-						masked = true;
-					}
-				}
-			}
+		if (_valuesChanged) {
+			sortValues();
+			_selfMask = null;
+		}
+
+		// included pixels are a contiguous run of sorted values
+		final int low = lowerBound(_sortedValues, minLUT);
+		final int high = Math.max(low, upperBound(_sortedValues, maxLUT));
+
+		if (null == _selfMask) {
+			final int width = _values.length;
+			final int height = _values[0].length;
+			_selfMask = new Mask(width, height);
+			setRange(low, high, true);
+		}
+		else {
+			// exclude pixels that left the range, include pixels that entered it
+			setRange(_selfLow, Math.min(_selfHigh, low), false);
+			setRange(Math.max(_selfLow, high), _selfHigh, false);
+			setRange(low, Math.min(high, _selfLow), true);
+			setRange(Math.max(low, _selfHigh), high, true);
 		}
+		_selfLow = low;
+		_selfHigh = high;
+
+		// NaN values are always excluded but don't count as masking
 		Mask selfMask = null;
-		if (masked) {
-			selfMask = new Mask(bits);
+		if (high - low < _sortedValues.length) {
+			selfMask = _selfMask;
 		}
 		_maskNode.updateSelfMask(selfMask);
 	}
@@ -330,7 +359,122 @@ public class HistogramDataNode {
 	 * Deletes our mask.
 	 */
 	public void rescindMask() {
+		_selfMask = null;
 		final Mask selfMask = null;
 		_maskNode.updateSelfMask(selfMask);
 	}
+
+	/**
+	 * Includes or excludes the pixels in a range of sorted values.
+	 */
+	private void setRange(final int start, final int stop, final boolean include)
+	{
+		final int width = _values.length;
+		for (int i = start; i < stop; ++i) {
+			final int index = _sortedIndices[i];
+			if (include) {
+				_selfMask.set(index % width, index / width);
+			}
+			else {
+				_selfMask.clear(index % width, index / width);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the non-NaN values, keeping track of their pixel indices.
+	 * <p>
+	 * Uses a radix sort on the double bits, which orders as the doubles do once
+	 * negative values have their magnitude bits flipped.
+	 */
+	private void sortValues() {
+		final int width = _values.length;
+		final int height = _values[0].length;
+		long[] keys = new long[width * height];
+		int[] indices = new int[width * height];
+		int count = 0;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				final double value = _values[x][y];
+				if (!Double.isNaN(value)) {
+					final long bits = Double.doubleToLongBits(value);
+					keys[count] = bits ^ ((bits >> 63) | Long.MIN_VALUE);
+					indices[count] = y * width + x;
+					++count;
+				}
+			}
+		}
+
+		// least significant digit first, 16 bits at a time
+		long[] tmpKeys = new long[count];
+		int[] tmpIndices = new int[count];
+		final int[] offsets = new int[1 << 16];
+		for (int shift = 0; shift < 64; shift += 16) {
+			Arrays.fill(offsets, 0);
+			for (int i = 0; i < count; ++i) {
+				++offsets[(int) (keys[i] >>> shift) & 0xffff];
+			}
+			int offset = 0;
+			for (int d = 0; d < offsets.length; ++d) {
+				final int n = offsets[d];
+				offsets[d] = offset;
+				offset += n;
+			}
+			for (int i = 0; i < count; ++i) {
+				final int o = offsets[(int) (keys[i] >>> shift) & 0xffff]++;
+				tmpKeys[o] = keys[i];
+				tmpIndices[o] = indices[i];
+			}
+			final long[] swapKeys = keys;
+			keys = tmpKeys;
+			tmpKeys = swapKeys;
+			final int[] swapIndices = indices;
+			indices = tmpIndices;
+			tmpIndices = swapIndices;
+		}
+
+		_sortedValues = new double[count];
+		_sortedIndices = Arrays.copyOf(indices, count);
+		for (int i = 0; i < count; ++i) {
+			final int index = _sortedIndices[i];
+			_sortedValues[i] = _values[index % width][index / width];
+		}
+		_valuesChanged = false;
+	}
+
+	/**
+	 * Index of first value that is not less than the given value.
+	 */
+	private static int lowerBound(final double[] values, final double value) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (values[mid] < value) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Index of first value that is greater than the given value.
+	 */
+	private static int upperBound(final double[] values, final double value) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (values[mid] <= value) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
 }
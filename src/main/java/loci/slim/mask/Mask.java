@@ -25,58 +25,104 @@ package loci.slim.mask;
 
 import ij.IJ;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
  * Class for keeping track of exclusion masks. Similar to a ROI, but these masks
  * are used while examining fitted results.
+ * <p>
+ * Bits are packed row by row into an array of longs, 64 pixels per word, so
+ * that combining, comparing and counting masks works a word at a time.
  *
  * @author Aivar Grislis
  */
 public class Mask implements Cloneable {
 
-	private boolean[][] _bits;
+	static final int WORD_SHIFT = 6;
+	static final int WORD_BITS = 1 << WORD_SHIFT;
+	private static final int WORD_MASK = WORD_BITS - 1;
+
 	private final int _width;
 	private final int _height;
+	private final int _size;
+	private final long[] _words;
 
+	/**
+	 * Creates a mask from boolean switches, indexed [x][y].
+	 *
+	 */
 	public Mask(final boolean[][] bits) {
-		_width = bits[0].length;
-		_height = bits.length;
-		_bits = bits;
+		this(bits.length, bits[0].length);
+		setBits(bits);
 	}
 
+	/**
+	 * Creates a mask of given size with all pixels excluded.
+	 *
+	 */
 	public Mask(final int width, final int height) {
 		_width = width;
 		_height = height;
+		_size = width * height;
 		// create array of FALSE
-		_bits = new boolean[width][height];
+		_words = new long[wordCount(_size)];
+	}
+
+	/**
+	 * Creates a mask that wraps packed words, as built by {@link MaskGroup}.
+	 */
+	Mask(final int width, final int height, final long[] words) {
+		_width = width;
+		_height = height;
+		_size = width * height;
+		_words = words;
 	}
 
 	@Override
 	public Mask clone() {
-		final boolean[][] bits = new boolean[_width][_height];
-		for (int y = 0; y < _height; ++y) {
-			for (int x = 0; x < _width; ++x) {
-				bits[x][y] = _bits[x][y];
-			}
-		}
-		return new Mask(bits);
+		return new Mask(_width, _height, _words.clone());
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public int getHeight() {
+		return _height;
 	}
 
 	/**
-	 * Gets the boolean switches.
+	 * Gets the boolean switches, indexed [x][y].
+	 * <p>
+	 * This is a copy; changes to the array do not affect the mask.
 	 *
 	 */
 	public boolean[][] getBits() {
-		return _bits;
+		final boolean[][] bits = new boolean[_width][_height];
+		for (int y = 0; y < _height; ++y) {
+			for (int x = 0; x < _width; ++x) {
+				bits[x][y] = test(x, y);
+			}
+		}
+		return bits;
 	}
 
 	/**
-	 * Sets the boolean switches.
+	 * Sets the boolean switches, indexed [x][y].
 	 *
 	 */
 	public void setBits(final boolean[][] bits) {
-		_bits = bits;
+		for (int i = 0; i < _words.length; ++i) {
+			_words[i] = 0L;
+		}
+		for (int y = 0; y < _height; ++y) {
+			for (int x = 0; x < _width; ++x) {
+				if (bits[x][y]) {
+					set(x, y);
+				}
+			}
+		}
 	}
 
 	/**
@@ -84,11 +130,8 @@ public class Mask implements Cloneable {
 	 *
 	 */
 	public boolean test(final int x, final int y) {
-		boolean result = true;
-		if (null != _bits) {
-			result = _bits[x][y];
-		}
-		return result;
+		final int index = y * _width + x;
+		return 0L != (_words[index >>> WORD_SHIFT] & (1L << index));
 	}
 
 	/**
@@ -96,9 +139,17 @@ public class Mask implements Cloneable {
 	 *
 	 */
 	public void set(final int x, final int y) {
-		if (null != _bits) {
-			_bits[x][y] = true;
-		}
+		final int index = y * _width + x;
+		_words[index >>> WORD_SHIFT] |= 1L << index;
+	}
+
+	/**
+	 * Clears a masked x and y.
+	 *
+	 */
+	public void clear(final int x, final int y) {
+		final int index = y * _width + x;
+		_words[index >>> WORD_SHIFT] &= ~(1L << index);
 	}
 
 	/**
@@ -106,14 +157,13 @@ public class Mask implements Cloneable {
 	 *
 	 */
 	public boolean hasExcludedPixels() {
-		for (int y = 0; y < _height; ++y) {
-			for (int x = 0; x < _width; ++x) {
-				if (!test(x, y)) {
-					return true;
-				}
+		final int last = _words.length - 1;
+		for (int i = 0; i < last; ++i) {
+			if (-1L != _words[i]) {
+				return true;
 			}
 		}
-		return false;
+		return last >= 0 && lastWordMask() != _words[last];
 	}
 
 	/**
@@ -121,34 +171,19 @@ public class Mask implements Cloneable {
 	 *
 	 */
 	public boolean equals(final Mask mask) {
-		boolean returnValue = false;
 		if (null == mask) {
 			// no mask means all pixels selected
-			final boolean[][] bits = mask.getBits();
-			for (int y = 0; y < _height; ++y) {
-				for (int x = 0; x < _width; ++x) {
-					if (!bits[x][y]) {
-						return false;
-					}
-				}
-			}
+			return !hasExcludedPixels();
 		}
-		else {
-			final boolean[][] bits = mask.getBits();
-			if (bits.length == _bits.length) {
-				if (bits[0].length == _bits[0].length) {
-					for (int y = 0; y < _height; ++y) {
-						for (int x = 0; x < _width; ++x) {
-							if (bits[x][y] != _bits[x][y]) {
-								return false;
-							}
-						}
-					}
-					returnValue = true;
-				}
+		if (mask._width != _width || mask._height != _height) {
+			return false;
+		}
+		for (int i = 0; i < _words.length; ++i) {
+			if (mask._words[i] != _words[i]) {
+				return false;
 			}
 		}
-		return returnValue;
+		return true;
 	}
 
 	/**
@@ -159,14 +194,24 @@ public class Mask implements Cloneable {
 		if (null == mask) {
 			return clone();
 		}
-		final boolean[][] bits = mask.getBits();
-		final boolean[][] result = new boolean[_width][_height];
-		for (int x = 0; x < _width; ++x) {
-			for (int y = 0; y < _height; ++y) {
-				result[x][y] = _bits[x][y] && bits[x][y];
-			}
+		final long[] result = new long[_words.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = _words[i] & mask._words[i];
+		}
+		return new Mask(_width, _height, result);
+	}
+
+	/**
+	 * Combines given mask with current mask, generating a new mask with the
+	 * pixels selected in either.
+	 *
+	 */
+	public Mask union(final Mask mask) {
+		final long[] result = new long[_words.length];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = _words[i] | mask._words[i];
 		}
-		return new Mask(result);
+		return new Mask(_width, _height, result);
 	}
 
 	/**
@@ -177,64 +222,104 @@ public class Mask implements Cloneable {
 	 * @return mask or null
 	 */
 	public static Mask addMasks(final Collection<Mask> masks) {
-		Mask returnValue = null;
-		if (!masks.isEmpty()) {
-			boolean[][] result = null;
-			int width = 0;
-			int height = 0;
-
-			for (final Mask mask : masks) {
-				if (null != mask) {
-					final boolean[][] maskBits = mask.getBits();
-					if (null == result) {
-						width = maskBits[0].length;
-						height = maskBits.length;
-						result = new boolean[width][height];
-						for (int y = 0; y < height; ++y) {
-							for (int x = 0; x < width; ++x) {
-								result[x][y] = true;
-							}
-						}
-					}
-					for (int y = 0; y < height; ++y) {
-						for (int x = 0; x < width; ++x) {
-							result[x][y] = result[x][y] && maskBits[x][y];
-						}
+		long[] result = null;
+		int width = 0;
+		int height = 0;
+		for (final Mask mask : masks) {
+			if (null != mask) {
+				if (null == result) {
+					width = mask._width;
+					height = mask._height;
+					result = mask._words.clone();
+				}
+				else {
+					final long[] words = mask._words;
+					for (int i = 0; i < result.length; ++i) {
+						result[i] &= words[i];
 					}
 				}
 			}
-			if (null != result) {
-				returnValue = new Mask(result);
-			}
 		}
-		return returnValue;
+		return null == result ? null : new Mask(width, height, result);
 	}
 
-	public int getCount() {
+	/**
+	 * Finds the pixels that differ between two masks of the same size. A null
+	 * mask means all pixels selected.
+	 *
+	 * @return array of pixel indices, y * width + x
+	 */
+	public static int[] findChanges(final Mask oldMask, final Mask newMask) {
+		if (null == oldMask && null == newMask) {
+			return new int[0];
+		}
+		final Mask sizeMask = null == newMask ? oldMask : newMask;
+		final int size = sizeMask._size;
+		final int wordCount = sizeMask._words.length;
+		int[] changes = new int[64];
 		int count = 0;
-		for (int y = 0; y < _height; ++y) {
-			for (int x = 0; x < _width; ++x) {
-				if (_bits[x][y]) {
-					++count;
+		for (int i = 0; i < wordCount; ++i) {
+			final long valid = validBits(size, i);
+			final long oldWord = null == oldMask ? valid : oldMask._words[i];
+			final long newWord = null == newMask ? valid : newMask._words[i];
+			long changed = oldWord ^ newWord;
+			while (0L != changed) {
+				if (count == changes.length) {
+					changes = Arrays.copyOf(changes, 2 * count);
 				}
+				changes[count++] =
+					(i << WORD_SHIFT) + Long.numberOfTrailingZeros(changed);
+				changed &= changed - 1;
 			}
 		}
+		return Arrays.copyOf(changes, count);
+	}
+
+	public int getCount() {
+		int count = 0;
+		for (final long word : _words) {
+			count += Long.bitCount(word);
+		}
 		return count;
 	}
 
 	public void debug() {
-		if (null == _bits) {
-			IJ.log("NONE");
-		}
-		else {
-			final StringBuilder sb = new StringBuilder();
-			for (int y = 0; y < _height; ++y) {
-				for (int x = 0; x < _width; ++x) {
-					sb.append(" " + _bits[x][y]);
-				}
-				sb.append("\n");
+		final StringBuilder sb = new StringBuilder();
+		for (int y = 0; y < _height; ++y) {
+			for (int x = 0; x < _width; ++x) {
+				sb.append(" " + test(x, y));
 			}
-			IJ.log(sb.toString());
+			sb.append("\n");
 		}
+		IJ.log(sb.toString());
+	}
+
+	/**
+	 * Gets the packed words, for word-level combining within the package.
+	 */
+	long[] getWords() {
+		return _words;
+	}
+
+	/**
+	 * Number of words needed to hold a given number of bits.
+	 */
+	static int wordCount(final int size) {
+		return (size + WORD_MASK) >>> WORD_SHIFT;
+	}
+
+	/**
+	 * Bits of the last word that correspond to actual pixels.
+	 */
+	private long lastWordMask() {
+		return validBits(_size, _words.length - 1);
+	}
+
+	/**
+	 * Bits of a given word that correspond to actual pixels.
+	 */
+	static long validBits(final int size, final int wordIndex) {
+		final int remaining = size - (wordIndex << WORD_SHIFT);
+		return remaining >= WORD_BITS ? -1L : (1L << remaining) - 1;
 	}
 }
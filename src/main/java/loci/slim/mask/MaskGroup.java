@@ -24,7 +24,6 @@
 package loci.slim.mask;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +33,11 @@ import java.util.Map;
  * <p>
  * Note that mask changes are a results of user interaction using the single
  * histogram tool, so threading issues are unlikely.
+ * <p>
+ * Rather than AND-ing together all the other masks for every peer on every
+ * change, the group keeps a count per pixel of how many nodes exclude that
+ * pixel. A node's "other" mask is then the pixels no node excludes, plus the
+ * pixels excluded only by that node itself.
  *
  * @author Aivar Grislis
  */
@@ -43,6 +47,14 @@ public class MaskGroup implements IMaskGroup {
 	Map<IMaskNode, Mask> _maskMap;
 	IMaskNode[] _nodes;
 
+	// per pixel exclusion counts
+	private int _width;
+	private int _height;
+	private int[] _counts;
+	private long[] _zeroWords;
+	private long[] _oneWords;
+	private int _maskCount;
+
 	public MaskGroup() {
 		_nodeList = new ArrayList<IMaskNode>();
 		_maskMap = new HashMap<IMaskNode, Mask>();
@@ -59,29 +71,22 @@ public class MaskGroup implements IMaskGroup {
 	@Override
 	public void removeNode(final IMaskNode node) {
 		_nodeList.remove(node);
-		_maskMap.put(node, null);
+		applyChange(_maskMap.put(node, null), null);
 	}
 
 	@Override
 	public void updateMask(final IMaskNode node) {
-		// update map with node's new self mask
+		// update map with node's new self mask; keep a private copy so the
+		// change can be worked out next time even if the node reuses its mask
 		final Mask selfMask = node.getSelfMask();
-		_maskMap.put(node, selfMask);
+		final Mask newMask = null == selfMask ? null : selfMask.clone();
+		applyChange(_maskMap.put(node, newMask), newMask);
 
-		// combine masks and notify other nodes
+		// notify other nodes
 		for (final IMaskNode peerNode : _nodeList) {
 			// skip notifying the caller
 			if (peerNode != node) {
-				// combine all masks but the recipient's own
-				final Mask peerSelfMask = _maskMap.get(peerNode);
-				final Collection<Mask> masks = new ArrayList<Mask>(_maskMap.values());
-				if (null != peerSelfMask) {
-					masks.remove(peerSelfMask);
-				}
-
-				// notify other node
-				final Mask peerOtherMask = Mask.addMasks(masks);
-				peerNode.updateOtherMask(peerOtherMask);
+				peerNode.updateOtherMask(getOtherMask(peerNode));
 			}
 		}
 	}
@@ -89,6 +94,108 @@ public class MaskGroup implements IMaskGroup {
 	@Override
 	public Mask getMask() {
 		// combine all masks
-		return Mask.addMasks(_maskMap.values());
+		if (0 == _maskCount) {
+			return null;
+		}
+		return new Mask(_width, _height, _zeroWords.clone());
+	}
+
+	/**
+	 * Combines all masks but the given node's own.
+	 *
+	 * @return mask or null
+	 */
+	private Mask getOtherMask(final IMaskNode node) {
+		final Mask selfMask = _maskMap.get(node);
+		if (null == selfMask) {
+			return getMask();
+		}
+		if (1 == _maskCount) {
+			// node's own mask is the only one
+			return null;
+		}
+		final long[] selfWords = selfMask.getWords();
+		final long[] words = new long[_zeroWords.length];
+		for (int i = 0; i < words.length; ++i) {
+			// included by everyone else: no exclusions, or the only exclusion is
+			// the node's own
+			words[i] = _zeroWords[i] | (_oneWords[i] & ~selfWords[i]);
+		}
+		return new Mask(_width, _height, words);
+	}
+
+	/**
+	 * Updates per pixel exclusion counts as a node's mask changes.
+	 *
+	 * @param oldMask may be null
+	 * @param newMask may be null
+	 */
+	private void applyChange(final Mask oldMask, final Mask newMask) {
+		if (null == oldMask && null == newMask) {
+			return;
+		}
+		final Mask sizeMask = null == newMask ? oldMask : newMask;
+		if (null == _counts || sizeMask.getWidth() != _width ||
+			sizeMask.getHeight() != _height)
+		{
+			// recounts the masks now in the map, including the new mask
+			resize(sizeMask.getWidth(), sizeMask.getHeight());
+			return;
+		}
+
+		final int size = _width * _height;
+		final long[] oldWords = null == oldMask ? null : oldMask.getWords();
+		final long[] newWords = null == newMask ? null : newMask.getWords();
+		for (int i = 0; i < _zeroWords.length; ++i) {
+			final long valid = Mask.validBits(size, i);
+			final long oldExcluded = null == oldWords ? 0L : ~oldWords[i] & valid;
+			final long newExcluded = null == newWords ? 0L : ~newWords[i] & valid;
+			long changed = oldExcluded ^ newExcluded;
+			while (0L != changed) {
+				final long bit = Long.lowestOneBit(changed);
+				changed ^= bit;
+				final int index =
+					(i << Mask.WORD_SHIFT) + Long.numberOfTrailingZeros(bit);
+				final int count =
+					0L != (newExcluded & bit) ? ++_counts[index] : --_counts[index];
+				_zeroWords[i] = 0 == count ? _zeroWords[i] | bit : _zeroWords[i] & ~bit;
+				_oneWords[i] = 1 == count ? _oneWords[i] | bit : _oneWords[i] & ~bit;
+			}
+		}
+		if (null == oldMask) {
+			++_maskCount;
+		}
+		if (null == newMask) {
+			--_maskCount;
+		}
+	}
+
+	/**
+	 * Sets up counts for a new image size, recounting any current masks.
+	 */
+	private void resize(final int width, final int height) {
+		_width = width;
+		_height = height;
+		final int size = width * height;
+		_counts = new int[size];
+		_zeroWords = new long[Mask.wordCount(size)];
+		_oneWords = new long[_zeroWords.length];
+		for (int i = 0; i < _zeroWords.length; ++i) {
+			_zeroWords[i] = Mask.validBits(size, i);
+		}
+		_maskCount = 0;
+
+		// masks of the wrong size no longer take part
+		for (final Map.Entry<IMaskNode, Mask> entry : _maskMap.entrySet()) {
+			final Mask mask = entry.getValue();
+			if (null != mask) {
+				if (mask.getWidth() == width && mask.getHeight() == height) {
+					applyChange(null, mask);
+				}
+				else {
+					entry.setValue(null);
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,153 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.preprocess;
+
+import ij.gui.Roi;
+
+import java.awt.Rectangle;
+
+import loci.slim.IntensityProjection;
+import loci.slim.mask.Mask;
+
+/**
+ * Compiles the ROIs, photon count threshold and an optional mask into one
+ * bitset per channel, so pixels that won't be fitted are rejected without
+ * reading their decay.
+ * <p>
+ * As a processor it passes on only eligible pixels, taking the place of
+ * chained {@link RoiProcessor} and {@link Threshold} processors.
+ */
+public class EligiblePixels implements IProcessor {
+
+	private final int _width;
+	private final int _height;
+	private final Roi[] _rois;
+	private final int _threshold;
+	private final IntensityProjection _intensity;
+	private final int _increment;
+	private final Mask _mask;
+	private final Mask[] _channelMasks;
+	private IProcessor _processor;
+
+	/**
+	 * Creates eligible pixels; the bitset of a channel is built on first use.
+	 *
+	 * @param rois pixels must be within one of these, null or empty for all
+	 * @param threshold minimum photon count, 0 for none
+	 * @param intensity photon count index, with channels as planes
+	 * @param increment photon count divisor, as for the decays
+	 * @param mask pixels must be set in this mask, may be null
+	 */
+	public EligiblePixels(final int width, final int height, final int channels,
+		final Roi[] rois, final int threshold, final IntensityProjection intensity,
+		final int increment, final Mask mask)
+	{
+		_width = width;
+		_height = height;
+		_rois = null == rois || 0 == rois.length ? null : rois;
+		_threshold = threshold;
+		_intensity = intensity;
+		_increment = increment;
+		_mask = mask;
+		_channelMasks = new Mask[channels];
+	}
+
+	/**
+	 * Gets the bitset of eligible pixels for a channel.
+	 *
+	 */
+	public synchronized Mask getMask(final int channel) {
+		if (null == _channelMasks[channel]) {
+			final Mask mask = new Mask(_width, _height);
+			if (null == _rois) {
+				addRectangle(mask, channel, null, new Rectangle(0, 0, _width,
+					_height));
+			}
+			else {
+				// only look within each ROI's bounds
+				for (final Roi roi : _rois) {
+					addRectangle(mask, channel, roi, roi.getBounds());
+				}
+			}
+			_channelMasks[channel] = mask;
+		}
+		return _channelMasks[channel];
+	}
+
+	/**
+	 * Is a pixel eligible for fitting?
+	 *
+	 */
+	public boolean isEligible(final int x, final int y, final int channel) {
+		return getMask(channel).test(x, y);
+	}
+
+	/**
+	 * Specifies a source IProcessor to be chained to this one.
+	 *
+	 */
+	@Override
+	public void chain(final IProcessor processor) {
+		_processor = processor;
+	}
+
+	/**
+	 * Gets input pixel value.
+	 *
+	 * @return null or pixel value
+	 */
+	@Override
+	public double[] getPixel(final int[] location) {
+		final int channel = location.length > 2 ? location[2] : 0;
+		if (!isEligible(location[0], location[1], channel)) {
+			return null;
+		}
+		return _processor.getPixel(location);
+	}
+
+	/**
+	 * Sets eligible pixels within a rectangle, clipped to the image.
+	 *
+	 * @param roi pixels must be within, may be null
+	 */
+	private void addRectangle(final Mask mask, final int channel,
+		final Roi roi, final Rectangle bounds)
+	{
+		final int x0 = Math.max(0, bounds.x);
+		final int y0 = Math.max(0, bounds.y);
+		final int x1 = Math.min(_width, bounds.x + bounds.width);
+		final int y1 = Math.min(_height, bounds.y + bounds.height);
+		for (int y = y0; y < y1; ++y) {
+			for (int x = x0; x < x1; ++x) {
+				if ((null == roi || roi.contains(x, y)) &&
+					(null == _mask || _mask.test(x, y)) &&
+					(_threshold <= 0 || _intensity.getSum(channel, x, y) / _increment >=
+						_threshold))
+				{
+					mask.set(x, y);
+				}
+			}
+		}
+	}
+}
@@ -23,6 +23,8 @@
 
 package loci.slim.preprocess;
 
+import loci.slim.IntensityProjection;
+
 /**
  * This class bins the image.
  *
@@ -34,6 +36,7 @@ public class SquareBinner implements IProcessor {
 	private int _width;
 	private int _height;
 	private IProcessor _processor;
+	private IntensityProjection _intensity;
 
 	/**
 	 * Initializes the binner. Must be called once after instantiation and before
@@ -46,6 +49,15 @@ public class SquareBinner implements IProcessor {
 		_height = height;
 	}
 
+	/**
+	 * Sets a photon count index, used to skip neighbors without photons.
+	 *
+	 * @param intensity photon count index with channels as planes, may be null
+	 */
+	public void setIntensity(final IntensityProjection intensity) {
+		_intensity = intensity;
+	}
+
 	/**
 	 * Specifies a source IProcessor to be chained to this one.
 	 *
@@ -69,6 +81,7 @@ public class SquareBinner implements IProcessor {
 
 			final int x = location[0];
 			final int y = location[1];
+			final int channel = location.length > 2 ? location[2] : 0;
 
 			int startX = x - _size;
 			if (startX < 0) {
@@ -89,7 +102,10 @@ public class SquareBinner implements IProcessor {
 
 			for (int j = startY; j <= stopY; ++j) {
 				for (int i = startX; i <= stopX; ++i) {
-					if (j != y || i != x) {
+					// an empty neighbor adds nothing
+					if ((j != y || i != x) &&
+						(null == _intensity || 0.0 != _intensity.getSum(channel, i, j)))
+					{
 						location[0] = i;
 						location[1] = j;
 						final double[] pixel = _processor.getPixel(location);
@@ -23,6 +23,8 @@
 
 package loci.slim.preprocess;
 
+import loci.slim.IntensityProjection;
+
 /**
  * This class thresholds the image to a given photon count.
  *
@@ -31,10 +33,27 @@ package loci.slim.preprocess;
 public class Threshold implements IProcessor {
 
 	private final int _threshold;
+	private final IntensityProjection _intensity;
+	private final int _increment;
 	private IProcessor _processor;
 
 	public Threshold(final int threshold) {
+		this(threshold, null, 1);
+	}
+
+	/**
+	 * Creates a threshold that looks up photon counts in an index, so rejected
+	 * pixels are never read.
+	 *
+	 * @param intensity photon count index, with channels as planes
+	 * @param increment photon count divisor, as for the decays
+	 */
+	public Threshold(final int threshold, final IntensityProjection intensity,
+		final int increment)
+	{
 		_threshold = threshold;
+		_intensity = intensity;
+		_increment = increment;
 	}
 
 	/**
@@ -53,6 +72,12 @@ public class Threshold implements IProcessor {
 	 */
 	@Override
 	public double[] getPixel(final int[] location) {
+		if (null != _intensity) {
+			final int channel = location.length > 2 ? location[2] : 0;
+			final double sum =
+				_intensity.getSum(channel, location[0], location[1]) / _increment;
+			return sum < _threshold ? null : _processor.getPixel(location);
+		}
 		double[] decay = _processor.getPixel(location);
 
 		// reject any pixels that have less than the threshold number of photons
@@ -239,6 +239,12 @@ public interface IUserInterfacePanel {
 	 */
 	boolean getRefineFit();
 
+	/**
+	 * Gets whether to fit lifetimes shared by all pixels.
+	 *
+	 */
+	boolean getGlobalLifetimes();
+
 	/**
 	 * Experimental: gets a scatter factor from UI. SPC Image can fit an
 	 * additional scatter parameter; this is an attempt to see if scatter
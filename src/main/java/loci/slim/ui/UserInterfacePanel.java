@@ -230,6 +230,7 @@ public class UserInterfacePanel implements IUserInterfacePanel,
 	JCheckBox _colorizeGrayScale;
 	public static JCheckBox[] _analysisCheckBoxList;
 	JCheckBox _fitAllChannels;
+	JCheckBox _globalLifetimes;
 
 	JTextField meanValueTextField;
 	// cursor settings
@@ -736,8 +737,12 @@ public class UserInterfacePanel implements IUserInterfacePanel,
 
 		_fitAllChannels = new JCheckBox("Fit all channels");
 		_fitAllChannels.setSelected(true);
+		_globalLifetimes = new JCheckBox("Global lifetimes");
 
-		panel.add("South", _fitAllChannels);
+		final JPanel checkBoxPanel = new JPanel(new BorderLayout());
+		checkBoxPanel.add("North", _fitAllChannels);
+		checkBoxPanel.add("South", _globalLifetimes);
+		panel.add("South", checkBoxPanel);
 		return panel;
 	}
 
@@ -2638,6 +2643,7 @@ public class UserInterfacePanel implements IUserInterfacePanel,
 			checkBox.setEnabled(enable);
 		}
 		_fitAllChannels.setEnabled(enable);
+		_globalLifetimes.setEnabled(enable);
 
 		// cursors settings
 		_transientStartSpinner.setEnabled(enable);
@@ -2889,6 +2895,11 @@ public class UserInterfacePanel implements IUserInterfacePanel,
 		return _fitAllChannels.isSelected();
 	}
 
+	@Override
+	public boolean getGlobalLifetimes() {
+		return _globalLifetimes.isSelected();
+	}
+
 	@Override
 	public int getX() {
 		return (Integer) _xSpinner.getValue();
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.analysis.batch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads pixel values written by {@link ExportPixelsToBinary}, one section at
+ * a time.
+ */
+public class BinaryPixelsReader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private final DataInputStream in;
+	private final byte[] intBytes = new byte[4];
+
+	public BinaryPixelsReader(final InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	public BinaryPixelsReader(final File file) throws IOException {
+		this(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	/**
+	 * Reads the next section.
+	 *
+	 * @return null at end of file
+	 * @throws IOException if not a pixels file or truncated
+	 */
+	public Section next() throws IOException {
+		final byte[] magic = new byte[ExportPixelsToBinary.MAGIC.length];
+		final int first = in.read();
+		if (-1 == first) {
+			return null;
+		}
+		magic[0] = (byte) first;
+		in.readFully(magic, 1, magic.length - 1);
+		if (!Arrays.equals(magic, ExportPixelsToBinary.MAGIC)) {
+			throw new IOException("Not a binary pixels section");
+		}
+		final int flags = readInt();
+		final boolean deflated = 0 != (flags & ExportPixelsToBinary.DEFLATE_FLAG);
+		final String name = readString();
+		final int columnCount = readInt();
+		final String[] columns = new String[columnCount];
+		final byte[] types = new byte[columnCount];
+		int rowBytes = 0;
+		for (int i = 0; i < columnCount; ++i) {
+			columns[i] = readString();
+			types[i] = in.readByte();
+			switch (types[i]) {
+				case ExportPixelsToBinary.INT32_TYPE:
+					rowBytes += 4;
+					break;
+				case ExportPixelsToBinary.FLOAT64_TYPE:
+					rowBytes += 8;
+					break;
+				default:
+					throw new IOException("Unknown column type " + types[i]);
+			}
+		}
+
+		final Section section = new Section(name, columns, types);
+		final Inflater inflater = deflated ? new Inflater() : null;
+		try {
+			int rows;
+			while (0 != (rows = readInt())) {
+				final byte[] stored = new byte[readInt()];
+				in.readFully(stored);
+				byte[] block = stored;
+				if (deflated) {
+					block = new byte[rows * rowBytes];
+					inflater.reset();
+					inflater.setInput(stored);
+					try {
+						if (inflater.inflate(block) != block.length) {
+							throw new IOException("Binary pixels block truncated");
+						}
+					}
+					catch (final DataFormatException e) {
+						throw new IOException("Binary pixels block corrupt", e);
+					}
+				}
+				else if (block.length != rows * rowBytes) {
+					throw new IOException("Binary pixels block truncated");
+				}
+				section.addBlock(ByteBuffer.wrap(block).order(
+					ByteOrder.LITTLE_ENDIAN), rows);
+			}
+			// stored length of the empty block that ends the section
+			readInt();
+		}
+		catch (final EOFException e) {
+			throw new IOException("Binary pixels section truncated", e);
+		}
+		finally {
+			if (null != inflater) {
+				inflater.end();
+			}
+		}
+		return section;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private int readInt() throws IOException {
+		in.readFully(intBytes);
+		return ByteBuffer.wrap(intBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+	}
+
+	private String readString() throws IOException {
+		final byte[] bytes = new byte[readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Pixels exported from one image, held column by column.
+	 */
+	public static class Section {
+
+		private final String name;
+		private final String[] columns;
+		private final byte[] types;
+		private final int[][] ints;
+		private final double[][] doubles;
+		private int rows;
+
+		Section(final String name, final String[] columns, final byte[] types) {
+			this.name = name;
+			this.columns = columns;
+			this.types = types;
+			ints = new int[columns.length][];
+			doubles = new double[columns.length][];
+			for (int i = 0; i < columns.length; ++i) {
+				if (ExportPixelsToBinary.INT32_TYPE == types[i]) {
+					ints[i] = new int[0];
+				}
+				else {
+					doubles[i] = new double[0];
+				}
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String[] getColumns() {
+			return columns.clone();
+		}
+
+		public byte getType(final int column) {
+			return types[column];
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		/**
+		 * Gets values of an int32 column.
+		 *
+		 */
+		public int[] getInts(final int column) {
+			if (null == ints[column]) {
+				throw new IllegalArgumentException("Not an int32 column " +
+					columns[column]);
+			}
+			return Arrays.copyOf(ints[column], rows);
+		}
+
+		/**
+		 * Gets values of a float64 column.
+		 *
+		 */
+		public double[] getDoubles(final int column) {
+			if (null == doubles[column]) {
+				throw new IllegalArgumentException("Not a float64 column " +
+					columns[column]);
+			}
+			return Arrays.copyOf(doubles[column], rows);
+		}
+
+		/**
+		 * Appends a block, which holds each column in turn.
+		 *
+		 */
+		void addBlock(final ByteBuffer block, final int blockRows) {
+			final int total = rows + blockRows;
+			for (int i = 0; i < columns.length; ++i) {
+				if (null != ints[i]) {
+					if (ints[i].length < total) {
+						ints[i] = Arrays.copyOf(ints[i], Math.max(total, 2 * rows));
+					}
+					block.asIntBuffer().get(ints[i], rows, blockRows);
+					block.position(block.position() + 4 * blockRows);
+				}
+				else {
+					if (doubles[i].length < total) {
+						doubles[i] = Arrays.copyOf(doubles[i], Math.max(total, 2 * rows));
+					}
+					block.asDoubleBuffer().get(doubles[i], rows, blockRows);
+					block.position(block.position() + 8 * blockRows);
+				}
+			}
+			rows = total;
+		}
+	}
+}
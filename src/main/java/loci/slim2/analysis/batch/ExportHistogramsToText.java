@@ -95,14 +95,25 @@ public class ExportHistogramsToText implements SLIMAnalyzer {
 				saveFileInPreferences(fileName);
 				saveAppendInPreferences(append);
 				saveCSVInPreferences(csv);
-				export(fileName, append, image, function, parameters, separator);
+				try {
+					export(fileName, append, image, function, parameters, separator);
+				}
+				catch (final IOException e) {
+					IJ.log("exception writing to file " + fileName);
+					IJ.handleException(e);
+				}
 			}
 		}
 	}
 
+	/**
+	 * Exports histograms of a fitted image.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
 	public void export(final String fileName, final boolean append,
 		final ImgPlus<DoubleType> image, final FitFunction function,
-		final String parameters, final char separator)
+		final String parameters, final char separator) throws IOException
 	{
 		int params = 0;
 		int components = 0;
@@ -128,61 +139,50 @@ public class ExportHistogramsToText implements SLIMAnalyzer {
 		final FittedValue[] fittedValues =
 			FittedValueFactory.createFittedValues(parameters, components);
 
+		bufferedWriter = new BufferedWriter(new FileWriter(fileName, append));
 		try {
-			bufferedWriter = new BufferedWriter(new FileWriter(fileName, append));
-		}
-		catch (final IOException e) {
-			IJ.log("exception opening file " + fileName);
-			IJ.handleException(e);
-		}
-
-		if (null != bufferedWriter) {
-			try {
-				// title this export
-				bufferedWriter.write("Export Histograms" + separator + image.getName());
-				bufferedWriter.newLine();
-				bufferedWriter.newLine();
-
-				// look at image dimensions
-				final long[] dimensions = new long[image.numDimensions()];
-				image.dimensions(dimensions);
-				final int channels = (int) dimensions[CHANNEL_INDEX];
-
-				// for all channels
-				for (int channel = 0; channel < channels; ++channel) {
-					if (channels > 1) {
-						bufferedWriter.write("Channel" + separator + channel);
-						bufferedWriter.newLine();
-						bufferedWriter.newLine();
-					}
+			// title this export
+			bufferedWriter.write("Export Histograms" + separator + image.getName());
+			bufferedWriter.newLine();
+			bufferedWriter.newLine();
+
+			// look at image dimensions
+			final long[] dimensions = new long[image.numDimensions()];
+			image.dimensions(dimensions);
+			final int channels = (int) dimensions[CHANNEL_INDEX];
+
+			// for all channels
+			for (int channel = 0; channel < channels; ++channel) {
+				if (channels > 1) {
+					bufferedWriter.write("Channel" + separator + channel);
+					bufferedWriter.newLine();
+					bufferedWriter.newLine();
+				}
 
-					final HistogramStatistics[] statisticsArray =
-						new HistogramStatistics[fittedValues.length];
-					for (int i = 0; i < fittedValues.length; ++i) {
-						statisticsArray[i] =
-							getStatistics(image, channel, params, fittedValues[i]);
-					}
+				final HistogramStatistics[] statisticsArray =
+					new HistogramStatistics[fittedValues.length];
+				for (int i = 0; i < fittedValues.length; ++i) {
+					statisticsArray[i] =
+						getStatistics(image, channel, params, fittedValues[i]);
+				}
 
-					if (combined) {
-						HistogramStatistics.export(statisticsArray, bufferedWriter,
-							separator);
-					}
-					else {
-						for (final HistogramStatistics statistics : statisticsArray) {
-							// end early if count is too low
-							if (!statistics.export(bufferedWriter, separator)) {
-								break;
-							}
+				if (combined) {
+					HistogramStatistics.export(statisticsArray, bufferedWriter,
+						separator);
+				}
+				else {
+					for (final HistogramStatistics statistics : statisticsArray) {
+						// end early if count is too low
+						if (!statistics.export(bufferedWriter, separator)) {
+							break;
 						}
 					}
 				}
-				bufferedWriter.newLine();
-				bufferedWriter.close();
-			}
-			catch (final IOException exception) {
-				IJ.log("exception writing to file " + fileName);
-				IJ.handleException(exception);
 			}
+			bufferedWriter.newLine();
+		}
+		finally {
+			bufferedWriter.close();
 		}
 	}
 
@@ -0,0 +1,547 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.analysis.batch;
+
+import ij.IJ;
+import ij.gui.GenericDialog;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.prefs.Preferences;
+import java.util.zip.Deflater;
+
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.FitRegion;
+import loci.slim.analysis.SLIMAnalyzer;
+import loci.slim.fitted.FittedValue;
+import loci.slim.fitted.FittedValueFactory;
+import loci.slim2.process.FittedPixelSink;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.scijava.plugin.Plugin;
+
+/**
+ * Exports pixel values in a binary columnar format, much faster to write and
+ * to load than text.
+ * <p>
+ * Each export appends a section to the file.  All values are little-endian:
+ *
+ * <pre>
+ * section: magic "SLIMPIX1", int flags (1 = deflate), string image name,
+ *          int column count, per column: string name, byte type
+ *          (1 = int32, 2 = float64), then blocks
+ * block:   int rows, int stored length, stored bytes; rows == 0 ends section
+ *          stored bytes, deflated if flagged, hold each column in turn
+ * string:  int length, UTF-8 bytes
+ * </pre>
+ *
+ * The columns are x, y and c followed by one per fitted value.  Only fitted
+ * pixels are written.  {@link BinaryPixelsReader} reads the sections back.
+ */
+@Plugin(type = SLIMAnalyzer.class, name = "Export Pixels to Binary")
+public class ExportPixelsToBinary implements SLIMAnalyzer {
+
+	public static final String SUFFIX = ".slimpix";
+	public static final int DEFLATE_FLAG = 1;
+	public static final byte INT32_TYPE = 1;
+	public static final byte FLOAT64_TYPE = 2;
+	static final byte[] MAGIC = { 'S', 'L', 'I', 'M', 'P', 'I', 'X',
+		'1' };
+	private static final String FILE_KEY = "export_pixels_to_binary/file";
+	private static final String APPEND_KEY = "export_pixels_to_binary/append";
+	private static final String COMPRESS_KEY =
+		"export_pixels_to_binary/compress";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int X_INDEX = 0;
+	private static final int Y_INDEX = 1;
+	private static final int C_INDEX = 2;
+	private static final int BLOCK_ROWS = 1 << 16;
+	private String fileName;
+	private boolean append;
+	private boolean compress;
+
+	@Override
+	public void analyze(final ImgPlus<DoubleType> image, final FitRegion region,
+		final FitFunction function, final String parameters)
+	{
+		final boolean export =
+			showFileDialog(getFileFromPreferences(), getAppendFromPreferences(),
+				getCompressFromPreferences());
+		if (export && null != fileName) {
+			if (!fileName.endsWith(SUFFIX)) {
+				fileName += SUFFIX;
+			}
+			saveFileInPreferences(fileName);
+			saveAppendInPreferences(append);
+			saveCompressInPreferences(compress);
+			try {
+				export(fileName, append, image, function, parameters, compress);
+			}
+			catch (final IOException e) {
+				IJ.log("exception writing file " + fileName);
+				IJ.handleException(e);
+			}
+		}
+	}
+
+	/**
+	 * Creates a sink that exports each pixel as it is fitted.  Output is the same
+	 * as exporting the fitted image.
+	 *
+	 */
+	public FittedPixelSink createSink(final String fileName,
+		final boolean append, final FitFunction function, final String parameters,
+		final boolean compress)
+	{
+		return new PixelsSink(fileName, append, getFittedValues(function,
+			parameters), compress);
+	}
+
+	/**
+	 * Exports the fitted pixels of an image as one section.  If the write fails
+	 * the file is cut back to where the section began.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
+	public void export(final String fileName, final boolean append,
+		final ImgPlus<DoubleType> image, final FitFunction function,
+		final String parameters, final boolean compress) throws IOException
+	{
+		final FittedValue[] fittedValues = getFittedValues(function, parameters);
+
+		final FileChannel channel =
+			new FileOutputStream(fileName, append).getChannel();
+		try {
+			final long start = channel.size();
+			boolean written = false;
+			try {
+				writeSection(channel, image, fittedValues, compress);
+				written = true;
+			}
+			finally {
+				if (!written) {
+					cutBack(channel, start);
+				}
+			}
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	private FittedValue[] getFittedValues(final FitFunction function,
+		final String parameters)
+	{
+		int components = 0;
+		switch (function) {
+			case SINGLE_EXPONENTIAL:
+				components = 1;
+				break;
+			case DOUBLE_EXPONENTIAL:
+				components = 2;
+				break;
+			case TRIPLE_EXPONENTIAL:
+				components = 3;
+				break;
+			case STRETCHED_EXPONENTIAL:
+				// TODO fix stretched; how many components?
+				break;
+		}
+		return FittedValueFactory.createFittedValues(parameters, components);
+	}
+
+	private void writeSection(final FileChannel channel,
+		final ImgPlus<DoubleType> image, final FittedValue[] fittedValues,
+		final boolean compress) throws IOException
+	{
+		// look at image dimensions
+		final long dimensions[] = new long[image.numDimensions()];
+		image.dimensions(dimensions);
+		final int width = (int) dimensions[X_INDEX];
+		final int height = (int) dimensions[Y_INDEX];
+		int channels;
+		int paramIndex;
+		if (3 == image.numDimensions()) {
+			channels = 1;
+			paramIndex = 2;
+		}
+		else {
+			channels = (int) dimensions[C_INDEX];
+			paramIndex = 3;
+		}
+		final int params = (int) dimensions[paramIndex];
+
+		final SectionWriter writer =
+			new SectionWriter(channel, image.getName(), fittedValues, compress);
+		try {
+			// traverse the image
+			final RandomAccess<DoubleType> cursor = image.randomAccess();
+			final int dimForCursor[] = new int[image.numDimensions()];
+			final double paramArray[] = new double[params];
+			for (int c = 0; c < channels; ++c) {
+				if (channels > 1) {
+					dimForCursor[C_INDEX] = c;
+				}
+				for (int y = 0; y < height; ++y) {
+					dimForCursor[Y_INDEX] = y;
+					for (int x = 0; x < width; ++x) {
+						dimForCursor[X_INDEX] = x;
+
+						// step along the parameters of c, y, x
+						dimForCursor[paramIndex] = 0;
+						cursor.setPosition(dimForCursor);
+						for (int p = 0; p < params; ++p) {
+							paramArray[p] = cursor.get().getRealDouble();
+							cursor.fwd(paramIndex);
+						}
+						writer.add(x, y, c, paramArray);
+					}
+				}
+			}
+			writer.finish();
+		}
+		finally {
+			writer.release();
+		}
+	}
+
+	/**
+	 * Cuts a partly written section from the file, so the sections before it
+	 * stay readable.
+	 */
+	private static void cutBack(final FileChannel channel, final long start) {
+		try {
+			channel.truncate(start);
+		}
+		catch (final IOException e) {
+			// the write failure is the one reported
+		}
+	}
+
+	private static void writeFully(final FileChannel channel,
+		final ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private String getFileFromPreferences() {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		return prefs.get(FILE_KEY, fileName);
+	}
+
+	private void saveFileInPreferences(final String fileName) {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		prefs.put(FILE_KEY, fileName);
+	}
+
+	private boolean getAppendFromPreferences() {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		return prefs.getBoolean(APPEND_KEY, append);
+	}
+
+	private void saveAppendInPreferences(final boolean append) {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		prefs.putBoolean(APPEND_KEY, append);
+	}
+
+	private boolean getCompressFromPreferences() {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		return prefs.getBoolean(COMPRESS_KEY, compress);
+	}
+
+	private void saveCompressInPreferences(final boolean compress) {
+		final Preferences prefs = Preferences.userNodeForPackage(this.getClass());
+		prefs.putBoolean(COMPRESS_KEY, compress);
+	}
+
+	private boolean showFileDialog(final String defaultFile,
+		final boolean defaultAppend, final boolean defaultCompress)
+	{
+		final GenericDialog dialog = new GenericDialog("Export Pixels to Binary");
+		dialog.addStringField("Save_As", defaultFile, 24);
+		dialog.addCheckbox("Append", defaultAppend);
+		dialog.addCheckbox("Compress", defaultCompress);
+		dialog.showDialog();
+		if (dialog.wasCanceled()) {
+			return false;
+		}
+		fileName = dialog.getNextString();
+		append = dialog.getNextBoolean();
+		compress = dialog.getNextBoolean();
+		return true;
+	}
+
+	/**
+	 * Writes one section, accumulating fitted pixels into blocks.
+	 */
+	private static class SectionWriter {
+
+		private final FileChannel channel;
+		private final FittedValue[] fittedValues;
+		// columns of the current block
+		private final int[] xs = new int[BLOCK_ROWS];
+		private final int[] ys = new int[BLOCK_ROWS];
+		private final int[] cs = new int[BLOCK_ROWS];
+		private final double[][] values;
+		private final ByteBuffer buffer;
+		private final Deflater deflater;
+		private int rows;
+
+		SectionWriter(final FileChannel channel, final String name,
+			final FittedValue[] fittedValues, final boolean compress)
+			throws IOException
+		{
+			this.channel = channel;
+			this.fittedValues = fittedValues;
+			values = new double[fittedValues.length][BLOCK_ROWS];
+			final int blockBytes = BLOCK_ROWS * (3 * 4 + fittedValues.length * 8);
+			// deflater needs an array
+			buffer =
+				compress ? ByteBuffer.allocate(blockBytes) : ByteBuffer
+					.allocateDirect(blockBytes);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			deflater = compress ? new Deflater() : null;
+			writeHeader(name, compress);
+		}
+
+		/**
+		 * Adds a pixel, if it has been fitted.
+		 *
+		 */
+		void add(final int x, final int y, final int c, final double[] paramArray)
+			throws IOException
+		{
+			if (!Double.isNaN(paramArray[0])) {
+				xs[rows] = x;
+				ys[rows] = y;
+				cs[rows] = c;
+				for (int v = 0; v < fittedValues.length; ++v) {
+					values[v][rows] = fittedValues[v].getValue(paramArray);
+				}
+				if (++rows == BLOCK_ROWS) {
+					writeBlock();
+				}
+			}
+		}
+
+		/**
+		 * Writes remaining pixels and ends the section.
+		 *
+		 */
+		void finish() throws IOException {
+			if (0 < rows) {
+				writeBlock();
+			}
+
+			// empty block ends section
+			final ByteBuffer end = ByteBuffer.allocate(8);
+			end.order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(0).putInt(0);
+			end.flip();
+			writeFully(channel, end);
+		}
+
+		void release() {
+			if (null != deflater) {
+				deflater.end();
+			}
+		}
+
+		private void writeHeader(final String name, final boolean compress)
+			throws IOException
+		{
+			final String[] titles = new String[3 + fittedValues.length];
+			titles[0] = "x";
+			titles[1] = "y";
+			titles[2] = "c";
+			for (int i = 0; i < fittedValues.length; ++i) {
+				titles[3 + i] = fittedValues[i].getTitle();
+			}
+
+			final byte[] nameBytes = (null == name ? "" : name).getBytes(UTF8);
+			int size = MAGIC.length + 4 + 4 + nameBytes.length + 4;
+			final byte[][] titleBytes = new byte[titles.length][];
+			for (int i = 0; i < titles.length; ++i) {
+				titleBytes[i] = titles[i].getBytes(UTF8);
+				size += 4 + titleBytes[i].length + 1;
+			}
+
+			final ByteBuffer header = ByteBuffer.allocate(size);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(compress ? DEFLATE_FLAG : 0);
+			header.putInt(nameBytes.length).put(nameBytes);
+			header.putInt(titles.length);
+			for (int i = 0; i < titles.length; ++i) {
+				header.putInt(titleBytes[i].length).put(titleBytes[i]);
+				header.put(i < 3 ? INT32_TYPE : FLOAT64_TYPE);
+			}
+			header.flip();
+			writeFully(channel, header);
+		}
+
+		private void writeBlock() throws IOException {
+			// lay out each column in turn
+			buffer.clear();
+			buffer.asIntBuffer().put(xs, 0, rows);
+			buffer.position(buffer.position() + 4 * rows);
+			buffer.asIntBuffer().put(ys, 0, rows);
+			buffer.position(buffer.position() + 4 * rows);
+			buffer.asIntBuffer().put(cs, 0, rows);
+			buffer.position(buffer.position() + 4 * rows);
+			for (final double[] column : values) {
+				buffer.asDoubleBuffer().put(column, 0, rows);
+				buffer.position(buffer.position() + 8 * rows);
+			}
+			buffer.flip();
+
+			ByteBuffer stored = buffer;
+			if (null != deflater) {
+				deflater.reset();
+				deflater.setInput(buffer.array(), 0, buffer.limit());
+				deflater.finish();
+				byte[] deflated = new byte[buffer.limit() / 2 + 64];
+				int length = 0;
+				while (!deflater.finished()) {
+					if (length == deflated.length) {
+						final byte[] larger = new byte[2 * deflated.length];
+						System.arraycopy(deflated, 0, larger, 0, length);
+						deflated = larger;
+					}
+					length +=
+						deflater.deflate(deflated, length, deflated.length - length);
+				}
+				stored = ByteBuffer.wrap(deflated, 0, length);
+			}
+
+			final ByteBuffer blockHeader = ByteBuffer.allocate(8);
+			blockHeader.order(ByteOrder.LITTLE_ENDIAN);
+			blockHeader.putInt(rows).putInt(stored.remaining());
+			blockHeader.flip();
+			writeFully(channel, blockHeader);
+			writeFully(channel, stored);
+			rows = 0;
+		}
+	}
+
+	/**
+	 * Writes pixels as they are fitted.
+	 */
+	private static class PixelsSink implements FittedPixelSink {
+
+		private final String fileName;
+		private final boolean append;
+		private final FittedValue[] fittedValues;
+		private final boolean compress;
+		private FileChannel channel;
+		private long start;
+		private SectionWriter writer;
+
+		PixelsSink(final String fileName, final boolean append,
+			final FittedValue[] fittedValues, final boolean compress)
+		{
+			this.fileName = fileName;
+			this.append = append;
+			this.fittedValues = fittedValues;
+			this.compress = compress;
+		}
+
+		@Override
+		public void begin(final String name, final int width, final int height,
+			final int parameterCount) throws IOException
+		{
+			channel = new FileOutputStream(fileName, append).getChannel();
+			try {
+				start = channel.size();
+				writer = new SectionWriter(channel, name, fittedValues, compress);
+			}
+			catch (final IOException e) {
+				abandon();
+				throw e;
+			}
+		}
+
+		@Override
+		public void pixel(final int x, final int y, final double[] params)
+			throws IOException
+		{
+			if (null != writer) {
+				try {
+					writer.add(x, y, 0, params);
+				}
+				catch (final IOException e) {
+					abandon();
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public void end() throws IOException {
+			if (null != writer) {
+				try {
+					writer.finish();
+				}
+				catch (final IOException e) {
+					abandon();
+					throw e;
+				}
+				writer.release();
+				writer = null;
+				final FileChannel finished = channel;
+				channel = null;
+				finished.close();
+			}
+		}
+
+		/**
+		 * Cuts the section written so far and closes the file after a failed
+		 * write, which is reported instead.
+		 */
+		private void abandon() {
+			if (null != writer) {
+				writer.release();
+				writer = null;
+			}
+			if (null != channel) {
+				cutBack(channel, start);
+				try {
+					channel.close();
+				}
+				catch (final IOException e) {
+					// already failed
+				}
+				channel = null;
+			}
+		}
+	}
+}
@@ -31,17 +31,16 @@ import ij.plugin.frame.RoiManager;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 import java.util.prefs.Preferences;
 
 import loci.curvefitter.ICurveFitter.FitFunction;
 import loci.curvefitter.ICurveFitter.FitRegion;
 import loci.slim.SLIMProcessor;
+import loci.slim.analysis.NumberFormatter;
 import loci.slim.analysis.SLIMAnalyzer;
 import loci.slim.fitted.FittedValue;
 import loci.slim.fitted.FittedValueFactory;
+import loci.slim2.process.FittedPixelSink;
 import net.imagej.ImgPlus;
 import net.imglib2.RandomAccess;
 import net.imglib2.type.numeric.RealType;
@@ -71,7 +70,7 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private boolean append;
 	private boolean csv;
 	private BufferedWriter bufferedWriter;
-	private final MathContext context = new MathContext(4, RoundingMode.FLOOR);
+	private final NumberFormatter formatter = new NumberFormatter();
 
 	@Override
 	public void analyze(final ImgPlus<DoubleType> image, final FitRegion region,
@@ -117,31 +116,39 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 
 		}
 
-		export(fileName, append, image, region, function, parameters, separator);
+		try {
+			export(fileName, append, image, region, function, parameters, separator);
+		}
+		catch (final IOException e) {
+			IJ.log("exception writing file " + fileName);
+			IJ.handleException(e);
+		}
+	}
 
+	/**
+	 * Creates a sink that exports each pixel as it is fitted.  Output is the same
+	 * as exporting the fitted image for {@link FitRegion#EACH}.
+	 *
+	 */
+	public FittedPixelSink createSink(final String fileName,
+		final boolean append, final FitFunction function, final String parameters,
+		final char separator)
+	{
+		return new PixelsSink(fileName, append, getFittedValues(function,
+			parameters), separator);
 	}
 
+	/**
+	 * Exports the pixels of a fitted image.
+	 *
+	 * @throws IOException if the file can't be written
+	 */
 	public void export(final String fileName, final boolean append,
 		final ImgPlus<DoubleType> image, final FitRegion region,
 		final FitFunction function, final String parameters, final char separator)
+		throws IOException
 	{
-		int components = 0;
-		switch (function) {
-			case SINGLE_EXPONENTIAL:
-				components = 1;
-				break;
-			case DOUBLE_EXPONENTIAL:
-				components = 2;
-				break;
-			case TRIPLE_EXPONENTIAL:
-				components = 3;
-				break;
-			case STRETCHED_EXPONENTIAL:
-				// TODO fix stretched; how many components?
-				break;
-		}
-		final FittedValue[] fittedValues =
-			FittedValueFactory.createFittedValues(parameters, components);
+		final FittedValue[] fittedValues = getFittedValues(function, parameters);
 
 		// get list of current ROIs
 		boolean hasRois = false;
@@ -152,123 +159,132 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 			rois = manager.getRoisAsArray();
 		}
 
+		bufferedWriter = new BufferedWriter(new FileWriter(fileName, append));
 		try {
-			bufferedWriter = new BufferedWriter(new FileWriter(fileName, append));
-		}
-		catch (final IOException e) {
-			IJ.log("exception opening file " + fileName);
-			IJ.handleException(e);
-		}
+			// title this export
+			bufferedWriter.write("Export Pixels" + separator + image.getName());
+			bufferedWriter.newLine();
+			bufferedWriter.newLine();
+
+			// look at image dimensions
+			final long dimensions[] = new long[image.numDimensions()];
+			image.dimensions(dimensions);
+			final int width = (int) dimensions[X_INDEX];
+			final int height = (int) dimensions[Y_INDEX];
+			int channels;
+			int paramIndex;
+			if (3 == image.numDimensions()) {
+				channels = 1;
+				paramIndex = 2;
+			}
+			else {
+				channels = (int) dimensions[C_INDEX];
+				paramIndex = 3;
+			}
+			final int params = (int) dimensions[paramIndex];
 
-		if (null != bufferedWriter) {
-			try {
-				// title this export
-				bufferedWriter.write("Export Pixels" + separator + image.getName());
-				bufferedWriter.newLine();
-				bufferedWriter.newLine();
+			// write headers
+			if (channels > 1) {
+				writeChannelHeader(separator);
+			}
+			switch (region) {
+				case SUMMED:
+				case POINT:
+					writeHeader(fittedValues, separator);
+					break;
+				case ROI:
+					writeROIsHeader(separator);
+					writeHeader(fittedValues, separator);
+					break;
+				case EACH:
+					writeXYHeader(separator);
+					writeHeader(fittedValues, separator);
+					break;
+			}
 
-				// look at image dimensions
-				final long dimensions[] = new long[image.numDimensions()];
-				image.dimensions(dimensions);
-				final int width = (int) dimensions[X_INDEX];
-				final int height = (int) dimensions[Y_INDEX];
-				int channels;
-				int paramIndex;
-				if (3 == image.numDimensions()) {
-					channels = 1;
-					paramIndex = 2;
-				}
-				else {
-					channels = (int) dimensions[C_INDEX];
-					paramIndex = 3;
-				}
-				final int params = (int) dimensions[paramIndex];
+			// traverse the image
+			final RandomAccess<?> cursor = image.randomAccess();
+			final int dimForCursor[] = new int[image.numDimensions()];
+			final double paramArray[] = new double[params];
 
-				// write headers
+			// get the parameters for each pixel,
+			for (int c = 0; c < channels; ++c) {
 				if (channels > 1) {
-					writeChannelHeader(separator);
+					dimForCursor[C_INDEX] = c;
 				}
-				switch (region) {
-					case SUMMED:
-					case POINT:
-						writeHeader(fittedValues, separator);
-						break;
-					case ROI:
-						writeROIsHeader(separator);
-						writeHeader(fittedValues, separator);
-						break;
-					case EACH:
-						writeXYHeader(separator);
-						writeHeader(fittedValues, separator);
-						break;
-				}
-
-				// traverse the image
-				final RandomAccess<?> cursor = image.randomAccess();
-				final int dimForCursor[] = new int[image.numDimensions()];
-				final double paramArray[] = new double[params];
 
-				// get the parameters for each pixel,
-				for (int c = 0; c < channels; ++c) {
-					if (channels > 1) {
-						dimForCursor[C_INDEX] = c;
-					}
+				for (int y = 0; y < height; ++y) {
+					dimForCursor[Y_INDEX] = y;
 
-					for (int y = 0; y < height; ++y) {
-						dimForCursor[Y_INDEX] = y;
+					for (int x = 0; x < width; ++x) {
+						dimForCursor[X_INDEX] = x;
 
-						for (int x = 0; x < width; ++x) {
-							dimForCursor[X_INDEX] = x;
+						// get the fitted parameters for c, y, x
+						for (int p = 0; p < params; ++p) {
+							dimForCursor[paramIndex] = p;
 
-							// get the fitted parameters for c, y, x
-							for (int p = 0; p < params; ++p) {
-								dimForCursor[paramIndex] = p;
+							// get the fitted parameter
+							cursor.setPosition(dimForCursor);
+							paramArray[p] = ((RealType) cursor.get()).getRealFloat();
+						}
 
-								// get the fitted parameter
-								cursor.setPosition(dimForCursor);
-								paramArray[p] = ((RealType) cursor.get()).getRealFloat();
+						// if point has been fitted
+						// TODO distinguish between not fitted and error in fit!
+						if (!Double.isNaN(paramArray[0])) {
+							if (channels > 1) {
+								writeChannel(c + 1, separator);
 							}
 
-							// if point has been fitted
-							// TODO distinguish between not fitted and error in fit!
-							if (!Double.isNaN(paramArray[0])) {
-								if (channels > 1) {
-									writeChannel(c + 1, separator);
-								}
-
-								switch (region) {
-									case SUMMED:
-									case POINT:
-										writeParams(paramArray, fittedValues, separator);
-										break;
-									case ROI:
-										writeROI(x + 1, separator);
-										writeParams(paramArray, fittedValues, separator);
-										break;
-									case EACH:
-										writeXY(x, y, separator);
-										writeParams(paramArray, fittedValues, separator);
-										break;
-								}
+							switch (region) {
+								case SUMMED:
+								case POINT:
+									writeParams(paramArray, fittedValues, separator);
+									break;
+								case ROI:
+									writeROI(x + 1, separator);
+									writeParams(paramArray, fittedValues, separator);
+									break;
+								case EACH:
+									writeXY(x, y, separator);
+									writeParams(paramArray, fittedValues, separator);
+									break;
 							}
+						}
 
-						} // x loop
+					} // x loop
 
-					} // y loop
+				} // y loop
 
-				} // c loop
+			} // c loop
 
-				bufferedWriter.newLine();
-				bufferedWriter.close();
-			}
-			catch (final IOException e) {
-				System.out.println("Error writing file " + e.getMessage());
-				IJ.log("exception writing file");
-				IJ.handleException(e);
-			}
+			bufferedWriter.newLine();
+		}
+		finally {
+			bufferedWriter.close();
 		}
 	}
 
+	private FittedValue[] getFittedValues(final FitFunction function,
+		final String parameters)
+	{
+		int components = 0;
+		switch (function) {
+			case SINGLE_EXPONENTIAL:
+				components = 1;
+				break;
+			case DOUBLE_EXPONENTIAL:
+				components = 2;
+				break;
+			case TRIPLE_EXPONENTIAL:
+				components = 3;
+				break;
+			case STRETCHED_EXPONENTIAL:
+				// TODO fix stretched; how many components?
+				break;
+		}
+		return FittedValueFactory.createFittedValues(parameters, components);
+	}
+
 	private void writeChannelHeader(final char separator) throws IOException {
 		bufferedWriter.write("c" + separator);
 	}
@@ -276,7 +292,8 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private void writeChannel(final int channel, final char separator)
 		throws IOException
 	{
-		bufferedWriter.write("" + channel + separator);
+		formatter.writeLong(bufferedWriter, channel);
+		bufferedWriter.write(separator);
 	}
 
 	private void writeHeader(final FittedValue[] fittedValues,
@@ -306,7 +323,7 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 			else {
 				bufferedWriter.write(separator);
 			}
-			bufferedWriter.write("" + fittedValue.getValue(paramArray));
+			formatter.writeExact(bufferedWriter, fittedValue.getValue(paramArray));
 		}
 		bufferedWriter.newLine();
 	}
@@ -321,7 +338,8 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 
 	private void writeROI(final int roi, final char separator) throws IOException
 	{
-		bufferedWriter.write("" + roi + separator);
+		formatter.writeLong(bufferedWriter, roi);
+		bufferedWriter.write(separator);
 	}
 
 	private void writeXYHeader(final char separator) throws IOException {
@@ -331,7 +349,10 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 	private void writeXY(final int x, final int y, final char separator)
 		throws IOException
 	{
-		bufferedWriter.write("" + x + separator + y + separator);
+		formatter.writeLong(bufferedWriter, x);
+		bufferedWriter.write(separator);
+		formatter.writeLong(bufferedWriter, y);
+		bufferedWriter.write(separator);
 	}
 
 	private String getFileFromPreferences() {
@@ -382,7 +403,94 @@ public class ExportPixelsToText implements SLIMAnalyzer {
 		return true;
 	}
 
-	private String showParameter(final double parameter) {
-		return BigDecimal.valueOf(parameter).round(context).toEngineeringString();
+	/**
+	 * Writes pixels as they are fitted.
+	 */
+	private class PixelsSink implements FittedPixelSink {
+
+		private final String fileName;
+		private final boolean append;
+		private final FittedValue[] fittedValues;
+		private final char separator;
+		private double[] paramArray;
+
+		PixelsSink(final String fileName, final boolean append,
+			final FittedValue[] fittedValues, final char separator)
+		{
+			this.fileName = fileName;
+			this.append = append;
+			this.fittedValues = fittedValues;
+			this.separator = separator;
+		}
+
+		@Override
+		public void begin(final String name, final int width, final int height,
+			final int parameterCount) throws IOException
+		{
+			paramArray = new double[parameterCount];
+			bufferedWriter = new BufferedWriter(new FileWriter(fileName, append));
+			try {
+				// title this export
+				bufferedWriter.write("Export Pixels" + separator + name);
+				bufferedWriter.newLine();
+				bufferedWriter.newLine();
+				writeXYHeader(separator);
+				writeHeader(fittedValues, separator);
+			}
+			catch (final IOException e) {
+				abandon();
+				throw e;
+			}
+		}
+
+		@Override
+		public void pixel(final int x, final int y, final double[] params)
+			throws IOException
+		{
+			if (null != bufferedWriter) {
+				// same precision as exporting the fitted image
+				for (int p = 0; p < paramArray.length; ++p) {
+					paramArray[p] = (float) params[p];
+				}
+				if (!Double.isNaN(paramArray[0])) {
+					try {
+						writeXY(x, y, separator);
+						writeParams(paramArray, fittedValues, separator);
+					}
+					catch (final IOException e) {
+						abandon();
+						throw e;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void end() throws IOException {
+			if (null != bufferedWriter) {
+				final BufferedWriter writer = bufferedWriter;
+				bufferedWriter = null;
+				try {
+					writer.newLine();
+				}
+				finally {
+					writer.close();
+				}
+			}
+		}
+
+		/**
+		 * Closes the file after a failed write, which is reported instead.
+		 *
+		 */
+		private void abandon() {
+			try {
+				bufferedWriter.close();
+			}
+			catch (final IOException e) {
+				// already failed
+			}
+			bufferedWriter = null;
+		}
 	}
 }
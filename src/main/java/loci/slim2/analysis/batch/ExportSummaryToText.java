@@ -23,9 +23,9 @@
 
 package loci.slim2.analysis.batch;
 
-import ij.IJ;
-
 import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -50,6 +50,7 @@ import loci.slim.fitted.FractionalIntensityFittedValue;
 import loci.slim.fitted.TFittedValue;
 import loci.slim.fitted.TMeanFittedValue;
 import loci.slim.fitted.ZFittedValue;
+import loci.slim2.process.FittedPixelSink;
 import net.imagej.ImgPlus;
 import net.imglib2.RandomAccess;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -75,6 +76,7 @@ public class ExportSummaryToText {
 	/**
 	 * Initializes for given fitting function.
 	 *
+	 * @param listener null for no histograms display
 	 */
 	public void init(final ICurveFitter.FitFunction function,
 		final FittedValue[] parameters, final BatchHistogramListener listener)
@@ -128,6 +130,24 @@ public class ExportSummaryToText {
 			}
 		}
 
+		update(fileName, imageHistograms);
+	}
+
+	/**
+	 * Creates a sink that processes each pixel of an image as it is fitted.
+	 *
+	 */
+	public FittedPixelSink createSink(final String fileName) {
+		return new SummarySink(fileName);
+	}
+
+	/**
+	 * Shows statistics once an image has been processed.
+	 *
+	 */
+	private void update(final String fileName,
+		final BatchHistogram[] imageHistograms)
+	{
 		// build list of histogram statistics for the current image
 		final List<HistogramStatistics> imageList =
 			new ArrayList<HistogramStatistics>();
@@ -144,59 +164,79 @@ public class ExportSummaryToText {
 			summaryList.add(summaryStatistics);
 		}
 
-		// lazy instantiation of frame
-		if (null == frame) {
-			frame = new BatchHistogramsFrame(listener);
+		// no display when there is no listener, e.g. headless
+		if (null != listener) {
+			// lazy instantiation of frame
+			if (null == frame) {
+				frame = new BatchHistogramsFrame(listener);
+			}
+			// show new image statistics and update summary
+			frame.update(fileName, imageList.toArray(new HistogramStatistics[imageList
+				.size()]), summaryList.toArray(new HistogramStatistics[summaryList
+				.size()]));
 		}
-		// show new image statistics and update summary
-		frame.update(fileName, imageList.toArray(new HistogramStatistics[imageList
-			.size()]), summaryList
-			.toArray(new HistogramStatistics[summaryList.size()]));
 	}
 
 	/**
 	 * Exports the summary to a file.
 	 *
+	 * @throws IOException if the file can't be written
 	 */
-	public void export(final String fileName, final char separator) {
-		BufferedWriter bufferedWriter = null;
+	public void export(final String fileName, final char separator)
+		throws IOException
+	{
+		final BufferedWriter bufferedWriter =
+			new BufferedWriter(new FileWriter(fileName, true));
 		try {
-			bufferedWriter = new BufferedWriter(new FileWriter(fileName, true));
-		}
-		catch (final IOException e) {
-			IJ.log("exception opening file " + fileName);
-			IJ.handleException(e);
-		}
+			// title this export
+			bufferedWriter.write("Export Summary Histogram");
+			bufferedWriter.newLine();
+			bufferedWriter.newLine();
 
-		if (null != bufferedWriter) {
-			try {
-				// title this export
-				bufferedWriter.write("Export Summary Histogram");
-				bufferedWriter.newLine();
-				bufferedWriter.newLine();
-
-				if (combined) {
-					final HistogramStatistics[] statistics =
-						new HistogramStatistics[histograms.length];
-					for (int i = 0; i < statistics.length; ++i) {
-						statistics[i] = histograms[i].getStatistics();
-					}
-					HistogramStatistics.export(statistics, bufferedWriter, separator);
+			if (combined) {
+				final HistogramStatistics[] statistics =
+					new HistogramStatistics[histograms.length];
+				for (int i = 0; i < statistics.length; ++i) {
+					statistics[i] = histograms[i].getStatistics();
 				}
-				else {
-					for (final BatchHistogram histogram : histograms) {
-						final HistogramStatistics statistics = histogram.getStatistics();
-						statistics.export(bufferedWriter, separator);
-					}
-				}
-
-				bufferedWriter.newLine();
-				bufferedWriter.close();
+				HistogramStatistics.export(statistics, bufferedWriter, separator);
 			}
-			catch (final IOException exception) {
-				IJ.log("exception writing to file " + fileName);
-				IJ.handleException(exception);
+			else {
+				for (final BatchHistogram histogram : histograms) {
+					final HistogramStatistics statistics = histogram.getStatistics();
+					statistics.export(bufferedWriter, separator);
+				}
 			}
+
+			bufferedWriter.newLine();
+		}
+		finally {
+			bufferedWriter.close();
+		}
+	}
+
+	/**
+	 * Saves the summary histograms accumulated so far.
+	 *
+	 */
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeInt(histograms.length);
+		for (final BatchHistogram histogram : histograms) {
+			histogram.writeState(out);
+		}
+	}
+
+	/**
+	 * Restores summary histograms saved by {@link #writeState}.  Must already be
+	 * initialized with the same parameters.
+	 *
+	 */
+	public void readState(final DataInput in) throws IOException {
+		if (in.readInt() != histograms.length) {
+			throw new IOException("Summary histograms mismatch");
+		}
+		for (final BatchHistogram histogram : histograms) {
+			histogram.readState(in);
 		}
 	}
 
@@ -243,4 +283,42 @@ public class ExportSummaryToText {
 
 		return histogramsList.toArray(new BatchHistogram[histogramsList.size()]);
 	}
+
+	/**
+	 * Processes pixels as they are fitted.
+	 */
+	private class SummarySink implements FittedPixelSink {
+
+		private final String fileName;
+		private BatchHistogram[] imageHistograms;
+
+		SummarySink(final String fileName) {
+			this.fileName = fileName;
+		}
+
+		@Override
+		public void begin(final String name, final int width, final int height,
+			final int parameterCount)
+		{
+			imageHistograms = buildBatchHistograms(parameters);
+		}
+
+		@Override
+		public void pixel(final int x, final int y, final double[] params) {
+			// update histograms for this image
+			for (final BatchHistogram histogram : imageHistograms) {
+				histogram.process(params);
+			}
+
+			// update all batch histograms
+			for (final BatchHistogram histogram : histograms) {
+				histogram.process(params);
+			}
+		}
+
+		@Override
+		public void end() {
+			update(fileName, imageHistograms);
+		}
+	}
 }
@@ -28,6 +28,7 @@ import io.scif.MetaTable;
 import io.scif.io.RandomAccessInputStream;
 import io.scif.lifesci.SDTInfo;
 
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -38,6 +39,10 @@ import java.util.Set;
 
 import javax.swing.JOptionPane;
 
+import loci.slim.IntensityProjection;
+import loci.slim.SummedDecays;
+import loci.slim.mask.Mask;
+
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ImgPlus;
@@ -67,6 +72,7 @@ public class LifetimeDatasetWrapper {
 	private Dataset dataset;
 	private RandomAccess<? extends RealType<?>> randomAccess;
 	private DecayCache cache;
+	private IntensityProjection intensity;
 	private int lifetimeDimension;
 	private AxisType[] externalAxes;
 	private long[] internalDimensions;
@@ -220,6 +226,14 @@ public class LifetimeDatasetWrapper {
 		return externalAxes;
 	}
 
+	/**
+	 * Returns index of lifetime dimension in the wrapped {@link Dataset}.
+	 *
+	 */
+	public int getLifetimeDimension() {
+		return lifetimeDimension;
+	}
+
 	/**
 	 * Returns number of lifetime bins.
 	 *
@@ -307,11 +321,26 @@ public class LifetimeDatasetWrapper {
 	public double[] getCombinedPlaneDecay(final int thresholdMin,
 		final int thresholdMax, final long[] position)
 	{
-		final long x0 = 0;
-		final long x1 = getDims()[0];
-		final long y0 = 0;
-		final long y1 = getDims()[1];
-		return combineDecay(thresholdMin, thresholdMax, x0, x1, y0, y1, position);
+		// pick the pixels within threshold from the photon count index
+		final IntensityProjection intensity = getIntensityProjection();
+		final int plane = intensity.getPlane(position);
+		final int width = (int) getDims()[0];
+		final int height = (int) getDims()[1];
+		final Mask mask = new Mask(width, height);
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				final double photons = intensity.getSum(plane, x, y) / factor;
+				if (withinThreshold(thresholdMin, thresholdMax, photons)) {
+					mask.set(x, y);
+				}
+			}
+		}
+
+		// sum them in one parallel pass
+		final SummedDecays summedDecays =
+			new SummedDecays(dataset.getImgPlus(), lifetimeDimension,
+				new int[] { plane }, new Mask[][] { { mask } }, factor);
+		return summedDecays.getDecay(0, 0);
 	}
 
 	/**
@@ -320,11 +349,7 @@ public class LifetimeDatasetWrapper {
 	 * @param binSize 0=no binning, 1=3x3, 2=5x5, etc.
 	 */
 	public int getSummedDecay(final int binSize, final long[] position) {
-		final double[] decay = getBinnedDecay(binSize, position);
-		long sum = 0;
-		for (final double d : decay) {
-			sum += d;
-		}
+		long sum = (long) getPhotonCount(binSize, position);
 		// avoid overflow; squash highlights
 		if (sum > Integer.MAX_VALUE) {
 			sum = Integer.MAX_VALUE;
@@ -332,7 +357,44 @@ public class LifetimeDatasetWrapper {
 		return (int) sum;
 	}
 
+	/**
+	 * Gets photon count at given location, with binning, from the photon count
+	 * index.  Same as summing {@link #getBinnedDecay} but without reading the
+	 * decays.
+	 *
+	 * @param binSize 0=no binning, 1=3x3, 2=5x5, etc.
+	 */
+	public double getPhotonCount(final int binSize, final long[] position) {
+		final IntensityProjection intensity = getIntensityProjection();
+		final int plane = intensity.getPlane(position);
+		final int x = (int) position[0];
+		final int y = (int) position[1];
+		if (0 == binSize) {
+			return intensity.getSum(plane, x, y) / factor;
+		}
+		// same area as getBinnedDecay
+		return intensity.getSum(plane, x - binSize, y - binSize, x + binSize, y +
+			binSize) / factor;
+	}
+
+	/**
+	 * Gets photon count index, built on first use.
+	 *
+	 */
+	public synchronized IntensityProjection getIntensityProjection() {
+		if (null == intensity) {
+			intensity =
+				new IntensityProjection(dataset.getImgPlus(), lifetimeDimension);
+		}
+		return intensity;
+	}
+
 	private int chooseLifetimeDimensionUI(final List<AxisType> dimensions) {
+		// can't ask when headless
+		if (GraphicsEnvironment.isHeadless()) {
+			return IMPOSSIBLE_INDEX;
+		}
+
 		// skip initial 2 dimensions, which are X and Y
 		final String[] choices = new String[dimensions.size() - 2];
 		for (int i = 0; i < choices.length; ++i) {
@@ -369,14 +431,19 @@ public class LifetimeDatasetWrapper {
 		for (int i = 0; i < bins; ++i) {
 			combinedDecay[i] = 0.0;
 		}
+		final IntensityProjection intensity = getIntensityProjection();
+		final int plane = intensity.getPlane(position);
 		double[] decay;
 		for (long x = x0; x < x1; ++x) {
 			for (long y = y0; y < y1; ++y) {
 				if (x >= 0 && x < getDims()[0] && y >= 0 && y < getDims()[1]) {
-					position[0] = x;
-					position[1] = y;
-					decay = cache.getDecay(position);
-					if (withinThreshold(thresholdMin, thresholdMax, decay)) {
+					// check threshold before reading the decay
+					final double photons =
+						intensity.getSum(plane, (int) x, (int) y) / factor;
+					if (withinThreshold(thresholdMin, thresholdMax, photons)) {
+						position[0] = x;
+						position[1] = y;
+						decay = cache.getDecay(position);
 						for (int i = 0; i < bins; ++i) {
 							combinedDecay[i] += decay[i];
 						}
@@ -419,16 +486,12 @@ public class LifetimeDatasetWrapper {
 	}
 
 	/**
-	 * Checks if decay is within threshold limits.
+	 * Checks if photon count is within threshold limits.
 	 *
 	 */
 	private boolean withinThreshold(final int thresholdMin,
-		final int thresholdMax, final double[] decay)
+		final int thresholdMax, final double sum)
 	{
-		double sum = 0.0;
-		for (final double d : decay) {
-			sum += d;
-		}
 		// TODO ARG was sum > thresholdMin; c/b TRI2 compatibility issue
 		return ((sum >= thresholdMin) && (sum <= thresholdMax));
 	}
@@ -23,6 +23,7 @@
 
 package loci.slim2.decay;
 
+import loci.slim.IntensityProjection;
 import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.ImgPlus;
@@ -57,29 +58,33 @@ public class LifetimeGrayscaleDataset {
 		grayscaleDataset =
 			datasetService.create(dimensions, name, axes, bpp, signed, floating);
 
+		// photon counts are summed in one parallel pass
+		final IntensityProjection projection =
+			lifetimeDatasetWrapper.getIntensityProjection();
+
 		// iterate through grayscale image
 		final ImgPlus imgPlus = grayscaleDataset.getImgPlus();
 		final Cursor<? extends RealType<?>> grayscaleCursor =
 			imgPlus.localizingCursor();
 		final long[] position = new long[dimensions.length];
-		int maxSummed = Integer.MIN_VALUE;
-		maxPosition = new long[dimensions.length];
-		final int binSize = 0;
 		while (grayscaleCursor.hasNext()) {
 			grayscaleCursor.fwd();
 			grayscaleCursor.localize(position);
 
-			final int summed =
-				lifetimeDatasetWrapper.getSummedDecay(binSize, position);
+			final double sum =
+				projection.getSum(projection.getPlane(position), (int) position[0],
+					(int) position[1]);
+			// avoid overflow; squash highlights
+			final int summed = (int) Math.min(sum, Integer.MAX_VALUE);
 			grayscaleCursor.get().setReal(summed);
+		}
 
-			// keep track of brightest pixel in first plane
-			if (inFirstPlane(position)) {
-				if (summed > maxSummed) {
-					maxSummed = summed;
-					System.arraycopy(position, 0, maxPosition, 0, position.length);
-				}
-			}
+		// brightest pixel in first plane
+		maxPosition = new long[dimensions.length];
+		final int[] brightestPoint = projection.getBrightestPoint(0);
+		if (null != brightestPoint) {
+			maxPosition[0] = brightestPoint[0];
+			maxPosition[1] = brightestPoint[1];
 		}
 	}
 
@@ -98,17 +103,4 @@ public class LifetimeGrayscaleDataset {
 	public long[] getBrightestPixel() {
 		return maxPosition;
 	}
-
-	/**
-	 * Reports whether this position is in the first XY plane.
-	 *
-	 */
-	private boolean inFirstPlane(final long[] position) {
-		for (int i = 2; i < position.length; ++i) {
-			if (0L != position[i]) {
-				return false;
-			}
-		}
-		return true;
-	}
 }
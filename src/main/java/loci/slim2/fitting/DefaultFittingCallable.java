@@ -26,6 +26,9 @@ package loci.slim2.fitting;
 import loci.curvefitter.CurveFitData;
 import loci.curvefitter.ICurveFitData;
 import loci.curvefitter.ICurveFitter;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.Tracer;
 
 /**
  * This class brings together everything needed to fit one pixel. It is a
@@ -39,6 +42,7 @@ public class DefaultFittingCallable implements FittingCallable {
 	private GlobalFitParams globalParams;
 	private LocalFitParams localParams;
 	private FitResults result;
+	private IFittingMetrics metrics;
 
 	@Override
 	public void setup(final ICurveFitter curveFitter,
@@ -47,6 +51,7 @@ public class DefaultFittingCallable implements FittingCallable {
 		this.curveFitter = curveFitter;
 		this.globalParams = globalParams;
 		this.localParams = localParams;
+		metrics = Configuration.getInstance().getMetrics();
 	}
 
 	@Override
@@ -81,7 +86,10 @@ public class DefaultFittingCallable implements FittingCallable {
 		final ICurveFitData[] curveFitDataArray =
 			new ICurveFitData[] { curveFitData }; // TODO refactor to non-array
 
+		final long start = System.nanoTime();
 		final int returnValue = curveFitter.fitData(curveFitDataArray);
+		metrics.pixelFitted(System.nanoTime() - start, returnValue);
+		Tracer.end("fitPixel", start);
 
 		result = new DefaultFitResults();
 		result.setErrorCode(returnValue);
@@ -29,6 +29,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import loci.curvefitter.ICurveFitter;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.IFittingMetrics.Stage;
+import loci.slim.fitting.metrics.Tracer;
 
 /**
  * Fitting engine that uses a thread pool.
@@ -63,9 +67,13 @@ public class ThreadedFittingEngine implements FittingEngine {
 	public synchronized FitResults fit(final GlobalFitParams params,
 		final LocalFitParams data)
 	{
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		final long start = System.nanoTime();
 		final FittingCallable callable = new DefaultFittingCallable();
 		callable.setup(curveFitter, params, data);
-		return callable.call();
+		final FitResults result = callable.call();
+		metrics.stageTime(Stage.FIT, System.nanoTime() - start);
+		return result;
 	}
 
 	@Override
@@ -73,6 +81,10 @@ public class ThreadedFittingEngine implements FittingEngine {
 		final List<LocalFitParams> dataList)
 	{
 
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		threadPool.setMetrics(metrics.isEnabled() ? metrics : null);
+		final long start = System.nanoTime();
+
 		final List<FittingCallable> callableList = new ArrayList<FittingCallable>();
 
 		for (final LocalFitParams data : dataList) {
@@ -81,7 +93,10 @@ public class ThreadedFittingEngine implements FittingEngine {
 			callableList.add(callable);
 		}
 
+		final long span = Tracer.begin();
 		final List<FitResults> resultList = threadPool.process(callableList);
+		Tracer.end("fitPixels", span);
+		metrics.stageTime(Stage.FIT, System.nanoTime() - start);
 		return resultList;
 	}
 }
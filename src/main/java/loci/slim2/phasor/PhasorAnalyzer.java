@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.phasor;
+
+import java.io.IOException;
+import java.util.List;
+
+import loci.slim.fitting.metrics.Tracer;
+import loci.slim2.decay.LifetimeDatasetWrapper;
+import loci.slim2.process.FittedPixelSink;
+import loci.slim2.process.FittedPixelSinks;
+
+/**
+ * Computes phasors for an entire image in a single pass, without fitting.
+ * <p>
+ * Pixels are passed to the sinks as soon as they are computed, like fitted
+ * pixels, with the values listed in {@link PhasorCalculator}.
+ */
+public class PhasorAnalyzer {
+
+	private static final int X_INDEX = 0;
+	private static final int Y_INDEX = 1;
+	private static final String OUTPUT_NAME = "phasorImage";
+	private final PhasorCalculator calculator;
+	private final PhasorHistogram histogram;
+
+	/**
+	 * Creates an analyzer.
+	 *
+	 * @param histogram counts the phasors, may be null
+	 */
+	public PhasorAnalyzer(final PhasorCalculator calculator,
+		final PhasorHistogram histogram)
+	{
+		this.calculator = calculator;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Analyzes an image.
+	 *
+	 * @param binSize binning factor
+	 * @param thresholdMin pixels with fewer photons are skipped
+	 * @param thresholdMax pixels with more photons are skipped
+	 * @throws IOException if a sink fails to write
+	 */
+	public void analyze(final LifetimeDatasetWrapper lifetime,
+		final int binSize, final int thresholdMin, final int thresholdMax,
+		final List<FittedPixelSink> sinks) throws IOException
+	{
+		final long[] dims = lifetime.getDims();
+		final int width = (int) dims[X_INDEX];
+		final int height = (int) dims[Y_INDEX];
+		final long[] position = new long[dims.length];
+		final double[] results = new double[PhasorCalculator.RESULT_COUNT];
+		final long span = Tracer.begin();
+		boolean ended = false;
+		try {
+			for (final FittedPixelSink sink : sinks) {
+				sink.begin(OUTPUT_NAME, width, height, PhasorCalculator.RESULT_COUNT);
+			}
+			for (int y = 0; y < height; ++y) {
+				for (int x = 0; x < width; ++x) {
+					position[X_INDEX] = x;
+					position[Y_INDEX] = y;
+					// other dimensional positions remain at zero
+
+					final double photons = lifetime.getPhotonCount(binSize, position);
+					if (photons < thresholdMin || photons > thresholdMax) {
+						continue;
+					}
+					final double[] decay = lifetime.getBinnedDecay(binSize, position);
+					calculator.compute(decay, results);
+					if (null != histogram) {
+						histogram.add(results[PhasorCalculator.G_INDEX],
+							results[PhasorCalculator.S_INDEX]);
+					}
+					for (final FittedPixelSink sink : sinks) {
+						sink.pixel(x, y, results);
+					}
+				}
+			}
+			ended = true;
+			FittedPixelSinks.end(sinks);
+		}
+		finally {
+			if (!ended) {
+				FittedPixelSinks.abandon(sinks);
+			}
+			Tracer.end("phasorImage", span);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.phasor;
+
+/**
+ * Computes the phasor, or first Fourier coefficient, of a decay in one pass.
+ * <p>
+ * The phasor is G + iS, where G and S are the cosine and sine transforms of
+ * the decay, normalized by its sum. A single exponential decay lies on the
+ * universal semicircle at G = 1 / (1 + (w t)^2), S = w t / (1 + (w t)^2),
+ * for angular frequency w and lifetime t. Multi-exponential decays lie inside
+ * the semicircle.
+ * <p>
+ * The period is the analyzed window, from the start to the stop bin. Given an
+ * excitation, the instrument response is calibrated out: its phasor is
+ * divided out of the decay phasor, removing its phase delay and modulation.
+ * <p>
+ * Immutable; may be shared by threads.
+ */
+public class PhasorCalculator {
+
+	/** Index of G in results. */
+	public static final int G_INDEX = 0;
+	/** Index of S in results. */
+	public static final int S_INDEX = 1;
+	/** Index of phase lifetime in results. */
+	public static final int TAU_PHASE_INDEX = 2;
+	/** Index of modulation lifetime in results. */
+	public static final int TAU_MODULATION_INDEX = 3;
+	/** Index of photon count within the window in results. */
+	public static final int INTENSITY_INDEX = 4;
+	/** Number of values in results. */
+	public static final int RESULT_COUNT = 5;
+	/** Labels of values in results. */
+	public static final String[] RESULT_LABELS = { "G", "S", "Tau Phase",
+		"Tau Modulation", "Intensity" };
+	private final int start;
+	private final double omega;
+	private final double[] cos;
+	private final double[] sin;
+	// calibration, as a complex factor applied to the raw phasor
+	private final double calibrationG;
+	private final double calibrationS;
+
+	/**
+	 * Creates a calculator without calibration.
+	 *
+	 * @param timeInc time per bin
+	 * @param start first bin analyzed
+	 * @param stop bin after the last analyzed
+	 * @param harmonic multiple of the window frequency, usually 1
+	 */
+	public PhasorCalculator(final double timeInc, final int start,
+		final int stop, final int harmonic)
+	{
+		this(timeInc, start, stop, harmonic, null, 0);
+	}
+
+	/**
+	 * Creates a calculator, calibrated for an instrument response.
+	 *
+	 * @param timeInc time per bin
+	 * @param start first bin analyzed
+	 * @param stop bin after the last analyzed
+	 * @param harmonic multiple of the window frequency, usually 1
+	 * @param prompt excitation values, baseline subtracted, or null
+	 * @param promptStart bin of first prompt value
+	 */
+	public PhasorCalculator(final double timeInc, final int start,
+		final int stop, final int harmonic, final double[] prompt,
+		final int promptStart)
+	{
+		if (stop - start < 2 || harmonic < 1) {
+			throw new IllegalArgumentException("Bad phasor window " + start + " " +
+				stop + " harmonic " + harmonic);
+		}
+		this.start = start;
+		final int window = stop - start;
+		omega = 2.0 * Math.PI * harmonic / (window * timeInc);
+
+		// times are at bin centers
+		cos = new double[window];
+		sin = new double[window];
+		for (int i = 0; i < window; ++i) {
+			final double angle = 2.0 * Math.PI * harmonic * (i + 0.5) / window;
+			cos[i] = Math.cos(angle);
+			sin[i] = Math.sin(angle);
+		}
+
+		double g = 1.0;
+		double s = 0.0;
+		if (null != prompt) {
+			// phasor of the prompt, timed from the same origin
+			double sum = 0.0;
+			double sumCos = 0.0;
+			double sumSin = 0.0;
+			for (int i = 0; i < prompt.length; ++i) {
+				final double angle =
+					2.0 * Math.PI * harmonic * (promptStart + i - start + 0.5) / window;
+				sum += prompt[i];
+				sumCos += prompt[i] * Math.cos(angle);
+				sumSin += prompt[i] * Math.sin(angle);
+			}
+			if (sum > 0.0) {
+				// 1 / (promptG + i promptS)
+				final double promptG = sumCos / sum;
+				final double promptS = sumSin / sum;
+				final double modulation2 = promptG * promptG + promptS * promptS;
+				if (modulation2 > 0.0) {
+					g = promptG / modulation2;
+					s = -promptS / modulation2;
+				}
+			}
+		}
+		calibrationG = g;
+		calibrationS = s;
+	}
+
+	/**
+	 * Gets the angular frequency.
+	 *
+	 */
+	public double getOmega() {
+		return omega;
+	}
+
+	/**
+	 * Computes the phasor of a decay.
+	 *
+	 * @param decay full decay, indexed by bin
+	 * @param results receives values at the result indices; NaN if no photons
+	 */
+	public void compute(final double[] decay, final double[] results) {
+		double sum = 0.0;
+		double sumCos = 0.0;
+		double sumSin = 0.0;
+		final int window = cos.length;
+		for (int i = 0; i < window; ++i) {
+			final double y = decay[start + i];
+			sum += y;
+			sumCos += y * cos[i];
+			sumSin += y * sin[i];
+		}
+		results[INTENSITY_INDEX] = sum;
+		if (sum <= 0.0) {
+			results[G_INDEX] = results[S_INDEX] = Double.NaN;
+			results[TAU_PHASE_INDEX] = results[TAU_MODULATION_INDEX] = Double.NaN;
+			return;
+		}
+		final double rawG = sumCos / sum;
+		final double rawS = sumSin / sum;
+		final double g = rawG * calibrationG - rawS * calibrationS;
+		final double s = rawG * calibrationS + rawS * calibrationG;
+		results[G_INDEX] = g;
+		results[S_INDEX] = s;
+		results[TAU_PHASE_INDEX] = getPhaseLifetime(g, s);
+		results[TAU_MODULATION_INDEX] = getModulationLifetime(g, s);
+	}
+
+	/**
+	 * Gets the lifetime from the phase angle, tan(phase) / w.
+	 *
+	 */
+	public double getPhaseLifetime(final double g, final double s) {
+		return s / (omega * g);
+	}
+
+	/**
+	 * Gets the lifetime from the modulation, sqrt(1 / m^2 - 1) / w.
+	 *
+	 */
+	public double getModulationLifetime(final double g, final double s) {
+		final double modulation2 = g * g + s * s;
+		return Math.sqrt(1.0 / modulation2 - 1.0) / omega;
+	}
+}
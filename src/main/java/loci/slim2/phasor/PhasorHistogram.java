@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.phasor;
+
+import java.util.Arrays;
+
+/**
+ * Two-dimensional histogram of phasors, counting pixels by G and S.
+ * <p>
+ * Phasors outside the range are not counted. Not thread-safe.
+ */
+public class PhasorHistogram {
+
+	/** Default range of G, enough for the universal semicircle. */
+	public static final double G_MIN = 0.0, G_MAX = 1.0;
+	/** Default range of S, enough for the universal semicircle. */
+	public static final double S_MIN = 0.0, S_MAX = 0.5;
+	private final int width;
+	private final int height;
+	private final double gMin;
+	private final double gScale;
+	private final double sMin;
+	private final double sScale;
+	private final long[] counts;
+	private long total;
+
+	/**
+	 * Creates a histogram over the default range.
+	 *
+	 * @param width number of G bins
+	 * @param height number of S bins
+	 */
+	public PhasorHistogram(final int width, final int height) {
+		this(width, height, G_MIN, G_MAX, S_MIN, S_MAX);
+	}
+
+	/**
+	 * Creates a histogram over a given range.
+	 *
+	 * @param width number of G bins
+	 * @param height number of S bins
+	 */
+	public PhasorHistogram(final int width, final int height, final double gMin,
+		final double gMax, final double sMin, final double sMax)
+	{
+		this.width = width;
+		this.height = height;
+		this.gMin = gMin;
+		gScale = width / (gMax - gMin);
+		this.sMin = sMin;
+		sScale = height / (sMax - sMin);
+		counts = new long[width * height];
+	}
+
+	/**
+	 * Counts a phasor.
+	 *
+	 * @return whether within range
+	 */
+	public boolean add(final double g, final double s) {
+		// NaN fails both comparisons
+		final double x = (g - gMin) * gScale;
+		final double y = (s - sMin) * sScale;
+		if (!(x >= 0.0 && x < width && y >= 0.0 && y < height)) {
+			return false;
+		}
+		++counts[(int) y * width + (int) x];
+		++total;
+		return true;
+	}
+
+	/**
+	 * Gets number of G bins.
+	 *
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets number of S bins.
+	 *
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets count in a bin.
+	 *
+	 * @param x G bin
+	 * @param y S bin, 0 is lowest S
+	 */
+	public long getCount(final int x, final int y) {
+		return counts[y * width + x];
+	}
+
+	/**
+	 * Gets number of phasors counted.
+	 *
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Clears all counts.
+	 *
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		total = 0;
+	}
+}
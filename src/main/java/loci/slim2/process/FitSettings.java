@@ -98,4 +98,16 @@ public interface FitSettings {
 	 * @return binning factor
 	 */
 	public int getBinningFactor();
+
+	/**
+	 * Gets photon count threshold minimum to fit a pixel.
+	 *
+	 */
+	public int getThresholdMinimum();
+
+	/**
+	 * Gets photon count threshold maximum to fit a pixel.
+	 *
+	 */
+	public int getThresholdMaximum();
 }
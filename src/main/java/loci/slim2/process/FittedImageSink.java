@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.process;
+
+import loci.slim.fitting.ParameterPlanes;
+import net.imagej.ImgPlus;
+import net.imglib2.type.numeric.real.DoubleType;
+
+/**
+ * Collects fitted pixels into an image, with parameters as the third
+ * dimension.  Pixels that are not fitted are NaN.
+ */
+public class FittedImageSink implements FittedPixelSink {
+
+	private final boolean singlePrecision;
+	private String name;
+	private ParameterPlanes planes;
+
+	/**
+	 * Creates a sink that stores double values.
+	 *
+	 */
+	public FittedImageSink() {
+		this(false);
+	}
+
+	/**
+	 * Creates a sink, optionally storing float values until the image is built.
+	 *
+	 */
+	public FittedImageSink(final boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	@Override
+	public void begin(final String name, final int width, final int height,
+		final int parameterCount)
+	{
+		this.name = name;
+		final long[] dimensions = new long[] { width, height, parameterCount };
+		planes = new ParameterPlanes(dimensions, singlePrecision);
+	}
+
+	@Override
+	public void pixel(final int x, final int y, final double[] params) {
+		planes.setPixel(planes.getIndex(x, y, 0), params);
+	}
+
+	@Override
+	public void end() {}
+
+	/**
+	 * Gets the fitted image.
+	 *
+	 */
+	public ImgPlus<DoubleType> getImage() {
+		final ImgPlus<DoubleType> image =
+			new ImgPlus<DoubleType>(planes.getImage());
+		image.setName(name);
+		return image;
+	}
+}
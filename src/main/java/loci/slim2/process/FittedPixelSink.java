@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.process;
+
+import java.io.IOException;
+
+/**
+ * Receives fitted pixels as soon as they are fitted.
+ * <p>
+ * Lets results be exported while the fit is still running, without holding or
+ * traversing the whole fitted image. Sinks that write files throw an
+ * IOException when a write fails.
+ */
+public interface FittedPixelSink {
+
+	/**
+	 * Called before the first pixel of an image.
+	 *
+	 */
+	public void begin(String name, int width, int height, int parameterCount)
+		throws IOException;
+
+	/**
+	 * Called for each fitted pixel, in row order.  Pixels that are not fitted
+	 * are skipped.
+	 *
+	 * @param params fitted parameters, reused for the next pixel
+	 */
+	public void pixel(int x, int y, double[] params) throws IOException;
+
+	/**
+	 * Called after the last pixel of an image, or after the image failed so the
+	 * sink can close its files.
+	 *
+	 */
+	public void end() throws IOException;
+}
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.process;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Helpers for passing pixels to several {@link FittedPixelSink}s.
+ */
+public final class FittedPixelSinks {
+
+	private FittedPixelSinks() {}
+
+	/**
+	 * Ends every sink, even if one fails.
+	 *
+	 * @throws IOException the first failure
+	 */
+	public static void end(final List<FittedPixelSink> sinks)
+		throws IOException
+	{
+		IOException failure = null;
+		for (final FittedPixelSink sink : sinks) {
+			try {
+				sink.end();
+			}
+			catch (final IOException e) {
+				if (null == failure) {
+					failure = e;
+				}
+			}
+		}
+		if (null != failure) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Ends every sink after the image failed, so they close their files.  The
+	 * original failure is the one reported.
+	 *
+	 */
+	public static void abandon(final List<FittedPixelSink> sinks) {
+		try {
+			end(sinks);
+		}
+		catch (final IOException e) {
+			// already failing
+		}
+	}
+}
@@ -25,11 +25,16 @@ package loci.slim2.process;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import loci.curvefitter.ICurveFitter;
 import loci.curvefitter.ICurveFitter.FitFunction;
 import loci.curvefitter.JaolhoCurveFitter;
-import loci.curvefitter.SLIMCurveFitter;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.IFittingMetrics;
+import loci.slim.fitting.metrics.IFittingMetrics.Stage;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim2.decay.LifetimeDatasetWrapper;
 import loci.slim2.decay.NoLifetimeAxisFoundException;
 import loci.slim2.fitting.DefaultLocalFitParams;
@@ -40,9 +45,6 @@ import loci.slim2.fitting.LocalFitParams;
 import loci.slim2.fitting.ThreadedFittingEngine;
 import loci.slim2.heuristics.DefaultFitterEstimator;
 import net.imagej.ImgPlus;
-import net.imglib2.Cursor;
-import net.imglib2.RandomAccess;
-import net.imglib2.img.planar.PlanarImgs;
 import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.Context;
@@ -61,7 +63,7 @@ public class ImageFitter {
 	private final int IMPOSSIBLE_VALUE = -1;
 	private final int X_INDEX = 0;
 	private final int Y_INDEX = 1;
-	private final int PARAM_INDEX = 2;
+	private final String OUTPUT_NAME = "outputImage"; // TODO ARG for now
 	private ErrorCode errorCode;
 	private int bins;
 	private FittingEngine fittingEngine;
@@ -85,48 +87,78 @@ public class ImageFitter {
 	 */
 	public ImgPlus<DoubleType> fit(final Context context,
 		final FitSettings fitSettings, final File file, final int batchBins)
+	{
+		final FittedImageSink imageSink = new FittedImageSink();
+		final List<FittedPixelSink> sinks =
+			Collections.<FittedPixelSink> singletonList(imageSink);
+		try {
+			if (!fit(context, fitSettings, file, batchBins, sinks)) {
+				return null;
+			}
+		}
+		catch (final IOException e) {
+			// the image sink writes no files
+			throw new IllegalStateException(e);
+		}
+		return imageSink.getImage();
+	}
+
+	/**
+	 * Fits an image, passing each pixel to the sinks as soon as it is fitted.
+	 *
+	 * @return whether fitted; if not, errorCode is set
+	 * @throws IOException if a sink fails to write
+	 */
+	public boolean fit(final Context context, final FitSettings fitSettings,
+		final File file, final int batchBins, final List<FittedPixelSink> sinks)
+		throws IOException
 	{
 		errorCode = ErrorCode.NONE;
 
 		// load the lifetime dataset
 		LifetimeDatasetWrapper lifetime;
+		final long span = Tracer.begin();
 		try {
 			lifetime = new LifetimeDatasetWrapper(context, file);
 		}
 		catch (final IOException e) {
 			errorCode = ErrorCode.IO_EXCEPTION;
-			return null;
+			return false;
 		}
 		catch (final NoLifetimeAxisFoundException e) {
 			errorCode = ErrorCode.NO_LIFETIME_AXIS;
-			return null;
+			return false;
+		}
+		finally {
+			Tracer.end("loadImage", span);
 		}
+		return fit(fitSettings, lifetime, batchBins, sinks);
+	}
+
+	/**
+	 * Fits an already loaded lifetime dataset, passing each pixel to the sinks
+	 * as soon as it is fitted.
+	 *
+	 * @return whether fitted; if not, errorCode is set
+	 * @throws IOException if a sink fails to write
+	 */
+	public boolean fit(final FitSettings fitSettings,
+		final LifetimeDatasetWrapper lifetime, final int batchBins,
+		final List<FittedPixelSink> sinks) throws IOException
+	{
+		errorCode = ErrorCode.NONE;
 
 		// in order for fitting cursors to work must have same number bins
 		if (IMPOSSIBLE_VALUE != batchBins) {
 			bins = lifetime.getBins();
 			if (batchBins != bins) {
 				errorCode = ErrorCode.BIN_COUNT_MISMATCH;
-				return null;
+				return false;
 			}
 		}
 		final GlobalFitParams params = fitSettings.getGlobalFitParams();
 
-		// create output image
-		final long[] srcDims = lifetime.getDims();
 		final int parameterCount = getParameterCount(params.getFitFunction());
-		final long[] dstDims =
-			new long[] { srcDims[X_INDEX], srcDims[Y_INDEX], parameterCount };
-		final ImgPlus<DoubleType> outputImage =
-			new ImgPlus<DoubleType>(PlanarImgs.doubles(dstDims));
-		outputImage.setName("outputImage"); // TODO ARG for now
-
-		// fill image with NaNs
-		final Cursor<DoubleType> cursor = outputImage.cursor();
-		while (cursor.hasNext()) {
-			cursor.fwd();
-			cursor.get().set(Double.NaN);
-		}
 
 		// set up fitting engine
 		final boolean[] free = new boolean[parameterCount];
@@ -139,29 +171,66 @@ public class ImageFitter {
 
 		// do the fit
 		final int binSize = fitSettings.getBinningFactor();
+		final int thresholdMin = fitSettings.getThresholdMinimum();
+		final int thresholdMax = fitSettings.getThresholdMaximum();
 		final long[] dims = lifetime.getDims();
+		final int width = (int) dims[X_INDEX];
+		final int height = (int) dims[Y_INDEX];
 		final long[] srcPosition = new long[dims.length];
-		final RandomAccess<DoubleType> randomAccess = outputImage.randomAccess();
-		final long[] dstPosition = new long[3];
-		for (long y = 0; y < dims[Y_INDEX]; ++y) {
-			for (long x = 0; x < dims[X_INDEX]; ++x) {
-				srcPosition[X_INDEX] = x;
-				srcPosition[Y_INDEX] = y;
-				// other dimensional positions remain at zero
-
-				dstPosition[X_INDEX] = x;
-				dstPosition[Y_INDEX] = y;
+		final IFittingMetrics metrics = Configuration.getInstance().getMetrics();
+		final Stage readStage = 0 == binSize ? Stage.READ : Stage.BIN;
+		final long span = Tracer.begin();
+		boolean ended = false;
+		try {
+			for (final FittedPixelSink sink : sinks) {
+				sink.begin(OUTPUT_NAME, width, height, parameterCount);
+			}
+			for (int y = 0; y < height; ++y) {
+				final long rowSpan = Tracer.begin();
+				for (int x = 0; x < width; ++x) {
+					srcPosition[X_INDEX] = x;
+					srcPosition[Y_INDEX] = y;
+					// other dimensional positions remain at zero
 
-				final double[] decay = lifetime.getBinnedDecay(binSize, srcPosition);
-				final FitResults fitResults = fitDecay(fittingEngine, params, decay);
-				for (int param = 0; param < parameterCount; ++param) {
-					dstPosition[PARAM_INDEX] = param;
-					randomAccess.setPosition(dstPosition);
-					randomAccess.get().set(fitResults.getParams()[param]);
+					// check threshold before reading the decay
+					final double photons =
+						lifetime.getPhotonCount(binSize, srcPosition);
+					if (!withinThreshold(thresholdMin, thresholdMax, photons)) {
+						// not fitted
+						continue;
+					}
+					final long readStart = System.nanoTime();
+					final double[] decay = lifetime.getBinnedDecay(binSize, srcPosition);
+					metrics.stageTime(readStage, System.nanoTime() - readStart);
+					final FitResults fitResults = fitDecay(fittingEngine, params, decay);
+					final long writeStart = System.nanoTime();
+					for (final FittedPixelSink sink : sinks) {
+						sink.pixel(x, y, fitResults.getParams());
+					}
+					metrics.stageTime(Stage.WRITE, System.nanoTime() - writeStart);
 				}
+				Tracer.end("fitRow", rowSpan);
 			}
+			ended = true;
+			FittedPixelSinks.end(sinks);
 		}
-		return outputImage;
+		finally {
+			if (!ended) {
+				FittedPixelSinks.abandon(sinks);
+			}
+			Tracer.end("fitImage", span);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks if photon count is within threshold limits.
+	 *
+	 */
+	private boolean withinThreshold(final int thresholdMin,
+		final int thresholdMax, final double sum)
+	{
+		return sum >= thresholdMin && sum <= thresholdMax;
 	}
 
 	/**
@@ -218,15 +287,15 @@ public class ImageFitter {
 				curveFitter = new JaolhoCurveFitter();
 				break;
 			case SLIMCURVE_RLD:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_RLD);
 				break;
 			case SLIMCURVE_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_LMA);
 				break;
 			case SLIMCURVE_RLD_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter
 					.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_RLD_LMA);
 				break;
@@ -0,0 +1,196 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.process.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the progress of a batch job so an interrupted job can be resumed.
+ * <p>
+ * After each file the journal holds the files completed so far, the lengths of
+ * the output files and the state of the summary histograms. It is rewritten
+ * to a temporary file and renamed into place, so a crash leaves either the old
+ * or the new journal.
+ */
+public class BatchJournal {
+
+	private static final int MAGIC = 0x534c494a; // "SLIJ"
+	private static final int VERSION = 1;
+	private static final String TMP_SUFFIX = ".tmp";
+	private final File file;
+	private final String[] outputs;
+	private final List<String> completed = new ArrayList<String>();
+	private long[] offsets;
+	private byte[] summaryState;
+
+	/**
+	 * Creates a journal for a batch job.
+	 *
+	 * @param file journal file
+	 * @param outputs output file names, null if not exported
+	 */
+	public BatchJournal(final File file, final String[] outputs) {
+		this.file = file;
+		this.outputs = outputs.clone();
+		offsets = new long[outputs.length];
+	}
+
+	/**
+	 * Loads the journal of an earlier, interrupted run, if any.
+	 *
+	 * @return whether a journal was loaded
+	 * @throws IOException if journal is unreadable or for a different job
+	 */
+	public boolean load(final File[] files) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		final DataInputStream in =
+			new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a batch journal " + file);
+			}
+			if (in.readInt() != outputs.length) {
+				throw new IOException("Journal is for a different batch job");
+			}
+			for (int i = 0; i < outputs.length; ++i) {
+				final String output = in.readUTF();
+				if (!output.equals(name(outputs[i]))) {
+					throw new IOException("Journal is for a different batch job");
+				}
+				offsets[i] = in.readLong();
+			}
+			final int count = in.readInt();
+			if (count > files.length) {
+				throw new IOException("Journal is for a different batch job");
+			}
+			completed.clear();
+			for (int i = 0; i < count; ++i) {
+				final String path = in.readUTF();
+				if (!path.equals(files[i].getCanonicalPath())) {
+					throw new IOException("Journal is for a different file list");
+				}
+				completed.add(path);
+			}
+			summaryState = new byte[in.readInt()];
+			in.readFully(summaryState);
+		}
+		finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Gets number of files already completed.
+	 *
+	 */
+	public int getCompleted() {
+		return completed.size();
+	}
+
+	/**
+	 * Gets output file lengths after the last completed file.
+	 *
+	 */
+	public long[] getOffsets() {
+		return offsets.clone();
+	}
+
+	/**
+	 * Gets summary histograms state after the last completed file, empty if none.
+	 *
+	 */
+	public byte[] getSummaryState() {
+		return summaryState;
+	}
+
+	/**
+	 * Records a completed file.
+	 *
+	 * @param summaryState serialized summary histograms, may be empty
+	 */
+	public void record(final File completedFile, final byte[] summaryState)
+		throws IOException
+	{
+		completed.add(completedFile.getCanonicalPath());
+		for (int i = 0; i < outputs.length; ++i) {
+			if (null != outputs[i]) {
+				offsets[i] = new File(outputs[i]).length();
+			}
+		}
+		this.summaryState = summaryState;
+
+		final File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+		final FileOutputStream fileOut = new FileOutputStream(tmpFile);
+		final DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(fileOut));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(outputs.length);
+			for (int i = 0; i < outputs.length; ++i) {
+				out.writeUTF(name(outputs[i]));
+				out.writeLong(offsets[i]);
+			}
+			out.writeInt(completed.size());
+			for (final String path : completed) {
+				out.writeUTF(path);
+			}
+			out.writeInt(summaryState.length);
+			out.write(summaryState);
+			out.flush();
+			fileOut.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(),
+			StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Removes the journal once the batch job is complete.
+	 *
+	 */
+	public void delete() {
+		file.delete();
+	}
+
+	private static String name(final String output) {
+		return null == output ? "" : output;
+	}
+}
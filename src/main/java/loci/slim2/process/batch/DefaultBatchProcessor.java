@@ -26,9 +26,22 @@ package loci.slim2.process.batch;
 import ij.IJ;
 import ij.gui.GenericDialog;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.prefs.Preferences;
 
 import loci.curvefitter.ICurveFitter.FitFunction;
@@ -37,10 +50,13 @@ import loci.slim.analysis.batch.ui.BatchHistogramListener;
 import loci.slim.fitted.FittedValue;
 import loci.slim.fitted.FittedValueFactory;
 import loci.slim2.analysis.batch.ExportHistogramsToText;
+import loci.slim2.analysis.batch.ExportPixelsToBinary;
 import loci.slim2.analysis.batch.ExportPixelsToText;
 import loci.slim2.analysis.batch.ExportSummaryToText;
 import loci.slim2.process.BatchProcessor;
 import loci.slim2.process.FitSettings;
+import loci.slim2.process.FittedImageSink;
+import loci.slim2.process.FittedPixelSink;
 import loci.slim2.process.ImageFitter;
 import net.imagej.ImgPlus;
 import net.imglib2.type.numeric.real.DoubleType;
@@ -49,6 +65,19 @@ import org.scijava.Context;
 
 /**
  * Handles batch fitting of lifetime images.
+ * <p>
+ * Several files may be loaded and fitted at once. Results are always exported
+ * in the order of the file list.  When fitting one file at a time, pixels are
+ * exported as soon as they are fitted.
+ * <p>
+ * When headless, errors are written to the console rather than shown in
+ * dialogs and the summary histograms are not displayed.
+ * <p>
+ * Given a journal file, progress is recorded after each file.  If the batch
+ * is interrupted, running it again with the same journal skips completed files
+ * and appends to the output files where it left off.  Progress is recorded
+ * only up to the first file that fails, and the journal is kept unless all
+ * files succeed, so running again retries from that file.
  *
  * @author Aivar Grislis
  */
@@ -63,9 +92,41 @@ public class DefaultBatchProcessor implements BatchProcessor {
 	private static final String EXPORT_SUMMARY_KEY = "exportsummary";
 	private static final String SUMMARY_FILE_KEY = "summaryfile";
 	private static final String CSV_KEY = "csv";
+	private static final String PARALLEL_FILES_KEY = "parallelfiles";
 	private static final char COMMA_SEPARATOR = ',';
 	private static final char TAB_SEPARATOR = '\t';
 	private static final String BATCH_ERROR = "Error in Batch Processing";
+	private final boolean headless;
+	private File journalFile;
+	private boolean binaryPixels;
+	private boolean compressPixels;
+
+	public DefaultBatchProcessor() {
+		this(false);
+	}
+
+	public DefaultBatchProcessor(final boolean headless) {
+		this.headless = headless;
+	}
+
+	/**
+	 * Sets file used to record progress and resume an interrupted batch.
+	 *
+	 * @param journalFile null for none
+	 */
+	public void setJournalFile(final File journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Sets whether pixels are exported in binary rather than as text.
+	 *
+	 * @param compress whether to deflate binary pixels
+	 */
+	public void setBinaryPixels(final boolean binary, final boolean compress) {
+		binaryPixels = binary;
+		compressPixels = compress;
+	}
 
 	@Override
 	public void process(final Context context, final int bins,
@@ -80,6 +141,7 @@ public class DefaultBatchProcessor implements BatchProcessor {
 		final boolean defExportSummary = prefs.getBoolean(EXPORT_SUMMARY_KEY, true);
 		final String defSummaryFile = prefs.get(SUMMARY_FILE_KEY, "summary");
 		final boolean defCSV = prefs.getBoolean(CSV_KEY, false);
+		final int defParallelFiles = prefs.getInt(PARALLEL_FILES_KEY, 1);
 
 		// TODO - Consolidate this logic with same in SLIMProcessor!
 		final GenericDialog dialog = new GenericDialog("Batch Processing");
@@ -90,6 +152,7 @@ public class DefaultBatchProcessor implements BatchProcessor {
 		dialog.addCheckbox("Export_Summary_Histogram", defExportSummary);
 		dialog.addStringField("Summary_File", defSummaryFile);
 		dialog.addCheckbox("Comma_Separated", defCSV);
+		dialog.addNumericField("Parallel_Files", defParallelFiles, 0);
 		dialog.showDialog();
 		if (dialog.wasCanceled()) {
 			return;
@@ -102,6 +165,7 @@ public class DefaultBatchProcessor implements BatchProcessor {
 		final boolean exportSummary = dialog.getNextBoolean();
 		final String tmpSummaryFile = dialog.getNextString();
 		final boolean csv = dialog.getNextBoolean();
+		final int parallelFiles = Math.max(1, (int) dialog.getNextNumber());
 
 		// make sure output file suffix is appropriate
 		final String pixelsFile = checkSuffix(tmpPixelsFile, csv);
@@ -114,15 +178,17 @@ public class DefaultBatchProcessor implements BatchProcessor {
 		prefs.put(HISTOS_FILE_KEY, histogramsFile);
 		prefs.putBoolean(EXPORT_SUMMARY_KEY, exportSummary);
 		prefs.put(SUMMARY_FILE_KEY, summaryFile);
+		prefs.putInt(PARALLEL_FILES_KEY, parallelFiles);
 
 		batchProcessing(context, bins, exportPixels, pixelsFile, exportHistograms,
-			histogramsFile, exportSummary, summaryFile, fitSettings, files, csv);
+			histogramsFile, exportSummary, summaryFile, fitSettings, files, csv,
+			parallelFiles);
 	}
 
 	/**
 	 * Use appropriate file name suffix for comma- and tab-separated values.
 	 */
-	private String checkSuffix(String file, final boolean csv) {
+	public static String checkSuffix(String file, final boolean csv) {
 		final String suffix = csv ? CSV_SUFFIX : TSV_SUFFIX;
 		final String otherSuffix = csv ? TSV_SUFFIX : CSV_SUFFIX;
 		if (!file.endsWith(suffix)) {
@@ -138,14 +204,18 @@ public class DefaultBatchProcessor implements BatchProcessor {
 	/**
 	 * Does the batch processing.
 	 *
+	 * @param parallelFiles how many files to load and fit at once
+	 * @return whether all files were fitted and exported
 	 */
-	private void batchProcessing(final Context context, final int batchBins,
+	public boolean batchProcessing(final Context context, final int batchBins,
 		final boolean exportPixels, final String pixelsFile,
 		final boolean exportHistograms, final String histogramsFile,
 		final boolean exportSummary, final String summaryFile,
-		final FitSettings fitSettings, final File[] files, final boolean csv)
+		final FitSettings fitSettings, final File[] files, final boolean csv,
+		final int parallelFiles)
 	{
 		ExportPixelsToText pixels = null;
+		ExportPixelsToBinary binaryPixelsExport = null;
 		ExportHistogramsToText histograms = null;
 		ExportSummaryToText summary = null;
 
@@ -154,60 +224,93 @@ public class DefaultBatchProcessor implements BatchProcessor {
 			fitSettings.getGlobalFitParams().getFitFunction();
 		final FitRegion fitRegion = FitRegion.EACH;
 
+		// resume an interrupted batch
+		BatchJournal journal = null;
+		int firstFile = 0;
+		long[] offsets = new long[3];
+		byte[] summaryState = null;
+		if (null != journalFile) {
+			journal =
+				new BatchJournal(journalFile, new String[] {
+					exportPixels ? pixelsFile : null,
+					exportHistograms ? histogramsFile : null,
+					exportSummary ? summaryFile : null });
+			try {
+				if (journal.load(files)) {
+					firstFile = journal.getCompleted();
+					offsets = journal.getOffsets();
+					summaryState = journal.getSummaryState();
+				}
+			}
+			catch (final IOException e) {
+				showError("Cannot resume from " + journalFile + ": " + e.getMessage());
+				return false;
+			}
+		}
+
 		// validate file names
 		if (exportPixels) {
-			if (!checkFileName(pixelsFile)) {
-				return;
+			if (!checkFileName(pixelsFile, offsets[0])) {
+				return false;
+			}
+			if (binaryPixels) {
+				binaryPixelsExport = new ExportPixelsToBinary();
+			}
+			else {
+				pixels = new ExportPixelsToText();
 			}
-			pixels = new ExportPixelsToText();
 		}
 		if (exportHistograms) {
-			if (!checkFileName(histogramsFile)) {
-				return;
+			if (!checkFileName(histogramsFile, offsets[1])) {
+				return false;
 			}
 			histograms = new ExportHistogramsToText();
 		}
 		if (exportSummary) {
-			if (!checkFileName(summaryFile)) {
-				return;
+			if (!checkFileName(summaryFile, offsets[2])) {
+				return false;
 			}
 			summary = new ExportSummaryToText();
-			final BatchHistogramListener listener = new BatchHistogramListener() {
-
-				@Override
-				public void swapImage(final String filePath) {
-					// TODO ARG
-					// this all pertainsi to IJ1 version:
-					// in IJ1 version the current image c/b swapped merely by
-					// changing a few globals, rebuilding grayscale, etc.
-					// Since IJ2 is more properly top down m/n/b able to do this.
-					System.out.println("swapImage to " + filePath);
-					/*
-					// load image
-					_image = loadImage(filePath);
-
-					// get metadata
-					getImageInfo(_image);
-
-					// save new path and file names
-					int index = filePath.lastIndexOf(File.separator);
-					_path = filePath.substring(0, index);
-					_file = filePath.substring(index + 1);
-
-					// turn off old threshold listener
-					_uiPanel.setThresholdListener(null);
-
-					// close existing grayscale image
-					_grayScaleImage.close();
-					_grayScaleImage = null;
-
-					// show new grayscale and fit brightest
-					showGrayScaleAndFit(_uiPanel);
-
-					// set up new threshold listener
-					_uiPanel.setThresholdListener(_grayScaleImage); */
-				}
-			};
+			// no histograms display when headless
+			BatchHistogramListener listener = null;
+			if (!headless) {
+				listener = new BatchHistogramListener() {
+
+					@Override
+					public void swapImage(final String filePath) {
+						// TODO ARG
+						// this all pertainsi to IJ1 version:
+						// in IJ1 version the current image c/b swapped merely by
+						// changing a few globals, rebuilding grayscale, etc.
+						// Since IJ2 is more properly top down m/n/b able to do this.
+						System.out.println("swapImage to " + filePath);
+						/*
+						// load image
+						_image = loadImage(filePath);
+
+						// get metadata
+						getImageInfo(_image);
+
+						// save new path and file names
+						int index = filePath.lastIndexOf(File.separator);
+						_path = filePath.substring(0, index);
+						_file = filePath.substring(index + 1);
+
+						// turn off old threshold listener
+						_uiPanel.setThresholdListener(null);
+
+						// close existing grayscale image
+						_grayScaleImage.close();
+						_grayScaleImage = null;
+
+						// show new grayscale and fit brightest
+						showGrayScaleAndFit(_uiPanel);
+
+						// set up new threshold listener
+						_uiPanel.setThresholdListener(_grayScaleImage); */
+					}
+				};
+			}
 			int components = 0;
 			switch (fitFunction) {
 				case SINGLE_EXPONENTIAL:
@@ -226,94 +329,414 @@ public class DefaultBatchProcessor implements BatchProcessor {
 			final FittedValue[] values =
 				FittedValueFactory.createFittedValues(fittedImages, components);
 			summary.init(fitFunction, values, listener);
+			if (null != summaryState && 0 < summaryState.length) {
+				try {
+					summary.readState(new DataInputStream(new ByteArrayInputStream(
+						summaryState)));
+				}
+				catch (final IOException e) {
+					showError("Cannot resume from " + journalFile + ": " +
+						e.getMessage());
+					return false;
+				}
+			}
 		}
 
+		// skip files completed before interruption
+		final File[] remainingFiles =
+			Arrays.copyOfRange(files, firstFile, files.length);
+
+		// fits files in parallel; fitting within a file is single-threaded
+		final ExecutorService executorService =
+			Executors.newFixedThreadPool(parallelFiles, new BatchThreadFactory());
+		boolean success = true;
 		try {
 			char separator = TAB_SEPARATOR;
 			if (csv) {
 				separator = COMMA_SEPARATOR;
 			}
 
-			final ImageFitter imageFitter = new ImageFitter();
+			// with one file at a time exports keep up with the fit, so pixels are
+			// exported as they are fitted rather than from the fitted image
+			final boolean streaming = 1 == parallelFiles;
+
+			// keep a window of files being fitted ahead of the one being exported;
+			// this bounds how many fitted images are held in memory
+			final int window =
+				streaming ? 0 : Math.min(parallelFiles + 1, remainingFiles.length);
+			final List<Future<FileResult>> futures =
+				new ArrayList<Future<FileResult>>();
+			int submitted = 0;
+			while (submitted < window) {
+				futures.add(executorService.submit(new FileFitter(context,
+					fitSettings, remainingFiles[submitted++], batchBins)));
+			}
 
-			for (int i = 0; i < files.length; ++i) {
-				final File file = files[i];
-
-				final ImgPlus<DoubleType> fittedImage =
-					imageFitter.fit(context, fitSettings, file, batchBins);
-				if (null == fittedImage) {
-					final ImageFitter.ErrorCode errorCode = imageFitter.getErrorCode();
-					String imageName = file.getCanonicalPath();
-					imageName =
-						imageName.substring(imageName.lastIndexOf(File.separatorChar) + 1);
-					String message = null;
-
-					switch (errorCode) {
-						case IO_EXCEPTION:
-							message = "IO Exception loading " + imageName + ".";
-							break;
-						case NO_LIFETIME_AXIS:
-							message = "" + imageName + " has no lifetime dimension.";
-							break;
-						case BIN_COUNT_MISMATCH:
-							final int bins = imageFitter.getBins();
-							message =
-								"Settings are for " + batchBins + " bins, " + imageName +
-									" has " + bins + " bins.";
-							break;
-						default:
-							message = "Unknown error";
-							break;
+			// files a failed image is cut back out of
+			final String[] exportFiles =
+				new String[] { exportPixels ? pixelsFile : null,
+					exportHistograms ? histogramsFile : null };
+
+			for (int i = 0; i < remainingFiles.length; ++i) {
+				final File file = remainingFiles[i];
+
+				// where this file's exports start, to undo them if it fails
+				final long[] lengths = getLengths(exportFiles);
+				final byte[] state = getSummaryState(summary);
+
+				FileResult result;
+				FittedImageSink imageSink = null;
+				if (streaming) {
+					final List<FittedPixelSink> sinks = new ArrayList<FittedPixelSink>();
+					if (null != binaryPixelsExport) {
+						sinks.add(binaryPixelsExport.createSink(pixelsFile, true,
+							fitFunction, fittedImages, compressPixels));
 					}
-
-					if (null != message) {
-						final boolean ok = IJ.showMessageWithCancel(BATCH_ERROR, message);
-						if (!ok) {
-							// Cancel cancels rest of batch; OK continues
-							return;
-						}
+					else if (exportPixels) {
+						sinks.add(pixels.createSink(pixelsFile, true, fitFunction,
+							fittedImages, separator));
+					}
+					if (exportHistograms) {
+						// histograms need the whole fitted image
+						imageSink = new FittedImageSink();
+						sinks.add(imageSink);
+					}
+					if (exportSummary) {
+						sinks.add(summary.createSink(file.getCanonicalPath()));
+					}
+					try {
+						result =
+							new FileFitter(context, fitSettings, file, batchBins, sinks)
+								.call();
+					}
+					catch (final IOException e) {
+						// pixels or summary failed to export
+						result = new FileResult(null, ImageFitter.ErrorCode.NONE, 0);
+						result.exception = e;
+					}
+					catch (final RuntimeException e) {
+						// unexpected failure fitting this file
+						result = new FileResult(null, ImageFitter.ErrorCode.NONE, 0);
+						result.exception = e;
 					}
 				}
 				else {
-					if (exportPixels) {
-						pixels.export(pixelsFile, true, fittedImage, fitRegion,
-							fitFunction, fittedImages, separator);
+					try {
+						result = futures.get(i).get();
 					}
-					if (exportHistograms) {
-						histograms.export(histogramsFile, true, fittedImage, fitFunction,
-							fittedImages, separator);
+					catch (final ExecutionException e) {
+						// unexpected failure fitting this file
+						result = new FileResult(null, ImageFitter.ErrorCode.NONE, 0);
+						result.exception = e.getCause();
 					}
-					if (exportSummary) {
-						summary.process(file.getCanonicalPath(), fittedImage);
+					futures.set(i, null);
+
+					// start fitting another file
+					if (submitted < remainingFiles.length) {
+						futures.add(executorService.submit(new FileFitter(context,
+							fitSettings, remainingFiles[submitted++], batchBins)));
+					}
+				}
+
+				final ImgPlus<DoubleType> fittedImage = result.fittedImage;
+				if (!result.failed()) {
+					try {
+						if (streaming) {
+							// pixels and summary already exported
+							if (exportHistograms) {
+								histograms.export(histogramsFile, true,
+									imageSink.getImage(), fitFunction, fittedImages, separator);
+							}
+						}
+						else {
+							if (null != binaryPixelsExport) {
+								binaryPixelsExport.export(pixelsFile, true, fittedImage,
+									fitFunction, fittedImages, compressPixels);
+							}
+							else if (exportPixels) {
+								pixels.export(pixelsFile, true, fittedImage, fitRegion,
+									fitFunction, fittedImages, separator);
+							}
+							if (exportHistograms) {
+								histograms.export(histogramsFile, true, fittedImage,
+									fitFunction, fittedImages, separator);
+							}
+							if (exportSummary) {
+								summary.process(file.getCanonicalPath(), fittedImage);
+							}
+						}
+					}
+					catch (final IOException e) {
+						// failed to export this file
+						result.exception = e;
 					}
 				}
+
+				if (result.failed()) {
+					// drop partial exports, so the output holds only whole files
+					rollBack(exportFiles, lengths);
+					if (null != summary) {
+						summary.readState(new DataInputStream(new ByteArrayInputStream(
+							state)));
+					}
+
+					// journal no further, so a resumed run retries this file
+					journal = null;
+					success = false;
+					final String message = getErrorMessage(file, result, batchBins);
+					if (!showError(message)) {
+						// Cancel cancels rest of batch; OK continues
+						return false;
+					}
+				}
+				else if (null != journal) {
+					journal.record(file, getSummaryState(summary));
+				}
 			}
 
 			if (exportSummary) {
 				// export summary to text file
 				summary.export(summaryFile, separator);
 			}
+
+			if (null != journal) {
+				// every file succeeded
+				journal.delete();
+			}
 		}
 		catch (final Exception e) {
-			IJ.handleException(e);
+			success = false;
+			if (headless) {
+				e.printStackTrace();
+			}
+			else {
+				IJ.handleException(e);
+			}
+		}
+		finally {
+			executorService.shutdownNow();
 		}
 
 		// TODO ARG need IJ2 version:
 		// IJ.showProgress(0,0);
+		return success;
 	}
 
-	private boolean checkFileName(final String fileName) {
+	/**
+	 * Reports an error.
+	 *
+	 * @return whether to continue
+	 */
+	private boolean showError(final String message) {
+		if (headless) {
+			System.err.println(BATCH_ERROR + ": " + message);
+			return true;
+		}
+		return IJ.showMessageWithCancel(BATCH_ERROR, message);
+	}
+
+	/**
+	 * Describes why a file could not be fitted.
+	 *
+	 */
+	private String getErrorMessage(final File file, final FileResult result,
+		final int batchBins) throws IOException
+	{
+		String imageName = file.getCanonicalPath();
+		imageName =
+			imageName.substring(imageName.lastIndexOf(File.separatorChar) + 1);
+		String message = null;
+
+		if (null != result.exception) {
+			message = "Error processing " + imageName + ": " + result.exception;
+		}
+		else {
+			switch (result.errorCode) {
+				case IO_EXCEPTION:
+					message = "IO Exception loading " + imageName + ".";
+					break;
+				case NO_LIFETIME_AXIS:
+					message = "" + imageName + " has no lifetime dimension.";
+					break;
+				case BIN_COUNT_MISMATCH:
+					message =
+						"Settings are for " + batchBins + " bins, " + imageName + " has " +
+							result.bins + " bins.";
+					break;
+				default:
+					message = "Unknown error";
+					break;
+			}
+		}
+		return message;
+	}
+
+	/**
+	 * Serializes summary histograms for the journal.
+	 *
+	 */
+	private byte[] getSummaryState(final ExportSummaryToText summary)
+		throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		if (null != summary) {
+			final DataOutputStream out = new DataOutputStream(bytes);
+			summary.writeState(out);
+			out.flush();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Gets current lengths of export files, zero for those not exported.
+	 *
+	 */
+	private static long[] getLengths(final String[] fileNames) {
+		final long[] lengths = new long[fileNames.length];
+		for (int i = 0; i < fileNames.length; ++i) {
+			if (null != fileNames[i]) {
+				lengths[i] = new File(fileNames[i]).length();
+			}
+		}
+		return lengths;
+	}
+
+	/**
+	 * Truncates export files back to the given lengths.
+	 *
+	 */
+	private static void rollBack(final String[] fileNames, final long[] lengths)
+		throws IOException
+	{
+		for (int i = 0; i < fileNames.length; ++i) {
+			if (null != fileNames[i]) {
+				truncate(fileNames[i], lengths[i]);
+			}
+		}
+	}
+
+	/**
+	 * Checks output file is writable and truncates it.
+	 *
+	 * @param length length to keep, nonzero when resuming
+	 */
+	private boolean checkFileName(final String fileName, final long length) {
 		try {
-			// open and truncate
-			final FileWriter fileWriter = new FileWriter(fileName, false);
-			fileWriter.flush();
-			fileWriter.close();
+			truncate(fileName, length);
 			return true;
 		}
 		catch (final IOException e) {
-			IJ.showMessage("Error in Batch Processing", "Problem writing to file: " +
-				fileName);
+			final String message = "Problem writing to file: " + fileName;
+			if (headless) {
+				System.err.println(BATCH_ERROR + ": " + message);
+			}
+			else {
+				IJ.showMessage(BATCH_ERROR, message);
+			}
 			return false;
 		}
 	}
+
+	/**
+	 * Truncates output file to its length in the journal, creating it if need be.
+	 *
+	 * @throws IOException if file is shorter than the journal recorded
+	 */
+	static void truncate(final String fileName, final long length)
+		throws IOException
+	{
+		final RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		final boolean complete = file.length() >= length;
+		if (complete) {
+			file.setLength(length);
+		}
+		file.close();
+		if (!complete) {
+			throw new IOException("shorter than journal");
+		}
+	}
+
+	/**
+	 * Outcome of fitting a single file.
+	 */
+	private static class FileResult {
+
+		final ImgPlus<DoubleType> fittedImage;
+		final ImageFitter.ErrorCode errorCode;
+		final int bins;
+		Throwable exception;
+
+		FileResult(final ImgPlus<DoubleType> fittedImage,
+			final ImageFitter.ErrorCode errorCode, final int bins)
+		{
+			this.fittedImage = fittedImage;
+			this.errorCode = errorCode;
+			this.bins = bins;
+		}
+
+		boolean failed() {
+			return null != exception || ImageFitter.ErrorCode.NONE != errorCode;
+		}
+	}
+
+	/**
+	 * Loads and fits a single file.
+	 */
+	private static class FileFitter implements Callable<FileResult> {
+
+		private final Context context;
+		private final FitSettings fitSettings;
+		private final File file;
+		private final int batchBins;
+		private final List<FittedPixelSink> sinks;
+
+		FileFitter(final Context context, final FitSettings fitSettings,
+			final File file, final int batchBins)
+		{
+			this(context, fitSettings, file, batchBins, null);
+		}
+
+		/**
+		 * @param sinks receive fitted pixels, null to create fitted image
+		 */
+		FileFitter(final Context context, final FitSettings fitSettings,
+			final File file, final int batchBins, final List<FittedPixelSink> sinks)
+		{
+			this.context = context;
+			this.fitSettings = fitSettings;
+			this.file = file;
+			this.batchBins = batchBins;
+			this.sinks = sinks;
+		}
+
+		@Override
+		public FileResult call() throws IOException {
+			// ImageFitter keeps state of the last fit, so one per file
+			final ImageFitter imageFitter = new ImageFitter();
+			ImgPlus<DoubleType> fittedImage = null;
+			if (null == sinks) {
+				fittedImage = imageFitter.fit(context, fitSettings, file, batchBins);
+			}
+			else {
+				imageFitter.fit(context, fitSettings, file, batchBins, sinks);
+			}
+			return new FileResult(fittedImage, imageFitter.getErrorCode(),
+				imageFitter.getBins());
+		}
+	}
+
+	/**
+	 * Names the batch threads.
+	 */
+	private static class BatchThreadFactory implements ThreadFactory {
+
+		private int threadNumber = 0;
+
+		@Override
+		public synchronized Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "SLIM-Batch-Thread-" + threadNumber++);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
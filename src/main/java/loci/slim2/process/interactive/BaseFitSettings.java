@@ -42,6 +42,8 @@ public class BaseFitSettings implements FitSettings {
 	private HorzCursor[] decayHorzCursors;
 	private VertCursor decayVertCursor;
 	private int binningFactor;
+	private int thresholdMinimum = 0;
+	private int thresholdMaximum = Integer.MAX_VALUE;
 
 	public GlobalFitParams globalFitParams;
 
@@ -171,4 +173,30 @@ public class BaseFitSettings implements FitSettings {
 	public void setBinningFactor(final int binningFactor) {
 		this.binningFactor = binningFactor;
 	}
+
+	@Override
+	public int getThresholdMinimum() {
+		return thresholdMinimum;
+	}
+
+	/**
+	 * Sets photon count threshold minimum to fit a pixel.
+	 *
+	 */
+	public void setThresholdMinimum(final int thresholdMinimum) {
+		this.thresholdMinimum = thresholdMinimum;
+	}
+
+	@Override
+	public int getThresholdMaximum() {
+		return thresholdMaximum;
+	}
+
+	/**
+	 * Sets photon count threshold maximum to fit a pixel.
+	 *
+	 */
+	public void setThresholdMaximum(final int thresholdMaximum) {
+		this.thresholdMaximum = thresholdMaximum;
+	}
 }
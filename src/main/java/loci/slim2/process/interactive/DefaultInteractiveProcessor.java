@@ -23,7 +23,9 @@
 
 package loci.slim2.process.interactive;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.swing.JFrame;
@@ -32,9 +34,10 @@ import loci.curvefitter.ICurveFitter;
 import loci.curvefitter.ICurveFitter.FitRegion;
 import loci.curvefitter.IFitterEstimator;
 import loci.curvefitter.JaolhoCurveFitter;
-import loci.curvefitter.SLIMCurveFitter;
 import loci.slim.Excitation;
 import loci.slim.ExcitationFileUtility;
+import loci.slim.fitting.config.Configuration;
+import loci.slim.fitting.metrics.Tracer;
 import loci.slim2.decay.LifetimeDatasetWrapper;
 import loci.slim2.decay.LifetimeGrayscaleDataset;
 import loci.slim2.fitting.DefaultGlobalFitParams;
@@ -53,7 +56,11 @@ import loci.slim2.outputset.OutputSet;
 import loci.slim2.outputset.OutputSetMember;
 import loci.slim2.outputset.temp.ChunkyPixel;
 import loci.slim2.outputset.temp.ChunkyPixelIterator;
+import loci.slim2.phasor.PhasorAnalyzer;
+import loci.slim2.phasor.PhasorCalculator;
+import loci.slim2.phasor.PhasorHistogram;
 import loci.slim2.process.FitSettings;
+import loci.slim2.process.FittedPixelSink;
 import loci.slim2.process.InteractiveProcessor;
 import loci.slim2.process.interactive.cursor.FittingCursor;
 import loci.slim2.process.interactive.cursor.FittingCursorListener;
@@ -70,6 +77,8 @@ import net.imagej.Dataset;
 import net.imagej.DatasetService;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.Context;
@@ -85,6 +94,7 @@ import org.scijava.ui.UIService;
  */
 public class DefaultInteractiveProcessor implements InteractiveProcessor {
 
+	private static final int PHASOR_HISTOGRAM_SIZE = 256;
 	private Context context;
 	private CommandService commandService;
 	private DatasetService datasetService;
@@ -526,7 +536,9 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 				fitImages = false;
 			}
 			else if (fitImages) {
+				final long span = Tracer.begin();
 				fitImages();
+				Tracer.end("fitImages", span);
 				uiPanel.reset();
 				fitImages = false;
 			}
@@ -618,8 +630,10 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 
 	private GrayscaleDisplay createGrayscale() {
 		// make a grayscale version of lifetime dataset
+		final long span = Tracer.begin();
 		lifetimeGrayscaleDataset =
 			new LifetimeGrayscaleDataset(datasetService, lifetimeDatasetWrapper);
+		Tracer.end("grayScaleImage", span);
 		// fittingContext.setGrayscaleDataset(lifetimeGrayscaleDataset);
 
 		// display grayscale version
@@ -716,6 +730,10 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 	 * Produces a set of fitted images.
 	 */
 	private void fitImages() {
+		if (uiPanel.getPhasor()) {
+			phasorImages();
+			return;
+		}
 		final String choices = uiPanel.getFittedImages();
 		final int parameterCount = uiPanel.getParameterCount();
 		final List<OutputSetMember> list =
@@ -743,6 +761,7 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 				}
 			}
 		}
+		final long outputSpan = Tracer.begin();
 		final OutputSet imageSet =
 			new OutputSet(commandService, datasetService, combined,
 				useChannelDimension, type, dimensions, title, axes, list);
@@ -756,6 +775,7 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 			d.setDirty(true);
 			display = displayService.createDisplay(d);
 		}
+		Tracer.end("createOutputSet", outputSpan);
 
 		final ChunkyPixelIterator iterator = new ChunkyPixelIterator(dimensions);
 		while (iterator.hasNext()) {
@@ -767,11 +787,83 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 			final double[] decay =
 				lifetimeDatasetWrapper.getBinnedDecay(binSize, position);
 			final FitResults fitResults = fitDecay(decay);
+			final long writeSpan = Tracer.begin();
 			imageSet.setPixelValue(fitResults.getParams(), position);
+			Tracer.end("setPixelValue", writeSpan);
 		}
 
 	}
 
+	/**
+	 * Produces phasor lifetime images and a phasor histogram, without fitting.
+	 */
+	private void phasorImages() {
+		final GlobalFitParams params = getGlobalFitParams(uiPanel, fittingCursor);
+		final double[] prompt = params.getPrompt();
+		// without an excitation to calibrate, analyze the tail only
+		final int start =
+			null == prompt ? params.getDataStart() : params.getTransientStart();
+		final PhasorCalculator calculator =
+			new PhasorCalculator(timeInc, start, params.getTransientStop(), 1,
+				prompt, params.getStartPrompt());
+		final PhasorHistogram histogram =
+			new PhasorHistogram(PHASOR_HISTOGRAM_SIZE, PHASOR_HISTOGRAM_SIZE / 2);
+
+		final OutputSet imageSet =
+			new OutputSet(commandService, datasetService, false, false,
+				new DoubleType(), lifetimeGrayscaleDataset.getDataset(),
+				PhasorCalculator.RESULT_LABELS);
+		for (final Dataset d : imageSet.getDatasets()) {
+			d.setDirty(true);
+			displayService.createDisplay(d);
+		}
+
+		final PhasorAnalyzer analyzer = new PhasorAnalyzer(calculator, histogram);
+		final FittedPixelSink sink =
+			new OutputSetSink(imageSet, lifetimeGrayscaleDataset.getDataset()
+				.numDimensions());
+		try {
+			analyzer.analyze(lifetimeDatasetWrapper, uiPanel.getBinning(),
+				thresholdMin, thresholdMax, Collections.singletonList(sink));
+		}
+		catch (final IOException e) {
+			// the output set sink writes no files
+			throw new IllegalStateException(e);
+		}
+		for (final Dataset d : imageSet.getDatasets()) {
+			d.update();
+		}
+
+		showPhasorHistogram(histogram);
+	}
+
+	/**
+	 * Displays a phasor histogram as an image, with S increasing upwards.
+	 *
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void showPhasorHistogram(final PhasorHistogram histogram) {
+		final int width = histogram.getWidth();
+		final int height = histogram.getHeight();
+		final String title =
+			"Phasor " + lifetimeGrayscaleDataset.getDataset().getName();
+		final Dataset dataset =
+			datasetService.create(new long[] { width, height }, title,
+				new AxisType[] { Axes.X, Axes.Y }, 32, true, true);
+		final RandomAccess<? extends RealType> access =
+			dataset.getImgPlus().randomAccess();
+		final long[] position = new long[2];
+		for (int y = 0; y < height; ++y) {
+			position[1] = height - 1 - y;
+			for (int x = 0; x < width; ++x) {
+				position[0] = x;
+				access.setPosition(position);
+				access.get().setReal(histogram.getCount(x, y));
+			}
+		}
+		displayService.createDisplay(dataset);
+	}
+
 	private List<OutputSetMember> buildFittedImageList(final String choices,
 		final int parameterCount)
 	{
@@ -1046,15 +1138,15 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 				curveFitter = new JaolhoCurveFitter();
 				break;
 			case SLIMCURVE_RLD:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_RLD);
 				break;
 			case SLIMCURVE_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_LMA);
 				break;
 			case SLIMCURVE_RLD_LMA:
-				curveFitter = new SLIMCurveFitter();
+				curveFitter = Configuration.getInstance().newSLIMCurveFitter();
 				curveFitter
 					.setFitAlgorithm(ICurveFitter.FitAlgorithm.SLIMCURVE_RLD_LMA);
 				break;
@@ -1177,4 +1269,33 @@ public class DefaultInteractiveProcessor implements InteractiveProcessor {
 		decayGraph.setChiSquare(fitResults.getParams()[0]);
 		decayGraph.setPhotons(fitResults.getPhotonCount());
 	}
+
+	/**
+	 * Writes analyzed pixels into an output set.
+	 */
+	private static class OutputSetSink implements FittedPixelSink {
+
+		private final OutputSet outputSet;
+		private final long[] position;
+
+		OutputSetSink(final OutputSet outputSet, final int numDimensions) {
+			this.outputSet = outputSet;
+			position = new long[numDimensions];
+		}
+
+		@Override
+		public void begin(final String name, final int width, final int height,
+			final int parameterCount)
+		{}
+
+		@Override
+		public void pixel(final int x, final int y, final double[] params) {
+			position[0] = x;
+			position[1] = y;
+			outputSet.setPixelValue(params, position);
+		}
+
+		@Override
+		public void end() {}
+	}
 }
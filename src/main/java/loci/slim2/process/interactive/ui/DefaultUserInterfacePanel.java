@@ -84,7 +84,8 @@ public class DefaultUserInterfacePanel implements UserInterfacePanel {
 	private static final String JAOLHO_LMA_ALGORITHM = "Jaolho LMA",
 			SLIM_CURVE_RLD_ALGORITHM = "SLIMCurve RLD",
 			SLIM_CURVE_LMA_ALGORITHM = "SLIMCurve LMA",
-			SLIM_CURVE_RLD_LMA_ALGORITHM = "SLIMCurve RLD+LMA";
+			SLIM_CURVE_RLD_LMA_ALGORITHM = "SLIMCurve RLD+LMA",
+			PHASOR_ALGORITHM = "Phasor";
 
 	private static final String SINGLE_EXPONENTIAL = "Single Exponential",
 			DOUBLE_EXPONENTIAL = "Double Exponential",
@@ -114,10 +115,12 @@ public class DefaultUserInterfacePanel implements UserInterfacePanel {
 	// TODO ARG fitting a series of ROIs is broken, so omit that possibility, for
 	// now:
 	private static final String REGION_ITEMS[] = { SUM_REGION, /*ROIS_REGION,*/
-		PIXEL_REGION, ALL_REGION }, ALGORITHM_ITEMS[] = { JAOLHO_LMA_ALGORITHM,
-		SLIM_CURVE_RLD_ALGORITHM, SLIM_CURVE_LMA_ALGORITHM,
-		SLIM_CURVE_RLD_LMA_ALGORITHM }, FUNCTION_ITEMS[] = { SINGLE_EXPONENTIAL,
-		DOUBLE_EXPONENTIAL, TRIPLE_EXPONENTIAL, STRETCHED_EXPONENTIAL },
+		PIXEL_REGION, ALL_REGION },
+			ALGORITHM_ITEMS[] = { JAOLHO_LMA_ALGORITHM, SLIM_CURVE_RLD_ALGORITHM,
+				SLIM_CURVE_LMA_ALGORITHM, SLIM_CURVE_RLD_LMA_ALGORITHM,
+				PHASOR_ALGORITHM },
+			FUNCTION_ITEMS[] = { SINGLE_EXPONENTIAL, DOUBLE_EXPONENTIAL,
+				TRIPLE_EXPONENTIAL, STRETCHED_EXPONENTIAL },
 			NOISE_MODEL_ITEMS[] = { GAUSSIAN_FIT, POISSON_FIT, POISSON_DATA,
 				MAXIMUM_LIKELIHOOD };
 
@@ -1853,9 +1856,18 @@ public class DefaultUserInterfacePanel implements UserInterfacePanel {
 		else if (selected.equals(SLIM_CURVE_RLD_LMA_ALGORITHM)) {
 			algorithm = ICurveFitter.FitAlgorithm.SLIMCURVE_RLD_LMA;
 		}
+		else if (selected.equals(PHASOR_ALGORITHM)) {
+			// single decays are still fitted
+			algorithm = ICurveFitter.FitAlgorithm.SLIMCURVE_RLD;
+		}
 		return algorithm;
 	}
 
+	@Override
+	public boolean getPhasor() {
+		return PHASOR_ALGORITHM.equals(algorithmComboBox.getSelectedItem());
+	}
+
 	@Override
 	public ICurveFitter.FitFunction getFunction() {
 		ICurveFitter.FitFunction function = null;
@@ -99,6 +99,13 @@ public interface UserInterfacePanel {
 	 */
 	public ICurveFitter.FitAlgorithm getAlgorithm();
 
+	/**
+	 * Gets whether images are produced by phasor analysis rather than fitting.
+	 *
+	 * @return whether phasor analysis
+	 */
+	public boolean getPhasor();
+
 	/**
 	 * Gets function to be fitted.
 	 *
@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link IntensityProjection} against sums of the decays.
+ */
+public class IntensityProjectionTest {
+
+	// tall enough for more than one tile of rows
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int BINS = 4;
+	private static final int CHANNELS = 2;
+	private static final int SLICES = 3;
+
+	/**
+	 * Lifetime third, followed by channels and slices.
+	 */
+	@Test
+	public void testLifetimeThird() {
+		final double[][] counts = randomCounts(CHANNELS * SLICES);
+		final Img<DoubleType> image =
+			ArrayImgs.doubles(WIDTH, HEIGHT, BINS, CHANNELS, SLICES);
+		final RandomAccess<DoubleType> randomAccess = image.randomAccess();
+		for (int s = 0; s < SLICES; ++s) {
+			for (int c = 0; c < CHANNELS; ++c) {
+				final double[] planeCounts = counts[s * CHANNELS + c];
+				for (int y = 0; y < HEIGHT; ++y) {
+					for (int x = 0; x < WIDTH; ++x) {
+						for (int b = 0; b < BINS; ++b) {
+							randomAccess.setPosition(new int[] { x, y, b, c, s });
+							randomAccess.get().setReal(
+								planeCounts[(y * WIDTH + x) * BINS + b]);
+						}
+					}
+				}
+			}
+		}
+
+		final IntensityProjection projection = new IntensityProjection(image, 2);
+		assertEquals(CHANNELS * SLICES, projection.getPlanes());
+		for (int s = 0; s < SLICES; ++s) {
+			for (int c = 0; c < CHANNELS; ++c) {
+				final int plane = projection.getPlane(new long[] { 0, 0, c, s });
+				assertEquals(s * CHANNELS + c, plane);
+			}
+		}
+		check(projection, counts);
+	}
+
+	/**
+	 * Lifetime last, with one plane per channel.
+	 */
+	@Test
+	public void testLifetimeLast() {
+		final double[][] counts = randomCounts(CHANNELS);
+		final Img<DoubleType> image =
+			ArrayImgs.doubles(WIDTH, HEIGHT, CHANNELS, BINS);
+		final RandomAccess<DoubleType> randomAccess = image.randomAccess();
+		for (int c = 0; c < CHANNELS; ++c) {
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					for (int b = 0; b < BINS; ++b) {
+						randomAccess.setPosition(new int[] { x, y, c, b });
+						randomAccess.get().setReal(
+							counts[c][(y * WIDTH + x) * BINS + b]);
+					}
+				}
+			}
+		}
+
+		final IntensityProjection projection = new IntensityProjection(image, 3);
+		assertEquals(CHANNELS, projection.getPlanes());
+		assertEquals(1, projection.getPlane(new long[] { 5, 7, 1 }));
+		check(projection, counts);
+	}
+
+	@Test
+	public void testNoPhotons() {
+		final Img<DoubleType> image = ArrayImgs.doubles(WIDTH, HEIGHT, BINS);
+		final IntensityProjection projection = new IntensityProjection(image, 2);
+		assertEquals(1, projection.getPlanes());
+		assertEquals(Double.MAX_VALUE, projection.getMinNonZeroCount(), 0.0);
+		assertEquals(0.0, projection.getMaxSum(0), 0.0);
+		assertNull(projection.getBrightestPoint(0));
+		assertEquals(0.0, projection.getSum(0, 0, 0, WIDTH, HEIGHT), 0.0);
+	}
+
+	/**
+	 * Photon counts of each plane, indexed (y * WIDTH + x) * BINS + bin. Counts
+	 * are multiples of 0.5, so all sums are exact.
+	 */
+	private static double[][] randomCounts(final int planes) {
+		final Random random = new Random(planes);
+		final double[][] counts = new double[planes][WIDTH * HEIGHT * BINS];
+		for (final double[] planeCounts : counts) {
+			for (int i = 0; i < planeCounts.length; ++i) {
+				planeCounts[i] = 0.5 * random.nextInt(8);
+			}
+		}
+		return counts;
+	}
+
+	private static void check(final IntensityProjection projection,
+		final double[][] counts)
+	{
+		assertEquals(WIDTH, projection.getWidth());
+		assertEquals(HEIGHT, projection.getHeight());
+		assertEquals(0.5, projection.getMinNonZeroCount(), 0.0);
+
+		for (int plane = 0; plane < counts.length; ++plane) {
+			// brute force sum of each pixel
+			final double[] sums = new double[WIDTH * HEIGHT];
+			double maxSum = 0.0;
+			int[] brightestPoint = null;
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					double sum = 0.0;
+					for (int b = 0; b < BINS; ++b) {
+						sum += counts[plane][(y * WIDTH + x) * BINS + b];
+					}
+					sums[y * WIDTH + x] = sum;
+					if (sum > maxSum) {
+						maxSum = sum;
+						brightestPoint = new int[] { x, y };
+					}
+					assertEquals(sum, projection.getSum(plane, x, y), 0.0);
+				}
+			}
+			assertArrayEquals(sums, projection.getSums(plane), 0.0);
+			assertEquals(maxSum, projection.getMaxSum(plane), 0.0);
+			assertArrayEquals(brightestPoint, projection.getBrightestPoint(plane));
+
+			// rectangles inside, across and beyond the edges
+			final int[][] rectangles =
+				new int[][] { { 0, 0, WIDTH, HEIGHT }, { 10, 20, 11, 21 },
+					{ 3, 50, 90, 117 }, { -5, -5, 7, 9 }, { 150, 100, 200, 300 },
+					{ -10, -10, WIDTH + 10, HEIGHT + 10 }, { 40, 40, 40, 60 },
+					{ 50, 50, 20, 20 }, { WIDTH, 0, WIDTH + 5, HEIGHT } };
+			for (final int[] r : rectangles) {
+				double sum = 0.0;
+				for (int y = Math.max(0, r[1]); y < Math.min(HEIGHT, r[3]); ++y) {
+					for (int x = Math.max(0, r[0]); x < Math.min(WIDTH, r[2]); ++x) {
+						sum += sums[y * WIDTH + x];
+					}
+				}
+				assertEquals(sum, projection.getSum(plane, r[0], r[1], r[2], r[3]),
+					0.0);
+			}
+		}
+	}
+}
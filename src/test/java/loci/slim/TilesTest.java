@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Tiles}.
+ */
+public class TilesTest {
+
+	@Test
+	public void testOrder() {
+		final List<Callable<Integer>> tiles = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 100; ++i) {
+			tiles.add(new Square(i));
+		}
+		final List<Integer> results = Tiles.process(tiles);
+		assertEquals(100, results.size());
+		for (int i = 0; i < 100; ++i) {
+			assertEquals(i * i, results.get(i).intValue());
+		}
+	}
+
+	@Test(expected = ArithmeticException.class)
+	public void testFailure() {
+		final List<Callable<Integer>> tiles = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < 100; ++i) {
+			tiles.add(50 == i ? new Failing() : new Square(i));
+		}
+		Tiles.process(tiles);
+	}
+
+	private static class Square implements Callable<Integer> {
+
+		private final int value;
+
+		Square(final int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Integer call() {
+			return value * value;
+		}
+	}
+
+	private static class Failing implements Callable<Integer> {
+
+		@Override
+		public Integer call() {
+			throw new ArithmeticException("tile failed");
+		}
+	}
+}
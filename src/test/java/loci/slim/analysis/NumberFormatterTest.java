@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test of formatting numbers for text export.
+ */
+public class NumberFormatterTest {
+
+	private static final double[] VALUES = { 0.0, -0.0, 1.0, -1.0, 10.0, 0.5,
+		-0.5, 1.234, -1.234, 9999.5, 99995.0, -99999.0, 1.0e7, 1.0e-3, 1.2345e-7,
+		-1.2345e-7, 123456789.0, 1.0e300, -1.0e-300, Double.MIN_VALUE,
+		Double.MAX_VALUE };
+
+	@Test
+	public void testRounded() {
+		final NumberFormatter formatter = new NumberFormatter();
+		for (final double value : VALUES) {
+			checkRounded(formatter, value);
+		}
+		final Random random = new Random(1);
+		for (int i = 0; i < 100000; ++i) {
+			final double value =
+				(random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(30) - 15);
+			checkRounded(formatter, value);
+			// short decimals are near rounding boundaries
+			checkRounded(formatter, Math.round(value * 1000.0) / 1000.0);
+		}
+		assertEquals("NaN", formatter.toRoundedString(Double.NaN, 4));
+		assertEquals("-Infinity", formatter.toRoundedString(
+			Double.NEGATIVE_INFINITY, 4));
+	}
+
+	@Test
+	public void testExact() throws IOException {
+		final NumberFormatter formatter = new NumberFormatter();
+		final StringWriter writer = new StringWriter();
+		formatter.writeExact(writer, 0.1 + 0.2);
+		writer.write(',');
+		formatter.writeLong(writer, -42);
+		writer.write(',');
+		formatter.writeExact(writer, Double.NaN);
+		assertEquals("0.30000000000000004,-42,NaN", writer.toString());
+	}
+
+	private void checkRounded(final NumberFormatter formatter, final double value)
+	{
+		for (int digits = 1; digits <= 7; ++digits) {
+			final String expected =
+				BigDecimal.valueOf(value).round(
+					new MathContext(digits, RoundingMode.FLOOR)).toEngineeringString();
+			assertEquals(expected, formatter.toRoundedString(value, digits));
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.analysis.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import loci.slim.analysis.HistogramStatistics;
+import loci.slim.fitted.FittedValue;
+import loci.slim.fitted.FittedValueFactory;
+
+import org.junit.Test;
+
+/**
+ * Unit test of saving and restoring batch histograms.
+ */
+public class AbstractBatchHistogramTest {
+
+	@Test
+	public void testStateRoundTrip() throws IOException {
+		final Random random = new Random(1);
+		final BatchHistogram histogram = newHistogram();
+		process(histogram, random, 5000);
+
+		final byte[] state = getState(histogram);
+		final BatchHistogram restored = newHistogram();
+		restored.readState(new DataInputStream(new ByteArrayInputStream(state)));
+		assertArrayEquals(state, getState(restored));
+		assertStatistics(histogram.getStatistics(), restored.getStatistics());
+
+		// carries on accumulating exactly as the original
+		final long seed = random.nextLong();
+		process(histogram, new Random(seed), 5000);
+		process(restored, new Random(seed), 5000);
+		assertArrayEquals(getState(histogram), getState(restored));
+		assertStatistics(histogram.getStatistics(), restored.getStatistics());
+	}
+
+	@Test(expected = IOException.class)
+	public void testStateMismatch() throws IOException {
+		// Z has fewer bins than lifetimes
+		final BatchHistogram histogram = newHistogram();
+		final BatchHistogram z = new ZBatchHistogram();
+		z.init(FittedValueFactory.createFittedValues(FittedValue.Z, 1)[0]);
+		histogram.readState(new DataInputStream(new ByteArrayInputStream(
+			getState(z))));
+	}
+
+	private static BatchHistogram newHistogram() {
+		final BatchHistogram histogram = new TauBatchHistogram();
+		histogram.init(FittedValueFactory.createFittedValues(FittedValue.T, 1)[0]);
+		return histogram;
+	}
+
+	/**
+	 * Processes lifetimes within the histogram range.
+	 *
+	 */
+	private static void process(final BatchHistogram histogram,
+		final Random random, final int count)
+	{
+		final double[] values = new double[FittedValue.T1_INDEX + 1];
+		for (int i = 0; i < count; ++i) {
+			values[FittedValue.T1_INDEX] = 0.5 + 19.0 * random.nextDouble();
+			histogram.process(values);
+		}
+	}
+
+	private static byte[] getState(final BatchHistogram histogram)
+		throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		histogram.writeState(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void assertStatistics(final HistogramStatistics expected,
+		final HistogramStatistics actual)
+	{
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getMin(), actual.getMin(), 0.0);
+		assertEquals(expected.getMax(), actual.getMax(), 0.0);
+		assertEquals(expected.getFirstQuartile(), actual.getFirstQuartile(), 0.0);
+		assertEquals(expected.getMedian(), actual.getMedian(), 0.0);
+		assertEquals(expected.getThirdQuartile(), actual.getThirdQuartile(), 0.0);
+		assertEquals(expected.getMean(), actual.getMean(), 0.0);
+		assertEquals(expected.getStandardDeviation(), actual
+			.getStandardDeviation(), 0.0);
+		assertArrayEquals(expected.getHistogram(), actual.getHistogram());
+	}
+}
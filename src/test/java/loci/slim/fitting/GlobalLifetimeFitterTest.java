@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+import loci.slim.fitting.params.GlobalFitParams;
+import loci.slim.fitting.params.IFitResults;
+import loci.slim.fitting.params.IGlobalFitParams;
+import loci.slim.fitting.params.ILocalFitParams;
+import loci.slim.fitting.params.LocalFitParams;
+
+import org.junit.Test;
+
+/**
+ * Unit test of global fits with lifetimes shared by all pixels.
+ */
+public class GlobalLifetimeFitterTest {
+
+	private static final int BINS = 128;
+	private static final double X_INC = 0.1;
+
+	@Test
+	public void testSharedLifetimes() {
+		final Random random = new Random(1);
+		final List<ILocalFitParams> pixels = new ArrayList<ILocalFitParams>();
+		final double[][] amplitudes = new double[50][];
+		for (int p = 0; p < amplitudes.length; ++p) {
+			amplitudes[p] =
+				new double[] { 2.0, 100.0 + 900.0 * random.nextDouble(),
+					50.0 + 200.0 * random.nextDouble() };
+			pixels.add(pixel(decay(amplitudes[p], 0.6, 3.0, null), 6));
+		}
+		final GlobalLifetimeFitter fitter =
+			new GlobalLifetimeFitter(params(FitFunction.DOUBLE_EXPONENTIAL,
+				NoiseModel.POISSON_FIT));
+		final double[] lifetimes = fitter.fitLifetimes(pixels);
+		assertEquals(0.6, Math.min(lifetimes[0], lifetimes[1]), 1.0e-5);
+		assertEquals(3.0, Math.max(lifetimes[0], lifetimes[1]), 1.0e-5);
+
+		final IFitResults result = fitter.fitAmplitudes(pixels.get(7));
+		final double[] params = result.getParams();
+		final int fast = lifetimes[0] < lifetimes[1] ? 2 : 4;
+		assertEquals(2.0, params[1], 1.0e-3);
+		assertEquals(amplitudes[7][1], params[fast], 1.0e-2);
+		assertEquals(amplitudes[7][2], params[6 - fast], 1.0e-2);
+		assertTrue(result.getChiSquare() < 1.0e-6);
+	}
+
+	@Test
+	public void testLowPhotonCounts() {
+		// too few photons per pixel to fit each alone
+		final Random random = new Random(2);
+		final List<ILocalFitParams> pixels = new ArrayList<ILocalFitParams>();
+		for (int p = 0; p < 400; ++p) {
+			final double[] y =
+				decay(new double[] { 0.2, 10.0 * random.nextDouble(), 0.0 }, 2.5,
+					1.0, null);
+			for (int i = 0; i < BINS; ++i) {
+				y[i] = poisson(random, y[i]);
+			}
+			pixels.add(pixel(y, 4));
+		}
+		final GlobalLifetimeFitter fitter =
+			new GlobalLifetimeFitter(params(FitFunction.SINGLE_EXPONENTIAL,
+				NoiseModel.MAXIMUM_LIKELIHOOD));
+		final double[] lifetimes = fitter.fitLifetimes(pixels);
+		assertEquals(2.5, lifetimes[0], 0.1);
+	}
+
+	@Test
+	public void testInstrumentResponse() {
+		final double[] prompt = new double[12];
+		for (int i = 0; i < prompt.length; ++i) {
+			prompt[i] = Math.exp(-0.5 * (i - 5) * (i - 5) / 2.0);
+		}
+		final List<ILocalFitParams> pixels = new ArrayList<ILocalFitParams>();
+		for (int p = 0; p < 10; ++p) {
+			pixels.add(pixel(decay(new double[] { 1.0, 100.0 * (p + 1), 0.0 },
+				1.8, 1.0, prompt), 4));
+		}
+		final IGlobalFitParams params =
+			params(FitFunction.SINGLE_EXPONENTIAL, NoiseModel.POISSON_DATA);
+		params.setPrompt(prompt);
+		final GlobalLifetimeFitter fitter = new GlobalLifetimeFitter(params);
+		assertEquals(1.8, fitter.fitLifetimes(pixels)[0], 1.0e-5);
+		assertEquals(300.0, fitter.fitAmplitudes(pixels.get(2)).getParams()[2],
+			1.0e-2);
+	}
+
+	private static IGlobalFitParams params(final FitFunction function,
+		final NoiseModel noiseModel)
+	{
+		final IGlobalFitParams params = new GlobalFitParams();
+		params.setFitAlgorithm(FitAlgorithm.SLIMCURVE_RLD_LMA);
+		params.setFitFunction(function);
+		params.setNoiseModel(noiseModel);
+		params.setXInc(X_INC);
+		params.setTransientStart(0);
+		params.setDataStart(0);
+		params.setTransientStop(BINS);
+		return params;
+	}
+
+	private static ILocalFitParams pixel(final double[] y, final int count) {
+		final ILocalFitParams pixel = new LocalFitParams();
+		pixel.setY(y);
+		pixel.setParams(new double[count]);
+		pixel.setYFitted(new double[BINS]);
+		return pixel;
+	}
+
+	/**
+	 * Builds Z plus two exponential components, convolved with the prompt
+	 * normalized to unit sum if given.
+	 *
+	 */
+	private static double[] decay(final double[] amplitudes, final double tau1,
+		final double tau2, final double[] prompt)
+	{
+		double sum = 0.0;
+		if (null != prompt) {
+			for (final double value : prompt) {
+				sum += value;
+			}
+		}
+		final double[] y = new double[BINS];
+		for (int i = 0; i < BINS; ++i) {
+			double value = 0.0;
+			if (null == prompt) {
+				value = exponentials(amplitudes, tau1, tau2, i);
+			}
+			else {
+				for (int j = 0; j <= i && j < prompt.length; ++j) {
+					value += prompt[j] / sum * exponentials(amplitudes, tau1, tau2, i - j);
+				}
+			}
+			y[i] = amplitudes[0] + value;
+		}
+		return y;
+	}
+
+	private static double exponentials(final double[] amplitudes,
+		final double tau1, final double tau2, final int i)
+	{
+		return amplitudes[1] * Math.exp(-i * X_INC / tau1) + amplitudes[2] *
+			Math.exp(-i * X_INC / tau2);
+	}
+
+	private static int poisson(final Random random, final double mean) {
+		final double limit = Math.exp(-mean);
+		int count = -1;
+		double product = 1.0;
+		do {
+			++count;
+			product *= random.nextDouble();
+		}
+		while (product > limit);
+		return count;
+	}
+}
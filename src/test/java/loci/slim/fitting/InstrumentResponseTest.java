@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test of instrument response convolution.
+ */
+public class InstrumentResponseTest {
+
+	private static final double X_INC = 0.05;
+	private static final double TAU = 1.5;
+
+	@Test
+	public void testConvolveExponential() {
+		for (final int count : new int[] { 1, 7, 40, 300 }) {
+			final double[] values = prompt(count);
+			final InstrumentResponse response = new InstrumentResponse(values, 256);
+			final double[] value = new double[256];
+			final double[] derivative = new double[256];
+			response.convolveExponential(X_INC, TAU, value, derivative);
+			assertClose(convolve(values, exponential(TAU, 256)), value);
+
+			// derivative by central difference
+			final double h = 1.0e-5;
+			final double[] above = convolve(values, exponential(TAU + h, 256));
+			final double[] below = convolve(values, exponential(TAU - h, 256));
+			for (int i = 0; i < above.length; ++i) {
+				above[i] = (above[i] - below[i]) / (2 * h);
+			}
+			assertClose(above, derivative);
+		}
+	}
+
+	@Test
+	public void testConvolve() {
+		// short responses convolve directly, long ones by FFT
+		for (final int count : new int[] { 1, 16, 100, 256 }) {
+			final double[] values = prompt(count);
+			final InstrumentResponse response = new InstrumentResponse(values, 256);
+			final double[] model = new double[256];
+			final Random random = new Random(count);
+			for (int i = 0; i < model.length; ++i) {
+				model[i] = random.nextDouble();
+			}
+			final double[] result = new double[256];
+			response.convolve(model, result);
+			assertClose(convolve(values, model), result);
+		}
+	}
+
+	private static void assertClose(final double[] expected,
+		final double[] actual)
+	{
+		for (int i = 0; i < expected.length; ++i) {
+			assertEquals("bin " + i, expected[i], actual[i],
+				1.0e-8 * (1.0 + Math.abs(expected[i])));
+		}
+	}
+
+	private static double[] convolve(final double[] values, final double[] model)
+	{
+		final double[] result = new double[model.length];
+		for (int i = 0; i < model.length; ++i) {
+			for (int j = 0; j <= i && j < values.length; ++j) {
+				result[i] += model[i - j] * values[j];
+			}
+		}
+		return result;
+	}
+
+	private static double[] exponential(final double tau, final int length) {
+		final double[] model = new double[length];
+		for (int i = 0; i < length; ++i) {
+			model[i] = Math.exp(-i * X_INC / tau);
+		}
+		return model;
+	}
+
+	private static double[] prompt(final int count) {
+		final double[] values = new double[count];
+		for (int i = 0; i < count; ++i) {
+			final double x = (i - count / 3.0) / (1.0 + count / 8.0);
+			values[i] = Math.exp(-x * x);
+		}
+		return values;
+	}
+}
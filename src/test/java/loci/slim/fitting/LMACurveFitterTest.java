@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import loci.curvefitter.CurveFitData;
+import loci.curvefitter.ICurveFitData;
+import loci.curvefitter.ICurveFitter.FitAlgorithm;
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.curvefitter.ICurveFitter.NoiseModel;
+
+import org.junit.Test;
+
+/**
+ * Unit test of the pure Java Levenberg-Marquardt fitter on synthetic decays.
+ */
+public class LMACurveFitterTest {
+
+	private static final int BINS = 256;
+	private static final double X_INC = 0.05;
+
+	@Test
+	public void testSingleExponential() {
+		final double[] y = decay(new double[] { 10.0, 1000.0, 2.0 }, null);
+		final ICurveFitData data = fit(y, FitFunction.SINGLE_EXPONENTIAL,
+			NoiseModel.POISSON_FIT, null, new double[4]);
+		final double[] params = data.getParams();
+		assertTrue(data.getParams()[0] < 1.0e-6);
+		assertEquals(10.0, params[1], 1.0e-3);
+		assertEquals(1000.0, params[2], 1.0e-2);
+		assertEquals(2.0, params[3], 1.0e-5);
+		assertEquals(y[20], data.getYFitted()[20], 1.0e-3);
+	}
+
+	@Test
+	public void testDoubleExponential() {
+		final double[] y =
+			decay(new double[] { 5.0, 800.0, 3.0, 400.0, 0.5 }, null);
+		final ICurveFitData data = fit(y, FitFunction.DOUBLE_EXPONENTIAL,
+			NoiseModel.MAXIMUM_LIKELIHOOD, null, new double[6]);
+		final double[] params = data.getParams();
+		assertEquals(3.0, params[3], 1.0e-3);
+		assertEquals(0.5, params[5], 1.0e-3);
+	}
+
+	@Test
+	public void testStretchedExponential() {
+		final double[] y = new double[BINS];
+		for (int i = 0; i < BINS; ++i) {
+			y[i] = 1.0 + 500.0 * Math.exp(-Math.pow(i * X_INC / 2.0, 1.0 / 1.3));
+		}
+		final ICurveFitData data = fit(y, FitFunction.STRETCHED_EXPONENTIAL,
+			NoiseModel.GAUSSIAN_FIT, null, new double[5]);
+		final double[] params = data.getParams();
+		assertEquals(500.0, params[2], 1.0e-2);
+		assertEquals(2.0, params[3], 1.0e-4);
+		assertEquals(1.3, params[4], 1.0e-4);
+	}
+
+	@Test
+	public void testInstrumentResponse() {
+		final double[] prompt = new double[20];
+		double sum = 0.0;
+		for (int i = 0; i < prompt.length; ++i) {
+			prompt[i] = Math.exp(-0.5 * (i - 8) * (i - 8) / 4.0);
+			sum += prompt[i];
+		}
+		for (int i = 0; i < prompt.length; ++i) {
+			prompt[i] /= sum;
+		}
+		final double[] y = decay(new double[] { 10.0, 1000.0, 1.5 }, prompt);
+		final ICurveFitData data = fit(y, FitFunction.SINGLE_EXPONENTIAL,
+			NoiseModel.POISSON_DATA, prompt, new double[4]);
+		final double[] params = data.getParams();
+		assertEquals(1000.0, params[2], 1.0e-2);
+		assertEquals(1.5, params[3], 1.0e-5);
+	}
+
+	@Test
+	public void testRapidLifetimeDetermination() {
+		final double[] prompt = new double[20];
+		for (int i = 0; i < prompt.length; ++i) {
+			prompt[i] = Math.exp(-0.5 * (i - 8) * (i - 8) / 4.0);
+		}
+		final double[] y = decay(new double[] { 10.0, 1000.0, 1.5 }, prompt);
+		final LMACurveFitter fitter = new LMACurveFitter();
+		fitter.setFitAlgorithm(FitAlgorithm.SLIMCURVE_RLD);
+		fitter.setFitFunction(FitFunction.SINGLE_EXPONENTIAL);
+		fitter.setNoiseModel(NoiseModel.POISSON_FIT);
+		fitter.setXInc(X_INC);
+		fitter.setInstrumentResponse(prompt);
+		final ICurveFitData data = new CurveFitData();
+		data.setYCount(y);
+		data.setTransStartIndex(0);
+		data.setDataStartIndex(10);
+		data.setTransEndIndex(BINS);
+		data.setParams(new double[4]);
+		assertEquals(0, fitter.fitData(new ICurveFitData[] { data }));
+		// the lifetime lookup allows for the prompt, without iterating
+		final double[] params = data.getParams();
+		assertEquals(10.0, params[1], 1.0e-2);
+		assertEquals(1000.0, params[2], 1.0);
+		assertEquals(1.5, params[3], 1.0e-3);
+	}
+
+	@Test
+	public void testFixedParameter() {
+		final double[] y = decay(new double[] { 10.0, 1000.0, 2.0 }, null);
+		final LMACurveFitter fitter = new LMACurveFitter();
+		fitter.setFree(new boolean[] { true, true, false });
+		final ICurveFitData data = fit(fitter, y, FitFunction.SINGLE_EXPONENTIAL,
+			NoiseModel.POISSON_FIT, null, new double[] { 0.0, 0.0, 0.0, 2.0 });
+		final double[] params = data.getParams();
+		assertEquals(10.0, params[1], 1.0e-3);
+		assertEquals(1000.0, params[2], 1.0e-2);
+		assertEquals(2.0, params[3], 0.0);
+	}
+
+	@Test
+	public void testVariableProjection() {
+		final double[] y =
+			decay(new double[] { 5.0, 800.0, 3.0, 400.0, 0.5 }, null);
+		final ICurveFitData data = fit(new LMACurveFitter(true), y,
+			FitFunction.DOUBLE_EXPONENTIAL, NoiseModel.POISSON_FIT, null,
+			new double[6]);
+		final double[] params = data.getParams();
+		assertEquals(5.0, params[1], 1.0e-3);
+		assertEquals(800.0, params[2], 1.0e-2);
+		assertEquals(3.0, params[3], 1.0e-5);
+		assertEquals(400.0, params[4], 1.0e-2);
+		assertEquals(0.5, params[5], 1.0e-5);
+	}
+
+	@Test
+	public void testVariableProjectionTriple() {
+		final double[] prompt = new double[] { 0.2, 0.5, 0.3 };
+		final double[] y =
+			decay(new double[] { 1.0, 600.0, 4.0, 600.0, 1.2, 600.0, 0.3 }, prompt);
+		final ICurveFitData data = fit(new LMACurveFitter(true), y,
+			FitFunction.TRIPLE_EXPONENTIAL, NoiseModel.MAXIMUM_LIKELIHOOD, prompt,
+			new double[8]);
+		final double[] params = data.getParams();
+		assertEquals(4.0, params[3], 1.0e-3);
+		assertEquals(1.2, params[5], 1.0e-3);
+		assertEquals(0.3, params[7], 1.0e-3);
+	}
+
+	@Test
+	public void testVariableProjectionStretched() {
+		final double[] y = new double[BINS];
+		for (int i = 0; i < BINS; ++i) {
+			y[i] = 1.0 + 500.0 * Math.exp(-Math.pow(i * X_INC / 2.0, 1.0 / 1.3));
+		}
+		final ICurveFitData data = fit(new LMACurveFitter(true), y,
+			FitFunction.STRETCHED_EXPONENTIAL, NoiseModel.GAUSSIAN_FIT, null,
+			new double[5]);
+		final double[] params = data.getParams();
+		assertEquals(500.0, params[2], 1.0e-2);
+		assertEquals(2.0, params[3], 1.0e-4);
+		assertEquals(1.3, params[4], 1.0e-4);
+	}
+
+	private static ICurveFitData fit(final double[] y,
+		final FitFunction function, final NoiseModel noiseModel,
+		final double[] prompt, final double[] params)
+	{
+		return fit(new LMACurveFitter(), y, function, noiseModel, prompt, params);
+	}
+
+	private static ICurveFitData fit(final LMACurveFitter fitter,
+		final double[] y, final FitFunction function, final NoiseModel noiseModel,
+		final double[] prompt, final double[] params)
+	{
+		fitter.setFitAlgorithm(FitAlgorithm.SLIMCURVE_RLD_LMA);
+		fitter.setFitFunction(function);
+		fitter.setNoiseModel(noiseModel);
+		fitter.setXInc(X_INC);
+		fitter.setInstrumentResponse(prompt);
+		final ICurveFitData data = new CurveFitData();
+		data.setYCount(y);
+		data.setTransStartIndex(0);
+		data.setDataStartIndex(null == prompt ? 0 : 10);
+		data.setTransEndIndex(BINS);
+		data.setParams(params);
+		data.setYFitted(new double[BINS]);
+		assertTrue(fitter.fitData(new ICurveFitData[] { data }) >= 0);
+		return data;
+	}
+
+	/**
+	 * Builds Z plus exponential components, convolved with a prompt if given.
+	 *
+	 */
+	private static double[] decay(final double[] params, final double[] prompt)
+	{
+		final double[] y = new double[BINS];
+		for (int i = 0; i < BINS; ++i) {
+			for (int a = 1; a < params.length; a += 2) {
+				if (null == prompt) {
+					y[i] += params[a] * Math.exp(-i * X_INC / params[a + 1]);
+				}
+				else {
+					for (int j = 0; j <= i && j < prompt.length; ++j) {
+						y[i] +=
+							prompt[j] * params[a] * Math.exp(-(i - j) * X_INC / params[a + 1]);
+					}
+				}
+			}
+			y[i] += params[0];
+		}
+		return y;
+	}
+}
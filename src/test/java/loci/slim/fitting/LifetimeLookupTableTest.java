@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test of the lifetime lookup table.
+ */
+public class LifetimeLookupTableTest {
+
+	private static final double X_INC = 0.05;
+	private static final int BINS = 200;
+	private static final int START = 30;
+
+	@Test
+	public void testExponential() {
+		final LifetimeLookupTable table =
+			new LifetimeLookupTable(X_INC, START, BINS, null);
+		assertTrue(table.isFor(X_INC, START, BINS, null));
+		// down to well under the gate width of 2.8
+		for (final double tau : new double[] { 0.15, 0.2, 0.3, 0.4, 1.0, 2.5,
+			8.0 })
+		{
+			final double[] y = new double[BINS];
+			for (int i = 0; i < BINS; ++i) {
+				y[i] = 10.0 + 1000.0 * Math.exp(-i * X_INC / tau);
+			}
+			assertEquals(tau, table.getLifetime(y), 1.0e-5 * tau);
+		}
+	}
+
+	@Test
+	public void testInstrumentResponse() {
+		final double[] prompt = new double[60];
+		for (int i = 0; i < prompt.length; ++i) {
+			final double t = (i - START) / 4.0;
+			prompt[i] = Math.exp(-t * t / 2.0);
+		}
+		final InstrumentResponse response = new InstrumentResponse(prompt, BINS);
+		final LifetimeLookupTable table =
+			new LifetimeLookupTable(X_INC, START, BINS, prompt);
+		final LifetimeLookupTable ignored =
+			new LifetimeLookupTable(X_INC, START, BINS, null);
+		final double[] y = new double[BINS];
+		for (final double tau : new double[] { 0.1, 0.2, 0.3, 0.5, 1.0, 2.5,
+			10.0 })
+		{
+			response.convolveExponential(X_INC, tau, y, null);
+			for (int i = 0; i < BINS; ++i) {
+				y[i] = 10.0 + 1000.0 * y[i];
+			}
+			assertEquals(tau, table.getLifetime(y), 1.0e-5 * tau);
+			// the prompt biases the plain triple integral
+			assertTrue(Math.abs(ignored.getLifetime(y) - tau) > 1.0e-3 * tau);
+		}
+	}
+
+	@Test
+	public void testOutOfRange() {
+		final LifetimeLookupTable table =
+			new LifetimeLookupTable(X_INC, START, BINS, null);
+		final double[] y = new double[BINS];
+		for (int i = 0; i < BINS; ++i) {
+			y[i] = i;
+		}
+		assertTrue(Double.isNaN(table.getLifetime(y)));
+		assertTrue(Double.isNaN(table.getLifetime(1.0, 1.0)));
+		assertTrue(Double.isNaN(table.getLifetime(1.0, 0.0)));
+		// too narrow a window
+		assertTrue(Double.isNaN(new LifetimeLookupTable(X_INC, START, START + 2,
+			null).getLifetime(y)));
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import ij.process.ImageProcessor;
+
+import java.awt.image.IndexColorModel;
+
+import loci.slim.mask.Mask;
+
+import org.junit.Test;
+
+/**
+ * Unit test of redrawing fitted images after masking changes.
+ */
+public class AbstractBaseFittedImageTest {
+
+	private static final int WIDTH = 4;
+	private static final int HEIGHT = 3;
+
+	@Test
+	public void testMaskChange() {
+		final double[][] values = values();
+		final RecordingSlice slice = new RecordingSlice(values);
+		final double[] minMaxLUT = { 0.0, 10.0 };
+		final Mask oldMask = mask(1, 1);
+		AbstractBaseFittedImage.redrawMasked(slice, values, null, oldMask, true,
+			minMaxLUT, minMaxLUT);
+
+		// same range: only the pixels whose masking changed are drawn
+		final Mask mask = mask(2, 1);
+		slice.draws = 0;
+		assertTrue(AbstractBaseFittedImage.redrawMasked(slice, values, oldMask,
+			mask, false, minMaxLUT, minMaxLUT));
+		assertEquals(2, slice.draws);
+		assertMasked(slice, values, mask);
+
+		// no change: nothing drawn
+		slice.draws = 0;
+		assertFalse(AbstractBaseFittedImage.redrawMasked(slice, values, mask,
+			mask.clone(), false, minMaxLUT, minMaxLUT));
+		assertEquals(0, slice.draws);
+	}
+
+	@Test
+	public void testMaskAndRangeChange() {
+		final double[][] values = values();
+		final RecordingSlice slice = new RecordingSlice(values);
+		final double[] oldMinMaxLUT = { 0.0, 10.0 };
+		final Mask oldMask = mask(1, 1);
+		AbstractBaseFittedImage.redrawMasked(slice, values, null, oldMask, true,
+			oldMinMaxLUT, oldMinMaxLUT);
+
+		// the new range is drawn unmasked, including the pixel still masked
+		final double[] minMaxLUT = { 0.0, 20.0 };
+		slice.setMinAndMax(minMaxLUT[0], minMaxLUT[1]);
+		final Mask mask = mask(1, 1);
+		mask.clear(2, 1);
+		assertTrue(AbstractBaseFittedImage.redrawMasked(slice, values, oldMask,
+			mask, false, oldMinMaxLUT, minMaxLUT));
+		assertMasked(slice, values, mask);
+		assertTrue(Double.isNaN(slice.pixels[1][1]));
+	}
+
+	private static double[][] values() {
+		final double[][] values = new double[WIDTH][HEIGHT];
+		for (int x = 0; x < WIDTH; ++x) {
+			for (int y = 0; y < HEIGHT; ++y) {
+				values[x][y] = 1.0 + x + WIDTH * y;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Builds a mask of all pixels but one.
+	 *
+	 */
+	private static Mask mask(final int x, final int y) {
+		final Mask mask = new Mask(WIDTH, HEIGHT);
+		for (int i = 0; i < WIDTH; ++i) {
+			for (int j = 0; j < HEIGHT; ++j) {
+				mask.set(i, j);
+			}
+		}
+		mask.clear(x, y);
+		return mask;
+	}
+
+	private static void assertMasked(final RecordingSlice slice,
+		final double[][] values, final Mask mask)
+	{
+		for (int x = 0; x < WIDTH; ++x) {
+			for (int y = 0; y < HEIGHT; ++y) {
+				final double expected = mask.test(x, y) ? values[x][y] : Double.NaN;
+				assertEquals(expected, slice.pixels[x][y], 0.0);
+			}
+		}
+	}
+
+	/**
+	 * Records drawn values. Like a colorized image, a new LUT range redraws
+	 * every value.
+	 */
+	private static class RecordingSlice implements IFittedImageSlice {
+
+		final double[][] values;
+		final double[][] pixels = new double[WIDTH][HEIGHT];
+		int draws;
+
+		RecordingSlice(final double[][] values) {
+			this.values = values;
+		}
+
+		@Override
+		public void init(final int width, final int height, final int channel,
+			final IndexColorModel indexColorModel)
+		{}
+
+		@Override
+		public void setColorModel(final IndexColorModel indexColorModel) {}
+
+		@Override
+		public ImageProcessor getImageProcessor() {
+			return null;
+		}
+
+		@Override
+		public void setMinAndMax(final double min, final double max) {
+			for (int x = 0; x < WIDTH; ++x) {
+				for (int y = 0; y < HEIGHT; ++y) {
+					pixels[x][y] = values[x][y];
+				}
+			}
+		}
+
+		@Override
+		public void draw(final int x, final int y, final double value) {
+			pixels[x][y] = value;
+			++draws;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test of the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		// buckets are contiguous and cover every long
+		assertEquals(0, LatencyHistogram.getLowestValue(0));
+		int i = 0;
+		while (Long.MAX_VALUE != LatencyHistogram.getHighestValue(i)) {
+			final long next = LatencyHistogram.getLowestValue(i + 1);
+			assertEquals(next - 1, LatencyHistogram.getHighestValue(i));
+			assertEquals(i, LatencyHistogram.getIndex(next - 1));
+			assertEquals(i + 1, LatencyHistogram.getIndex(next));
+			++i;
+		}
+		assertEquals(i, LatencyHistogram.getIndex(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+
+		final Random random = new Random(1);
+		final long[] values = new long[10000];
+		long sum = 0;
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = (long) Math.exp(random.nextDouble() * 20.0);
+			histogram.record(values[i]);
+			sum += values[i];
+		}
+		Arrays.sort(values);
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(values[values.length - 1], histogram.getMax());
+		assertEquals((double) sum / values.length, histogram.getMean(), 1.0e-6);
+		for (final double percentile : new double[] { 1.0, 50.0, 90.0, 99.0,
+			99.9 })
+		{
+			final long exact =
+				values[(int) Math.ceil(percentile / 100.0 * values.length) - 1];
+			final long estimate = histogram.getValueAtPercentile(percentile);
+			// never under, within precision
+			assertTrue(estimate >= exact);
+			assertTrue(estimate <= exact + exact / 32 + 1);
+		}
+		assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100.0));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+}
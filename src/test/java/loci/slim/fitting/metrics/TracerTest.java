@@ -0,0 +1,91 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.fitting.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Unit test of the tracer.
+ */
+public class TracerTest {
+
+	@Test
+	public void testStartStop() throws IOException {
+		final File file = File.createTempFile("trace", ".json");
+		try {
+			Tracer.start(file);
+			Tracer.end("span", Tracer.begin());
+			assertTrue(Tracer.stop());
+			assertTrue(read(file).contains("\"name\": \"span\""));
+		}
+		finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	@Test
+	public void testSystemProperty() throws IOException, InterruptedException {
+		// the trace is written by a shutdown hook, so needs a JVM of its own
+		final File file = File.createTempFile("trace", ".json");
+		try {
+			Files.delete(file.toPath());
+			final String java =
+				System.getProperty("java.home") + File.separator + "bin" +
+					File.separator + "java";
+			final Process process =
+				new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					"-Dloci.slim.trace=" + file.getPath(), Traced.class.getName())
+					.inheritIO().start();
+			assertEquals(0, process.waitFor());
+			assertTrue(file.exists());
+			assertTrue(read(file).contains("\"name\": \"traced\""));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	private static String read(final File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), Charset
+			.forName("UTF-8"));
+	}
+
+	/**
+	 * Records a span and exits, leaving the trace to the shutdown hook.
+	 */
+	public static class Traced {
+
+		public static void main(final String[] args) {
+			Tracer.end("traced", Tracer.begin());
+		}
+	}
+}
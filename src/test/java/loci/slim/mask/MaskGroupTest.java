@@ -25,6 +25,10 @@ package loci.slim.mask;
 
 import ij.IJ;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -185,6 +189,53 @@ public class MaskGroupTest {
 																				// total
 	}
 
+	@Test
+	public void randomUpdateTest() {
+		final int width = 37;
+		final int height = 11;
+		final Random random = new Random(1234);
+		final MaskGroup maskGroup = new MaskGroup();
+		final List<MyNode> nodes = new ArrayList<MyNode>();
+		for (int i = 0; i < 4; ++i) {
+			nodes.add(new MyNode("node" + i, maskGroup));
+		}
+
+		for (int i = 0; i < 50; ++i) {
+			// change a random node's mask, sometimes to null
+			final MyNode node = nodes.get(random.nextInt(nodes.size()));
+			Mask mask = null;
+			if (random.nextInt(4) != 0) {
+				mask = new Mask(width, height);
+				for (int y = 0; y < height; ++y) {
+					for (int x = 0; x < width; ++x) {
+						if (random.nextInt(8) != 0) {
+							mask.set(x, y);
+						}
+					}
+				}
+			}
+			node.updateSelfMask(mask);
+
+			// compare with combining all masks directly
+			for (final MyNode peer : nodes) {
+				if (peer != node) {
+					final List<Mask> masks = new ArrayList<Mask>();
+					for (final MyNode other : nodes) {
+						if (other != peer) {
+							masks.add(other.getSelfMask());
+						}
+					}
+					checkMask(Mask.addMasks(masks), peer.getOtherMask());
+				}
+			}
+			final List<Mask> masks = new ArrayList<Mask>();
+			for (final MyNode other : nodes) {
+				masks.add(other.getSelfMask());
+			}
+			checkMask(Mask.addMasks(masks), maskGroup.getMask());
+		}
+	}
+
 	private void checkNode(final IMaskNode node, final Mask self,
 		final Mask other, final Mask total)
 	{
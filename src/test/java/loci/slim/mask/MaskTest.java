@@ -137,6 +137,29 @@ public class MaskTest {
 		}
 	}
 
+	@Test
+	public void testUnion() {
+		final Mask mask1 = new Mask(10, 10);
+		final Mask mask2 = new Mask(10, 10);
+		for (int y = 0; y < 10; ++y) {
+			for (int x = 0; x < 10; ++x) {
+				if (x < 3) {
+					mask1.set(x, y);
+				}
+				else if (x > 6) {
+					mask2.set(x, y);
+				}
+			}
+		}
+		final Mask mask3 = mask1.union(mask2);
+		for (int y = 0; y < 10; ++y) {
+			for (int x = 0; x < 10; ++x) {
+				assertEquals(x < 3 || x > 6, mask3.test(x, y));
+			}
+		}
+		assertEquals(60, mask3.getCount());
+	}
+
 	@Test
 	public void testAddMasks() {
 		final Mask mask1 = new Mask(3, 3);
@@ -205,4 +228,58 @@ public class MaskTest {
 		assert (!mask.test(1, 2));
 		assert (mask.test(2, 2));
 	}
+
+	@Test
+	public void testNonSquare() {
+		// sizes that don't fall on word boundaries
+		final Mask mask1 = new Mask(67, 5);
+		assertEquals(0, mask1.getCount());
+		assert (mask1.hasExcludedPixels());
+		mask1.set(66, 0);
+		mask1.set(0, 4);
+		mask1.set(66, 4);
+		assertEquals(3, mask1.getCount());
+		assert (mask1.test(66, 0));
+		assert (!mask1.test(0, 1));
+		assert (mask1.test(66, 4));
+
+		// round trip through boolean switches
+		final boolean[][] bits = mask1.getBits();
+		assertEquals(67, bits.length);
+		assertEquals(5, bits[0].length);
+		final Mask mask2 = new Mask(bits);
+		assert (mask1.equals(mask2));
+
+		// fully set mask has no excluded pixels
+		final Mask mask3 = new Mask(67, 5);
+		for (int y = 0; y < 5; ++y) {
+			for (int x = 0; x < 67; ++x) {
+				mask3.set(x, y);
+			}
+		}
+		assertEquals(67 * 5, mask3.getCount());
+		assert (!mask3.hasExcludedPixels());
+		assert (mask3.equals(null));
+		assert (mask1.equals(mask1.add(mask3)));
+
+		mask3.clear(10, 2);
+		assert (mask3.hasExcludedPixels());
+		assert (!mask3.test(10, 2));
+	}
+
+	@Test
+	public void testFindChanges() {
+		final Mask mask1 = new Mask(70, 3);
+		final Mask mask2 = new Mask(70, 3);
+		mask1.set(5, 0);
+		mask2.set(69, 2);
+		final int[] changes = Mask.findChanges(mask1, mask2);
+		assertEquals(2, changes.length);
+		assertEquals(5, changes[0]);
+		assertEquals(2 * 70 + 69, changes[1]);
+
+		// null mask means all pixels selected
+		assertEquals(70 * 3 - 1, Mask.findChanges(null, mask2).length);
+		assertEquals(0, Mask.findChanges(null, null).length);
+	}
 }
@@ -0,0 +1,171 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim.preprocess;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import ij.gui.OvalRoi;
+import ij.gui.Roi;
+
+import java.util.Random;
+
+import loci.slim.IntensityProjection;
+import loci.slim.mask.Mask;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link EligiblePixels} against a pixel by pixel check of ROIs, mask
+ * and threshold.
+ */
+public class EligiblePixelsTest {
+
+	private static final int WIDTH = 40;
+	private static final int HEIGHT = 30;
+	private static final int CHANNELS = 2;
+	private static final int BINS = 4;
+	private static final int INCREMENT = 2;
+	private static final int THRESHOLD = 3;
+	private double[][] sums;
+	private IntensityProjection intensity;
+
+	@Before
+	public void setUp() {
+		// lifetime last, channels as planes
+		final Img<DoubleType> image =
+			ArrayImgs.doubles(WIDTH, HEIGHT, CHANNELS, BINS);
+		final RandomAccess<DoubleType> randomAccess = image.randomAccess();
+		final Random random = new Random(1);
+		sums = new double[CHANNELS][WIDTH * HEIGHT];
+		for (int c = 0; c < CHANNELS; ++c) {
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					for (int b = 0; b < BINS; ++b) {
+						final int count = random.nextInt(4);
+						randomAccess.setPosition(new int[] { x, y, c, b });
+						randomAccess.get().setReal(count);
+						sums[c][y * WIDTH + x] += count;
+					}
+				}
+			}
+		}
+		intensity = new IntensityProjection(image, 3);
+	}
+
+	/**
+	 * ROIs reaching past each edge of the image, one outside it altogether.
+	 */
+	@Test
+	public void testClippedRois() {
+		final Roi[] rois =
+			new Roi[] { new Roi(-5, 20, 12, 20), new OvalRoi(30, -4, 15, 12),
+				new Roi(12, 8, 6, 5), new Roi(50, 50, 5, 5) };
+		check(rois, THRESHOLD, null);
+	}
+
+	@Test
+	public void testMask() {
+		final Mask mask = new Mask(WIDTH, HEIGHT);
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = (y % 2); x < WIDTH; x += 2) {
+				mask.set(x, y);
+			}
+		}
+		check(new Roi[] { new Roi(-3, -3, 20, 50) }, THRESHOLD, mask);
+		check(null, THRESHOLD, mask);
+	}
+
+	@Test
+	public void testNoThreshold() {
+		check(new Roi[] { new OvalRoi(25, 15, 30, 30) }, 0, null);
+		check(new Roi[0], 0, null);
+	}
+
+	@Test
+	public void testGetPixel() {
+		final double[] decay = new double[] { 1.0, 2.0 };
+		final EligiblePixels eligiblePixels =
+			new EligiblePixels(WIDTH, HEIGHT, CHANNELS, null, THRESHOLD, intensity,
+				INCREMENT, null);
+		eligiblePixels.chain(new IProcessor() {
+
+			@Override
+			public void chain(final IProcessor processor) {}
+
+			@Override
+			public double[] getPixel(final int[] location) {
+				return decay;
+			}
+		});
+		for (int c = 0; c < CHANNELS; ++c) {
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					final double[] pixel =
+						eligiblePixels.getPixel(new int[] { x, y, c });
+					if (sums[c][y * WIDTH + x] / INCREMENT >= THRESHOLD) {
+						assertArrayEquals(decay, pixel, 0.0);
+					}
+					else {
+						assertNull(pixel);
+					}
+				}
+			}
+		}
+	}
+
+	private void check(final Roi[] rois, final int threshold, final Mask mask) {
+		final EligiblePixels eligiblePixels =
+			new EligiblePixels(WIDTH, HEIGHT, CHANNELS, rois, threshold, intensity,
+				INCREMENT, mask);
+		for (int c = 0; c < CHANNELS; ++c) {
+			int count = 0;
+			for (int y = 0; y < HEIGHT; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					boolean inRoi = null == rois || 0 == rois.length;
+					if (!inRoi) {
+						for (final Roi roi : rois) {
+							inRoi |= roi.contains(x, y);
+						}
+					}
+					final boolean bright =
+						sums[c][y * WIDTH + x] / INCREMENT >= threshold;
+					final boolean eligible =
+						inRoi && (null == mask || mask.test(x, y)) && bright;
+					assertEquals(eligible, eligiblePixels.isEligible(x, y, c));
+					if (eligible) {
+						++count;
+					}
+				}
+			}
+			assertEquals(count, eligiblePixels.getMask(c).getCount());
+		}
+	}
+}
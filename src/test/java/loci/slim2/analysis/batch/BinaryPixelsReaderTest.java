@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.analysis.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.slim.fitted.FittedValue;
+import loci.slim2.process.FittedPixelSink;
+
+import org.junit.Test;
+
+/**
+ * Unit test of reading back pixels exported in binary.
+ */
+public class BinaryPixelsReaderTest {
+
+	// more pixels than fit in one block
+	private static final int WIDTH = 300;
+	private static final int HEIGHT = 250;
+	private static final String PARAMETERS = FittedValue.CHI_SQ + " " +
+		FittedValue.Z + " " + FittedValue.A + " " + FittedValue.T;
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		roundTrip(false);
+	}
+
+	@Test
+	public void testCompressedRoundTrip() throws IOException {
+		roundTrip(true);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotPixels() throws IOException {
+		new BinaryPixelsReader(new ByteArrayInputStream("SLIMPIX0"
+			.getBytes("UTF-8"))).next();
+	}
+
+	private static void roundTrip(final boolean compress) throws IOException {
+		final File file = File.createTempFile("pixels", ExportPixelsToBinary.SUFFIX);
+		try {
+			final ExportPixelsToBinary export = new ExportPixelsToBinary();
+			final double[][] first = export(export, file, "first", 1, compress);
+			final double[][] second = export(export, file, "second", 2, compress);
+
+			final BinaryPixelsReader reader = new BinaryPixelsReader(file);
+			try {
+				assertSection("first", first, reader.next());
+				assertSection("second", second, reader.next());
+				assertNull(reader.next());
+			}
+			finally {
+				reader.close();
+			}
+		}
+		finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	/**
+	 * Exports an image with random parameters, leaving every seventh pixel
+	 * unfitted.
+	 *
+	 * @return rows of x, y and parameters that should be read back
+	 */
+	private static double[][] export(final ExportPixelsToBinary export,
+		final File file, final String name, final long seed,
+		final boolean compress) throws IOException
+	{
+		final Random random = new Random(seed);
+		final FittedPixelSink sink =
+			export.createSink(file.getPath(), true, FitFunction.SINGLE_EXPONENTIAL,
+				PARAMETERS, compress);
+		final double[][] expected = new double[WIDTH * HEIGHT][];
+		int rows = 0;
+		final double[] params = new double[FittedValue.T1_INDEX + 1];
+		sink.begin(name, WIDTH, HEIGHT, params.length);
+		for (int y = 0; y < HEIGHT; ++y) {
+			for (int x = 0; x < WIDTH; ++x) {
+				for (int i = 0; i < params.length; ++i) {
+					params[i] = random.nextDouble();
+				}
+				if (0 == (x + y * WIDTH) % 7) {
+					params[FittedValue.CHI_SQ_INDEX] = Double.NaN;
+				}
+				else {
+					final double[] row = new double[2 + params.length];
+					row[0] = x;
+					row[1] = y;
+					System.arraycopy(params, 0, row, 2, params.length);
+					expected[rows++] = row;
+				}
+				sink.pixel(x, y, params);
+			}
+		}
+		sink.end();
+		return Arrays.copyOf(expected, rows);
+	}
+
+	private static void assertSection(final String name,
+		final double[][] expected, final BinaryPixelsReader.Section section)
+	{
+		assertEquals(name, section.getName());
+		assertArrayEquals(new String[] { "x", "y", "c", "X2", "Z", "A", "T" },
+			section.getColumns());
+		assertEquals(ExportPixelsToBinary.INT32_TYPE, section.getType(0));
+		assertEquals(ExportPixelsToBinary.FLOAT64_TYPE, section.getType(3));
+		assertEquals(expected.length, section.getRows());
+
+		final int[] xs = section.getInts(0);
+		final int[] ys = section.getInts(1);
+		final int[] cs = section.getInts(2);
+		for (int row = 0; row < expected.length; ++row) {
+			assertEquals((int) expected[row][0], xs[row]);
+			assertEquals((int) expected[row][1], ys[row]);
+			assertEquals(0, cs[row]);
+		}
+		for (int column = 3; column < 7; ++column) {
+			final double[] values = section.getDoubles(column);
+			for (int row = 0; row < expected.length; ++row) {
+				assertEquals(expected[row][column - 1], values[row], 0.0);
+			}
+		}
+	}
+}
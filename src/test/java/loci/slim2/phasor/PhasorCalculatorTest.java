@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.phasor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit test of phasor calculation.
+ */
+public class PhasorCalculatorTest {
+
+	private static final int BINS = 256;
+	private static final double TIME_INC = 0.05;
+
+	@Test
+	public void testSingleExponential() {
+		final PhasorCalculator calculator =
+			new PhasorCalculator(TIME_INC, 0, BINS, 1);
+		final double[] results = new double[PhasorCalculator.RESULT_COUNT];
+		for (final double tau : new double[] { 0.5, 1.0, 2.5, 4.0 }) {
+			calculator.compute(exponential(0, tau), results);
+			final double g = results[PhasorCalculator.G_INDEX];
+			final double s = results[PhasorCalculator.S_INDEX];
+			// on the universal semicircle
+			assertEquals(0.25, (g - 0.5) * (g - 0.5) + s * s, 1.0e-3);
+			assertEquals(tau, results[PhasorCalculator.TAU_PHASE_INDEX], tau * 0.01);
+			assertEquals(tau, results[PhasorCalculator.TAU_MODULATION_INDEX],
+				tau * 0.01);
+		}
+	}
+
+	@Test
+	public void testTail() {
+		// window starting after the peak
+		final int start = 20;
+		final PhasorCalculator calculator =
+			new PhasorCalculator(TIME_INC, start, BINS, 1);
+		final double[] results = new double[PhasorCalculator.RESULT_COUNT];
+		calculator.compute(exponential(10, 2.0), results);
+		assertEquals(2.0, results[PhasorCalculator.TAU_PHASE_INDEX], 0.02);
+		assertEquals(2.0, results[PhasorCalculator.TAU_MODULATION_INDEX], 0.02);
+	}
+
+	@Test
+	public void testCalibration() {
+		// Gaussian instrument response
+		final double[] prompt = new double[40];
+		for (int i = 0; i < prompt.length; ++i) {
+			prompt[i] = Math.exp(-(i - 20) * (i - 20) / 18.0);
+		}
+		final int promptStart = 10;
+		final double tau = 2.0;
+		final double[] decay = new double[BINS];
+		final double[] exponential = exponential(0, tau);
+		for (int i = 0; i < prompt.length; ++i) {
+			for (int j = promptStart + i; j < BINS; ++j) {
+				decay[j] += prompt[i] * exponential[j - promptStart - i];
+			}
+		}
+
+		final double[] results = new double[PhasorCalculator.RESULT_COUNT];
+		new PhasorCalculator(TIME_INC, 0, BINS, 1).compute(decay, results);
+		// delayed by the instrument response
+		assertTrue(results[PhasorCalculator.TAU_PHASE_INDEX] > tau * 1.5);
+
+		new PhasorCalculator(TIME_INC, 0, BINS, 1, prompt, promptStart).compute(
+			decay, results);
+		assertEquals(tau, results[PhasorCalculator.TAU_PHASE_INDEX], tau * 0.02);
+		assertEquals(tau, results[PhasorCalculator.TAU_MODULATION_INDEX],
+			tau * 0.02);
+	}
+
+	@Test
+	public void testNoPhotons() {
+		final PhasorCalculator calculator =
+			new PhasorCalculator(TIME_INC, 0, BINS, 1);
+		final double[] results = new double[PhasorCalculator.RESULT_COUNT];
+		calculator.compute(new double[BINS], results);
+		assertEquals(0.0, results[PhasorCalculator.INTENSITY_INDEX], 0.0);
+		assertTrue(Double.isNaN(results[PhasorCalculator.G_INDEX]));
+		assertTrue(Double.isNaN(results[PhasorCalculator.TAU_PHASE_INDEX]));
+	}
+
+	/**
+	 * Gets photons per bin of an exponential decay starting at a given bin.
+	 *
+	 */
+	private static double[] exponential(final int start, final double tau) {
+		final double[] decay = new double[BINS];
+		for (int i = start; i < BINS; ++i) {
+			final double t = (i - start) * TIME_INC;
+			decay[i] =
+				1000.0 * (Math.exp(-t / tau) - Math.exp(-(t + TIME_INC) / tau));
+		}
+		return decay;
+	}
+}
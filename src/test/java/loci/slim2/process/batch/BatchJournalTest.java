@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * SLIM Curve plugin for combined spectral-lifetime image analysis.
+ * %%
+ * Copyright (C) 2010 - 2015 Board of Regents of the University of
+ * Wisconsin-Madison.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+package loci.slim2.process.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import loci.curvefitter.ICurveFitter.FitFunction;
+import loci.slim.paramSetMacro;
+import loci.slim.fitted.FittedValue;
+import loci.slim.fitted.FittedValueFactory;
+import loci.slim2.analysis.batch.ExportSummaryToText;
+import loci.slim2.process.FittedPixelSink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of resuming an interrupted batch job from its journal.
+ */
+public class BatchJournalTest {
+
+	private static final int FILES = 4;
+	private static final int WIDTH = 16;
+	private static final int HEIGHT = 8;
+	private File dir;
+	private File[] files;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("journal").toFile();
+		files = new File[FILES];
+		for (int i = 0; i < FILES; ++i) {
+			files[i] = new File(dir, "image" + i + ".sdt");
+			files[i].createNewFile();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (final File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testResume() throws IOException {
+		final File pixels = new File(dir, "pixels.tsv");
+		final File summary = new File(dir, "summary.tsv");
+		run(null, pixels, summary, FILES);
+		final byte[] expectedPixels = Files.readAllBytes(pixels.toPath());
+		final byte[] expectedSummary = Files.readAllBytes(summary.toPath());
+		pixels.delete();
+		summary.delete();
+
+		// interrupted partway through the third file
+		final File journal = new File(dir, "batch.journal");
+		assertFalse(run(journal, pixels, summary, 2));
+		assertTrue(journal.exists());
+		assertEquals(0, summary.length());
+
+		assertTrue(run(journal, pixels, summary, FILES));
+		assertFalse(journal.exists());
+		assertArrayEquals(expectedPixels, Files.readAllBytes(pixels.toPath()));
+		assertArrayEquals(expectedSummary, Files.readAllBytes(summary.toPath()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testDifferentFiles() throws IOException {
+		final File journal = new File(dir, "batch.journal");
+		final String[] outputs = new String[] { null, null, null };
+		final BatchJournal batchJournal = new BatchJournal(journal, outputs);
+		batchJournal.record(files[0], new byte[0]);
+
+		// same job over a different file list
+		final File[] otherFiles = new File[] { files[1], files[0] };
+		new BatchJournal(journal, outputs).load(otherFiles);
+	}
+
+	/**
+	 * Runs batch job the way {@link DefaultBatchProcessor} does, stopping
+	 * partway through file {@code interrupt} if that is less than the count.
+	 *
+	 * @param journal null for none
+	 * @return whether the job completed
+	 */
+	private boolean run(final File journal, final File pixels,
+		final File summary, final int interrupt) throws IOException
+	{
+		final String[] outputs =
+			new String[] { pixels.getPath(), null, summary.getPath() };
+		BatchJournal batchJournal = null;
+		int firstFile = 0;
+		long[] offsets = new long[outputs.length];
+		byte[] summaryState = null;
+		if (null != journal) {
+			batchJournal = new BatchJournal(journal, outputs);
+			if (batchJournal.load(files)) {
+				firstFile = batchJournal.getCompleted();
+				offsets = batchJournal.getOffsets();
+				summaryState = batchJournal.getSummaryState();
+			}
+		}
+		DefaultBatchProcessor.truncate(pixels.getPath(), offsets[0]);
+		DefaultBatchProcessor.truncate(summary.getPath(), offsets[2]);
+
+		final ExportSummaryToText export = new ExportSummaryToText();
+		final FittedValue[] values = FittedValueFactory.createFittedValues(FittedValue.T, 1);
+		export.init(FitFunction.SINGLE_EXPONENTIAL, values, null);
+		if (null != summaryState && 0 < summaryState.length) {
+			export.readState(new DataInputStream(new ByteArrayInputStream(
+				summaryState)));
+		}
+
+		for (int i = firstFile; i < FILES; ++i) {
+			final boolean interrupted = i == interrupt;
+			fit(i, pixels, export.createSink(files[i].getCanonicalPath()),
+				interrupted);
+			if (interrupted) {
+				return false;
+			}
+			if (null != batchJournal) {
+				batchJournal.record(files[i], getState(export));
+			}
+		}
+		// titles are written once per session
+		paramSetMacro.writeParamOnce = false;
+		export.export(summary.getPath(), '\t');
+		if (null != batchJournal) {
+			batchJournal.delete();
+		}
+		return true;
+	}
+
+	/**
+	 * Fits a file, exporting pixels as they are fitted.
+	 *
+	 * @param interrupted whether to stop halfway through
+	 */
+	private static void fit(final int index, final File pixels,
+		final FittedPixelSink sink, final boolean interrupted) throws IOException
+	{
+		final Random random = new Random(index);
+		final BufferedWriter writer =
+			new BufferedWriter(new FileWriter(pixels, true));
+		try {
+			sink.begin("image" + index, WIDTH, HEIGHT, FittedValue.T1_INDEX + 1);
+			final int stop = interrupted ? HEIGHT / 2 : HEIGHT;
+			for (int y = 0; y < stop; ++y) {
+				for (int x = 0; x < WIDTH; ++x) {
+					final double[] params = new double[FittedValue.T1_INDEX + 1];
+					params[FittedValue.T1_INDEX] = 0.5 + 5.0 * random.nextDouble();
+					sink.pixel(x, y, params);
+					writer.write(index + "\t" + x + "\t" + y + "\t" +
+						params[FittedValue.T1_INDEX]);
+					writer.newLine();
+				}
+			}
+			if (!interrupted) {
+				sink.end();
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static byte[] getState(final ExportSummaryToText export)
+		throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		export.writeState(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+}